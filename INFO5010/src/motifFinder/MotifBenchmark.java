@@ -0,0 +1,436 @@
+package motifFinder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import motifsearch.Finder;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.DatasetGenerator;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Accuracy-versus-time benchmark of the finders on synthetic datasets with a planted motif.
+ * A sweep file lists the settings to try as lines of "key value1 value2 ...":
+ *
+ * finder <algorithm> <params>		one line per finder, as for find-motif (required)
+ * scoring <type> [param]			one line per scorer, as for set-scoring [default = the finder's own]
+ * sequences <n1> <n2> ...			number of sequences [default = 20]
+ * length <L1> <L2> ...			length of each sequence [default = 600]
+ * motif-length <l1> <l2> ...		length of the planted motif [default = 12]
+ * mutations <d1> <d2> ...			mutated positions of each planted instance [default = 0]
+ * trials <number>					trials of each finder run [default = 1]
+ * repeats <number>				datasets generated per configuration [default = 3]
+ * warmup <number>					untimed runs of each configuration before its repeats [default = 1]
+ * seed <value>					seed of the datasets and finders [default = 1]
+ *
+ * Every combination is run on the same datasets (repeat r uses seed + r), and each run
+ * records its wall time, the CPU time of the process, the bytes allocated and the
+ * nucleotide-level accuracy of the reported alignment against the planted sites.
+ * Results are written as one row per run, to CSV or, for a .json file, to JSON.
+ * @author Ricky
+ *
+ */
+public class MotifBenchmark
+{
+	private List<String> finders = new ArrayList<String>();
+	private List<String> scorings = new ArrayList<String>();
+	private int[] sequenceCounts = {20};
+	private int[] sequenceLengths = {600};
+	private int[] motifLengths = {12};
+	private int[] mutationCounts = {0};
+	private int trials = 1;
+	private int repeats = 3;
+	private int warmup = 1;
+	private long seed = 1;
+	private List<Run> runs = new ArrayList<Run>();
+
+	private static final PrintStream DISCARD = new PrintStream(new OutputStream()
+	{
+		@Override
+		public void write(int b)
+		{
+		}
+	});
+
+	/**
+	 * Reads the sweep file
+	 * @param sweepFile
+	 * @throws IOException
+	 */
+	public MotifBenchmark(String sweepFile) throws IOException
+	{
+		try(BufferedReader in = new BufferedReader(new FileReader(sweepFile)))
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] parts = line.split("\\s+", 2);
+				String value = (parts.length > 1) ? parts[1] : "";
+				switch(parts[0])
+				{
+				case "finder":
+					finders.add(value);
+					break;
+				case "scoring":
+					scorings.add(value);
+					break;
+				case "sequences":
+					sequenceCounts = parseInts(value);
+					break;
+				case "length":
+					sequenceLengths = parseInts(value);
+					break;
+				case "motif-length":
+					motifLengths = parseInts(value);
+					break;
+				case "mutations":
+					mutationCounts = parseInts(value);
+					break;
+				case "trials":
+					trials = Integer.parseInt(value);
+					break;
+				case "repeats":
+					repeats = Integer.parseInt(value);
+					break;
+				case "warmup":
+					warmup = Integer.parseInt(value);
+					break;
+				case "seed":
+					seed = Long.parseLong(value);
+					break;
+				default:
+					throw new IOException("Unknown sweep setting : " + parts[0]);
+				}
+			}
+		}
+		if(finders.isEmpty())
+			throw new IOException("A sweep needs at least one finder");
+		if(scorings.isEmpty())
+			scorings.add(null);
+	}
+
+	/**
+	 * Runs every configuration of the sweep
+	 * @return false if a finder or scorer of the sweep is incorrect
+	 */
+	public boolean run()
+	{
+		Alphabet alphabet = new Alphabet("ACGT", "");
+		for(int numSequences : sequenceCounts)
+		{
+			for(int length : sequenceLengths)
+			{
+				for(int motifLength : motifLengths)
+				{
+					for(int mutations : mutationCounts)
+					{
+						//Generate the datasets once, every finder and scorer runs on the same ones
+						List<List<Sequence>> datasets = new ArrayList<List<Sequence>>();
+						List<int[]> plantedStarts = new ArrayList<int[]>();
+						for(int r=0; r < repeats; ++r)
+						{
+							DatasetGenerator generator = new DatasetGenerator(alphabet, seed + r);
+							generator.plantMotif(motifLength, mutations, 1.0);
+							datasets.add(generator.generate(numSequences, length));
+							plantedStarts.add(generator.getPlantedStarts());
+						}
+
+						for(String finderInput : finders)
+						{
+							for(String scoring : scorings)
+							{
+								for(int w=0; w < warmup; ++w)
+								{
+									if(runOnce(alphabet, datasets.get(0), plantedStarts.get(0), motifLength, finderInput, scoring, seed) == null)
+										return false;
+								}
+								for(int r=0; r < repeats; ++r)
+								{
+									Run run = runOnce(alphabet, datasets.get(r), plantedStarts.get(r), motifLength, finderInput, scoring, seed + r);
+									if(run == null)
+										return false;
+									run.numSequences = numSequences;
+									run.length = length;
+									run.mutations = mutations;
+									run.repeat = r;
+									runs.add(run);
+									System.out.println(run);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the finder once on a fresh dataset of the sequences, so no statistics are shared between runs
+	 * @return the measurements, null if the finder or scorer is incorrect
+	 */
+	private Run runOnce(Alphabet alphabet, List<Sequence> seqList, int[] plantedStarts, int motifLength,
+			String finderInput, String scoring, long runSeed)
+	{
+		MotifFinder settings = new MotifFinder();
+		settings.useDataset(alphabet, seqList, motifLength, new Dataset(alphabet, seqList));
+		if(scoring != null)
+		{
+			settings.setScorer(("set-scoring " + scoring).split(" "));
+			if(settings.getScorer() == null)
+				return null;
+		}
+		settings.setRandomSeed(new String[]{"seed", Long.toString(runSeed)});
+		Finder finder = settings.createFinder(("find-motif " + finderInput).split(" "), motifLength);
+		if(finder == null)
+			return null;
+		finder.setVerbose(false);
+		finder.setOutput(DISCARD);
+
+		long cpuBefore = processCpuTime();
+		Map<Long, Long> allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		Sequence motif = finder.runMultiple(trials);
+		long wall = System.nanoTime() - start;
+		long cpu = processCpuTime() - cpuBefore;
+		long allocated = allocatedSince(allocatedBefore);
+
+		Map<Sequence, Integer> truth = new LinkedHashMap<Sequence, Integer>();
+		for(int i=0; i < seqList.size(); ++i)
+		{
+			truth.put(seqList.get(i), plantedStarts[i]);
+		}
+		Profile profile = finder.getCurrentProfile();
+		Run run = new Run();
+		run.finder = finderInput;
+		run.scoring = (scoring == null) ? "default" : scoring;
+		run.motifLength = motifLength;
+		run.wallMillis = wall / 1e6;
+		run.cpuMillis = (cpu < 0) ? -1 : cpu / 1e6;
+		run.allocatedMB = (allocated < 0) ? -1 : allocated / (1024.0 * 1024.0);
+		run.score = finder.getBestScore();
+		run.motif = motif.toString();
+		run.accuracy = nucleotideAccuracy(seqList, truth, motifLength, profile.getAlignmentStarts(), profile.length());
+		return run;
+	}
+
+	/**
+	 * Nucleotide-level accuracy of predicted sites against the true sites, one site per sequence at most.
+	 * A position is a true positive if it lies in both sites of its sequence.
+	 * @param seqList
+	 * @param truth start of the true site of each sequence, -1 or missing if it has none
+	 * @param truthLength
+	 * @param predicted start of the predicted site of each sequence, -1 or missing if it has none
+	 * @param predictedLength
+	 * @return {nSn, nPPV, nPC} : sensitivity TP/(TP+FN), positive predictive value TP/(TP+FP)
+	 * 			and performance coefficient TP/(TP+FN+FP)
+	 */
+	public static double[] nucleotideAccuracy(List<Sequence> seqList, Map<Sequence, Integer> truth, int truthLength,
+			Map<Sequence, Integer> predicted, int predictedLength)
+	{
+		long tp = 0;
+		long fn = 0;
+		long fp = 0;
+		for(Sequence seq : seqList)
+		{
+			Integer t = truth.get(seq);
+			Integer p = predicted.get(seq);
+			int trueLength = (t == null || t < 0) ? 0 : truthLength;
+			int predLength = (p == null || p < 0) ? 0 : predictedLength;
+			int overlap = 0;
+			if(trueLength > 0 && predLength > 0)
+				overlap = Math.max(0, Math.min(t + trueLength, p + predLength) - Math.max(t, p));
+			tp += overlap;
+			fn += trueLength - overlap;
+			fp += predLength - overlap;
+		}
+		return new double[]{
+				(tp + fn == 0) ? 0 : (double)tp / (tp + fn),
+				(tp + fp == 0) ? 0 : (double)tp / (tp + fp),
+				(tp + fn + fp == 0) ? 0 : (double)tp / (tp + fn + fp)};
+	}
+
+	/**
+	 * Writes one row per run, as JSON if the file name ends in .json and CSV otherwise
+	 * @param fileName
+	 * @throws IOException
+	 */
+	public void write(String fileName) throws IOException
+	{
+		boolean json = fileName.toLowerCase().endsWith(".json");
+		try(Writer out = new BufferedWriter(new FileWriter(fileName)))
+		{
+			if(json)
+				out.write("[\n");
+			else
+				out.write("finder,scoring,sequences,length,motif_length,mutations,trials,repeat,wall_ms,cpu_ms,allocated_mb,score,motif,nSn,nPPV,nPC\n");
+			for(int i=0; i < runs.size(); ++i)
+			{
+				Run run = runs.get(i);
+				if(json)
+				{
+					out.write(String.format("  {\"finder\": \"%s\", \"scoring\": \"%s\", \"sequences\": %d, \"length\": %d, "
+							+ "\"motif_length\": %d, \"mutations\": %d, \"trials\": %d, \"repeat\": %d, \"wall_ms\": %.3f, "
+							+ "\"cpu_ms\": %.3f, \"allocated_mb\": %.3f, \"score\": %.5f, \"motif\": \"%s\", "
+							+ "\"nSn\": %.4f, \"nPPV\": %.4f, \"nPC\": %.4f}%s\n",
+							run.finder, run.scoring, run.numSequences, run.length, run.motifLength, run.mutations, trials, run.repeat,
+							run.wallMillis, run.cpuMillis, run.allocatedMB, run.score, run.motif,
+							run.accuracy[0], run.accuracy[1], run.accuracy[2], (i < runs.size() - 1) ? "," : ""));
+				}
+				else
+				{
+					out.write(String.format("\"%s\",\"%s\",%d,%d,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.5f,%s,%.4f,%.4f,%.4f\n",
+							run.finder, run.scoring, run.numSequences, run.length, run.motifLength, run.mutations, trials, run.repeat,
+							run.wallMillis, run.cpuMillis, run.allocatedMB, run.score, run.motif,
+							run.accuracy[0], run.accuracy[1], run.accuracy[2]));
+				}
+			}
+			if(json)
+				out.write("]\n");
+		}
+	}
+
+	/**
+	 * Prints the mean time and accuracy of each configuration over its repeats, and the
+	 * fastest configuration whose mean nPC reaches the target
+	 * @param targetNPC
+	 */
+	public void printSummary(double targetNPC)
+	{
+		Map<String, double[]> means = new LinkedHashMap<String, double[]>();		//{wall, cpu, nPC, count} by configuration
+		for(Run run : runs)
+		{
+			double[] mean = means.computeIfAbsent(run.configuration(), k -> new double[4]);
+			mean[0] += run.wallMillis;
+			mean[1] += run.cpuMillis;
+			mean[2] += run.accuracy[2];
+			mean[3] += 1;
+		}
+		System.out.println("+++ Mean over repeats +++");
+		String fastest = null;
+		double fastestWall = Double.POSITIVE_INFINITY;
+		for(Map.Entry<String, double[]> entry : means.entrySet())
+		{
+			double[] mean = entry.getValue();
+			double wall = mean[0] / mean[3];
+			double nPC = mean[2] / mean[3];
+			System.out.println(String.format("%s - Wall : %.1f ms - CPU : %.1f ms - nPC : %.3f", entry.getKey(), wall, mean[1] / mean[3], nPC));
+			if(nPC >= targetNPC && wall < fastestWall)
+			{
+				fastest = entry.getKey();
+				fastestWall = wall;
+			}
+		}
+		if(fastest == null)
+			System.out.println(String.format("No configuration reaches nPC >= %.3f", targetNPC));
+		else
+			System.out.println(String.format("Fastest configuration with nPC >= %.3f : %s", targetNPC, fastest));
+	}
+
+	private static int[] parseInts(String value)
+	{
+		return Arrays.stream(value.split("\\s+")).mapToInt(Integer::parseInt).toArray();
+	}
+
+	/**
+	 * CPU time of the whole process, so the worker threads of parallel finders are counted
+	 * @return nanoseconds, -1 if the JVM does not report it
+	 */
+	private static long processCpuTime()
+	{
+		java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if(os instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+		return -1;
+	}
+
+	/**
+	 * Bytes allocated so far by each live thread
+	 * @return by thread id, null if the JVM does not report it
+	 */
+	private static Map<Long, Long> allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(!(threads instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean)threads;
+		if(!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled())
+			return null;
+		long[] ids = allocation.getAllThreadIds();
+		long[] bytes = allocation.getThreadAllocatedBytes(ids);
+		Map<Long, Long> result = new LinkedHashMap<Long, Long>();
+		for(int i=0; i < ids.length; ++i)
+		{
+			if(bytes[i] >= 0)
+				result.put(ids[i], bytes[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Bytes allocated by the live threads since the earlier count. Threads that start and
+	 * finish in between, like the pools of parallel-gibbs, are missed, so this is a lower bound.
+	 * @return -1 if the JVM does not report it
+	 */
+	private static long allocatedSince(Map<Long, Long> before)
+	{
+		Map<Long, Long> after = allocatedBytes();
+		if(before == null || after == null)
+			return -1;
+		long total = 0;
+		for(Map.Entry<Long, Long> entry : after.entrySet())
+		{
+			total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+		}
+		return total;
+	}
+
+	/**
+	 * The measurements of one finder run
+	 */
+	private static class Run
+	{
+		private String finder;
+		private String scoring;
+		private int numSequences;
+		private int length;
+		private int motifLength;
+		private int mutations;
+		private int repeat;
+		private double wallMillis;
+		private double cpuMillis;
+		private double allocatedMB;
+		private double score;
+		private String motif;
+		private double[] accuracy;		//{nSn, nPPV, nPC}
+
+		private String configuration()
+		{
+			return String.format("%s | %s | n=%d L=%d l=%d d=%d", finder, scoring, numSequences, length, motifLength, mutations);
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s | repeat %d - Wall : %.1f ms - Allocated : %.1f MB - Motif : %s - nPC : %.3f",
+					configuration(), repeat, wallMillis, allocatedMB, motif, accuracy[2]);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package motifFinder;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Client of the MotifServer. Sends the job read from a file (or standard input) to the
+ * server on the loopback port and prints the output of the job as it arrives.
+ * A bare "shutdown" line is sent with the server's token, read from its token file.
+ * Exits with status 1 if the job fails or the connection ends before the job is done.
+ * Usage : MotifClient [port] [jobFile]
+ * @author Ricky
+ *
+ */
+public class MotifClient
+{
+	public static void main(String[] args)
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : MotifServer.DEFAULT_PORT;
+		boolean failed = false;
+		boolean done = false;
+		try(InputStream jobInput = (args.length > 1) ? new FileInputStream(args[1]) : System.in;
+				Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+		{
+			//Send the job, ending it with 'run' unless it already ends with it
+			PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+			BufferedReader job = new BufferedReader(new InputStreamReader(jobInput, StandardCharsets.UTF_8));
+			String line;
+			String last = "";
+			while((line = job.readLine()) != null)
+			{
+				//Only the server's user can read its token
+				if(line.trim().equals("shutdown"))
+					line = "shutdown " + new String(Files.readAllBytes(MotifServer.tokenFile(port).toPath()), StandardCharsets.US_ASCII).trim();
+				out.println(line);
+				if(!line.trim().isEmpty())
+					last = line.trim();
+			}
+			if(!last.equals("run") && !last.equals("shutdown"))
+				out.println("run");
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			while((line = in.readLine()) != null)
+			{
+				System.out.println(line);
+				if(line.startsWith("ERROR"))
+					failed = true;
+				if(line.equals("DONE"))
+					done = true;
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+		System.exit((failed || !done) ? 1 : 0);
+	}
+}
@@ -1,26 +1,55 @@
 package motifFinder;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
+import motifsearch.BeamSearchFinder;
+import motifsearch.Checkpoint;
+import motifsearch.EMFinder;
 import motifsearch.Finder;
 import motifsearch.GibbsSamplingFinder;
+import motifsearch.IterativeMotifRunner;
+import motifsearch.MedianStringFinder;
+import motifsearch.MultiLengthRunner;
+import motifsearch.ParallelGibbsSamplingFinder;
+import motifsearch.ParallelTemperingFinder;
+import motifsearch.PlantedMotifFinder;
 import motifsearch.RandomProjectionFinder;
 import motifsearch.RandomizedGreedyFinder;
+import motifsearch.ResultCache;
+import scanning.GenomeScanner;
+import scanning.LibraryScanner;
+import scanning.MotifLibrary;
 import scoring.ExpectationScore;
 import scoring.ExpectedInformationScore;
 import scoring.FrequencyScore;
+import scoring.MarkovScore;
+import scoring.PValueService;
 import scoring.RelativeInformationScore;
 import scoring.Score;
+import scoring.ScoreDistribution;
 import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.DatasetGenerator;
+import sequence.KmerIndex;
+import sequence.MarkovBackground;
+import sequence.PackedSequence;
 import sequence.Profile;
+import sequence.Occurrence;
 import sequence.Sequence;
+import sequence.SuffixArray;
 
 public class MotifFinder
 {
@@ -34,6 +63,18 @@ public class MotifFinder
 	private Finder algorithm = null;									//chosen motif Finding algorithm
 	private Score scorer = null; 										//chosen scoring metric, if null use default
 	private Map<Sequence, Integer> perfectAlignments = null; 			//memory of inserted motif alignments
+	private KmerIndex kmerIndex = null;									//if set, finders seed their trials from over-represented k-mers
+	private int seedCandidates = 10;									//number of top k-mers to seed from
+	private boolean bothStrands = false;								//if set, finders also search the reverse complement strand
+	private String[] scorerInput = null;								//set-scoring command of the chosen scorer, saved in checkpoints
+	private Long randomSeed = null;										//if set, finders draw their random choices from this seed
+	private String checkpointFile = null;								//if set, find-motif runs write checkpoints here
+	private long checkpointInterval = 60000;							//minimum milliseconds between checkpoints
+	private ResultCache resultCache = null;								//if set, seeded find-motif results are cached here
+	private PValueService pValueService = new PValueService();			//caches the score distribution of each profile
+	private SuffixArray suffixArray = null;								//built on first occurrence query, dropped when the sequences change
+	private Dataset dataset = null;										//sequence statistics shared by every finder run, dropped when the sequences change
+	private PrintStream out = System.out;								//where the finders and their warnings print, e.g. a server job's stream
 	
 	private static String HELP_TEXT = 
 			  "*-Help Text-*\n"
@@ -42,8 +83,15 @@ public class MotifFinder
 			+ "\n"
 			+ "load-file <inputFile> 							: loads the alphabet, symbol distribution, motif length and sequences from a file\n"
 			+ "generate <length> <quantity>						: generates the specified quantity of random sequences of specified length (assumes alphabet = 'ACGT')\n"
+			+ "synthesize <outputFile> <quantity> <length> <motifLength> <mutations> [plantFraction] [markovOrder]	: writes a synthetic dataset in the load-file format with an (l,d) motif planted in a fraction of the sequences [default = 1], and its ground truth to <outputFile>.truth. The background follows the current alphabet, or an order-k Markov model of the current sequences\n"
 			+ "insert-motif <length> <mutation-rate> 			: inserts motifs into sequences with a given mutation-rate (%) per base and length\n"
 			+ "trials <number> 									: number of trials to run for each finder [default = 1]\n"
+			+ "seed-kmers <k> [topKmers] | off				: indexes all k-mers of the sequences so greedy/gibbs trials start from one of the topKmers most over-represented k-mers [default topKmers = 10]\n"
+			+ "strands <both|forward>							: whether greedy/gibbs align motifs on the reverse complement strand as well (DNA only) [default = forward]\n"
+			+ "seed <value> | off								: seeds the random choices of the finders so runs can be repeated exactly [default = off]\n"
+			+ "checkpoint <file> [intervalSeconds] | off		: find-motif runs write their state between trials to the file in the background, at most once per interval [default interval = 60]\n"
+			+ "resume <checkpointFile>						: resumes an interrupted find-motif run from its checkpoint, the same sequences must be loaded\n"
+			+ "cache <directory> [maxMB] | off					: caches the results of seeded find-motif runs on disk, except parallel-gibbs whose runs are not repeatable, keyed by the sequences and every search setting [default maxMB = 256]\n"
 			+ "clear 											: clears all motifFinder parameters and sequence lists\n"
 			+ "\n"
 			+ "print-motif 								: prints the consensus motif\n"
@@ -51,19 +99,38 @@ public class MotifFinder
 			+ "print-alignments 						: prints the current alignment vector\n"
 			+ "print-sequences 							: prints all sequences\n"
 			+ "print-inserted-motif						: prints insert-consensus motif if inserted\n"
+			+ "print-accuracy								: prints the nucleotide-level sensitivity, precision and performance coefficient of the current alignments against the inserted motifs\n"
+			+ "find-occurrences <maxMismatches> [pattern]	: prints the occurrences of the pattern (default = consensus motif) with at most maxMismatches in all sequences\n"
+			+ "scan-genome <fastaFile> <outputFile> <threshold> [threads]	: scans a (multi-)FASTA file with the current profile's weight matrix, writing windows scoring >= threshold (with p-values) as BED-like records\n"
+			+ "scan-genome-pvalue <fastaFile> <outputFile> <pValue> [threads]	: as scan-genome, with the threshold set from a p-value under the profile's background model\n"
+			+ "library-add <libraryFile> <name> <pValue>		: adds the current profile to a motif library file (created if missing), with its threshold set from a p-value\n"
+			+ "scan-library <libraryFile> <outputFile>		: scans all sequences with every motif of a library in one pass, writing the hits of each motif\n"
+			+ "pvalue <score>								: prints the p-value of a weight matrix score for the current profile\n"
+			+ "pvalue-threshold <pValue>					: prints the weight matrix score threshold for a p-value for the current profile\n"
 			+ "\n"
 			+ "find-motif <algorithm> <param1> <param2> ... : runs the given algorithm for given params. Check Below for details\n"
+			+ "find-motif-range <minLength> <maxLength> <algorithm> <param1> ... : runs the algorithm for every motif length in the range in parallel, sharing the data structures, and keeps the best score per position\n"
+			+ "find-motifs <count> <algorithm> <param1> ...	: finds count distinct motifs one after another, masking the occurrences of each motif found before searching for the next (not with median, planted or projection, which ignore masks)\n"
+			+ "refine-em <oops|zoops> <maxIterations> [tolerance]	: refines the current profile, e.g. the result of find-motif, by expectation maximization as the em algorithm [default tolerance = 1e-6]\n"
+			+ "benchmark <sweepFile> <outputFile> [targetNPC]	: runs every finder/scorer/dataset combination of a sweep file on synthetic planted datasets, writing time, allocations and accuracy of each run to CSV (or JSON for a .json file) [default targetNPC = 0.5]\n"
 			+ "set-scoring <scoringType> [param1]   		: sets the scoring metric with an optional param. Check Below for details\n"
 			+ "\n"
 			+ "\n-- Algorithms and Required Parameters --\n"
 			+ "greedy <updateStep>											: Runs the randomized greedy finder, updateStep=true|false if updates are to happen at each alignment change. Recommended this be set to true\n"
 			+ "gibbs <optimizationThreshold>								: Runs the gibbs sampling finder, optimisationThresh determines when to stop optimisation (recommend = 1e-7) \n"
+			+ "parallel-gibbs <sweeps> <threads>							: Runs the hogwild-style parallel gibbs sampler for a fixed number of sweeps, threads resample disjoint sequences concurrently\n"
+			+ "median														: Runs the exact median string search (branch-and-bound), only practical for short motifs (length <= 12)\n"
+			+ "planted <maxMismatches> [memoryMB]							: Runs the exact planted (l,d)-motif search, every occurrence within maxMismatches of the motif. memoryMB bounds the candidate sets [default = 256]\n"
 			+ "projection <projectionSize> <binThreshold> <numIterations>	: Runs the random projection finder; projectionSize refers to the size of the hashed kmer, binThreshold determines which bins are selected for further anlysis, numIterations determines how many k-l templates are projected\n"
+			+ "beam <beamWidth>											: Runs the deterministic CONSENSUS-style beam search, adding the sequences one at a time and keeping the best partial alignments by relative information (use with 1 trial, recommend = 1000)\n"
+			+ "em <oops|zoops> <maxIterations> [tolerance]					: Runs expectation maximization of the motif matrix over the posteriors of all l-mers, with exactly one (oops) or zero or one (zoops) site per sequence, until the log likelihood per sequence changes by less than tolerance (recommend = oops 100) [default tolerance = 1e-6]\n"
+			+ "tempering <sweeps> <replicas> <minTemperature> <maxTemperature>	: Runs the parallel tempering finder, replicas anneal the alignment at geometrically spaced temperatures on separate threads and swap temperatures between rounds, needs the relative-information or markov score (recommend = 100 <cores> 0.1 0.5)\n"
 			+ "\n-- Types of Scoring Metrics--\n"
 			+ "frequency 							: simple frequency summation to measure the strength of consensus\n"
 			+ "expectation [pseudoZero] 			: sum(log_2(p)) using the position probability matrix\n"
 			+ "expected-information [pseudoZero] 	: sum(p * log_2(p)) using the position probability matrix\n"
 			+ "relative-information [pseudoZero] 	: sum(p * log_2(p/b)) using the position weight matrix\n"
+			+ "markov <order> [pseudoZero]			: sum(log_2(p)) - log_2(background likelihood) of each l-mer in its sequence context, under an order-k Markov background of the sequences\n"
 			+ "";
 	//TODO: fill in algorithms and parameters
 			
@@ -108,6 +175,14 @@ public class MotifFinder
 					System.err.println("Incorrect arguments : type 'help' for help-text");
 				}
 				break;
+			case "synthesize":
+				try{
+					mFinder.synthesize(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
 			case "insert-motif":
 				if(input.length == 3)
 				{
@@ -136,6 +211,50 @@ public class MotifFinder
 					System.err.println("Incorrect arguments : type 'help' for help-text");
 				}
 				break;
+			case "seed-kmers":
+				try{
+					mFinder.setSeedKmers(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "strands":
+				mFinder.setStrands(input);
+				break;
+			case "seed":
+				try{
+					mFinder.setRandomSeed(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "checkpoint":
+				try{
+					mFinder.setCheckpoint(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "resume":
+				if(input.length == 2)
+				{
+					mFinder.resume(input[1]);
+				}else
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "cache":
+				try{
+					mFinder.setResultCache(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
 			case "clear":
 				mFinder.clear();
 				break;
@@ -154,6 +273,46 @@ public class MotifFinder
 			case "print-inserted-motif":
 				mFinder.printInsertedMotif();
 				break;
+			case "print-accuracy":
+				mFinder.printAccuracy();
+				break;
+			case "find-occurrences":
+				try{
+					mFinder.findOccurrences(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "scan-genome":
+			case "scan-genome-pvalue":
+				try{
+					mFinder.scanGenome(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "library-add":
+				try{
+					mFinder.addToLibrary(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "scan-library":
+				mFinder.scanLibrary(input);
+				break;
+			case "pvalue":
+			case "pvalue-threshold":
+				try{
+					mFinder.printPValue(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
 			case "find-motif":
 				try{
 					mFinder.runFinder(input);
@@ -162,6 +321,38 @@ public class MotifFinder
 					System.err.println("Incorrect arguments : type 'help' for help-text");
 				}
 				break;
+			case "refine-em":
+				try{
+					mFinder.refineWithEM(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "find-motif-range":
+				try{
+					mFinder.runFinderRange(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "find-motifs":
+				try{
+					mFinder.runFinderIterative(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
+			case "benchmark":
+				try{
+					mFinder.runBenchmark(input);
+				}catch(NumberFormatException ex)
+				{
+					System.err.println("Incorrect arguments : type 'help' for help-text");
+				}
+				break;
 			case "set-scoring":
 				try{
 					mFinder.setScorer(input);
@@ -186,11 +377,64 @@ public class MotifFinder
 	public void generate(int length, int quantity)
 	{
 		Alphabet alph = new Alphabet("ACGT", "");
-		for(int q=0; q < quantity; ++q)
+		kmerIndex = null;
+		suffixArray = null;
+		dataset = null;
+		long seed = (randomSeed != null) ? randomSeed : System.nanoTime();
+		seqList.addAll(new DatasetGenerator(alph, seed).generate(quantity, length));
+	}
+	
+	/**
+	 * Writes a synthetic dataset with a planted (l,d) motif straight to a file, with its
+	 * ground truth alongside. Uses the seed if one is set, so the same dataset can be written again.
+	 * @param input
+	 */
+	public void synthesize(String[] input)
+	{
+		if(input.length < 6 || input.length > 8)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		int quantity = Integer.parseInt(input[2]);
+		int length = Integer.parseInt(input[3]);
+		int plantLength = Integer.parseInt(input[4]);
+		int mutations = Integer.parseInt(input[5]);
+		double plantFraction = (input.length > 6) ? Double.parseDouble(input[6]) : 1.0;
+		if(quantity < 1 || plantLength < 1 || length < plantLength || mutations < 0 || mutations > plantLength)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		long seed = (randomSeed != null) ? randomSeed : System.nanoTime();
+		DatasetGenerator generator;
+		if(input.length > 7)
+		{
+			if(seqList.isEmpty())
+			{
+				System.err.println("Sequences must be initialized first to estimate a Markov background");
+				return;
+			}
+			generator = new DatasetGenerator(getDataset().getMarkovBackground(Integer.parseInt(input[7])), seed);
+		}
+		else
+		{
+			generator = new DatasetGenerator(alphabet, seed);
+		}
+		generator.plantMotif(plantLength, mutations, plantFraction);
+		
+		long startTime = System.nanoTime();
+		try
 		{
-			Sequence randSeq = Sequence.generateRandomSequence(alph, length);
-			seqList.add(randSeq);
+			generator.writeDataset(input[1], input[1] + ".truth", quantity, length, plantLength);
 		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		System.out.println(String.format("Wrote %d sequences to %s in %.3f s, planted motif : %s",
+				quantity, input[1], (System.nanoTime() - startTime) / 1e9, generator.getMotif()));
 	}
 	
 	
@@ -204,6 +448,9 @@ public class MotifFinder
 	public void insertMotif(int length, double mutationRate)
 	{
 		motifLength = length; 
+		kmerIndex = null;
+		suffixArray = null;
+		dataset = null;
 		Alphabet alph = new Alphabet("ACGT", "");
 		int[] startPos = new int[seqList.size()];
 		
@@ -241,6 +488,15 @@ public class MotifFinder
 		profile = null;
 		scorer = null;
 		perfectAlignments = null;
+		kmerIndex = null;
+		suffixArray = null;
+		dataset = null;
+		bothStrands = false;
+		scorerInput = null;
+		randomSeed = null;
+		checkpointFile = null;
+		checkpointInterval = 60000;
+		resultCache = null;
 	}
 	
 	/**
@@ -260,144 +516,755 @@ public class MotifFinder
 			return;
 		}
 		
-		switch(input[1])	//second argument is the algorithm-type
+		String error = checkFinderArguments(input, motifLength);
+		if(error != null)
 		{
-		case "greedy":
-			if(input.length != 3)
-			{
-				System.err.println("Incorrect arguments : type 'help' for help-text");
-				return;
-			}
-			if(scorer == null)
-				algorithm = new RandomizedGreedyFinder(alphabet, seqList, motifLength, Boolean.parseBoolean(input[2]));
-			else
-				algorithm = new RandomizedGreedyFinder(alphabet, seqList, motifLength, Boolean.parseBoolean(input[2]), scorer);
-			break;
-		case "gibbs":
-			if(input.length != 3)
-			{
-				System.err.println("Incorrect arguments : type 'help' for help-text");
-				return;
-			}
-			if(scorer == null)
-				algorithm = new GibbsSamplingFinder(alphabet, seqList, motifLength, Double.parseDouble(input[2]));
-			else
-				algorithm = new GibbsSamplingFinder(alphabet, seqList, motifLength, Double.parseDouble(input[2]), scorer);
-			break;
-		case "projection":
-			if(input.length != 5)
+			System.err.println(error + " : type 'help' for help-text");
+			return;
+		}
+		
+		//Only seeded runs of deterministic finders are repeatable, so only they are cached,
+		//and a cached result needs no finder or checkpoint
+		String cacheKey = null;
+		if(resultCache != null && randomSeed != null && isRepeatable(input[1]))
+		{
+			cacheKey = ResultCache.key(getDataset(), String.join(" ", getSetupCommands(input)), 
+					Integer.toString(motifLength), Long.toString(randomSeed), Integer.toString(numTrials));
+			ResultCache.Result cached = resultCache.get(cacheKey, getDataset());
+			if(cached != null)
 			{
-				System.err.println("Incorrect arguments : type 'help' for help-text");
+				System.out.println(String.format("+++ Cached Result - Max Score : %.5f - Best Motif : %s +++", 
+						cached.getScore(), cached.getMotif().toString()));
+				consensusMotif = cached.getMotif();
+				profile = cached.getProfile();
+				alignments = profile.getAlignmentStarts();
 				return;
 			}
-			if(scorer == null)
-				algorithm = new RandomProjectionFinder(alphabet, seqList, motifLength, Integer.parseInt(input[2]), Integer.parseInt(input[3]), Integer.parseInt(input[4]));
-			else
-				algorithm = new RandomProjectionFinder(alphabet, seqList, motifLength, Integer.parseInt(input[2]), Integer.parseInt(input[3]), Integer.parseInt(input[4]), scorer);
-			break;
-		default:
-			System.err.println("Incorrect Algorithm Type : type 'help' for help-text");
-			return;
 		}
 		
+		algorithm = createFinder(input, motifLength);
+		if(algorithm == null)
+			return;
+		if(checkpointFile != null)
+			algorithm.setCheckpointing(checkpointFile, checkpointInterval, getSetupCommands(input));
 		
 		//Run the number of trials for the finder
 		consensusMotif = algorithm.runMultiple(numTrials);
 		//Set the profile, and alignments
 		profile = algorithm.getCurrentProfile();
 		alignments = profile.getAlignmentStarts();
+		
+		if(cacheKey != null)
+		{
+			try
+			{
+				resultCache.put(cacheKey, consensusMotif, algorithm.getBestScore(), profile);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Could not cache the result : " + e.getMessage());
+			}
+		}
 	}
 	
 	/**
-	 * prints the consensus motif if one has been set
+	 * Whether a seeded run of the finder always gives the same result. The parallel Gibbs
+	 * workers race on their shared profile, so its runs differ even with the same seed.
+	 * @param finderName
+	 * @return
 	 */
-	public void printMotif()
+	static boolean isRepeatable(String finderName)
 	{
-		if(consensusMotif == null)
-		{
-			System.err.println("Motif was not set, ensure you have loaded the data and parameters and run a finder.");
-		}
-		else
-		{
-			System.out.println(consensusMotif);
-		}
+		return !finderName.equals("parallel-gibbs");
 	}
 	
 	/**
-	 * prints the consensus motif if one has been set
+	 * Whether the finder skips masked l-mers, so that find-motifs finds a new motif each
+	 * round. The exact word searches and random projection look at every l-mer.
+	 * @param finderName
+	 * @return
 	 */
-	public void printInsertedMotif()
+	static boolean skipsMaskedLmers(String finderName)
 	{
-		if(perfectAlignments == null)
-		{
-			System.err.println("Motif was not inserted.");
-		}
-		else
-		{
-			Profile prof = new Profile(alphabet, seqList, motifLength, perfectAlignments);
-			System.out.println(prof.getConsensus());
-		}
+		return !(finderName.equals("median") || finderName.equals("planted") || finderName.equals("projection"));
 	}
 	
 	/**
-	 * Prints all sequences. One per line.
+	 * Creates the finder named by the find-motif arguments with the chosen scorer
+	 * @param input find-motif arguments
+	 * @param length motif length
+	 * @return the finder, or null if the arguments are incorrect
 	 */
-	public void printAllSequences()
+	Finder createFinder(String[] input, int length)
 	{
-		if(seqList == null)
+		return createFinder(input, length, scorer);
+	}
+	
+	/**
+	 * Creates the finder named by the find-motif arguments for the given motif length,
+	 * over the shared dataset and seeded from the k-mer index if one was built
+	 * @param input find-motif arguments
+	 * @param length motif length
+	 * @param scorer scorer of the finder, null for the finder's default
+	 * @return the finder, or null if the arguments are incorrect
+	 */
+	Finder createFinder(String[] input, int length, Score scorer)
+	{
+		String error = checkFinderArguments(input, length);
+		if(error != null)
 		{
-			System.err.println("No sequences have been loaded.");
+			System.err.println(error + " : type 'help' for help-text");
+			return null;
 		}
-		else
+		Finder finder;
+		switch(input[1])	//second argument is the algorithm-type
 		{
-			for(Sequence seq : seqList)
-				System.out.println(seq);
+		case "greedy":
+			if(scorer == null)
+				finder = new RandomizedGreedyFinder(getDataset(), length, Boolean.parseBoolean(input[2]));
+			else
+				finder = new RandomizedGreedyFinder(getDataset(), length, Boolean.parseBoolean(input[2]), scorer);
+			break;
+		case "gibbs":
+			if(scorer == null)
+				finder = new GibbsSamplingFinder(getDataset(), length, Double.parseDouble(input[2]));
+			else
+				finder = new GibbsSamplingFinder(getDataset(), length, Double.parseDouble(input[2]), scorer);
+			break;
+		case "parallel-gibbs":
+			if(scorer == null)
+				finder = new ParallelGibbsSamplingFinder(getDataset(), length, Integer.parseInt(input[2]), Integer.parseInt(input[3]));
+			else
+				finder = new ParallelGibbsSamplingFinder(getDataset(), length, Integer.parseInt(input[2]), Integer.parseInt(input[3]), scorer);
+			break;
+		case "median":
+			if(scorer == null)
+				finder = new MedianStringFinder(getDataset(), length);
+			else
+				finder = new MedianStringFinder(getDataset(), length, scorer);
+			break;
+		case "planted":
+			long memoryBudget = (input.length == 4 ? Long.parseLong(input[3]) : 256) * 1024 * 1024;
+			if(scorer == null)
+				finder = new PlantedMotifFinder(getDataset(), length, Integer.parseInt(input[2]), memoryBudget);
+			else
+				finder = new PlantedMotifFinder(getDataset(), length, Integer.parseInt(input[2]), memoryBudget, scorer);
+			break;
+		case "projection":
+			if(scorer == null)
+				finder = new RandomProjectionFinder(getDataset(), length, Integer.parseInt(input[2]), Integer.parseInt(input[3]), Integer.parseInt(input[4]));
+			else
+				finder = new RandomProjectionFinder(getDataset(), length, Integer.parseInt(input[2]), Integer.parseInt(input[3]), Integer.parseInt(input[4]), scorer);
+			break;
+		case "beam":
+			if(scorer == null)
+				finder = new BeamSearchFinder(getDataset(), length, Integer.parseInt(input[2]));
+			else
+				finder = new BeamSearchFinder(getDataset(), length, Integer.parseInt(input[2]), scorer);
+			break;
+		case "em":
+			double tolerance = (input.length == 5) ? Double.parseDouble(input[4]) : 1e-6;
+			if(scorer == null)
+				finder = new EMFinder(getDataset(), length, input[2].equals("zoops"), Integer.parseInt(input[3]), tolerance);
+			else
+				finder = new EMFinder(getDataset(), length, input[2].equals("zoops"), Integer.parseInt(input[3]), tolerance, scorer);
+			break;
+		case "tempering":
+			if(scorer == null)
+				finder = new ParallelTemperingFinder(getDataset(), length, Integer.parseInt(input[2]), Integer.parseInt(input[3]), 
+						Double.parseDouble(input[4]), Double.parseDouble(input[5]));
+			else
+				finder = new ParallelTemperingFinder(getDataset(), length, Integer.parseInt(input[2]), Integer.parseInt(input[3]), 
+						Double.parseDouble(input[4]), Double.parseDouble(input[5]), scorer);
+			break;
+		default:
+			return null;	//rejected by checkFinderArguments
 		}
+		
+		if(kmerIndex != null)
+			finder.setSeedIndex(kmerIndex, seedCandidates);
+		if(randomSeed != null)
+			finder.setSeed(randomSeed);
+		finder.setOutput(out);
+		if(bothStrands)
+		{
+			if(finder.supportsBothStrands())
+				finder.setBothStrands(true);
+			else
+				out.println("This finder only searches the forward strand");
+		}
+		return finder;
 	}
 	
 	/**
-	 * Prints the alignment vector, assumes that the sequence list has
-	 * not been modified since the last run of Finder
+	 * Checks the find-motif arguments against the motif length and the loaded sequences,
+	 * so that finders are only constructed from arguments they accept
+	 * @param input find-motif arguments
+	 * @param length motif length
+	 * @return what is wrong with the arguments, or null if the finder can be created
 	 */
-	public void printAlignments()
+	String checkFinderArguments(String[] input, int length)
 	{
-		if(alignments == null)
+		if(input.length < 2)
+			return "Incorrect arguments";
+		int shortest = Integer.MAX_VALUE;
+		for(Sequence seq : seqList)
 		{
-			System.err.println("Alignments were not set, ensure you have loaded the data and parameters and run a finder.");
+			shortest = Math.min(shortest, seq.getSize());
 		}
-		else
+		if(seqList.isEmpty())
+			return "Sequences must be initialized first";
+		if(length < 1 || length > shortest)
+			return "Motif length must be in [1, " + shortest + "], the length of the shortest sequence";
+		if(bothStrands && (!PackedSequence.isComplementable(alphabet) || length > PackedSequence.maxWindowLength(alphabet)))
+			return "Both strands can only be searched for DNA sequences over 'ACGT' and motifs of length <= " 
+					+ PackedSequence.maxWindowLength(alphabet);
+		try
 		{
-			for(Sequence seq : seqList)
-				System.out.println(alignments.get(seq));
+			switch(input[1])
+			{
+			case "greedy":
+			case "gibbs":
+				if(input.length != 3)
+					return "Incorrect arguments";
+				if(input[1].equals("gibbs"))
+					Double.parseDouble(input[2]);
+				return null;
+			case "parallel-gibbs":
+				if(input.length != 4)
+					return "Incorrect arguments";
+				if(Integer.parseInt(input[2]) < 1 || Integer.parseInt(input[3]) < 1)
+					return "Parallel gibbs needs at least one sweep and one thread";
+				if(Integer.parseInt(input[3]) > Runtime.getRuntime().availableProcessors())
+					return "Parallel gibbs can use at most " + Runtime.getRuntime().availableProcessors() + " threads";
+				return null;
+			case "median":
+				if(input.length != 2)
+					return "Incorrect arguments";
+				if(length > PackedSequence.maxWindowLength(alphabet))
+					return "Motif is too long for the median string search";
+				return null;
+			case "planted":
+				if(input.length != 3 && input.length != 4)
+					return "Incorrect arguments";
+				if(length > PackedSequence.maxWindowLength(alphabet))
+					return "Motif is too long for the planted motif search";
+				int maxMismatches = Integer.parseInt(input[2]);
+				if(maxMismatches < 0 || maxMismatches > length)
+					return "Number of mismatches must be in [0, motif length]";
+				if(input.length == 4 && Long.parseLong(input[3]) < 1)
+					return "Memory budget must be at least 1 MB";
+				return null;
+			case "projection":
+				if(input.length != 5)
+					return "Incorrect arguments";
+				int projectionSize = Integer.parseInt(input[2]);
+				if(projectionSize < 1 || projectionSize > length || Integer.parseInt(input[3]) < 1 || Integer.parseInt(input[4]) < 1)
+					return "Projection needs 1 <= projectionSize <= motif length and positive binThreshold and numIterations";
+				return null;
+			case "beam":
+				if(input.length != 3)
+					return "Incorrect arguments";
+				if(Integer.parseInt(input[2]) < 1)
+					return "Beam width must be at least 1";
+				return null;
+			case "em":
+				if((input.length != 4 && input.length != 5) || !(input[2].equals("oops") || input[2].equals("zoops")))
+					return "Incorrect arguments";
+				if(Integer.parseInt(input[3]) < 1 || (input.length == 5 && !(Double.parseDouble(input[4]) >= 0)))
+					return "EM needs at least one iteration and a non-negative tolerance";
+				return null;
+			case "tempering":
+				if(input.length != 6)
+					return "Incorrect arguments";
+				if(Integer.parseInt(input[2]) < 1 || Integer.parseInt(input[3]) < 1)
+					return "Tempering needs at least one sweep and one replica";
+				double minTemperature = Double.parseDouble(input[4]);
+				double maxTemperature = Double.parseDouble(input[5]);
+				if(!(minTemperature > 0) || !(maxTemperature >= minTemperature) || Double.isInfinite(maxTemperature))
+					return "Tempering needs 0 < minTemperature <= maxTemperature";
+				if(scorer != null && !scorer.isCellSeparable())
+					return ParallelTemperingFinder.SCORE_ERROR;
+				return null;
+			default:
+				return "Incorrect Algorithm Type";
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			return "Incorrect number : " + e.getMessage();
 		}
 	}
 	
 	/**
-	 * Prints the alignment vector, assumes that the sequence list has
-	 * not been modified since the last run of Finder
+	 * Refines the current profile by expectation maximization, with the settings of the
+	 * em algorithm, and makes the refined alignment the current one
+	 * @param input
 	 */
-	public void printProfile()
+	public void refineWithEM(String[] input)
 	{
 		if(profile == null)
 		{
-			System.err.println("Profile was not set, ensure you have loaded the data and parameters and run a finder.");
-		}
-		else
-		{
-			System.out.println(profile);
+			System.err.println("A finder must be run before its profile can be refined");
+			return;
 		}
+		String[] finderInput = new String[input.length + 1];
+		finderInput[0] = "find-motif";
+		finderInput[1] = "em";
+		System.arraycopy(input, 1, finderInput, 2, input.length - 1);
+		Finder finder = createFinder(finderInput, profile.length());
+		if(finder == null)
+			return;
+		algorithm = finder;
+		consensusMotif = ((EMFinder)finder).refine(profile);
+		profile = finder.getCurrentProfile();
+		alignments = profile.getAlignmentStarts();
 	}
 	
 	/**
-	 * Loads alphabet, motif length and sequences from a file
-	 * 
-	 * File format: 
-	 * 
-	 * <Alphabet> 									e.g. ACGT
-	 * <probability distribution for each symbol>	e.g. 0.25 0.3 0.25 0.20
-	 * <Motif Length>								e.g. 6
-	 * <sequence1>									e.g. ACGATATCTTCGTAGCTAG
-	 * <sequence2>									e.g. ACTGATCGATGCTAGATCG
+	 * Runs the finder for every motif length in a range, the lengths in parallel, 
+	 * and keeps the result with the best score per position
+	 * @param input
+	 */
+	public void runFinderRange(String[] input)
+	{
+		if(input.length < 4)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		if(seqList.isEmpty())
+		{
+			System.err.println("Sequences must be initialized first");
+			return;
+		}
+		int minLength = Integer.parseInt(input[1]);
+		int maxLength = Integer.parseInt(input[2]);
+		if(minLength < 1 || maxLength < minLength)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		
+		//The remaining arguments are those of find-motif
+		final String[] finderInput = new String[input.length - 2];
+		finderInput[0] = "find-motif";
+		System.arraycopy(input, 3, finderInput, 1, input.length - 3);
+		for(int length=minLength; length <= maxLength; ++length)
+		{
+			String error = checkFinderArguments(finderInput, length);
+			if(error != null)
+			{
+				System.err.println(String.format("%s for length %d : type 'help' for help-text", error, length));
+				return;
+			}
+		}
+		getDataset();
+		
+		//The lengths' finders are created and prepared at once, so each gets its own scorer
+		MultiLengthRunner runner = new MultiLengthRunner(minLength, maxLength, numTrials, 
+				Runtime.getRuntime().availableProcessors(), 
+				length -> createFinder(finderInput, length, (scorerInput == null) ? null : createScorer(scorerInput, alphabet)));
+		List<MultiLengthRunner.Result> results = runner.run();
+		
+		System.out.println("+++ Lengths ranked by Score/Length +++");
+		for(MultiLengthRunner.Result result : results)
+		{
+			System.out.println(result);
+		}
+		MultiLengthRunner.Result best = results.get(0);
+		motifLength = best.getLength();
+		consensusMotif = best.getMotif();
+		profile = best.getProfile();
+		alignments = profile.getAlignmentStarts();
+		System.out.println(String.format("Motif length set to %d", motifLength));
+	}
+	
+	/**
+	 * Finds several distinct motifs in rounds, masking the occurrences of each motif
+	 * found before the next round. The first motif becomes the current motif.
+	 * @param input
+	 */
+	public void runFinderIterative(String[] input)
+	{
+		if(input.length < 3)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		if(motifLength == 0 || seqList.isEmpty())
+		{
+			System.err.println("Sequences and Motif lengths must be initialized first");
+			return;
+		}
+		int count = Integer.parseInt(input[1]);
+		if(count < 1)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		
+		//The remaining arguments are those of find-motif
+		final String[] finderInput = new String[input.length - 1];
+		finderInput[0] = "find-motif";
+		System.arraycopy(input, 2, finderInput, 1, input.length - 2);
+		String error = checkFinderArguments(finderInput, motifLength);
+		if(error != null)
+		{
+			System.err.println(error + " : type 'help' for help-text");
+			return;
+		}
+		if(!skipsMaskedLmers(finderInput[1]))
+		{
+			System.err.println("The " + finderInput[1] + " finder ignores masked occurrences, so it would find the same motif every round");
+			return;
+		}
+		
+		IterativeMotifRunner runner = new IterativeMotifRunner(getDataset(), count, numTrials, 
+				() -> createFinder(finderInput, motifLength));
+		List<IterativeMotifRunner.Result> results = runner.run();
+		
+		System.out.println("+++ Motifs in the order found +++");
+		for(IterativeMotifRunner.Result result : results)
+		{
+			System.out.println(result);
+		}
+		consensusMotif = results.get(0).getMotif();
+		profile = results.get(0).getProfile();
+		alignments = profile.getAlignmentStarts();
+	}
+	
+	/**
+	 * Commands that recreate the settings of a find-motif run and the finder itself,
+	 * saved in its checkpoints
+	 * @param input find-motif arguments
+	 * @return
+	 */
+	private String[] getSetupCommands(String[] input)
+	{
+		List<String> setup = new ArrayList<String>();
+		if(scorerInput != null)
+			setup.add(String.join(" ", scorerInput));
+		if(kmerIndex != null)
+			setup.add(String.format("seed-kmers %d %d", kmerIndex.getK(), seedCandidates));
+		if(bothStrands)
+			setup.add("strands both");
+		setup.add(String.join(" ", input));
+		return setup.toArray(new String[setup.size()]);
+	}
+	
+	/**
+	 * Resumes a find-motif run from its checkpoint: restores the run's settings, 
+	 * recreates the finder and runs the remaining trials, checkpointing to the same file.
+	 * With a seeded run the result is identical to that of an uninterrupted run.
+	 * @param fileName
+	 */
+	public void resume(String fileName)
+	{
+		if(seqList.isEmpty())
+		{
+			System.err.println("Sequences must be initialized first");
+			return;
+		}
+		Checkpoint checkpoint;
+		try
+		{
+			checkpoint = Checkpoint.load(fileName);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not read checkpoint : " + e.getMessage());
+			return;
+		}
+		if(!checkpoint.getDatasetFingerprint().equals(getDataset().getFingerprint()))
+		{
+			System.err.println("Checkpoint was written for different sequences");
+			return;
+		}
+		
+		//Restore the settings, the last command is the find-motif command itself
+		String[] setup = checkpoint.getSetup();
+		scorer = null;
+		scorerInput = null;
+		kmerIndex = null;
+		bothStrands = false;
+		for(int i=0; i < setup.length - 1; ++i)
+		{
+			String[] command = setup[i].split(" ");
+			switch(command[0])
+			{
+			case "set-scoring":
+				setScorer(command);
+				break;
+			case "seed-kmers":
+				setSeedKmers(command);
+				break;
+			case "strands":
+				setStrands(command);
+				break;
+			}
+		}
+		motifLength = checkpoint.getMotifLength();
+		numTrials = checkpoint.getTotalTrials();
+		
+		String[] input = setup[setup.length - 1].split(" ");
+		algorithm = createFinder(input, motifLength);
+		if(algorithm == null)
+			return;
+		algorithm.setCheckpointing(fileName, checkpointInterval, setup);
+		algorithm.resume(checkpoint);
+		System.out.println(String.format("Resuming after trial %d of %d", checkpoint.getTrialsCompleted(), checkpoint.getTotalTrials()));
+		
+		consensusMotif = algorithm.runMultiple(numTrials);
+		profile = algorithm.getCurrentProfile();
+		alignments = profile.getAlignmentStarts();
+	}
+	
+	/**
+	 * Seeds the random choices of every finder created afterwards, or turns seeding off
+	 * @param input
+	 */
+	public void setRandomSeed(String[] input)
+	{
+		if(input.length == 2 && input[1].equals("off"))
+			randomSeed = null;
+		else if(input.length == 2)
+			randomSeed = Long.parseLong(input[1]);
+		else
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+	}
+	
+	/**
+	 * Sets the directory of the result cache, or turns caching off
+	 * @param input
+	 */
+	public void setResultCache(String[] input)
+	{
+		if(input.length == 2 && input[1].equals("off"))
+		{
+			resultCache = null;
+		}
+		else if(input.length == 2 || input.length == 3)
+		{
+			long maxMB = (input.length == 3) ? Long.parseLong(input[2]) : 256;
+			resultCache = new ResultCache(input[1], maxMB * 1024 * 1024);
+		}
+		else
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+		}
+	}
+	
+	/**
+	 * Sets the checkpoint file of find-motif runs, or turns checkpointing off
+	 * @param input
+	 */
+	public void setCheckpoint(String[] input)
+	{
+		if(input.length == 2 && input[1].equals("off"))
+		{
+			checkpointFile = null;
+		}
+		else if(input.length == 2 || input.length == 3)
+		{
+			checkpointFile = input[1];
+			if(input.length == 3)
+				checkpointInterval = (long)(Double.parseDouble(input[2]) * 1000);
+		}
+		else
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+		}
+	}
+	
+	/**
+	 * Returns the dataset of the current sequences, computing its statistics on first use
+	 * @return
+	 */
+	Dataset getDataset()
+	{
+		if(dataset == null)
+			dataset = new Dataset(alphabet, seqList);
+		return dataset;
+	}
+	
+	/**
+	 * Uses sequences that are already loaded, with their dataset, instead of loading a file
+	 * @param alphabet
+	 * @param seqList
+	 * @param motifLength
+	 * @param dataset dataset of the sequences
+	 */
+	void useDataset(Alphabet alphabet, List<Sequence> seqList, int motifLength, Dataset dataset)
+	{
+		this.alphabet = alphabet;
+		this.seqList = seqList;
+		this.motifLength = motifLength;
+		this.dataset = dataset;
+		kmerIndex = null;
+		suffixArray = null;
+	}
+	
+	/**
+	 * Prints the finders' progress and warnings to the given stream instead of standard output
+	 * @param out
+	 */
+	void setOutput(PrintStream out)
+	{
+		this.out = out;
+	}
+	
+	Alphabet getAlphabet()
+	{
+		return alphabet;
+	}
+	
+	List<Sequence> getSequences()
+	{
+		return seqList;
+	}
+	
+	int getMotifLength()
+	{
+		return motifLength;
+	}
+	
+	Score getScorer()
+	{
+		return scorer;
+	}
+	
+	/**
+	 * prints the consensus motif if one has been set
+	 */
+	public void printMotif()
+	{
+		if(consensusMotif == null)
+		{
+			System.err.println("Motif was not set, ensure you have loaded the data and parameters and run a finder.");
+		}
+		else
+		{
+			System.out.println(consensusMotif);
+		}
+	}
+	
+	/**
+	 * prints the consensus motif if one has been set
+	 */
+	public void printInsertedMotif()
+	{
+		if(perfectAlignments == null)
+		{
+			System.err.println("Motif was not inserted.");
+		}
+		else
+		{
+			Profile prof = new Profile(getDataset(), motifLength, perfectAlignments);
+			System.out.println(prof.getConsensus());
+		}
+	}
+	
+	/**
+	 * Prints the nucleotide-level accuracy of the current alignments against the inserted motifs
+	 */
+	public void printAccuracy()
+	{
+		if(perfectAlignments == null || profile == null)
+		{
+			System.err.println("A motif must be inserted and a finder run first.");
+			return;
+		}
+		double[] accuracy = MotifBenchmark.nucleotideAccuracy(seqList, perfectAlignments, motifLength, 
+				profile.getAlignmentStarts(), profile.length());
+		System.out.println(String.format("nSn : %.4f - nPPV : %.4f - nPC : %.4f", accuracy[0], accuracy[1], accuracy[2]));
+	}
+	
+	/**
+	 * Runs a benchmark sweep and writes the measurements of every run
+	 * @param input
+	 */
+	public void runBenchmark(String[] input)
+	{
+		if(input.length != 3 && input.length != 4)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		double targetNPC = (input.length == 4) ? Double.parseDouble(input[3]) : 0.5;
+		try
+		{
+			MotifBenchmark benchmark = new MotifBenchmark(input[1]);
+			if(!benchmark.run())
+				return;
+			benchmark.write(input[2]);
+			benchmark.printSummary(targetNPC);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not run the benchmark : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Prints all sequences. One per line.
+	 */
+	public void printAllSequences()
+	{
+		if(seqList == null)
+		{
+			System.err.println("No sequences have been loaded.");
+		}
+		else
+		{
+			for(Sequence seq : seqList)
+				System.out.println(seq);
+		}
+	}
+	
+	/**
+	 * Prints the alignment vector, assumes that the sequence list has
+	 * not been modified since the last run of Finder
+	 */
+	public void printAlignments()
+	{
+		if(alignments == null)
+		{
+			System.err.println("Alignments were not set, ensure you have loaded the data and parameters and run a finder.");
+		}
+		else
+		{
+			for(Sequence seq : seqList)
+				System.out.println(alignments.get(seq));
+		}
+	}
+	
+	/**
+	 * Prints the alignment vector, assumes that the sequence list has
+	 * not been modified since the last run of Finder
+	 */
+	public void printProfile()
+	{
+		if(profile == null)
+		{
+			System.err.println("Profile was not set, ensure you have loaded the data and parameters and run a finder.");
+		}
+		else
+		{
+			System.out.println(profile);
+		}
+	}
+	
+	/**
+	 * Loads alphabet, motif length and sequences from a file
+	 * 
+	 * File format: 
+	 * 
+	 * <Alphabet> 									e.g. ACGT
+	 * <probability distribution for each symbol>	e.g. 0.25 0.3 0.25 0.20
+	 * <Motif Length>								e.g. 6
+	 * <sequence1>									e.g. ACGATATCTTCGTAGCTAG
+	 * <sequence2>									e.g. ACTGATCGATGCTAGATCG
 	 * ...
 	 * 
 	 * NB: no newlines before or at the end of the expected input 
@@ -409,36 +1276,47 @@ public class MotifFinder
 	public void loadFile(String fileName)
 	{
 		//TODO: error handling
-		BufferedReader br = null;
-		Scanner sc = null;
+		List<String> lines = null;
 		try
 		{
-			br = new BufferedReader(new FileReader(fileName));
-			sc = new Scanner(br);
+			lines = Files.readAllLines(Paths.get(fileName));
 		} 
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
 			e.printStackTrace();
 			System.exit(1);
 		}
+		loadLines(lines);
+	}
+	
+	/**
+	 * Loads the content of a file in the load-file format
+	 * @param lines
+	 */
+	void loadLines(List<String> lines)
+	{
+		Iterator<String> in = lines.iterator();
 		//Extract the Alphabet
-		String alphString = sc.nextLine().trim();
+		String alphString = in.next().trim();
 		//Extract the symbol prob. distribution
 		double[] probDist = new double[alphString.length()];
-		String[] probStrings = sc.nextLine().trim().split(" ");
+		String[] probStrings = in.next().trim().split(" ");
 		for(int i=0; i < probDist.length; ++i)
 		{
 			probDist[i] = (Double.parseDouble(probStrings[i]));
 		}
 		//Extract the motif-length
-		motifLength = Integer.parseInt(sc.nextLine().trim());
+		motifLength = Integer.parseInt(in.next().trim());
 		//Create an alphabet 
 		alphabet = new Alphabet(alphString, "", probDist);
+		kmerIndex = null;
+		suffixArray = null;
+		dataset = null;
 		//Create a Sequence list from each sequence
-		while(sc.hasNext())
+		while(in.hasNext())
 		{
-			String line = sc.nextLine().trim();
-			if(line == "")
+			String line = in.next().trim();
+			if(line.isEmpty())
 				continue;
 			
 			String seqData = line;
@@ -447,6 +1325,226 @@ public class MotifFinder
 		}
 	}
 	
+	/**
+	 * Prints every occurrence of the pattern, or of the consensus motif if none is given,
+	 * with at most the given number of mismatches. Uses a suffix array over all sequences,
+	 * built on the first query.
+	 * @param input
+	 */
+	public void findOccurrences(String[] input)
+	{
+		if(input.length != 2 && input.length != 3)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		if(seqList.isEmpty())
+		{
+			System.err.println("Sequences must be initialized first");
+			return;
+		}
+		Sequence pattern = consensusMotif;
+		if(input.length == 3)
+		{
+			for(String sym : input[2].split(""))
+			{
+				if(!alphabet.contains(sym))
+				{
+					System.err.println("Pattern symbols must be in the alphabet");
+					return;
+				}
+			}
+			pattern = new Sequence(alphabet, input[2]);
+		}
+		if(pattern == null)
+		{
+			System.err.println("Motif was not set, give a pattern or run a finder first.");
+			return;
+		}
+		
+		if(suffixArray == null)
+		{
+			if(!SuffixArray.canIndex(seqList))
+			{
+				System.err.println("Sequences are too long to index for occurrence queries, at most " + SuffixArray.MAX_LENGTH + " symbols");
+				return;
+			}
+			suffixArray = new SuffixArray(seqList);
+		}
+		List<Occurrence> occurrences = suffixArray.findOccurrences(pattern, Integer.parseInt(input[1]));
+		for(Occurrence occ : occurrences)
+			System.out.println(occ);
+		System.out.println(String.format("%d occurrences of %s", occurrences.size(), pattern));
+	}
+	
+	/**
+	 * Scans a FASTA file with the position weight matrix of the current profile.
+	 * The threshold is either a score or, for scan-genome-pvalue, a p-value.
+	 * @param input
+	 */
+	public void scanGenome(String[] input)
+	{
+		if(input.length != 4 && input.length != 5)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		if(profile == null)
+		{
+			System.err.println("Profile was not set, ensure you have loaded the data and parameters and run a finder.");
+			return;
+		}
+		int threads = (input.length == 5) ? Integer.parseInt(input[4]) : Runtime.getRuntime().availableProcessors();
+		ScoreDistribution distribution = pValueService.getDistribution(profile);
+		double threshold = Double.parseDouble(input[3]);
+		if(input[0].equals("scan-genome-pvalue"))
+		{
+			threshold = distribution.getScoreThreshold(threshold);
+			System.out.println(String.format("Score threshold : %.4f", threshold));
+		}
+		GenomeScanner scanner = new GenomeScanner(profile.getSnapshot(), threshold, threads, distribution);
+		try
+		{
+			long start = System.currentTimeMillis();
+			long hits = scanner.scan(input[1], input[2]);
+			System.out.println(String.format("Wrote %d hits to %s in %d ms", hits, input[2], System.currentTimeMillis() - start));
+		}
+		catch(IOException e)
+		{
+			System.err.println("Scan failed : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Adds the current profile to a motif library file, creating the file if it does not exist
+	 * @param input
+	 */
+	public void addToLibrary(String[] input)
+	{
+		if(input.length != 4)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		if(profile == null)
+		{
+			System.err.println("Profile was not set, ensure you have loaded the data and parameters and run a finder.");
+			return;
+		}
+		try
+		{
+			MotifLibrary library = new File(input[1]).exists() ? MotifLibrary.load(input[1]) : new MotifLibrary(alphabet);
+			library.addMotif(input[2], profile.getSnapshot(), Double.parseDouble(input[3]), pValueService);
+			library.save(input[1]);
+			System.out.println(String.format("Library %s now holds %d motifs", input[1], library.size()));
+		}
+		catch(IOException e)
+		{
+			System.err.println("Library update failed : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Scans all sequences with every motif of a library file
+	 * @param input
+	 */
+	public void scanLibrary(String[] input)
+	{
+		if(input.length != 3)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		if(seqList.isEmpty())
+		{
+			System.err.println("Sequences must be initialized first");
+			return;
+		}
+		try(Writer out = new BufferedWriter(new FileWriter(input[2]), 1 << 16))
+		{
+			MotifLibrary library = MotifLibrary.load(input[1]);
+			long start = System.currentTimeMillis();
+			long hits = new LibraryScanner(library).scan(seqList, out);
+			System.out.println(String.format("Wrote %d hits of %d motifs to %s in %d ms", hits, library.size(), input[2], System.currentTimeMillis() - start));
+		}
+		catch(IOException e)
+		{
+			System.err.println("Scan failed : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Prints the p-value of a score, or the score threshold of a p-value, for the current profile
+	 * @param input
+	 */
+	public void printPValue(String[] input)
+	{
+		if(input.length != 2)
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+			return;
+		}
+		if(profile == null)
+		{
+			System.err.println("Profile was not set, ensure you have loaded the data and parameters and run a finder.");
+			return;
+		}
+		double value = Double.parseDouble(input[1]);
+		if(input[0].equals("pvalue"))
+			System.out.println(String.format("p-value of score %.4f : %.4e", value, pValueService.getPValue(profile, value)));
+		else
+			System.out.println(String.format("Score threshold for p-value %.4e : %.4f", value, pValueService.getScoreThreshold(profile, value)));
+	}
+	
+	/**
+	 * Builds the k-mer index used to seed finder trials, or turns seeding off.
+	 * The index is dropped whenever the sequences change.
+	 * @param input
+	 */
+	public void setSeedKmers(String[] input)
+	{
+		if(input.length == 2 && input[1].equals("off"))
+		{
+			kmerIndex = null;
+		}
+		else if(input.length == 2 || input.length == 3)
+		{
+			if(seqList.isEmpty())
+			{
+				System.err.println("Sequences must be initialized first");
+				return;
+			}
+			kmerIndex = new KmerIndex(getDataset(), Integer.parseInt(input[1]));
+			if(input.length == 3)
+				seedCandidates = Integer.parseInt(input[2]);
+			System.out.println(String.format("Indexed %d distinct %d-mers", kmerIndex.getDistinctKmers(), kmerIndex.getK()));
+		}
+		else
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+		}
+	}
+	
+	/**
+	 * Sets whether the finders search both strands or the forward strand only
+	 * @param input
+	 */
+	public void setStrands(String[] input)
+	{
+		if(input.length == 2 && input[1].equals("both"))
+		{
+			bothStrands = true;
+		}
+		else if(input.length == 2 && input[1].equals("forward"))
+		{
+			bothStrands = false;
+		}
+		else
+		{
+			System.err.println("Incorrect arguments : type 'help' for help-text");
+		}
+	}
+	
 	public void setNumTrials(int trials)
 	{
 		numTrials = trials;
@@ -458,7 +1556,37 @@ public class MotifFinder
 	 */
 	public void setScorer(String[] input)
 	{
-		if(input.length == 2)
+		Score created = createScorer(input, alphabet);
+		if(created != null)
+		{
+			scorer = created;
+			scorerInput = input.clone();
+		}
+	}
+	
+	/**
+	 * Creates the scorer named by set-scoring arguments. Each call gives a new instance,
+	 * so finders running at once can each prepare their own.
+	 * @param input
+	 * @param alphabet alphabet of the sequences, bounds the Markov order
+	 * @return the scorer, or null if the arguments are incorrect
+	 */
+	static Score createScorer(String[] input, Alphabet alphabet)
+	{
+		Score scorer = null;
+		if(input.length >= 3 && input[1].equals("markov"))
+		{
+			int order = Integer.parseInt(input[2]);
+			if(order < 0 || order > MarkovBackground.maxOrder(alphabet))
+				System.err.println("Markov background order must be in [0, " + MarkovBackground.maxOrder(alphabet) + "]");
+			else if(input.length == 3)
+				scorer = new MarkovScore(Integer.parseInt(input[2]));
+			else if(input.length == 4)
+				scorer = new MarkovScore(Integer.parseInt(input[2]), Double.parseDouble(input[3]));
+			else
+				System.err.println("Incorrect arguments : type 'help' for help-text");
+		}
+		else if(input.length == 2)
 		{
 			switch(input[1])	//second argument is the score-type
 			{
@@ -500,5 +1628,6 @@ public class MotifFinder
 		{
 			System.err.println("Incorrect arguments : type 'help' for help-text");
 		}
+		return scorer;
 	}
 }
@@ -0,0 +1,421 @@
+package motifFinder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import motifsearch.Finder;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Sequence;
+
+/**
+ * Long-lived job server, so that short jobs run in a warmed-up JVM instead of paying
+ * for JVM startup and JIT compilation each time. Listens on a loopback port only.
+ * Each connection submits one job as lines of "key value", ended by "run":
+ *
+ * dataset <file>				sequence file in the load-file format (required)
+ * finder <algorithm> <params>	as for find-motif (required)
+ * scoring <type> [param]		as for set-scoring
+ * length <motifLength>		defaults to the file's motif length
+ * trials <number>				defaults to 1
+ * seed <value>				seeds the finder's random choices
+ * strands both|forward
+ * verbose true|false			stream the finder's progress, defaults to true
+ *
+ * Jobs are queued onto a bounded pool of workers; when the queue is full the job is
+ * refused. The progress of the job is streamed back as it runs, followed by
+ * "RESULT <score> <motif> <alignments>" and "DONE", or a line "ERROR <message>".
+ * A connection sending the line "shutdown <token>" stops the server. The token is drawn
+ * at startup and written to a file only the server's user can read (see tokenFile),
+ * from which MotifClient adds it to a bare "shutdown".
+ * Parsed datasets are cached by file, and reloaded when the file changes, so their
+ * statistics, packed sequences and background models are shared across jobs.
+ * @author Ricky
+ *
+ */
+public class MotifServer
+{
+	public static final int DEFAULT_PORT = 5010;
+	private static final int READ_TIMEOUT = 30000;		//milliseconds a client has to send its job
+	private static final int MAX_DATASETS = 16;			//datasets kept in the cache
+
+	private int port;
+	private ThreadPoolExecutor workers;
+	private Map<String, LoadedDataset> datasets;		//by canonical path, least recently used first
+	private volatile boolean running = true;
+	private String shutdownToken;						//a shutdown request must carry this
+
+	public MotifServer(int port, int numWorkers, int queueCapacity)
+	{
+		this.port = port;
+		workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity));
+		byte[] token = new byte[16];
+		new SecureRandom().nextBytes(token);
+		StringBuilder hex = new StringBuilder();
+		for(byte b : token)
+		{
+			hex.append(String.format("%02x", b));
+		}
+		shutdownToken = hex.toString();
+		datasets = new LinkedHashMap<String, LoadedDataset>(MAX_DATASETS, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, LoadedDataset> eldest)
+			{
+				return size() > MAX_DATASETS;
+			}
+		};
+	}
+
+	/**
+	 * Usage : MotifServer [port] [workers] [queueCapacity]
+	 * @param args
+	 */
+	public static void main(String[] args)
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int numWorkers = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int queueCapacity = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+		try
+		{
+			new MotifServer(port, numWorkers, queueCapacity).serve();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Accepts jobs until a shutdown request
+	 * @throws IOException
+	 */
+	public void serve() throws IOException
+	{
+		try(ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()))
+		{
+			System.out.println(String.format("Motif server listening on %s:%d", server.getInetAddress().getHostAddress(), server.getLocalPort()));
+			writeToken(tokenFile(server.getLocalPort()));
+			server.setSoTimeout(1000);		//wake up regularly to check for shutdown
+			while(running)
+			{
+				Socket client;
+				try
+				{
+					client = server.accept();
+				}
+				catch(SocketTimeoutException e)
+				{
+					continue;
+				}
+				client.setSoTimeout(READ_TIMEOUT);
+				try
+				{
+					workers.execute(() -> handle(client));
+				}
+				catch(RejectedExecutionException e)
+				{
+					reply(client, "ERROR Server busy, try again later");
+				}
+			}
+		}
+		finally
+		{
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * Stops accepting jobs, for the process that started the server; the jobs already
+	 * accepted still run
+	 */
+	public void shutdown()
+	{
+		running = false;
+	}
+
+	/**
+	 * File the shutdown token of the server on the port is written to
+	 * @param port
+	 * @return
+	 */
+	public static File tokenFile(int port)
+	{
+		return new File(System.getProperty("java.io.tmpdir"), "motifserver-" + port + ".token");
+	}
+
+	/**
+	 * Writes the token readable by the current user only, deleted when the server exits
+	 */
+	private void writeToken(File file) throws IOException
+	{
+		Files.deleteIfExists(file.toPath());
+		Files.createFile(file.toPath());
+		file.setReadable(false, false);
+		file.setWritable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(true, true);
+		Files.write(file.toPath(), shutdownToken.getBytes(StandardCharsets.US_ASCII));
+		file.deleteOnExit();
+	}
+
+	/**
+	 * Reads a job from the connection, runs it and streams the output back
+	 */
+	private void handle(Socket client)
+	{
+		try(Socket socket = client;
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8"))
+		{
+			Map<String, String> job = new HashMap<String, String>();
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.isEmpty())
+					continue;
+				if(line.equals("run"))
+					break;
+				if(line.equals("shutdown") || line.startsWith("shutdown "))
+				{
+					if(!line.equals("shutdown " + shutdownToken))
+					{
+						out.println("ERROR Shutdown needs the server's token");
+						return;
+					}
+					shutdown();
+					out.println("DONE");
+					return;
+				}
+				int split = line.indexOf(' ');
+				if(split < 0)
+				{
+					out.println("ERROR Incorrect job line : " + line);
+					return;
+				}
+				job.put(line.substring(0, split), line.substring(split + 1).trim());
+			}
+			runJob(job, out);
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs one job, answering with ERROR rather than failing the server if anything about
+	 * the job is wrong. Every argument a finder would reject by exiting is checked before
+	 * the finder is constructed.
+	 */
+	private void runJob(Map<String, String> job, PrintStream out)
+	{
+		if(!job.containsKey("dataset") || !job.containsKey("finder"))
+		{
+			out.println("ERROR A job needs a dataset and a finder");
+			return;
+		}
+
+		try
+		{
+			LoadedDataset data = getDataset(job.get("dataset"));
+			MotifFinder settings = new MotifFinder();
+			settings.setOutput(out);
+			settings.useDataset(data.alphabet, data.seqList, data.motifLength, data.dataset);
+			if(job.containsKey("scoring"))
+			{
+				settings.setScorer(("set-scoring " + job.get("scoring")).split(" "));
+				if(settings.getScorer() == null)
+				{
+					out.println("ERROR Incorrect scoring : " + job.get("scoring"));
+					return;
+				}
+			}
+			if(job.containsKey("seed"))
+				settings.setRandomSeed(new String[]{"seed", job.get("seed")});
+			if(job.containsKey("strands"))
+				settings.setStrands(new String[]{"strands", job.get("strands")});
+			int length = job.containsKey("length") ? Integer.parseInt(job.get("length")) : data.motifLength;
+			int trials = job.containsKey("trials") ? Integer.parseInt(job.get("trials")) : 1;
+			if(trials < 1)
+			{
+				out.println("ERROR Trials must be positive");
+				return;
+			}
+
+			String[] finderInput = ("find-motif " + job.get("finder")).split(" ");
+			String error = settings.checkFinderArguments(finderInput, length);
+			if(error != null)
+			{
+				out.println("ERROR " + error + " : " + job.get("finder"));
+				return;
+			}
+			Finder finder = settings.createFinder(finderInput, length);
+			if(finder == null)
+			{
+				out.println("ERROR Incorrect finder : " + job.get("finder"));
+				return;
+			}
+			finder.setVerbose(!"false".equals(job.get("verbose")));
+
+			Sequence motif = finder.runMultiple(trials);
+			out.println(String.format("RESULT %.5f %s %s", finder.getBestScore(), motif, finder.getCurrentProfile().alignmentsToString()));
+			out.println("DONE");
+		}
+		catch(IOException e)
+		{
+			out.println("ERROR Could not read dataset " + job.get("dataset") + " : " + e.getMessage());
+		}
+		catch(NumberFormatException e)
+		{
+			out.println("ERROR Incorrect number : " + e.getMessage());
+		}
+		catch(RuntimeException e)
+		{
+			//A failed job must not take the worker thread down with it
+			out.println("ERROR Job failed : " + e);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the parsed dataset of the file, from the cache unless the file has changed.
+	 * The content is checked before it is parsed, since parsing exits on malformed input.
+	 * @param fileName
+	 * @return
+	 * @throws IOException if the file cannot be read or is not in the load-file format
+	 */
+	private LoadedDataset getDataset(String fileName) throws IOException
+	{
+		File file = new File(fileName);
+		if(!file.isFile() || !file.canRead())
+			throw new IOException("not a readable file");
+		String key = file.getCanonicalPath();
+
+		synchronized(datasets)
+		{
+			LoadedDataset cached = datasets.get(key);
+			if(cached != null && cached.lastModified == file.lastModified())
+				return cached;
+		}
+
+		//Parse outside the lock so other jobs are not held up, a concurrent load of the same file is harmless.
+		//The content is read once, and the lines checked are the lines parsed.
+		LoadedDataset loaded = new LoadedDataset();
+		loaded.lastModified = file.lastModified();
+		List<String> lines = Files.readAllLines(file.toPath());
+		checkDatasetLines(lines);
+		MotifFinder loader = new MotifFinder();
+		loader.loadLines(lines);
+		loaded.alphabet = loader.getAlphabet();
+		loaded.seqList = loader.getSequences();
+		loaded.motifLength = loader.getMotifLength();
+		loaded.dataset = loader.getDataset();
+		synchronized(datasets)
+		{
+			datasets.put(key, loaded);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Checks that the lines are in the load-file format: a line of single character symbols,
+	 * a line with a non-negative probability for each, the motif length, then at least
+	 * one sequence over the symbols
+	 * @param lines
+	 * @throws IOException describing the first problem found
+	 */
+	static void checkDatasetLines(List<String> lines) throws IOException
+	{
+		if(lines.size() < 3)
+			throw new IOException("missing header lines");
+		try
+		{
+			String symbols = lines.get(0).trim();
+			if(symbols.isEmpty())
+				throw new IOException("empty alphabet");
+			for(int i=0; i < symbols.length(); ++i)
+			{
+				if(symbols.indexOf(symbols.charAt(i)) != i)
+					throw new IOException("repeated alphabet symbol " + symbols.charAt(i));
+			}
+			String[] probStrings = lines.get(1).trim().split(" ");
+			if(probStrings.length < symbols.length())
+				throw new IOException("expected " + symbols.length() + " symbol probabilities");
+			for(int i=0; i < symbols.length(); ++i)
+			{
+				double prob = Double.parseDouble(probStrings[i]);
+				if(!(prob >= 0) || Double.isInfinite(prob))
+					throw new IOException("symbol probabilities must be non-negative");
+			}
+			Integer.parseInt(lines.get(2).trim());
+
+			int sequences = 0;
+			for(String line : lines.subList(3, lines.size()))
+			{
+				line = line.trim();
+				if(line.isEmpty())
+					continue;
+				for(int i=0; i < line.length(); ++i)
+				{
+					if(symbols.indexOf(line.charAt(i)) < 0)
+						throw new IOException("symbol not in the alphabet : " + line.charAt(i));
+				}
+				sequences++;
+			}
+			if(sequences == 0)
+				throw new IOException("no sequences");
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("incorrect number in the header : " + e.getMessage());
+		}
+	}
+
+	private static void reply(Socket client, String line)
+	{
+		try(Socket socket = client; PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8"))
+		{
+			out.println(line);
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * A parsed sequence file
+	 */
+	private static class LoadedDataset
+	{
+		private long lastModified;
+		private Alphabet alphabet;
+		private List<Sequence> seqList;
+		private int motifLength;
+		private Dataset dataset;
+	}
+}
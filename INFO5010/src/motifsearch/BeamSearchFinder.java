@@ -0,0 +1,395 @@
+package motifsearch;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.Sequence;
+
+/**
+ * Deterministic greedy beam search in the style of CONSENSUS (Hertz and Stormo).
+ * Every l-mer of the first sequence starts a partial alignment; the sequences are then
+ * added one at a time, each partial alignment is extended by every l-mer of the next
+ * sequence and only the beam width best extensions, by relative information, are kept.
+ * The partial alignments of the beam are expanded in parallel.
+ * Beam entries are not Profiles: their counts are held together in one flat array per
+ * step and their alignments are chains of choices, with the chains of entries extended
+ * from the same parent sharing it. The extensions of all parents compete in one heap of
+ * the beam width, so a step holds O(beamWidth) candidates whatever the number of parents.
+ * Each step costs O(beamWidth * n * (length + log beamWidth)) for sequences of n symbols,
+ * so the runtime grows about linearly with the beam width, and the first step is that
+ * of a beam as wide as the first sequence's l-mers. Masked l-mers are never kept unless
+ * every l-mer of the sequence is masked.
+ * The result does not depend on the random seed, so a single trial is enough.
+ * @author Ricky
+ *
+ */
+public class BeamSearchFinder extends Finder
+{
+	private int beamWidth;
+	private int height;
+	private int[][] codes;						//mapped ints of each sequence
+	private double[] terms;						//p * log_2(p/b) of each frequency with k sequences aligned, [symbol * (k + 1) + frequency]
+
+	/**
+	 * @param dataset
+	 * @param motifLength
+	 * @param beamWidth number of partial alignments kept after each sequence is added
+	 * @param scorer score of the final alignment, the beam is ranked by relative information
+	 */
+	public BeamSearchFinder(Dataset dataset, int motifLength, int beamWidth, Score scorer)
+	{
+		super(dataset, motifLength, scorer);
+		try{
+			if(beamWidth < 1)
+				throw new Exception("Beam width must be at least 1");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		this.beamWidth = beamWidth;
+		height = alphabet.getSize();
+	}
+
+	public BeamSearchFinder(Dataset dataset, int motifLength, int beamWidth)
+	{
+		this(dataset, motifLength, beamWidth, new RelativeInformationScore());
+	}
+
+	public BeamSearchFinder(Alphabet alphabet, List<Sequence> seqList, int motifLength, int beamWidth, Score scorer)
+	{
+		this(new Dataset(alphabet, seqList), motifLength, beamWidth, scorer);
+	}
+
+	public BeamSearchFinder(Alphabet alphabet, List<Sequence> seqList, int motifLength, int beamWidth)
+	{
+		this(alphabet, seqList, motifLength, beamWidth, new RelativeInformationScore());
+	}
+
+	/**
+	 * Alignment of one sequence of a partial alignment, linked to the choices made for
+	 * the sequences before it
+	 */
+	private static class Choice
+	{
+		final int window;			//l-mer index, [m, 2m) for the reverse complements
+		final Choice previous;
+
+		Choice(int window, Choice previous)
+		{
+			this.window = window;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * Runs the beam search and aligns the sequences to the best complete alignment.
+	 * Ties are broken by the earlier parent, then the earlier l-mer, so the result
+	 * does not depend on the number of threads.
+	 */
+	@Override
+	public Sequence findMotifs()
+	{
+		printAlgorithmStart("Beam Search Finder");
+
+		codes = new int[seqList.size()][];
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			PackedSequence packed = dataset.getPackedSequences().get(s);
+			codes[s] = new int[packed.size()];
+			for(int i=0; i < codes[s].length; ++i)
+			{
+				codes[s][i] = packed.getCode(i);
+			}
+		}
+		int cells = motifLength * height;
+
+		//The first sequence's l-mers, each a partial alignment of one sequence
+		int firstWindows = windowCount(0);
+		int entries = bothStrands ? 2 * firstWindows : firstWindows;
+		int[] firstChoices = new int[entries];
+		int unmasked = 0;
+		for(int w=0; w < entries; ++w)
+		{
+			if(!dataset.isMasked(seqList.get(0), w % firstWindows, motifLength))
+				firstChoices[unmasked++] = w;
+		}
+		if(unmasked > 0)
+			entries = unmasked;
+		else
+			firstChoices = IntStream.range(0, entries).toArray();
+		int[] counts = new int[entries * cells];
+		Choice[] choices = new Choice[entries];
+		for(int e=0; e < entries; ++e)
+		{
+			addWindow(counts, e * cells, 0, firstChoices[e]);
+			choices[e] = new Choice(firstChoices[e], null);
+		}
+		double bestScore = 0;
+
+		for(int s=1; s < seqList.size(); ++s)
+		{
+			final int seqIndex = s;
+			final int[] parentCounts = counts;
+			final boolean mask = hasUnmaskedWindow(s);
+			buildTerms(s + 1);
+
+			//Best extensions of every parent, kept in one heap of the beam width
+			final Beam beam = new Beam(beamWidth);
+			IntStream.range(0, entries).parallel().forEach(e ->
+					expand(seqIndex, parentCounts, e, cells, mask, beam));
+			beam.sort();
+
+			int newEntries = beam.size;
+			int[] newCounts = new int[newEntries * cells];
+			Choice[] newChoices = new Choice[newEntries];
+			for(int n=0; n < newEntries; ++n)
+			{
+				int parent = beam.parents[n];
+				int window = beam.windows[n];
+				System.arraycopy(parentCounts, parent * cells, newCounts, n * cells, cells);
+				addWindow(newCounts, n * cells, s, window);
+				newChoices[n] = new Choice(window, choices[parent]);
+			}
+			bestScore = beam.scores[0];
+			counts = newCounts;
+			choices = newChoices;
+			entries = newEntries;
+			if(verbose)
+				out.println(String.format("Sequences aligned : %d - Best Score : %.5f", s + 1, bestScore));
+		}
+
+		//The beam is sorted, so the first entry is the best
+		Choice choice = choices[0];
+		for(int s=seqList.size() - 1; s >= 0; --s)
+		{
+			int windows = windowCount(s);
+			currentProfile.updateAlignmentStart(seqList.get(s), choice.window % windows, choice.window >= windows);
+			choice = choice.previous;
+		}
+		codes = null;
+
+		Sequence motif = currentProfile.getConsensus();
+		printAlgorithmEnd(scorer.calculateScore(currentProfile), motif);
+		return motif;
+	}
+
+	@Override
+	public boolean supportsBothStrands()
+	{
+		return true;
+	}
+
+	/**
+	 * Scores every l-mer of the sequence as an extension of the parent partial alignment
+	 * and offers the finite ones to the beam. Adding one l-mer changes one cell of each
+	 * column, so with the total and the change of each cell known every l-mer costs O(length).
+	 * @param mask whether masked l-mers are skipped, false if every l-mer of the sequence is masked
+	 */
+	private void expand(int seqIndex, int[] counts, int parent, int cells, boolean mask, Beam beam)
+	{
+		int offset = parent * cells;
+		int stride = seqIndex + 2;
+		double total = 0;
+		double[] cellChanges = new double[cells];
+		for(int i=0; i < cells; ++i)
+		{
+			int symbol = i % height;
+			int freq = counts[offset + i];
+			total += terms[symbol * stride + freq];
+			cellChanges[i] = terms[symbol * stride + freq + 1] - terms[symbol * stride + freq];
+		}
+
+		int[] seqCodes = codes[seqIndex];
+		int windows = windowCount(seqIndex);
+		double[] scores = new double[bothStrands ? 2 * windows : windows];
+		for(int w=0; w < windows; ++w)
+		{
+			double score = total;
+			for(int pos=0; pos < motifLength; ++pos)
+			{
+				score += cellChanges[pos * height + seqCodes[w + pos]];
+			}
+			scores[w] = score;
+			if(bothStrands)
+			{
+				score = total;
+				for(int pos=0; pos < motifLength; ++pos)
+				{
+					score += cellChanges[pos * height + PackedSequence.complement(seqCodes[w + motifLength - 1 - pos])];
+				}
+				scores[windows + w] = score;
+			}
+		}
+		if(mask)
+			dataset.maskScores(seqList.get(seqIndex), motifLength, scores);
+
+		for(int w=0; w < scores.length; ++w)
+		{
+			//Masked l-mers are -Infinity
+			if(Double.isFinite(scores[w]))
+				beam.offer(scores[w], parent, w);
+		}
+	}
+
+	/**
+	 * Whether some l-mer of the sequence is not masked, as the first sequence's l-mers
+	 * are all used when every one is masked
+	 */
+	private boolean hasUnmaskedWindow(int seqIndex)
+	{
+		int windows = windowCount(seqIndex);
+		for(int w=0; w < windows; ++w)
+		{
+			if(!dataset.isMasked(seqList.get(seqIndex), w, motifLength))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The best extensions of a step over all parents: a min-heap of at most the beam
+	 * width, worst at the root. Extensions are ranked by score, then by the earlier
+	 * parent, then the earlier l-mer, which is a total order, so the extensions kept do
+	 * not depend on the order the parallel parents offer them in.
+	 */
+	private static class Beam
+	{
+		final double[] scores;
+		final int[] parents;
+		final int[] windows;
+		int size = 0;
+		volatile double threshold = Double.NEGATIVE_INFINITY;	//score of the root once full, lower offers are rejected without the lock
+
+		Beam(int width)
+		{
+			scores = new double[width];
+			parents = new int[width];
+			windows = new int[width];
+		}
+
+		void offer(double score, int parent, int window)
+		{
+			if(score < threshold)
+				return;
+			synchronized(this)
+			{
+				if(size < scores.length)
+				{
+					set(size, score, parent, window);
+					siftUp(size++);
+				}
+				else if(better(score, parent, window, 0))
+				{
+					set(0, score, parent, window);
+					siftDown(0, size);
+				}
+				if(size == scores.length)
+					threshold = scores[0];
+			}
+		}
+
+		/**
+		 * Sorts the kept extensions best first
+		 */
+		void sort()
+		{
+			for(int last=size - 1; last > 0; --last)
+			{
+				swap(0, last);
+				siftDown(0, last);
+			}
+		}
+
+		private boolean better(double score, int parent, int window, int i)
+		{
+			if(score != scores[i])
+				return score > scores[i];
+			if(parent != parents[i])
+				return parent < parents[i];
+			return window < windows[i];
+		}
+
+		private void siftUp(int i)
+		{
+			while(i > 0 && better(scores[(i - 1) / 2], parents[(i - 1) / 2], windows[(i - 1) / 2], i))
+			{
+				swap(i, (i - 1) / 2);
+				i = (i - 1) / 2;
+			}
+		}
+
+		private void siftDown(int i, int size)
+		{
+			while(2 * i + 1 < size)
+			{
+				int child = 2 * i + 1;
+				if(child + 1 < size && better(scores[child], parents[child], windows[child], child + 1))
+					child++;
+				if(!better(scores[i], parents[i], windows[i], child))
+					break;
+				swap(i, child);
+				i = child;
+			}
+		}
+
+		private void set(int i, double score, int parent, int window)
+		{
+			scores[i] = score;
+			parents[i] = parent;
+			windows[i] = window;
+		}
+
+		private void swap(int i, int j)
+		{
+			double score = scores[i];
+			int parent = parents[i];
+			int window = windows[i];
+			set(i, scores[j], parents[j], windows[j]);
+			set(j, score, parent, window);
+		}
+	}
+
+	/**
+	 * Relative information terms of each frequency when k sequences are aligned,
+	 * as Profile computes them for a profile of k sequences, with its pseudo-zero 1/(10k)
+	 */
+	private void buildTerms(int k)
+	{
+		double delta = 1.0 / (10 * k);
+		terms = new double[height * (k + 1)];
+		for(int symbol=0; symbol < height; ++symbol)
+		{
+			for(int freq=1; freq <= k; ++freq)
+			{
+				double prob = ((double)freq) / k;
+				double weightedProb = Math.max(prob / dataset.getFlooredBackground(symbol), delta);
+				terms[symbol * (k + 1) + freq] = prob * Math.log(weightedProb) / Math.log(2);
+			}
+		}
+	}
+
+	/**
+	 * Adds the symbols of an l-mer of the sequence to the counts starting at offset
+	 */
+	private void addWindow(int[] counts, int offset, int seqIndex, int window)
+	{
+		int windows = windowCount(seqIndex);
+		int[] seqCodes = codes[seqIndex];
+		for(int pos=0; pos < motifLength; ++pos)
+		{
+			int symbol = (window < windows) ? seqCodes[window + pos]
+					: PackedSequence.complement(seqCodes[window - windows + motifLength - 1 - pos]);
+			counts[offset + pos * height + symbol]++;
+		}
+	}
+
+	private int windowCount(int seqIndex)
+	{
+		return codes[seqIndex].length - motifLength + 1;
+	}
+}
@@ -0,0 +1,261 @@
+package motifsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sequence.Sequence;
+
+/**
+ * State of a multi-trial run between two trials: the trial counter, the state of the
+ * finder's random number generator, the best motif and score so far with its alignment,
+ * and the current alignment. Together with the setup commands that recreate the finder
+ * this is all that is needed to resume the run and finish it exactly as it would have.
+ * Alignments are held in the order of the dataset's sequences, and the dataset is
+ * identified by its fingerprint.
+ * Binary format: magic, version, setup commands, fingerprint, motif length, trial
+ * counters, generator state, best trial (if any) then current alignment.
+ * @author Ricky
+ *
+ */
+public class Checkpoint
+{
+	private static final int MAGIC = 0x4D46434B;		//"MFCK"
+	private static final int VERSION = 1;
+
+	private String[] setup;					//commands that recreate the finder, the last one creates it
+	private String datasetFingerprint;
+	private int motifLength;
+	private int totalTrials;
+	private int trialsCompleted;
+	private long randomState;
+	private boolean hasBest;
+	private double bestScore;
+	private String bestMotif;
+	private int[] bestStarts;				//[sequence ordinal]
+	private boolean[] bestReverse;			//[sequence ordinal], true if aligned on the reverse strand
+	private int[] currentStarts;
+	private boolean[] currentReverse;
+
+	private Checkpoint()
+	{
+	}
+
+	/**
+	 * Copies the state of a run
+	 * @param setup commands that recreate the finder
+	 * @param datasetFingerprint
+	 * @param motifLength
+	 * @param totalTrials
+	 * @param trialsCompleted
+	 * @param randomState
+	 * @param bestScore
+	 * @param bestMotif null if no trial has completed
+	 * @param bestStarts
+	 * @param bestStrands
+	 * @param currentStarts
+	 * @param currentStrands
+	 * @param seqList sequences of the dataset, in order
+	 */
+	public Checkpoint(String[] setup, String datasetFingerprint, int motifLength, int totalTrials, int trialsCompleted,
+			long randomState, double bestScore, Sequence bestMotif, Map<Sequence, Integer> bestStarts,
+			Map<Sequence, Boolean> bestStrands, Map<Sequence, Integer> currentStarts,
+			Map<Sequence, Boolean> currentStrands, List<Sequence> seqList)
+	{
+		this.setup = setup.clone();
+		this.datasetFingerprint = datasetFingerprint;
+		this.motifLength = motifLength;
+		this.totalTrials = totalTrials;
+		this.trialsCompleted = trialsCompleted;
+		this.randomState = randomState;
+		hasBest = (bestMotif != null);
+		this.bestScore = bestScore;
+		this.bestMotif = hasBest ? bestMotif.toString() : "";
+		this.bestStarts = new int[seqList.size()];
+		this.bestReverse = new boolean[seqList.size()];
+		if(hasBest)
+			toArrays(bestStarts, bestStrands, seqList, this.bestStarts, this.bestReverse);
+		this.currentStarts = new int[seqList.size()];
+		this.currentReverse = new boolean[seqList.size()];
+		toArrays(currentStarts, currentStrands, seqList, this.currentStarts, this.currentReverse);
+	}
+
+	private static void toArrays(Map<Sequence, Integer> starts, Map<Sequence, Boolean> strands, List<Sequence> seqList,
+			int[] startArray, boolean[] reverseArray)
+	{
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			startArray[s] = starts.get(seqList.get(s));
+			reverseArray[s] = Boolean.TRUE.equals(strands.get(seqList.get(s)));
+		}
+	}
+
+	public void save(String fileName) throws IOException
+	{
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(setup.length);
+			for(String command : setup)
+				out.writeUTF(command);
+			out.writeUTF(datasetFingerprint);
+			out.writeInt(motifLength);
+			out.writeInt(totalTrials);
+			out.writeInt(trialsCompleted);
+			out.writeLong(randomState);
+			out.writeBoolean(hasBest);
+			out.writeDouble(bestScore);
+			out.writeUTF(bestMotif);
+			out.writeInt(currentStarts.length);
+			writeAlignment(out, bestStarts, bestReverse);
+			writeAlignment(out, currentStarts, currentReverse);
+		}
+	}
+
+	private static void writeAlignment(DataOutputStream out, int[] starts, boolean[] reverse) throws IOException
+	{
+		for(int s=0; s < starts.length; ++s)
+		{
+			//The strand is kept in the sign bit of the start
+			out.writeInt(reverse[s] ? ~starts[s] : starts[s]);
+		}
+	}
+
+	public static Checkpoint load(String fileName) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName))))
+		{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a checkpoint file : " + fileName);
+			Checkpoint checkpoint = new Checkpoint();
+			checkpoint.setup = new String[in.readInt()];
+			for(int i=0; i < checkpoint.setup.length; ++i)
+				checkpoint.setup[i] = in.readUTF();
+			checkpoint.datasetFingerprint = in.readUTF();
+			checkpoint.motifLength = in.readInt();
+			checkpoint.totalTrials = in.readInt();
+			checkpoint.trialsCompleted = in.readInt();
+			checkpoint.randomState = in.readLong();
+			checkpoint.hasBest = in.readBoolean();
+			checkpoint.bestScore = in.readDouble();
+			checkpoint.bestMotif = in.readUTF();
+			int count = in.readInt();
+			checkpoint.bestStarts = new int[count];
+			checkpoint.bestReverse = new boolean[count];
+			readAlignment(in, checkpoint.bestStarts, checkpoint.bestReverse);
+			checkpoint.currentStarts = new int[count];
+			checkpoint.currentReverse = new boolean[count];
+			readAlignment(in, checkpoint.currentStarts, checkpoint.currentReverse);
+			return checkpoint;
+		}
+	}
+
+	private static void readAlignment(DataInputStream in, int[] starts, boolean[] reverse) throws IOException
+	{
+		for(int s=0; s < starts.length; ++s)
+		{
+			int code = in.readInt();
+			reverse[s] = code < 0;
+			starts[s] = reverse[s] ? ~code : code;
+		}
+	}
+
+	public String[] getSetup()
+	{
+		return setup.clone();
+	}
+
+	public String getDatasetFingerprint()
+	{
+		return datasetFingerprint;
+	}
+
+	public int getMotifLength()
+	{
+		return motifLength;
+	}
+
+	public int getTotalTrials()
+	{
+		return totalTrials;
+	}
+
+	public int getTrialsCompleted()
+	{
+		return trialsCompleted;
+	}
+
+	public long getRandomState()
+	{
+		return randomState;
+	}
+
+	public boolean hasBest()
+	{
+		return hasBest;
+	}
+
+	public double getBestScore()
+	{
+		return bestScore;
+	}
+
+	public String getBestMotif()
+	{
+		return bestMotif;
+	}
+
+	public int getSequenceCount()
+	{
+		return currentStarts.length;
+	}
+
+	public Map<Sequence, Integer> getBestStarts(List<Sequence> seqList)
+	{
+		return toStartMap(bestStarts, seqList);
+	}
+
+	public Map<Sequence, Boolean> getBestStrands(List<Sequence> seqList)
+	{
+		return toStrandMap(bestReverse, seqList);
+	}
+
+	public Map<Sequence, Integer> getCurrentStarts(List<Sequence> seqList)
+	{
+		return toStartMap(currentStarts, seqList);
+	}
+
+	public Map<Sequence, Boolean> getCurrentStrands(List<Sequence> seqList)
+	{
+		return toStrandMap(currentReverse, seqList);
+	}
+
+	private static Map<Sequence, Integer> toStartMap(int[] starts, List<Sequence> seqList)
+	{
+		Map<Sequence, Integer> result = new HashMap<Sequence, Integer>();
+		for(int s=0; s < starts.length; ++s)
+		{
+			result.put(seqList.get(s), starts[s]);
+		}
+		return result;
+	}
+
+	private static Map<Sequence, Boolean> toStrandMap(boolean[] reverse, List<Sequence> seqList)
+	{
+		Map<Sequence, Boolean> result = new HashMap<Sequence, Boolean>();
+		for(int s=0; s < reverse.length; ++s)
+		{
+			if(reverse[s])
+				result.put(seqList.get(s), true);
+		}
+		return result;
+	}
+}
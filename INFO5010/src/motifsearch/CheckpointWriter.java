@@ -0,0 +1,97 @@
+package motifsearch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes checkpoints of a run on a background thread, so the search never waits for
+ * the disk. A checkpoint is only due once the interval has passed since the last one
+ * and the last one has been written. Each checkpoint is written to a temporary file
+ * and moved over the previous one, so a crash never leaves a partial checkpoint.
+ * @author Ricky
+ *
+ */
+class CheckpointWriter
+{
+	private Path file;
+	private Path tempFile;
+	private long intervalMillis;
+	private long lastSubmitted;
+	private Future<?> pending = null;
+	private ExecutorService writer;
+
+	CheckpointWriter(String fileName, long intervalMillis)
+	{
+		this.file = Paths.get(fileName);
+		this.tempFile = Paths.get(fileName + ".tmp");
+		this.intervalMillis = intervalMillis;
+		lastSubmitted = System.currentTimeMillis();
+		writer = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "checkpoint-writer");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Whether a new checkpoint should be taken
+	 * @return
+	 */
+	boolean isDue()
+	{
+		return System.currentTimeMillis() - lastSubmitted >= intervalMillis
+				&& (pending == null || pending.isDone());
+	}
+
+	/**
+	 * Queues the checkpoint for writing and returns at once
+	 * @param checkpoint
+	 */
+	void submit(final Checkpoint checkpoint)
+	{
+		lastSubmitted = System.currentTimeMillis();
+		pending = writer.submit(() -> {
+			try
+			{
+				checkpoint.save(tempFile.toString());
+				Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(IOException e)
+			{
+				//A failed checkpoint must not stop the search, the next one may succeed
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Writes the final checkpoint, waiting for it and any earlier one to finish, and
+	 * stops the writer thread
+	 * @param checkpoint null to only wait for the earlier ones, e.g. when the run failed
+	 */
+	void close(Checkpoint checkpoint)
+	{
+		if(checkpoint != null)
+			submit(checkpoint);
+		try
+		{
+			if(pending != null)
+				pending.get();
+		}
+		catch(InterruptedException | ExecutionException e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			writer.shutdown();
+		}
+	}
+}
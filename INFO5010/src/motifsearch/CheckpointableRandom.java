@@ -0,0 +1,66 @@
+package motifsearch;
+
+import java.util.Random;
+
+/**
+ * Random number generator whose state can be saved and restored, so a seeded search
+ * can be resumed from a checkpoint and continue with exactly the numbers it would have
+ * drawn. It is the same 48-bit linear congruential generator as java.util.Random, so
+ * with the same seed it produces the same sequence.
+ * Not thread-safe, each finder draws from its own generator on one thread.
+ * @author Ricky
+ *
+ */
+public class CheckpointableRandom extends Random
+{
+	private static final long serialVersionUID = 1L;
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	private long state;			//set by setSeed from the super constructor, so it has no initializer
+
+	public CheckpointableRandom(long seed)
+	{
+		super(seed);
+	}
+
+	public CheckpointableRandom()
+	{
+		this(System.nanoTime() ^ Double.doubleToLongBits(Math.random()));
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int)(state >>> (48 - bits));
+	}
+
+	/**
+	 * Current 48-bit state of the generator
+	 * @return
+	 */
+	public long getState()
+	{
+		return state;
+	}
+
+	/**
+	 * Restores a state returned by getState, the following numbers are those that
+	 * followed it originally
+	 * @param state
+	 */
+	public void setState(long state)
+	{
+		super.setSeed(0);		//drops any cached gaussian
+		this.state = state & MASK;
+	}
+}
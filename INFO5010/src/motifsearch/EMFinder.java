@@ -0,0 +1,338 @@
+package motifsearch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Expectation maximization over a position probability matrix, as in MEME. Rather than
+ * moving each alignment to a single l-mer, the E-step weighs every l-mer of a sequence
+ * by its posterior probability of being the site, and the M-step rebuilds the matrix from
+ * the fractional counts of all l-mers. In OOPS mode every sequence holds exactly one site;
+ * in ZOOPS mode a sequence holds one site or none, with the probability of a site
+ * estimated along with the matrix.
+ * Sequences are processed in parallel blocks: each block scores its l-mers with a log-odds
+ * table built once per iteration, turns the scores into posteriors in a buffer it owns and
+ * adds their counts to its own accumulator, so iterations do not allocate per sequence.
+ * Each trial starts from the finder's initial alignment; refine starts from any profile,
+ * e.g. the result of another finder. The alignment returned is the most probable l-mer
+ * of each sequence.
+ * @author Ricky
+ *
+ */
+public class EMFinder extends Finder
+{
+	private static final int BLOCK = 64;				//sequences per parallel task
+	private static final double PSEUDOCOUNT = 1.0;		//prior counts of each column, spread by the background
+
+	private boolean zoops;								//zero or one site per sequence, rather than exactly one
+	private int maxIterations;
+	private double tolerance;							//stop once the log likelihood per sequence changes by less
+	private int height;
+	private int[][] codes;								//mapped ints of each sequence
+	private double[] background;						//background of each symbol, with a pseudocount of one occurrence each
+	private double[] logOdds;							//ln(p/b) of each cell of the position probability matrix, [position * height + symbol]
+	private double siteProbability;						//ZOOPS probability that a sequence holds a site
+	private double[][] blockCounts;						//expected counts of each block of sequences
+	private double[][] blockPosteriors;					//posterior of each l-mer of the block's sequence being scored
+	private double[] blockLikelihoods;					//log likelihood ratio of each block's sequences to the background
+	private double[] blockSites;						//expected number of sites in each block's sequences
+	private int[] bestWindows;							//most probable l-mer of each sequence at the last E-step, -1 if all are masked
+
+	/**
+	 * @param dataset
+	 * @param motifLength
+	 * @param zoops true for zero or one site per sequence, false for exactly one
+	 * @param maxIterations
+	 * @param tolerance stop once the log likelihood per sequence changes by less than this
+	 * @param scorer
+	 */
+	public EMFinder(Dataset dataset, int motifLength, boolean zoops, int maxIterations, double tolerance, Score scorer)
+	{
+		super(dataset, motifLength, scorer);
+		this.zoops = zoops;
+		this.maxIterations = maxIterations;
+		this.tolerance = tolerance;
+		height = alphabet.getSize();
+		//A symbol missing from the sequences would give a zero background and ln(0/0) odds
+		background = new double[height];
+		for(int a=0; a < height; ++a)
+		{
+			background[a] = dataset.getFlooredBackground(a);
+		}
+		codes = new int[seqList.size()][];
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			PackedSequence packed = dataset.getPackedSequences().get(s);
+			codes[s] = new int[packed.size()];
+			for(int i=0; i < codes[s].length; ++i)
+			{
+				codes[s][i] = packed.getCode(i);
+			}
+		}
+	}
+
+	public EMFinder(Dataset dataset, int motifLength, boolean zoops, int maxIterations, double tolerance)
+	{
+		this(dataset, motifLength, zoops, maxIterations, tolerance, new RelativeInformationScore());
+	}
+
+	public EMFinder(Alphabet alphabet, List<Sequence> seqList, int motifLength, boolean zoops, int maxIterations, double tolerance, Score scorer)
+	{
+		this(new Dataset(alphabet, seqList), motifLength, zoops, maxIterations, tolerance, scorer);
+	}
+
+	public EMFinder(Alphabet alphabet, List<Sequence> seqList, int motifLength, boolean zoops, int maxIterations, double tolerance)
+	{
+		this(alphabet, seqList, motifLength, zoops, maxIterations, tolerance, new RelativeInformationScore());
+	}
+
+	/**
+	 * Runs EM from the initial alignment of the trial
+	 */
+	@Override
+	public Sequence findMotifs()
+	{
+		initializeAlignment();
+		return refine(currentProfile);
+	}
+
+	/**
+	 * Runs EM from the matrix of the given profile, e.g. the result of another finder over
+	 * the same sequences, and aligns the current profile to the most probable l-mers
+	 * @param seed profile of the same motif length
+	 * @return consensus of the refined alignment
+	 */
+	public Sequence refine(Profile seed)
+	{
+		try{
+			if(seed.length() != motifLength)
+				throw new Exception("Seed profile must have the finder's motif length");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		printAlgorithmStart(zoops ? "EM Finder (ZOOPS)" : "EM Finder (OOPS)");
+
+		int cells = motifLength * height;
+		logOdds = new double[cells];
+		double[] counts = new double[cells];
+		for(int pos=0; pos < motifLength; ++pos)
+		{
+			for(int a=0; a < height; ++a)
+			{
+				counts[pos * height + a] = seed.getPfm(a, pos);
+			}
+		}
+		setLogOdds(counts, seed.getSequenceCount());
+		siteProbability = 0.5;
+
+		int blocks = (seqList.size() + BLOCK - 1) / BLOCK;
+		int maxCandidates = 0;
+		for(int[] seqCodes : codes)
+		{
+			int windows = seqCodes.length - motifLength + 1;
+			maxCandidates = Math.max(maxCandidates, bothStrands ? 2 * windows : windows);
+		}
+		blockCounts = new double[blocks][cells];
+		blockPosteriors = new double[blocks][maxCandidates];
+		blockLikelihoods = new double[blocks];
+		blockSites = new double[blocks];
+		bestWindows = new int[seqList.size()];
+		//Sequences whose l-mers are all masked hold no site, so ZOOPS leaves them out of the site probability
+		int searchable = 0;
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			if(hasUnmaskedWindow(s))
+				searchable++;
+		}
+
+		double likelihood = Double.NEGATIVE_INFINITY;
+		for(int iteration=0; iteration < maxIterations; ++iteration)
+		{
+			IntStream.range(0, blocks).parallel().forEach(b -> processBlock(b));
+
+			//Reduce the blocks' counts into the new matrix
+			Arrays.fill(counts, 0.0);
+			double newLikelihood = 0;
+			double sites = 0;
+			for(int b=0; b < blocks; ++b)
+			{
+				for(int c=0; c < cells; ++c)
+				{
+					counts[c] += blockCounts[b][c];
+				}
+				newLikelihood += blockLikelihoods[b];
+				sites += blockSites[b];
+			}
+			setLogOdds(counts, sites);
+			if(zoops)
+				siteProbability = Math.min(1.0, Math.max(1.0 / Math.max(1, searchable), sites / Math.max(1, searchable)));
+
+			if(verbose)
+				out.println(String.format("Iteration : %d - Log Likelihood : %.5f", iteration, newLikelihood));
+			boolean converged = Math.abs(newLikelihood - likelihood) < tolerance * seqList.size();
+			likelihood = newLikelihood;
+			if(converged)
+				break;
+		}
+
+		//Align each sequence to its most probable l-mer under the last E-step, those
+		//with every l-mer masked keep their alignment
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			if(bestWindows[s] < 0)
+				continue;
+			int windows = codes[s].length - motifLength + 1;
+			currentProfile.updateAlignmentStart(seqList.get(s), bestWindows[s] % windows, bestWindows[s] >= windows);
+		}
+		if(zoops && verbose)
+			out.println(String.format("Expected sequences with a site : %.2f of %d", siteProbability * searchable, searchable));
+		if(searchable < seqList.size() && verbose)
+			out.println(String.format("Sequences with every l-mer masked, left at their alignment : %d", seqList.size() - searchable));
+		blockCounts = null;
+		blockPosteriors = null;
+
+		Sequence motif = currentProfile.getConsensus();
+		printAlgorithmEnd(scorer.calculateScore(currentProfile), motif);
+		return motif;
+	}
+
+	@Override
+	public boolean supportsBothStrands()
+	{
+		return true;
+	}
+
+	/**
+	 * E-step and the block's share of the M-step for the sequences of block b
+	 */
+	private void processBlock(int b)
+	{
+		double[] blockCount = blockCounts[b];
+		double[] posteriors = blockPosteriors[b];
+		Arrays.fill(blockCount, 0.0);
+		double likelihood = 0;
+		double sites = 0;
+		for(int s=b * BLOCK; s < Math.min(seqList.size(), (b + 1) * BLOCK); ++s)
+		{
+			int[] seqCodes = codes[s];
+			int windows = seqCodes.length - motifLength + 1;
+			int candidates = bothStrands ? 2 * windows : windows;
+
+			//Log odds of each l-mer
+			for(int w=0; w < windows; ++w)
+			{
+				double score = 0;
+				for(int pos=0; pos < motifLength; ++pos)
+				{
+					score += logOdds[pos * height + seqCodes[w + pos]];
+				}
+				posteriors[w] = score;
+				if(bothStrands)
+				{
+					score = 0;
+					for(int pos=0; pos < motifLength; ++pos)
+					{
+						score += logOdds[pos * height + PackedSequence.complement(seqCodes[w + motifLength - 1 - pos])];
+					}
+					posteriors[windows + w] = score;
+				}
+			}
+			dataset.maskScores(seqList.get(s), motifLength, posteriors, bothStrands);
+			likelihood += normalize(s, posteriors, candidates);
+
+			//Expected counts of the l-mers
+			for(int w=0; w < candidates; ++w)
+			{
+				double p = posteriors[w];
+				if(p == 0)
+					continue;
+				sites += p;
+				for(int pos=0; pos < motifLength; ++pos)
+				{
+					int symbol = (w < windows) ? seqCodes[w + pos]
+							: PackedSequence.complement(seqCodes[w - windows + motifLength - 1 - pos]);
+					blockCount[pos * height + symbol] += p;
+				}
+			}
+		}
+		blockLikelihoods[b] = likelihood;
+		blockSites[b] = sites;
+	}
+
+	/**
+	 * Turns the log odds of the candidates into posteriors in place, with the site prior
+	 * of the mode, and records the most probable candidate
+	 * @return log likelihood ratio of the sequence to the background
+	 */
+	private double normalize(int s, double[] posteriors, int candidates)
+	{
+		double logPrior = zoops ? Math.log(siteProbability / candidates) : -Math.log(candidates);
+		double nullLogit = (zoops && siteProbability < 1.0) ? Math.log(1.0 - siteProbability) : Double.NEGATIVE_INFINITY;
+		int best = 0;
+		for(int w=1; w < candidates; ++w)
+		{
+			if(posteriors[w] > posteriors[best])
+				best = w;
+		}
+		if(posteriors[best] == Double.NEGATIVE_INFINITY)
+		{
+			//Every l-mer is masked, the sequence takes no part
+			bestWindows[s] = -1;
+			Arrays.fill(posteriors, 0, candidates, 0.0);
+			return 0;
+		}
+		bestWindows[s] = best;
+		double max = Math.max(posteriors[best] + logPrior, nullLogit);
+		double sum = (nullLogit == Double.NEGATIVE_INFINITY) ? 0 : Math.exp(nullLogit - max);
+		for(int w=0; w < candidates; ++w)
+		{
+			posteriors[w] = Math.exp(posteriors[w] + logPrior - max);
+			sum += posteriors[w];
+		}
+		double scale = 1.0 / sum;
+		for(int w=0; w < candidates; ++w)
+		{
+			posteriors[w] *= scale;
+		}
+		return max + Math.log(sum);
+	}
+
+	/**
+	 * Whether some l-mer of the sequence does not overlap a masked position
+	 */
+	private boolean hasUnmaskedWindow(int s)
+	{
+		int windows = codes[s].length - motifLength + 1;
+		for(int w=0; w < windows; ++w)
+		{
+			if(!dataset.isMasked(seqList.get(s), w, motifLength))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Sets the log odds of the matrix from expected counts over the given number of sites
+	 */
+	private void setLogOdds(double[] counts, double sites)
+	{
+		for(int pos=0; pos < motifLength; ++pos)
+		{
+			for(int a=0; a < height; ++a)
+			{
+				double p = (counts[pos * height + a] + PSEUDOCOUNT * background[a]) / (sites + PSEUDOCOUNT);
+				logOdds[pos * height + a] = Math.log(p / background[a]);
+			}
+		}
+	}
+}
@@ -1,67 +1,283 @@
 package motifsearch;
 
-import java.util.HashMap;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.Map;
 
 import scoring.Score;
 import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.KmerIndex;
+import sequence.PackedSequence;
 import sequence.Profile;
 import sequence.Sequence;
 
 public abstract class Finder
 {
+	protected Dataset dataset;					//sequences and their statistics, shared by every profile of the finder
 	protected Alphabet alphabet;
 	protected List<Sequence> seqList; 
 	protected int motifLength; 
 	protected Profile currentProfile;
 	protected Score scorer;
+	protected KmerIndex seedIndex = null;		//if set, trials start from over-represented k-mers
+	protected int seedCandidates;				//number of top k-mers to seed from
+	protected boolean verbose = true;			//print the progress of each trial
+	protected PrintStream out = System.out;		//where the progress is printed
+	protected boolean bothStrands = false;		//search the reverse complement strand as well
+	protected CheckpointableRandom random = new CheckpointableRandom();	//every random choice of a trial is drawn from here
+	private double bestScore;					//score of the best trial of the last runMultiple
+	private String checkpointFile = null;		//if set, runMultiple writes checkpoints here
+	private long checkpointInterval;			//minimum milliseconds between checkpoints
+	private String[] checkpointSetup;			//commands that recreate this finder, saved in each checkpoint
+	private Checkpoint resumeFrom = null;		//if set, the next runMultiple continues from this checkpoint
 	
-	public Finder(Alphabet alphabet, List<Sequence> seqList, int motifLength, Score scorer)
+	public Finder(Dataset dataset, int motifLength, Score scorer)
 	{
-		this.alphabet = alphabet;
-		this.seqList = seqList;
+		this.dataset = dataset;
+		this.alphabet = dataset.getAlphabet();
+		this.seqList = dataset.getSequences();
 		this.motifLength = motifLength;
-		currentProfile = new Profile(alphabet, seqList, motifLength);
+		currentProfile = new Profile(dataset, motifLength);
 		this.scorer = scorer;
+		scorer.prepare(dataset);
+	}
+	
+	public Finder(Alphabet alphabet, List<Sequence> seqList, int motifLength, Score scorer)
+	{
+		this(new Dataset(alphabet, seqList), motifLength, scorer);
 	}
 	
 	/**
 	 * Runs the finder over multiple trials and returns the motifs corresponding to
-	 * the highest scoring trial
+	 * the highest scoring trial. The current profile is left at the alignment of that 
+	 * trial, the earliest one on ties. If checkpointing is on, the state between trials 
+	 * is written in the background; if a checkpoint to resume from was given, the trials
+	 * it had completed are skipped and the run continues from its state.
 	 * @param trials
 	 * @return
 	 */
 	public Sequence runMultiple(int trials)
 	{
-		Map<Sequence, Double> results = new HashMap<Sequence, Double>();
+		Sequence bestMotif = null;
+		Map<Sequence, Integer> bestStarts = null;
+		Map<Sequence, Boolean> bestStrands = null;
+		bestScore = 0;
+		int firstTrial = 0;
 		
-		System.out.println("+++ Starting Multiple Trials +++");
-		for(int i=0; i < trials; ++i)
+		if(resumeFrom != null)
 		{
-			Sequence motif = findMotifs();
-			double score = scorer.calculateScore(currentProfile);
-			results.put(motif, score);
-			System.out.println(String.format("Trial : %d - Score : %.5f - Motif : %s", i, score, motif.toString()));
+			firstTrial = resumeFrom.getTrialsCompleted();
+			random.setState(resumeFrom.getRandomState());
+			if(resumeFrom.hasBest())
+			{
+				bestMotif = new Sequence(alphabet, resumeFrom.getBestMotif());
+				bestScore = resumeFrom.getBestScore();
+				bestStarts = resumeFrom.getBestStarts(seqList);
+				bestStrands = resumeFrom.getBestStrands(seqList);
+			}
+			setAlignment(resumeFrom.getCurrentStarts(seqList), resumeFrom.getCurrentStrands(seqList));
+			resumeFrom = null;
 		}
-
-		Map.Entry<Sequence, Double> maxEntry = null;
-
-		for (Map.Entry<Sequence, Double> entry : results.entrySet())
+		//A resumed run may already be complete, then there is nothing left to checkpoint
+		CheckpointWriter writer = (checkpointFile == null || firstTrial >= trials) ? null 
+				: new CheckpointWriter(checkpointFile, checkpointInterval);
+		
+		if(verbose)
+			out.println("+++ Starting Multiple Trials +++");
+		boolean finished = false;
+		try
 		{
-		    if (maxEntry == null || entry.getValue().compareTo(maxEntry.getValue()) > 0)
-		    {
-		        maxEntry = entry;
-		    }
+			for(int i=firstTrial; i < trials; ++i)
+			{
+				Sequence motif = findMotifs();
+				double score = scorer.calculateScore(currentProfile);
+				if(bestMotif == null || score > bestScore)
+				{
+					bestMotif = motif;
+					bestScore = score;
+					//Later trials reuse the current profile, so keep a copy of the best alignment
+					bestStarts = currentProfile.getAlignmentStarts();
+					bestStrands = currentProfile.getAlignmentStrands();
+				}
+				if(verbose)
+					out.println(String.format("Trial : %d - Score : %.5f - Motif : %s", i, score, motif.toString()));
+				if(writer != null && i < trials - 1 && writer.isDue())
+					writer.submit(createCheckpoint(trials, i + 1, bestMotif, bestStarts, bestStrands));
+			}
+			finished = true;
 		}
-		System.out.println(
+		finally
+		{
+			//The last checkpoint only once every trial has run, a failed trial keeps the earlier one
+			if(writer != null)
+				writer.close(finished ? createCheckpoint(trials, trials, bestMotif, bestStarts, bestStrands) : null);
+		}
+		if(bestStarts != null)
+			setAlignment(bestStarts, bestStrands);
+		if(bestMotif == null)
+		{
+			//No trial was run, e.g. a checkpoint of zero trials, so report the current alignment
+			bestMotif = currentProfile.getConsensus();
+			bestScore = scorer.calculateScore(currentProfile);
+		}
+
+		if(verbose)
+			out.println(
 				String.format("+++ Multiple Trials finished - Max Score : %.5f - Best Motif : %s +++", 
-											maxEntry.getValue(), maxEntry.getKey().toString()));
-		return maxEntry.getKey();
+											bestScore, bestMotif.toString()));
+		return bestMotif;
 	}
-		
+	
+	private Checkpoint createCheckpoint(int trials, int trialsCompleted, Sequence bestMotif,
+			Map<Sequence, Integer> bestStarts, Map<Sequence, Boolean> bestStrands)
+	{
+		return new Checkpoint(checkpointSetup, dataset.getFingerprint(), motifLength, trials, trialsCompleted,
+				random.getState(), bestScore, bestMotif, bestStarts, bestStrands, 
+				currentProfile.getAlignmentStarts(), currentProfile.getAlignmentStrands(), seqList);
+	}
+	
+	/**
+	 * Moves the current profile to the given alignment, in place so that finders
+	 * working on their own profile type keep it
+	 */
+	private void setAlignment(Map<Sequence, Integer> starts, Map<Sequence, Boolean> strands)
+	{
+		for(Sequence seq : seqList)
+		{
+			currentProfile.updateAlignmentStart(seq, starts.get(seq), Boolean.TRUE.equals(strands.get(seq)));
+		}
+	}
+	
+	/**
+	 * Seeds the finder's random number generator, so runs with the same seed, 
+	 * settings and sequences find the same motifs
+	 * @param seed
+	 */
+	public void setSeed(long seed)
+	{
+		random = new CheckpointableRandom(seed);
+	}
+	
+	/**
+	 * Turns on checkpointing of runMultiple: between trials, at most once per interval,
+	 * the state of the run is written to the file in the background
+	 * @param fileName
+	 * @param intervalMillis
+	 * @param setup commands that recreate this finder, saved in the checkpoint
+	 */
+	public void setCheckpointing(String fileName, long intervalMillis, String[] setup)
+	{
+		checkpointFile = fileName;
+		checkpointInterval = intervalMillis;
+		checkpointSetup = setup.clone();
+	}
+	
+	/**
+	 * Makes the next runMultiple continue the run saved in the checkpoint. The finder 
+	 * must have been created with the checkpoint's setup over the same sequences.
+	 * @param checkpoint
+	 */
+	public void resume(Checkpoint checkpoint)
+	{
+		try{
+			if(!checkpoint.getDatasetFingerprint().equals(dataset.getFingerprint()))
+				throw new Exception("Checkpoint was written for different sequences");
+			if(checkpoint.getMotifLength() != motifLength)
+				throw new Exception("Checkpoint was written for motif length " + checkpoint.getMotifLength());
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		resumeFrom = checkpoint;
+	}
+	
 	public abstract Sequence findMotifs();
 	
+	/**
+	 * Seed the initial alignment of each trial from the most over-represented k-mers
+	 * of the index rather than uniformly at random
+	 * @param index k-mer index built over this finder's sequence list
+	 * @param candidates number of top k-mers to choose from
+	 */
+	public void setSeedIndex(KmerIndex index, int candidates)
+	{
+		this.seedIndex = index;
+		this.seedCandidates = candidates;
+	}
+	
+	/**
+	 * Sets the starting alignment of a trial, seeded from the k-mer index if one was given
+	 */
+	protected void initializeAlignment()
+	{
+		if(seedIndex == null)
+			currentProfile.generateRandomAlignment(random);
+		else
+			currentProfile.generateSeededAlignment(seedIndex, seedCandidates, random);
+	}
+	
+	/**
+	 * Search for motif occurrences on both DNA strands, each sequence's motif may be 
+	 * aligned on the reverse complement. Only finders that support it (see 
+	 * supportsBothStrands) look at the reverse strand.
+	 * @param bothStrands
+	 */
+	public void setBothStrands(boolean bothStrands)
+	{
+		try{
+			if(bothStrands && !PackedSequence.isComplementable(alphabet))
+				throw new Exception("Searching both strands requires the DNA alphabet 'ACGT'");
+			if(bothStrands && motifLength > PackedSequence.maxWindowLength(alphabet))
+				throw new Exception("Searching both strands requires motifs of length <= " + PackedSequence.maxWindowLength(alphabet));
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		this.bothStrands = bothStrands;
+	}
+	
+	/**
+	 * Whether the finder searches the reverse strand when setBothStrands is on
+	 * @return
+	 */
+	public boolean supportsBothStrands()
+	{
+		return false;
+	}
+	
+	/**
+	 * Score of the best trial of the last call to runMultiple
+	 * @return
+	 */
+	public double getBestScore()
+	{
+		return bestScore;
+	}
+	
+	/**
+	 * Turns the progress output of the finder on or off, e.g. when several finders run at once
+	 * @param verbose
+	 */
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
+	
+	/**
+	 * Prints the progress of the finder to the given stream instead of standard output
+	 * @param out
+	 */
+	public void setOutput(PrintStream out)
+	{
+		this.out = out;
+	}
+	
+	public int getMotifLength()
+	{
+		return motifLength;
+	}
+	
 	public Profile getCurrentProfile()
 	{
 		return currentProfile;
@@ -69,17 +285,20 @@ public abstract class Finder
 	
 	public void printAlgorithmStart(String name)
 	{
-		System.out.println(String.format("*** Running %s ***", name));
+		if(verbose)
+			out.println(String.format("*** Running %s ***", name));
 	}
 	
 	public void printIterationInfo(int iteration, double score, String alignmentArrayString)
 	{
-		System.out.println(String.format("Iteration : %d - Score : %.5f - Alignments : %s", iteration, score, alignmentArrayString));
+		if(verbose)
+			out.println(String.format("Iteration : %d - Score : %.5f - Alignments : %s", iteration, score, alignmentArrayString));
 	}
 	
 	public void printAlgorithmEnd(double score, Sequence motif)
 	{
-		System.out.println(String.format("*** Result : Final Score %.5f - Predicted Motif : %s ***", score, motif.toString()));
+		if(verbose)
+			out.println(String.format("*** Result : Final Score %.5f - Predicted Motif : %s ***", score, motif.toString()));
 	}
 	
 }
@@ -12,6 +12,7 @@ import scoring.ExpectationScore;
 import scoring.RelativeInformationScore;
 import scoring.Score;
 import sequence.Alphabet;
+import sequence.Dataset;
 import sequence.Profile;
 import sequence.Sequence;
 
@@ -19,18 +20,27 @@ public class GibbsSamplingFinder extends Finder
 {
 	private double optimizationThreshold; //The convergence test threshold
 	
+	public GibbsSamplingFinder(Dataset dataset, int motifLength, double optimizationThreshold, Score scorer)
+	{
+		super(dataset, motifLength, scorer);
+		this.optimizationThreshold = optimizationThreshold;
+	}
+	
+	public GibbsSamplingFinder(Dataset dataset, int motifLength, double optimizationThreshold)
+	{
+		this(dataset, motifLength, optimizationThreshold, new RelativeInformationScore());
+	}
+	
 	public GibbsSamplingFinder(Alphabet alphabet, List<Sequence> seqList,
 			int motifLength, double optimizationThreshold, Score scorer)
 	{
-		super(alphabet, seqList, motifLength, scorer);
-		this.optimizationThreshold = optimizationThreshold;
+		this(new Dataset(alphabet, seqList), motifLength, optimizationThreshold, scorer);
 	}
 	
 	public GibbsSamplingFinder(Alphabet alphabet, List<Sequence> seqList,
 			int motifLength, double optimizationThreshold)
 	{
-		super(alphabet, seqList, motifLength, new RelativeInformationScore());
-		this.optimizationThreshold = optimizationThreshold;
+		this(alphabet, seqList, motifLength, optimizationThreshold, new RelativeInformationScore());
 	}
 	
 	/**
@@ -44,11 +54,11 @@ public class GibbsSamplingFinder extends Finder
 	public Sequence findMotifs()
 	{
 		printAlgorithmStart("Gibbs Sampling Finder");
-		Random gen = new Random();
+		Random gen = random;
 		boolean scoreChanged = true;
 		
-		//Randomly select starting positions
-		currentProfile.generateRandomAlignment();
+		//Select starting positions, at random or seeded from the k-mer index
+		initializeAlignment();
 		
 		double currentProfileScore = scorer.calculateScore(currentProfile);
 		int iters = 0;
@@ -73,49 +83,25 @@ public class GibbsSamplingFinder extends Finder
 				culledSeqList.remove(selectedSeq);
 				Map<Sequence, Integer> culledAlignments = currentProfile.getAlignmentStarts();				
 				culledAlignments.remove(selectedSeq);	
-				Profile culledProfile = new Profile(alphabet, culledSeqList, motifLength, culledAlignments);
+				Profile culledProfile = new Profile(dataset, culledSeqList, motifLength, culledAlignments, 
+						currentProfile.getAlignmentStrands());
 				
-				//For each position for the selected sequence find the distribution of scores
-				double[] scores = culledProfile.scoreAllLmers(selectedSeq, scorer);
+				//For each position for the selected sequence find the distribution of scores,
+				//over the l-mers of both strands if searching both
+				double[] scores = bothStrands ? culledProfile.scoreAllLmersBothStrands(selectedSeq, scorer)
+						: culledProfile.scoreAllLmers(selectedSeq, scorer);
+				int windows = bothStrands ? scores.length / 2 : scores.length;
 				
-				/* Pick a random new alignment start index based on score distribution. 
-				 * Since scores can be negative, we shift all scores by the lowest score,
-				 * to maintain distribution properties and using cumulative distributions we choose 
-				 * the new index
-				 */
-				double minScore = Double.MAX_VALUE;
-				for(int i=0; i < scores.length; ++i)
-				{
-					minScore = (scores[i] < minScore) ? scores[i] : minScore;
-				}
-				
-				double cumulativeScore = 0.0;
-				for(int i=0; i < scores.length; ++i)
-				{
-					scores[i] += Math.abs(minScore);
-					cumulativeScore += scores[i];
-				}
-				
-				double threshold = gen.nextDouble() * cumulativeScore;
-				
-				int newStart = 0;
-				for(int i=0; i < scores.length; ++i)
-				{
-					if(threshold < scores[i])
-					{
-						newStart = i;
-						break;
-					}
-					else
-					{
-						threshold -= scores[i];
-					}
-				}
+				//Pick a random new alignment start index based on score distribution
+				int sampled = sampleStart(scores, gen);
+				int newStart = sampled % windows;
+				boolean newReverse = sampled >= windows;
 				
 				//Update the new alignment for selected sequence
 				double oldScore = scorer.calculateScore(currentProfile);
 				int oldStart = currentProfile.getAlignmentStarts().get(selectedSeq);
-				currentProfile.updateAlignmentStart(selectedSeq, newStart); 
+				boolean oldReverse = currentProfile.isReverseStrand(selectedSeq);
+				currentProfile.updateAlignmentStart(selectedSeq, newStart, newReverse); 
 				double newScore = scorer.calculateScore(currentProfile);
 				
 				//Check for changes 
@@ -129,7 +115,7 @@ public class GibbsSamplingFinder extends Finder
 				{
 					//If profile score has not improved, select another alignment to optimize 
 					//First reverse the change made by the start change
-					currentProfile.updateAlignmentStart(selectedSeq, oldStart); 
+					currentProfile.updateAlignmentStart(selectedSeq, oldStart, oldReverse); 
 					unoptimizedSequences.remove(selection);					
 				}
 			}
@@ -139,4 +125,81 @@ public class GibbsSamplingFinder extends Finder
 		printAlgorithmEnd(currentProfileScore, currentProfile.getConsensus());
 		return currentProfile.getConsensus();
 	}
+	
+	@Override
+	public boolean supportsBothStrands()
+	{
+		return true;
+	}
+	
+	/**
+	 * Picks a random start index based on the score distribution. 
+	 * Since scores can be negative, we shift all scores by the lowest score,
+	 * to maintain distribution properties and using cumulative distributions we choose 
+	 * the new index. Masked l-mers, scored -Infinity, are never picked unless all are masked.
+	 * When the shifted scores are all zero (a single unmasked l-mer, or all scoring the same)
+	 * the pick is uniform over the unmasked l-mers, or over all of them if all are masked.
+	 * NB: modifies the given scores in place
+	 * @param scores score of each l-mer start
+	 * @param gen
+	 * @return new start index
+	 */
+	static int sampleStart(double[] scores, Random gen)
+	{
+		double minScore = Double.MAX_VALUE;
+		int unmasked = 0;
+		for(int i=0; i < scores.length; ++i)
+		{
+			if(scores[i] != Double.NEGATIVE_INFINITY)
+			{
+				minScore = (scores[i] < minScore) ? scores[i] : minScore;
+				unmasked++;
+			}
+		}
+		if(unmasked == 0)
+			return gen.nextInt(scores.length);
+		
+		double cumulativeScore = 0.0;
+		int lastPositive = -1;
+		for(int i=0; i < scores.length; ++i)
+		{
+			scores[i] = (scores[i] == Double.NEGATIVE_INFINITY) ? -1.0 : scores[i] + Math.abs(minScore);
+			if(scores[i] > 0)
+			{
+				cumulativeScore += scores[i];
+				lastPositive = i;
+			}
+		}
+		
+		if(!(cumulativeScore > 0) || Double.isInfinite(cumulativeScore))
+		{
+			//No distribution to sample from, pick the k-th unmasked l-mer
+			int pick = gen.nextInt(unmasked);
+			for(int i=0; i < scores.length; ++i)
+			{
+				if(scores[i] >= 0 && pick-- == 0)
+					return i;
+			}
+		}
+		
+		double threshold = gen.nextDouble() * cumulativeScore;
+		
+		int newStart = lastPositive;		//if rounding leaves part of the threshold over
+		for(int i=0; i < scores.length; ++i)
+		{
+			if(scores[i] <= 0)
+				continue;
+			if(threshold < scores[i])
+			{
+				newStart = i;
+				break;
+			}
+			else
+			{
+				threshold -= scores[i];
+			}
+		}
+		
+		return newStart;
+	}
 }
@@ -0,0 +1,114 @@
+package motifsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Finds several distinct motifs of a dataset one after another. After each round the
+ * aligned occurrences of the motif found are masked in the dataset, so the next round's
+ * finder skips them and converges to a different motif. Every round's finder is created
+ * over the same Dataset, so the packed sequences, background models and any k-mer index
+ * are reused; only the masks change between rounds. The masks are cleared when the run ends.
+ * @author Ricky
+ *
+ */
+public class IterativeMotifRunner
+{
+	private Dataset dataset;
+	private int rounds;							//number of motifs to find
+	private int trials;							//trials of each round's finder
+	private Supplier<Finder> finderFactory;		//creates the finder of each round, over the dataset
+
+	public IterativeMotifRunner(Dataset dataset, int rounds, int trials, Supplier<Finder> finderFactory)
+	{
+		try{
+			if(rounds < 1)
+				throw new Exception("At least one motif must be searched for");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		this.dataset = dataset;
+		this.rounds = rounds;
+		this.trials = trials;
+		this.finderFactory = finderFactory;
+	}
+
+	/**
+	 * Runs every round and returns the motifs in the order they were found
+	 * @return
+	 */
+	public List<Result> run()
+	{
+		List<Result> results = new ArrayList<Result>();
+		dataset.clearMasks();
+		for(int round=0; round < rounds; ++round)
+		{
+			Finder finder = finderFactory.get();
+			finder.setVerbose(false);
+			Sequence motif = finder.runMultiple(trials);
+			Profile profile = finder.getCurrentProfile();
+			Result result = new Result(round, motif, finder.getBestScore(), profile);
+			results.add(result);
+
+			//Hide this motif's occurrences from the following rounds
+			for(Map.Entry<Sequence, Integer> entry : profile.getAlignmentStarts().entrySet())
+			{
+				dataset.maskWindow(entry.getKey(), entry.getValue(), profile.length());
+			}
+		}
+		dataset.clearMasks();
+		return results;
+	}
+
+	/**
+	 * Motif found in one round
+	 */
+	public static class Result
+	{
+		private int round;
+		private Sequence motif;
+		private double score;
+		private Profile profile;
+
+		public Result(int round, Sequence motif, double score, Profile profile)
+		{
+			this.round = round;
+			this.motif = motif;
+			this.score = score;
+			this.profile = profile;
+		}
+
+		public int getRound()
+		{
+			return round;
+		}
+
+		public Sequence getMotif()
+		{
+			return motif;
+		}
+
+		public double getScore()
+		{
+			return score;
+		}
+
+		public Profile getProfile()
+		{
+			return profile;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("Round : %d - Score : %.5f - Motif : %s - Alignments : %s", round, score, motif, profile.alignmentsToString());
+		}
+	}
+}
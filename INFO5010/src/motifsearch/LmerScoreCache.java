@@ -0,0 +1,129 @@
+package motifsearch;
+
+import scoring.Score;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Keeps the l-mer scores of each sequence against a changing profile, for additive
+ * scores (see Score.isAdditive). When a sequence is scored again, only the columns of
+ * the profile whose version changed since are patched: each window gains the change
+ * in the positionScore of its symbol at that column. Moving one alignment changes at
+ * most length columns, and usually only a few, so this is much cheaper than rescoring
+ * every window. Masks must not change while the cache is in use.
+ * @author Ricky
+ *
+ */
+class LmerScoreCache
+{
+	private Profile profile;
+	private Score scorer;
+	private Dataset dataset;
+	private boolean bothStrands;			//scores hold the reverse complement windows [m, 2m) as well
+	private int length;
+	private int height;
+	private double[][] scores;				//scores of each sequence's windows, by index in the sequence list, null until first scored
+	private int[][] codes;					//mapped ints of each sequence
+	private long[][] seenVersions;			//column versions each sequence's scores are up to date with
+	private double[][] seenColumns;			//positionScore of each symbol of each column at those versions, [position * height + symbol]
+	private double[] column;				//positionScore of each symbol of the column being patched
+	private double[] change;				//change in positionScore of each symbol of the column being patched
+
+	LmerScoreCache(Profile profile, Score scorer, boolean bothStrands)
+	{
+		this.profile = profile;
+		this.scorer = scorer;
+		this.dataset = profile.getDataset();
+		this.bothStrands = bothStrands;
+		length = profile.length();
+		height = profile.height();
+		int n = profile.getSequenceCount();
+		scores = new double[n][];
+		codes = new int[n][];
+		seenVersions = new long[n][];
+		seenColumns = new double[n][];
+		column = new double[height];
+		change = new double[height];
+	}
+
+	/**
+	 * Scores of every window of the sequence against the current profile, masked windows
+	 * being -Infinity. The array is owned by the cache and patched in place by later calls.
+	 * @param index index of the sequence in the profile's sequence list
+	 * @param seq
+	 * @return scores of the windows [0, m), then of their reverse complements [m, 2m) if both strands are scored
+	 */
+	double[] scoreAllLmers(int index, Sequence seq)
+	{
+		if(scores[index] == null)
+		{
+			fill(index, seq);
+			return scores[index];
+		}
+
+		double[] result = scores[index];
+		int[] seqCodes = codes[index];
+		long[] versions = seenVersions[index];
+		double[] columns = seenColumns[index];
+		int windows = seqCodes.length - length + 1;
+		for(int pos=0; pos < length; ++pos)
+		{
+			long version = profile.getColumnVersion(pos);
+			if(version == versions[pos])
+				continue;
+			versions[pos] = version;
+			boolean changed = false;
+			for(int a=0; a < height; ++a)
+			{
+				column[a] = scorer.positionScore(profile, a, pos);
+				change[a] = column[a] - columns[pos * height + a];
+				columns[pos * height + a] = column[a];
+				changed |= (change[a] != 0);
+			}
+			if(!changed)
+				continue;
+			for(int w=0; w < windows; ++w)
+			{
+				result[w] += change[seqCodes[w + pos]];
+			}
+			if(bothStrands)
+			{
+				for(int w=0; w < windows; ++w)
+				{
+					result[windows + w] += change[PackedSequence.complement(seqCodes[w + length - 1 - pos])];
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Scores the sequence from scratch and records the columns it was scored against
+	 */
+	private void fill(int index, Sequence seq)
+	{
+		PackedSequence packed = dataset.getPackedSequence(seq);
+		int[] seqCodes = new int[packed.size()];
+		for(int i=0; i < seqCodes.length; ++i)
+		{
+			seqCodes[i] = packed.getCode(i);
+		}
+		codes[index] = seqCodes;
+		scores[index] = bothStrands ? profile.scoreAllLmersBothStrands(seq, scorer) : profile.scoreAllLmers(seq, scorer);
+
+		long[] versions = new long[length];
+		double[] columns = new double[length * height];
+		for(int pos=0; pos < length; ++pos)
+		{
+			versions[pos] = profile.getColumnVersion(pos);
+			for(int a=0; a < height; ++a)
+			{
+				columns[pos * height + a] = scorer.positionScore(profile, a, pos);
+			}
+		}
+		seenVersions[index] = versions;
+		seenColumns[index] = columns;
+	}
+}
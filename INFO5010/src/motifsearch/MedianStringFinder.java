@@ -0,0 +1,215 @@
+package motifsearch;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.Sequence;
+
+/**
+ * Exact median string search. Walks the tree of all |alphabet|^l consensus words,
+ * pruning every prefix whose total Hamming distance to the sequences already exceeds
+ * the best complete word found so far. Distances are computed bit-parallel on packed
+ * windows and the upper levels of the tree are split across a fork-join pool.
+ * Only practical for short motifs (l <= 12 for DNA).
+ * @author Ricky
+ *
+ */
+public class MedianStringFinder extends Finder
+{
+	private int bitsPerSymbol;
+	private long[][] windows;				//packed codes of every l-mer, for each sequence
+	private int splitDepth;					//subtrees above this depth are searched as separate tasks
+	private volatile int bestDistance;		//total distance of the best word found so far
+	private volatile long bestWord;			//packed code of the best word found so far
+
+	public MedianStringFinder(Dataset dataset, int motifLength, Score scorer)
+	{
+		super(dataset, motifLength, scorer);
+		try{
+			if(motifLength > PackedSequence.maxWindowLength(alphabet))
+				throw new Exception("Motif is too long for the median string search");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		bitsPerSymbol = PackedSequence.bitsPerSymbol(alphabet);
+
+		//Split until there are a few tasks per core
+		int tasks = 1;
+		splitDepth = 0;
+		while(tasks < 4 * ForkJoinPool.getCommonPoolParallelism() && splitDepth < motifLength)
+		{
+			tasks *= alphabet.getSize();
+			splitDepth++;
+		}
+	}
+
+	public MedianStringFinder(Dataset dataset, int motifLength)
+	{
+		this(dataset, motifLength, new RelativeInformationScore());
+	}
+
+	public MedianStringFinder(Alphabet alphabet, List<Sequence> seqList, int motifLength, Score scorer)
+	{
+		this(new Dataset(alphabet, seqList), motifLength, scorer);
+	}
+
+	public MedianStringFinder(Alphabet alphabet, List<Sequence> seqList, int motifLength)
+	{
+		this(alphabet, seqList, motifLength, new RelativeInformationScore());
+	}
+
+	/**
+	 * Finds the median string (ties are broken by the smallest packed code, so the result
+	 * is deterministic) and aligns each sequence to its closest l-mer
+	 */
+	@Override
+	public Sequence findMotifs()
+	{
+		printAlgorithmStart("Median String Finder");
+
+		windows = new long[seqList.size()][];
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			windows[s] = dataset.getPackedSequences().get(s).getAllWindows(motifLength);
+		}
+
+		//The first l-mer of the first sequence gives the initial bound
+		bestWord = windows[0][0];
+		bestDistance = totalDistance(bestWord, motifLength, Integer.MAX_VALUE);
+
+		ForkJoinPool.commonPool().invoke(new SubtreeSearch(0L, 0));
+
+		//Align every sequence to its closest l-mer
+		long fullMask = PackedSequence.lowBitMask(motifLength, bitsPerSymbol);
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			int bestStart = 0;
+			int minDist = Integer.MAX_VALUE;
+			for(int i=0; i < windows[s].length; ++i)
+			{
+				int dist = PackedSequence.mismatches(bestWord, windows[s][i], fullMask, bitsPerSymbol);
+				if(dist < minDist)
+				{
+					minDist = dist;
+					bestStart = i;
+				}
+			}
+			currentProfile.updateAlignmentStart(seqList.get(s), bestStart);
+		}
+
+		Sequence median = PackedSequence.unpack(alphabet, bestWord, motifLength);
+		if(verbose)
+			out.println(String.format("Median string total distance : %d", bestDistance));
+		printAlgorithmEnd(scorer.calculateScore(currentProfile), median);
+		return median;
+	}
+
+	/**
+	 * Sum over all sequences of the minimum distance between the prefix and the
+	 * prefix of any l-mer. Stops early once the sum exceeds the given bound.
+	 * @param prefix packed prefix code, aligned to the highest fields of a window
+	 * @param depth length of the prefix
+	 * @param bound
+	 * @return total distance, or a value greater than bound
+	 */
+	private int totalDistance(long prefix, int depth, int bound)
+	{
+		long mask = PackedSequence.lowBitMask(depth, bitsPerSymbol) << ((motifLength - depth) * bitsPerSymbol);
+		int total = 0;
+		for(long[] seqWindows : windows)
+		{
+			int minDist = depth;
+			for(int i=0; i < seqWindows.length && minDist > 0; ++i)
+			{
+				int dist = PackedSequence.mismatches(prefix, seqWindows[i], mask, bitsPerSymbol);
+				if(dist < minDist)
+					minDist = dist;
+			}
+			total += minDist;
+			if(total > bound)
+				break;
+		}
+		return total;
+	}
+
+	/**
+	 * Records a complete word if it beats the best so far
+	 * @param word
+	 * @param distance
+	 */
+	private synchronized void offer(long word, int distance)
+	{
+		if(distance < bestDistance || (distance == bestDistance && word < bestWord))
+		{
+			bestWord = word;
+			bestDistance = distance;
+		}
+	}
+
+	/**
+	 * Searches every word extending the given prefix
+	 */
+	private class SubtreeSearch extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private long prefix;		//packed prefix, aligned to the highest fields of a window
+		private int depth;
+
+		public SubtreeSearch(long prefix, int depth)
+		{
+			this.prefix = prefix;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(depth < splitDepth)
+			{
+				SubtreeSearch[] children = new SubtreeSearch[alphabet.getSize()];
+				for(int a=0; a < children.length; ++a)
+				{
+					children[a] = new SubtreeSearch(extend(prefix, depth, a), depth + 1);
+				}
+				invokeAll(children);
+			}
+			else
+			{
+				search(prefix, depth);
+			}
+		}
+
+		private void search(long prefix, int depth)
+		{
+			if(depth > 0)
+			{
+				int bound = bestDistance;
+				int dist = totalDistance(prefix, depth, bound);
+				//Prune when no word in the subtree can beat the best, or tie with a smaller code
+				if(dist > bound || (dist == bound && prefix > bestWord))
+					return;
+				if(depth == motifLength)
+				{
+					offer(prefix, dist);
+					return;
+				}
+			}
+			for(int a=0; a < alphabet.getSize(); ++a)
+			{
+				search(extend(prefix, depth, a), depth + 1);
+			}
+		}
+
+		private long extend(long prefix, int depth, int symbol)
+		{
+			return prefix | (((long)symbol) << ((motifLength - depth - 1) * bitsPerSymbol));
+		}
+	}
+}
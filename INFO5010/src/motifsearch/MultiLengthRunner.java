@@ -0,0 +1,146 @@
+package motifsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Runs a finder for every motif length in a range, with the lengths in parallel.
+ * The finders are created by a factory over one Dataset, so the sequences, their
+ * statistics, packed copies, background models and any k-mer index are built once
+ * and shared by all lengths. Since longer motifs collect more information, the
+ * results are ranked by their score per position.
+ * @author Ricky
+ *
+ */
+public class MultiLengthRunner
+{
+	private int minLength;
+	private int maxLength;
+	private int trials;							//trials of each finder
+	private int numThreads;						//number of lengths run at once
+	private IntFunction<Finder> finderFactory;	//creates the finder for a motif length
+
+	public MultiLengthRunner(int minLength, int maxLength, int trials, int numThreads, IntFunction<Finder> finderFactory)
+	{
+		try{
+			if(minLength < 1 || maxLength < minLength)
+				throw new Exception("Motif length range must satisfy 1 <= minLength <= maxLength");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.trials = trials;
+		this.numThreads = numThreads;
+		this.finderFactory = finderFactory;
+	}
+
+	/**
+	 * Runs every length and returns the results by decreasing score per position
+	 * @return
+	 */
+	public List<Result> run()
+	{
+		List<Callable<Result>> jobs = new ArrayList<Callable<Result>>();
+		for(int length=minLength; length <= maxLength; ++length)
+		{
+			final int motifLength = length;
+			jobs.add(() -> {
+				Finder finder = finderFactory.apply(motifLength);
+				finder.setVerbose(false);
+				Sequence motif = finder.runMultiple(trials);
+				return new Result(motifLength, motif, finder.getBestScore(), finder.getCurrentProfile());
+			});
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, jobs.size()));
+		try
+		{
+			for(Future<Result> f : pool.invokeAll(jobs))
+			{
+				results.add(f.get());
+			}
+		}
+		catch(InterruptedException | ExecutionException e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		//Highest score per position first, shorter motifs first on ties
+		Collections.sort(results, Comparator.comparingDouble(Result::getNormalizedScore).reversed()
+				.thenComparingInt(Result::getLength));
+		return results;
+	}
+
+	/**
+	 * Best motif found for one length
+	 */
+	public static class Result
+	{
+		private int length;
+		private Sequence motif;
+		private double score;
+		private Profile profile;
+
+		public Result(int length, Sequence motif, double score, Profile profile)
+		{
+			this.length = length;
+			this.motif = motif;
+			this.score = score;
+			this.profile = profile;
+		}
+
+		public int getLength()
+		{
+			return length;
+		}
+
+		public Sequence getMotif()
+		{
+			return motif;
+		}
+
+		public double getScore()
+		{
+			return score;
+		}
+
+		/**
+		 * Score per motif position, comparable across lengths
+		 * @return
+		 */
+		public double getNormalizedScore()
+		{
+			return score / length;
+		}
+
+		public Profile getProfile()
+		{
+			return profile;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("Length : %d - Score : %.5f - Score/Length : %.5f - Motif : %s", length, score, getNormalizedScore(), motif);
+		}
+	}
+}
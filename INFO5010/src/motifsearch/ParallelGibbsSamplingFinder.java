@@ -0,0 +1,138 @@
+package motifsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.ConcurrentProfile;
+import sequence.Sequence;
+
+/**
+ * Hogwild-style Gibbs sampler. Worker threads each own a disjoint stripe of the
+ * sequence list and resample their sequences concurrently against a shared
+ * ConcurrentProfile, without locking. Reads of the profile may be slightly stale.
+ * @author Ricky
+ *
+ */
+public class ParallelGibbsSamplingFinder extends Finder
+{
+	private int numSweeps;				//number of passes over every sequence
+	private int numThreads;				//number of worker threads
+	private ConcurrentProfile sharedProfile;
+
+	public ParallelGibbsSamplingFinder(Dataset dataset, int motifLength, int numSweeps, int numThreads, Score scorer)
+	{
+		super(dataset, motifLength, scorer);
+		this.numSweeps = numSweeps;
+		this.numThreads = numThreads;
+		sharedProfile = new ConcurrentProfile(dataset, motifLength);
+		currentProfile = sharedProfile;
+	}
+	
+	public ParallelGibbsSamplingFinder(Dataset dataset, int motifLength, int numSweeps, int numThreads)
+	{
+		this(dataset, motifLength, numSweeps, numThreads, new RelativeInformationScore());
+	}
+	
+	public ParallelGibbsSamplingFinder(Alphabet alphabet, List<Sequence> seqList,
+			int motifLength, int numSweeps, int numThreads, Score scorer)
+	{
+		this(new Dataset(alphabet, seqList), motifLength, numSweeps, numThreads, scorer);
+	}
+
+	public ParallelGibbsSamplingFinder(Alphabet alphabet, List<Sequence> seqList,
+			int motifLength, int numSweeps, int numThreads)
+	{
+		this(alphabet, seqList, motifLength, numSweeps, numThreads, new RelativeInformationScore());
+	}
+
+	/**
+	 * Each sweep, every worker visits the sequences of its stripe in random order,
+	 * removes the sequence from the shared profile, samples a new start from the
+	 * scores of its l-mers and adds it back at the new start.
+	 */
+	@Override
+	public Sequence findMotifs()
+	{
+		printAlgorithmStart("Parallel Gibbs Sampling Finder");
+
+		//Select starting positions, at random or seeded from the k-mer index
+		initializeAlignment();
+		double currentProfileScore = scorer.calculateScore(sharedProfile);
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			for(int sweep=0; sweep < numSweeps; ++sweep)
+			{
+				if(sweep % 10 == 0)
+					printIterationInfo(sweep, currentProfileScore, sharedProfile.alignmentsToString());
+
+				List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+				for(int t=0; t < numThreads; ++t)
+				{
+					workers.add(createWorker(t, random.nextLong()));
+				}
+				for(Future<Void> f : pool.invokeAll(workers))
+				{
+					f.get();
+				}
+				currentProfileScore = scorer.calculateScore(sharedProfile);
+			}
+		}
+		catch(InterruptedException | ExecutionException e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		printAlgorithmEnd(currentProfileScore, sharedProfile.getConsensus());
+		return sharedProfile.getConsensus();
+	}
+
+	/**
+	 * Creates a worker for one sweep over the stripe of sequences {stripe, stripe + numThreads, ...}
+	 * @param stripe
+	 * @param seed seed of the worker's generator, drawn from the finder's
+	 * @return
+	 */
+	private Callable<Void> createWorker(final int stripe, final long seed)
+	{
+		return new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				Random gen = new Random(seed);
+				List<Sequence> stripeSeqs = new ArrayList<Sequence>();
+				for(int i=stripe; i < seqList.size(); i += numThreads)
+				{
+					stripeSeqs.add(seqList.get(i));
+				}
+				Collections.shuffle(stripeSeqs, gen);
+
+				for(Sequence seq : stripeSeqs)
+				{
+					sharedProfile.excludeSequence(seq);
+					double[] scores = sharedProfile.scoreAllLmers(seq, scorer);
+					sharedProfile.includeSequence(seq, GibbsSamplingFinder.sampleStart(scores, gen));
+				}
+				return null;
+			}
+		};
+	}
+}
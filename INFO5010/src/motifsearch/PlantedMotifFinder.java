@@ -0,0 +1,424 @@
+package motifsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.Sequence;
+
+/**
+ * Exact solver for the planted (l,d)-motif problem, in the style of the PMS algorithms.
+ * Every word within d mismatches of an l-mer of the first sequence is a candidate, and
+ * the candidates are intersected with the d-neighbourhoods of the other sequences.
+ * When the whole word space fits in the memory budget the neighbourhoods are built as
+ * bitsets, one sequence per task, and ANDed together. Otherwise the candidates are kept
+ * as sorted arrays (spilled to disk in sorted runs when they outgrow the budget) and each
+ * candidate is tested against the other sequences with the packed mismatch kernel.
+ * @author Ricky
+ *
+ */
+public class PlantedMotifFinder extends Finder
+{
+	private int maxMismatches;			//d, the number of mismatches allowed per occurrence
+	private long memoryBudget;			//bytes available for candidate sets
+	private int bitsPerSymbol;
+	private long symbolMask;
+	private long fullMask;				//low-bit mask selecting every field of a window
+	private long[][] windows;			//packed codes of every l-mer, for each sequence
+
+	public PlantedMotifFinder(Dataset dataset, int motifLength, int maxMismatches, long memoryBudget, Score scorer)
+	{
+		super(dataset, motifLength, scorer);
+		try{
+			if(motifLength > PackedSequence.maxWindowLength(alphabet))
+				throw new Exception("Motif is too long for the planted motif search");
+			if(maxMismatches < 0 || maxMismatches > motifLength)
+				throw new Exception("Number of mismatches must be in [0, motif length]");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		this.maxMismatches = maxMismatches;
+		this.memoryBudget = memoryBudget;
+		bitsPerSymbol = PackedSequence.bitsPerSymbol(alphabet);
+		symbolMask = (1L << bitsPerSymbol) - 1;
+		fullMask = PackedSequence.lowBitMask(motifLength, bitsPerSymbol);
+	}
+
+	public PlantedMotifFinder(Dataset dataset, int motifLength, int maxMismatches, long memoryBudget)
+	{
+		this(dataset, motifLength, maxMismatches, memoryBudget, new RelativeInformationScore());
+	}
+
+	public PlantedMotifFinder(Alphabet alphabet, List<Sequence> seqList,
+			int motifLength, int maxMismatches, long memoryBudget, Score scorer)
+	{
+		this(new Dataset(alphabet, seqList), motifLength, maxMismatches, memoryBudget, scorer);
+	}
+
+	public PlantedMotifFinder(Alphabet alphabet, List<Sequence> seqList,
+			int motifLength, int maxMismatches, long memoryBudget)
+	{
+		this(alphabet, seqList, motifLength, maxMismatches, memoryBudget, new RelativeInformationScore());
+	}
+
+	/**
+	 * Finds all (l,d)-motifs, then reports the one closest to the sequences in total
+	 * distance (ties broken by the smallest packed code) and aligns each sequence to it.
+	 */
+	@Override
+	public Sequence findMotifs()
+	{
+		printAlgorithmStart("Planted Motif Finder");
+
+		windows = new long[seqList.size()][];
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			windows[s] = dataset.getPackedSequences().get(s).getAllWindows(motifLength);
+		}
+
+		long[] motifs;
+		long spaceBits = 1L << (motifLength * bitsPerSymbol);
+		int concurrentSets = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+		if(motifLength * bitsPerSymbol < 37 && (spaceBits / 8) * concurrentSets <= memoryBudget)
+		{
+			motifs = findWithBitsets();
+		}
+		else
+		{
+			motifs = findWithSortedCandidates();
+		}
+
+		if(verbose)
+			out.println(String.format("Found %d (%d,%d)-motifs", motifs.length, motifLength, maxMismatches));
+		if(motifs.length == 0)
+		{
+			System.err.println("No motif occurs in every sequence within the given number of mismatches");
+			printAlgorithmEnd(scorer.calculateScore(currentProfile), currentProfile.getConsensus());
+			return currentProfile.getConsensus();
+		}
+
+		//Report the motif closest to the sequences overall
+		long bestMotif = motifs[0];
+		int bestDistance = Integer.MAX_VALUE;
+		for(long motif : motifs)
+		{
+			int dist = 0;
+			for(int s=0; s < windows.length; ++s)
+			{
+				dist += minDistance(motif, windows[s]);
+			}
+			if(dist < bestDistance)
+			{
+				bestDistance = dist;
+				bestMotif = motif;
+			}
+		}
+
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			int minDist = minDistance(bestMotif, windows[s]);
+			for(int i=0; i < windows[s].length; ++i)
+			{
+				if(PackedSequence.mismatches(bestMotif, windows[s][i], fullMask, bitsPerSymbol) == minDist)
+				{
+					currentProfile.updateAlignmentStart(seqList.get(s), i);
+					break;
+				}
+			}
+		}
+
+		Sequence motif = PackedSequence.unpack(alphabet, bestMotif, motifLength);
+		printAlgorithmEnd(scorer.calculateScore(currentProfile), motif);
+		return motif;
+	}
+
+	/**
+	 * Intersects the neighbourhood bitsets of all sequences, building them in parallel
+	 * @return sorted motif codes
+	 */
+	private long[] findWithBitsets()
+	{
+		long[] candidates = neighbourhoodBits(0);
+		if(windows.length > 1)
+		{
+			long[] others = IntStream.range(1, windows.length).parallel()
+					.mapToObj(s -> neighbourhoodBits(s))
+					.reduce((a, b) -> {
+						for(int w=0; w < a.length; ++w)
+							a[w] &= b[w];
+						return a;
+					}).get();
+			for(int w=0; w < candidates.length; ++w)
+				candidates[w] &= others[w];
+		}
+
+		long[] result = new long[0];
+		int count = 0;
+		for(int w=0; w < candidates.length; ++w)
+		{
+			long word = candidates[w];
+			while(word != 0)
+			{
+				if(count == result.length)
+					result = Arrays.copyOf(result, Math.max(16, 2 * count));
+				result[count++] = (((long)w) << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Builds the bitset of every word within d mismatches of an l-mer of the sequence
+	 * @param s sequence ordinal
+	 * @return
+	 */
+	private long[] neighbourhoodBits(int s)
+	{
+		final long[] bits = new long[(int)(((1L << (motifLength * bitsPerSymbol)) + 63) >>> 6)];
+		for(long window : windows[s])
+		{
+			neighbourhood(window, 0, maxMismatches, code -> bits[(int)(code >>> 6)] |= 1L << code);
+		}
+		return bits;
+	}
+
+	/**
+	 * Enumerates the candidates of the first sequence into sorted, de-duplicated runs
+	 * no larger than the memory budget, spilling runs to temporary files when there is
+	 * more than one, then filters every run against the other sequences.
+	 * @return sorted motif codes
+	 */
+	private long[] findWithSortedCandidates()
+	{
+		final int runCapacity = (int)Math.max(1024, Math.min(Integer.MAX_VALUE - 8, memoryBudget / 16));
+		final CandidateRuns runs = new CandidateRuns(runCapacity);
+		for(long window : windows[0])
+		{
+			neighbourhood(window, 0, maxMismatches, runs);
+		}
+
+		List<long[]> survivors = new ArrayList<long[]>();
+		int total = 0;
+		try
+		{
+			//Only one run is held in memory at a time
+			for(File run : runs.getSpilledRuns())
+			{
+				long[] kept = filter(CandidateRuns.readRun(run));
+				survivors.add(kept);
+				total += kept.length;
+			}
+		}
+		catch(IOException e)
+		{
+			//Thrown rather than exiting, a server must survive a full disk
+			throw new UncheckedIOException("Could not read back spilled candidates", e);
+		}
+		long[] lastKept = filter(runs.getBufferedRun());
+		survivors.add(lastKept);
+		total += lastKept.length;
+
+		//Runs are sorted individually, so merge and drop duplicates between runs
+		long[] result = new long[total];
+		int pos = 0;
+		for(long[] kept : survivors)
+		{
+			System.arraycopy(kept, 0, result, pos, kept.length);
+			pos += kept.length;
+		}
+		return Arrays.copyOf(result, compact(result, result.length));
+	}
+
+	/**
+	 * Keeps the candidates within d mismatches of an l-mer in every other sequence,
+	 * testing blocks of candidates in parallel
+	 * @param candidates sorted candidate codes
+	 * @return surviving codes, in order
+	 */
+	private long[] filter(final long[] candidates)
+	{
+		final boolean[] keep = new boolean[candidates.length];
+		IntStream.range(0, candidates.length).parallel().forEach(c -> {
+			for(int s=1; s < windows.length; ++s)
+			{
+				if(minDistance(candidates[c], windows[s]) > maxMismatches)
+					return;
+			}
+			keep[c] = true;
+		});
+
+		int count = 0;
+		for(int c=0; c < candidates.length; ++c)
+		{
+			if(keep[c])
+				candidates[count++] = candidates[c];
+		}
+		return Arrays.copyOf(candidates, count);
+	}
+
+	private int minDistance(long word, long[] seqWindows)
+	{
+		int minDist = motifLength;
+		for(int i=0; i < seqWindows.length && minDist > 0; ++i)
+		{
+			int dist = PackedSequence.mismatches(word, seqWindows[i], fullMask, bitsPerSymbol);
+			if(dist < minDist)
+				minDist = dist;
+		}
+		return minDist;
+	}
+
+	/**
+	 * Emits every word within the remaining number of mismatches of the given word,
+	 * changing only positions from fromPos onwards. Each word is emitted exactly once.
+	 * @param word
+	 * @param fromPos
+	 * @param remaining
+	 * @param out
+	 */
+	private void neighbourhood(long word, int fromPos, int remaining, LongConsumer out)
+	{
+		out.accept(word);
+		if(remaining == 0)
+			return;
+		for(int pos=fromPos; pos < motifLength; ++pos)
+		{
+			int shift = pos * bitsPerSymbol;
+			long original = (word >>> shift) & symbolMask;
+			long cleared = word & ~(symbolMask << shift);
+			for(int a=0; a < alphabet.getSize(); ++a)
+			{
+				if(a != original)
+					neighbourhood(cleared | (((long)a) << shift), pos + 1, remaining - 1, out);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the first count values and removes duplicates in place
+	 * @param values
+	 * @param count
+	 * @return number of unique values
+	 */
+	private static int compact(long[] values, int count)
+	{
+		Arrays.sort(values, 0, count);
+		int unique = 0;
+		for(int i=0; i < count; ++i)
+		{
+			if(unique == 0 || values[i] != values[unique - 1])
+				values[unique++] = values[i];
+		}
+		return unique;
+	}
+
+	/**
+	 * Collects candidate codes into a bounded buffer. Each time the buffer fills up it is
+	 * compacted, and if it is still more than half full it is written to a temporary 
+	 * file as one sorted run.
+	 */
+	private static class CandidateRuns implements LongConsumer
+	{
+		private long[] buffer;
+		private int count = 0;
+		private List<File> spilledRuns = new ArrayList<File>();
+
+		public CandidateRuns(int capacity)
+		{
+			buffer = new long[capacity];
+		}
+
+		@Override
+		public void accept(long code)
+		{
+			if(count == buffer.length)
+			{
+				//Duplicates are common, so compact before spilling
+				count = compact(buffer, count);
+				if(count > buffer.length / 2)
+				{
+					spill();
+				}
+			}
+			buffer[count++] = code;
+		}
+
+		private void spill()
+		{
+			try
+			{
+				File run = File.createTempFile("pms-candidates", ".run");
+				run.deleteOnExit();
+				try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run))))
+				{
+					out.writeInt(count);
+					for(int i=0; i < count; ++i)
+					{
+						out.writeLong(buffer[i]);
+					}
+				}
+				spilledRuns.add(run);
+				count = 0;
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException("Could not spill candidates", e);
+			}
+		}
+
+		public List<File> getSpilledRuns()
+		{
+			return spilledRuns;
+		}
+
+		/**
+		 * Returns the sorted run still held in memory
+		 * @return
+		 */
+		public long[] getBufferedRun()
+		{
+			return Arrays.copyOf(buffer, compact(buffer, count));
+		}
+
+		/**
+		 * Reads a spilled run back from disk and deletes the file
+		 * @param run
+		 * @return
+		 */
+		public static long[] readRun(File run) throws IOException
+		{
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(run))))
+			{
+				long[] codes = new long[in.readInt()];
+				for(int i=0; i < codes.length; ++i)
+				{
+					codes[i] = in.readLong();
+				}
+				return codes;
+			}
+			finally
+			{
+				run.delete();
+			}
+		}
+	}
+}
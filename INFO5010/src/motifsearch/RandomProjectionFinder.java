@@ -12,6 +12,7 @@ import java.util.Set;
 import scoring.RelativeInformationScore;
 import scoring.Score;
 import sequence.Alphabet;
+import sequence.Dataset;
 import sequence.Profile;
 import sequence.Sequence;
 
@@ -21,15 +22,27 @@ public class RandomProjectionFinder extends Finder
 	private int binThreshold;		//determines which bins to select in hash table  
 	private int numIterations;		//number of iterations of template selection and hashing to perform
 	
-	public RandomProjectionFinder(Alphabet alphabet, List<Sequence> seqList,
-			int motifLength, int projectionSize, int binThreshold, int numIterations, Score scorer)
+	public RandomProjectionFinder(Dataset dataset, int motifLength, 
+			int projectionSize, int binThreshold, int numIterations, Score scorer)
 	{
-		super(alphabet, seqList, motifLength, scorer);
+		super(dataset, motifLength, scorer);
 		this.projectionSize = projectionSize;
 		this.binThreshold = binThreshold;
 		this.numIterations = numIterations;
 	}
 	
+	public RandomProjectionFinder(Dataset dataset, int motifLength, 
+			int projectionSize, int binThreshold, int numIterations)
+	{
+		this(dataset, motifLength, projectionSize, binThreshold, numIterations, new RelativeInformationScore());
+	}
+	
+	public RandomProjectionFinder(Alphabet alphabet, List<Sequence> seqList,
+			int motifLength, int projectionSize, int binThreshold, int numIterations, Score scorer)
+	{
+		this(new Dataset(alphabet, seqList), motifLength, projectionSize, binThreshold, numIterations, scorer);
+	}
+	
 	public RandomProjectionFinder(Alphabet alphabet, List<Sequence> seqList,
 			int motifLength, int projectionSize, int binThreshold, int numIterations)
 	{
@@ -136,7 +149,7 @@ public class RandomProjectionFinder extends Finder
 		Set<Integer> template = new HashSet<Integer>();
 		
 		//Generate k distinct random integers
-		Random gen = new Random();
+		Random gen = random;
 		while(template.size() != k)
 		{
 			template.add(gen.nextInt(l));
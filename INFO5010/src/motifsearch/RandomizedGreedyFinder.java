@@ -1,17 +1,23 @@
 package motifsearch;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import scoring.RelativeInformationScore;
 import scoring.Score;
 import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.ProfileSnapshot;
 import sequence.Sequence;
 
 public class RandomizedGreedyFinder extends Finder
 {
 	private long maxIterations = 50000; 
 	private boolean updateEachStep;
+	private LmerScoreCache scoreCache = null;		//l-mer scores patched between steps, for additive scores updated each step
 	
 	/**
 	 * Setup for randomized greedy algorithm
@@ -21,11 +27,21 @@ public class RandomizedGreedyFinder extends Finder
 	 * @param updateEachStep	profile matrix recalculation after all re-alignments or after each re-alignment
 	 * @param scorer
 	 */
+	public RandomizedGreedyFinder(Dataset dataset, int motifLength, boolean updateEachStep, Score scorer)
+	{
+		super(dataset, motifLength, scorer);
+		this.updateEachStep = updateEachStep;
+	}
+	
+	public RandomizedGreedyFinder(Dataset dataset, int motifLength, boolean updateEachStep)
+	{
+		this(dataset, motifLength, updateEachStep, new RelativeInformationScore());
+	}
+	
 	public RandomizedGreedyFinder(Alphabet alphabet, List<Sequence> seqList,
 			int motifLength, boolean updateEachStep, Score scorer)
 	{
-		super(alphabet, seqList, motifLength, scorer);
-		this.updateEachStep = updateEachStep;
+		this(new Dataset(alphabet, seqList), motifLength, updateEachStep, scorer);
 	}
 	
 	/**
@@ -38,8 +54,7 @@ public class RandomizedGreedyFinder extends Finder
 	public RandomizedGreedyFinder(Alphabet alphabet, List<Sequence> seqList,
 			int motifLength, boolean updateEachStep)
 	{
-		super(alphabet, seqList, motifLength, new RelativeInformationScore());
-		this.updateEachStep = updateEachStep;
+		this(alphabet, seqList, motifLength, updateEachStep, new RelativeInformationScore());
 	}
 
 	/**
@@ -53,8 +68,10 @@ public class RandomizedGreedyFinder extends Finder
 	{		
 		printAlgorithmStart("Randomized Greedy Finder");
 		
-		//Randomly set the motif start positions and update
-		currentProfile.generateRandomAlignment();
+		//Set the motif start positions, at random or seeded from the k-mer index
+		initializeAlignment();
+		//Each step changes few columns, so keep the l-mer scores and patch the changed columns
+		scoreCache = (updateEachStep && scorer.isAdditive()) ? new LmerScoreCache(currentProfile, scorer, bothStrands) : null;
 		
 		//optimize the profile by iteratively finding
 		//the best l-mers and recalculating profiles
@@ -68,41 +85,94 @@ public class RandomizedGreedyFinder extends Finder
 			//printIterationInfo(iters, currentProfileScore, currentProfile.alignmentsToString());
 			bestProfileScore = currentProfileScore; 
 			
-			Map<Sequence, Integer> alignments = currentProfile.getAlignmentStarts();
-			for(Sequence seq : seqList)
+			if(bothStrands)
 			{
-				//Find the best l-mer
-				double[] scores = currentProfile.scoreAllLmers(seq, scorer);
-				int bestLmerStart = findMaxIndex(scores);
-				//Move the start position to the best l-mer and update if 
-				//flag is set by user
-				if(updateEachStep)
-				{
-					currentProfile.updateAlignmentStart(seq, bestLmerStart);
-				}
-				else
+				updateBothStrands();
+			}
+			else if(updateEachStep)
+			{
+				for(int i=0; i < seqList.size(); ++i)
 				{
-					alignments.put(seq, bestLmerStart);
+					//Find the best l-mer and move the start position to it
+					Sequence seq = seqList.get(i);
+					double[] scores = (scoreCache != null) ? scoreCache.scoreAllLmers(i, seq) : currentProfile.scoreAllLmers(seq, scorer);
+					currentProfile.updateAlignmentStart(seq, findMaxIndex(scores));
 				}
 			}
-			//Update after all steps if flag is set by user
-			if(!updateEachStep)
+			else
 			{
-				for(Sequence seq : alignments.keySet())
+				//All sequences are scored against the same matrices, so score them 
+				//concurrently against an immutable snapshot and update after all steps
+				final ProfileSnapshot snapshot = currentProfile.getSnapshot();
+				final int[] bestLmerStarts = new int[seqList.size()];
+				IntStream.range(0, seqList.size()).parallel().forEach(i -> {
+					double[] scores = snapshot.scoreAllLmers(seqList.get(i), scorer);
+					dataset.maskScores(seqList.get(i), motifLength, scores);
+					bestLmerStarts[i] = findMaxIndex(scores);
+				});
+				
+				Map<Sequence, Integer> alignments = new HashMap<Sequence, Integer>();
+				for(int i=0; i < seqList.size(); ++i)
 				{
-					currentProfile.updateAlignmentStart(seq, alignments.get(seq));
+					alignments.put(seqList.get(i), bestLmerStarts[i]);
 				}
+				currentProfile.updateAlignmentStarts(alignments);
 			}
 			
 			currentProfileScore = scorer.calculateScore(currentProfile);
 			iters++;
 		}
 		
+		scoreCache = null;
 		printAlgorithmEnd(currentProfileScore, currentProfile.getConsensus());
 		//The motif is the consensus of the optimized profile
 		return currentProfile.getConsensus();		
 	}
 	
+	/**
+	 * One greedy step over both strands: each sequence moves to its best l-mer on either 
+	 * strand, both strands being scored in a single pass over the packed sequence
+	 */
+	private void updateBothStrands()
+	{
+		if(updateEachStep)
+		{
+			for(int i=0; i < seqList.size(); ++i)
+			{
+				Sequence seq = seqList.get(i);
+				double[] scores = (scoreCache != null) ? scoreCache.scoreAllLmers(i, seq) : currentProfile.scoreAllLmersBothStrands(seq, scorer);
+				int best = findMaxIndex(scores);
+				int windows = scores.length / 2;
+				currentProfile.updateAlignmentStart(seq, best % windows, best >= windows);
+			}
+		}
+		else
+		{
+			final ProfileSnapshot snapshot = currentProfile.getSnapshot();
+			final List<PackedSequence> packed = dataset.getPackedSequences();
+			final int[] bestLmers = new int[seqList.size()];
+			final int[] windows = new int[seqList.size()];
+			IntStream.range(0, seqList.size()).parallel().forEach(i -> {
+				double[] scores = snapshot.scoreAllLmersBothStrands(packed.get(i), scorer);
+				dataset.maskScores(seqList.get(i), motifLength, scores);
+				bestLmers[i] = findMaxIndex(scores);
+				windows[i] = scores.length / 2;
+			});
+			
+			for(int i=0; i < seqList.size(); ++i)
+			{
+				currentProfile.updateAlignmentStart(seqList.get(i), bestLmers[i] % windows[i], bestLmers[i] >= windows[i]);
+			}
+			currentProfile.publishSnapshot();
+		}
+	}
+	
+	@Override
+	public boolean supportsBothStrands()
+	{
+		return true;
+	}
+	
 	public int findMaxIndex(double[] x)
 	{
 		try{
@@ -0,0 +1,285 @@
+package motifsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * On-disk cache of finder results, one file per result in a directory, so repeated
+ * runs of the same deterministic search on the same sequences are read back instead
+ * of searched again. Results are keyed by a SHA-256 of the dataset's fingerprint and
+ * every parameter of the search. Each entry holds the consensus, the score, the
+ * alignment (with strands) and the frequency matrix of the profile.
+ * The directory is kept under a size bound by evicting the least recently used entries,
+ * using the file modification time as the time of last use.
+ * @author Ricky
+ *
+ */
+public class ResultCache
+{
+	private static final int MAGIC = 0x4D465243;		//"MFRC"
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".res";
+
+	private File directory;
+	private long maxBytes;
+
+	public ResultCache(String directory, long maxBytes)
+	{
+		this.directory = new File(directory);
+		this.maxBytes = maxBytes;
+		try{
+			if(!this.directory.isDirectory() && !this.directory.mkdirs())
+				throw new Exception("Cannot create the cache directory " + directory);
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Cache key of a search: SHA-256 of the dataset fingerprint and the parameters, as hex
+	 * @param dataset
+	 * @param parameters every setting that changes the result of the search
+	 * @return
+	 */
+	public static String key(Dataset dataset, String... parameters)
+	{
+		MessageDigest digest = null;
+		try{
+			digest = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		digest.update(dataset.getFingerprint().getBytes(StandardCharsets.UTF_8));
+		for(String parameter : parameters)
+		{
+			digest.update((byte)0);
+			digest.update(parameter.getBytes(StandardCharsets.UTF_8));
+		}
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest())
+		{
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Returns the cached result of the key, rebuilding its profile over the dataset,
+	 * and marks it as recently used. Every field is checked against the dataset before
+	 * it is used, so a truncated or corrupt entry is a miss rather than an error.
+	 * @param key
+	 * @param dataset dataset the result was computed on
+	 * @return null on a miss, or if the entry cannot be read
+	 */
+	public Result get(String key, Dataset dataset)
+	{
+		File file = new File(directory, key + SUFFIX);
+		if(!file.isFile())
+			return null;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			double score = in.readDouble();
+			String motifString = in.readUTF();
+			int length = in.readInt();
+			int height = in.readInt();
+			List<Sequence> seqList = dataset.getSequences();
+			int shortest = Integer.MAX_VALUE;
+			for(Sequence seq : seqList)
+			{
+				shortest = Math.min(shortest, seq.getSize());
+			}
+			if(length < 1 || length > shortest || height != dataset.getAlphabet().getSize() 
+					|| !inAlphabet(motifString, dataset.getAlphabet()))
+				return null;
+			Sequence motif = new Sequence(dataset.getAlphabet(), motifString);
+			int[] pfm = new int[length * height];
+			for(int i=0; i < pfm.length; ++i)
+				pfm[i] = in.readInt();
+			int count = in.readInt();
+			if(count != dataset.getSequenceCount())
+				return null;
+			Map<Sequence, Integer> starts = new HashMap<Sequence, Integer>();
+			Map<Sequence, Boolean> strands = new HashMap<Sequence, Boolean>();
+			for(int s=0; s < count; ++s)
+			{
+				//The strand is kept in the sign bit of the start
+				int code = in.readInt();
+				int start = (code < 0) ? ~code : code;
+				if(start > seqList.get(s).getSize() - length)
+					return null;
+				starts.put(seqList.get(s), start);
+				if(code < 0)
+					strands.put(seqList.get(s), true);
+			}
+			if(!strands.isEmpty() && !PackedSequence.isComplementable(dataset.getAlphabet()))
+				return null;
+			Profile profile = new Profile(dataset, seqList, length, starts, strands);
+			for(int pos=0; pos < length; ++pos)
+			{
+				for(int a=0; a < height; ++a)
+				{
+					if(profile.getPfm(a, pos) != pfm[pos * height + a])
+						return null;
+				}
+			}
+			file.setLastModified(System.currentTimeMillis());
+			return new Result(motif, score, profile, pfm);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Whether every symbol of the string is in the alphabet
+	 */
+	private static boolean inAlphabet(String symbols, Alphabet alphabet)
+	{
+		if(alphabet.isSingleCharacter())
+		{
+			for(int i=0; i < symbols.length(); ++i)
+			{
+				if(alphabet.getInt(symbols.charAt(i)) < 0)
+					return false;
+			}
+			return true;
+		}
+		for(String symbol : symbols.split(""))
+		{
+			if(!alphabet.contains(symbol))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Stores a result, then evicts the least recently used entries beyond the size bound
+	 * @param key
+	 * @param motif
+	 * @param score
+	 * @param profile
+	 * @throws IOException
+	 */
+	public void put(String key, Sequence motif, double score, Profile profile) throws IOException
+	{
+		File temp = File.createTempFile(key, ".tmp", directory);
+		List<Sequence> seqList = profile.getDataset().getSequences();
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeDouble(score);
+			out.writeUTF(motif.toString());
+			out.writeInt(profile.length());
+			out.writeInt(profile.height());
+			for(int pos=0; pos < profile.length(); ++pos)
+			{
+				for(int a=0; a < profile.height(); ++a)
+					out.writeInt(profile.getPfm(a, pos));
+			}
+			Map<Sequence, Integer> starts = profile.getAlignmentStarts();
+			out.writeInt(seqList.size());
+			for(Sequence seq : seqList)
+			{
+				out.writeInt(profile.isReverseStrand(seq) ? ~starts.get(seq) : starts.get(seq));
+			}
+		}
+		Files.move(temp.toPath(), new File(directory, key + SUFFIX).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		evict();
+	}
+
+	/**
+	 * Deletes the least recently used entries until the directory fits the size bound
+	 */
+	private void evict()
+	{
+		File[] entries = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if(entries == null)
+			return;
+		long total = 0;
+		for(File entry : entries)
+		{
+			total += entry.length();
+		}
+		if(total <= maxBytes)
+			return;
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		for(int i=0; i < entries.length && total > maxBytes; ++i)
+		{
+			long size = entries[i].length();
+			if(entries[i].delete())
+				total -= size;
+		}
+	}
+
+	/**
+	 * A cached finder result
+	 */
+	public static class Result
+	{
+		private Sequence motif;
+		private double score;
+		private Profile profile;
+		private int[] pfm;			//[position * height + symbolMappedInt] as stored
+
+		private Result(Sequence motif, double score, Profile profile, int[] pfm)
+		{
+			this.motif = motif;
+			this.score = score;
+			this.profile = profile;
+			this.pfm = pfm;
+		}
+
+		public Sequence getMotif()
+		{
+			return motif;
+		}
+
+		public double getScore()
+		{
+			return score;
+		}
+
+		public Profile getProfile()
+		{
+			return profile;
+		}
+
+		/**
+		 * Frequency matrix as stored, [position * height + symbolMappedInt]
+		 * @return
+		 */
+		public int[] getPfm()
+		{
+			return pfm.clone();
+		}
+	}
+}
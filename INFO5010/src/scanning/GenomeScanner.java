@@ -0,0 +1,509 @@
+package scanning;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import scoring.ScoreDistribution;
+import sequence.Alphabet;
+import sequence.ProfileMatrices;
+
+/**
+ * Scans (multi-)FASTA files with a profile's position weight matrix and writes every
+ * window scoring at or above a threshold as a BED-like record:
+ * <record name> <start> <end> <score> [p-value], with 0-based, end-exclusive coordinates.
+ * The p-value column is written when a score distribution is given, at the cost of 
+ * one array lookup per hit.
+ *
+ * The file is memory-mapped and split into line-aligned chunks that are scanned in
+ * parallel. A first pass over the chunks counts bases and finds headers, so every
+ * chunk knows its record name and base offset; in the second pass each chunk reads
+ * past its end just far enough to finish the windows starting inside it.
+ * Characters outside the alphabet (e.g. N) count as positions but break windows.
+ * @author Ricky
+ *
+ */
+public class GenomeScanner
+{
+	private static final long CHUNK_SIZE = 64L * 1024 * 1024;
+	private static final long OVERLAP_MARGIN = 1024 * 1024;		//bytes mapped past a chunk to finish its last windows
+
+	private int length;
+	private int height;
+	private double[] pwm;					//[position * height + symbolMappedInt]
+	private byte[] codeTable;				//mapped integer of each byte, -1 if not a symbol
+	private double threshold;
+	private int numThreads;
+	private ScoreDistribution distribution;	//if set, the p-value of each hit is reported
+
+	/**
+	 * @param profile matrices to scan with, should not change during the scan (e.g. a ProfileSnapshot)
+	 * @param threshold minimum PWM score of a reported window
+	 * @param numThreads
+	 * @param distribution score distribution of the profile for reporting p-values, or null
+	 */
+	public GenomeScanner(ProfileMatrices profile, double threshold, int numThreads, ScoreDistribution distribution)
+	{
+		Alphabet alphabet = profile.getAlphabet();
+		this.length = profile.length();
+		this.height = profile.height();
+		this.threshold = threshold;
+		this.numThreads = numThreads;
+		this.distribution = distribution;
+
+		pwm = new double[length * height];
+		for(int pos=0; pos < length; ++pos)
+		{
+			for(int a=0; a < height; ++a)
+			{
+				pwm[pos * height + a] = profile.getPwm(a, pos);
+			}
+		}
+
+		codeTable = new byte[256];
+		Arrays.fill(codeTable, (byte)-1);
+		for(int a=0; a < height; ++a)
+		{
+			String symbol = alphabet.getSymbol(a);
+			try{
+				if(symbol.length() != 1)
+					throw new Exception("Genome scanning requires single character symbols");
+			}catch(Exception e){
+				e.printStackTrace();
+				System.exit(1);
+			}
+			codeTable[Character.toUpperCase(symbol.charAt(0)) & 0xFF] = (byte)a;
+			codeTable[Character.toLowerCase(symbol.charAt(0)) & 0xFF] = (byte)a;
+		}
+	}
+
+	public GenomeScanner(ProfileMatrices profile, double threshold, int numThreads)
+	{
+		this(profile, threshold, numThreads, null);
+	}
+	
+	/**
+	 * Scans the FASTA file and writes the hits to the output file
+	 * @param fastaFile
+	 * @param outputFile
+	 * @return number of hits
+	 * @throws IOException
+	 */
+	public long scan(String fastaFile, String outputFile) throws IOException
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try(RandomAccessFile file = new RandomAccessFile(fastaFile, "r"))
+		{
+			final FileChannel channel = file.getChannel();
+			final long[] bounds = chunkBounds(channel);
+			final int chunks = bounds.length - 1;
+
+			//First pass: count the bases and find the headers of each chunk
+			List<Callable<ChunkSummary>> summaries = new ArrayList<Callable<ChunkSummary>>();
+			for(int c=0; c < chunks; ++c)
+			{
+				final int chunk = c;
+				summaries.add(() -> summarize(channel, bounds[chunk], bounds[chunk + 1]));
+			}
+			List<Future<ChunkSummary>> summaryResults = pool.invokeAll(summaries);
+
+			//Resolve the record name and base offset at the start of each chunk
+			final String[] startNames = new String[chunks];
+			final long[] startOffsets = new long[chunks];
+			String name = "";
+			long offset = 0;
+			for(int c=0; c < chunks; ++c)
+			{
+				startNames[c] = name;
+				startOffsets[c] = offset;
+				ChunkSummary summary = summaryResults.get(c).get();
+				if(summary.lastHeader == null)
+				{
+					offset += summary.leadingBases;
+				}
+				else
+				{
+					name = summary.lastHeader;
+					offset = summary.trailingBases;
+				}
+			}
+
+			//Second pass: score the windows of each chunk into its own part file
+			final File[] parts = new File[chunks];
+			List<Callable<Long>> scans = new ArrayList<Callable<Long>>();
+			for(int c=0; c < chunks; ++c)
+			{
+				final int chunk = c;
+				parts[c] = File.createTempFile("scan-part", ".bed");
+				parts[c].deleteOnExit();
+				scans.add(() -> scanChunk(channel, bounds[chunk], bounds[chunk + 1],
+						startNames[chunk], startOffsets[chunk], parts[chunk]));
+			}
+			long hits = 0;
+			for(Future<Long> f : pool.invokeAll(scans))
+			{
+				hits += f.get();
+			}
+
+			//Concatenate the parts in file order
+			try(FileChannel out = new FileOutputStream(outputFile).getChannel())
+			{
+				for(File part : parts)
+				{
+					try(FileChannel in = new FileInputStream(part).getChannel())
+					{
+						long pos = 0;
+						while(pos < in.size())
+						{
+							pos += in.transferTo(pos, in.size() - pos, out);
+						}
+					}
+					part.delete();
+				}
+			}
+			return hits;
+		}
+		catch(InterruptedException | ExecutionException e)
+		{
+			throw new IOException("Scan failed", e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Splits the file into chunks of about CHUNK_SIZE bytes, each starting at a line start
+	 * @param channel
+	 * @return chunk boundaries, starting at 0 and ending at the file size
+	 * @throws IOException
+	 */
+	private long[] chunkBounds(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		long next = CHUNK_SIZE;
+		while(next < size)
+		{
+			//Move the boundary just past the next newline
+			long pos = next;
+			boolean found = false;
+			while(!found && pos < size)
+			{
+				buffer.clear();
+				int read = channel.read(buffer, pos);
+				for(int i=0; i < read; ++i)
+				{
+					if(buffer.get(i) == '\n')
+					{
+						pos += i + 1;
+						found = true;
+						break;
+					}
+				}
+				if(!found)
+					pos += read;
+			}
+			if(pos >= size)
+				break;
+			bounds.add(pos);
+			next = pos + CHUNK_SIZE;
+		}
+		bounds.add(size);
+
+		long[] result = new long[bounds.size()];
+		for(int i=0; i < result.length; ++i)
+		{
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	private ChunkSummary summarize(FileChannel channel, long start, long end) throws IOException
+	{
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		ChunkSummary summary = new ChunkSummary();
+		long bases = 0;
+		boolean lineStart = true;
+		int limit = buffer.limit();
+		for(int i=0; i < limit; ++i)
+		{
+			byte b = buffer.get(i);
+			if(lineStart && b == '>')
+			{
+				if(summary.lastHeader == null)
+					summary.leadingBases = bases;
+				int nameEnd = i + 1;
+				while(nameEnd < limit && !isWhitespace(buffer.get(nameEnd)))
+					nameEnd++;
+				summary.lastHeader = readName(buffer, i + 1, nameEnd);
+				while(i < limit && buffer.get(i) != '\n')
+					i++;
+				bases = 0;
+				lineStart = true;
+			}
+			else if(isWhitespace(b))
+			{
+				lineStart = (b == '\n');
+			}
+			else
+			{
+				bases++;
+				lineStart = false;
+			}
+		}
+		if(summary.lastHeader == null)
+			summary.leadingBases = bases;
+		else
+			summary.trailingBases = bases;
+		return summary;
+	}
+
+	/**
+	 * Scores every window starting in [start, end), reading past the end to finish
+	 * the last windows
+	 * @return number of hits written
+	 */
+	private long scanChunk(FileChannel channel, long start, long end, String name, long baseOffset, File part) throws IOException
+	{
+		long mapEnd = Math.min(channel.size(), end + OVERLAP_MARGIN + 4L * length);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, mapEnd - start);
+		int chunkLimit = (int)(end - start);
+		int limit = buffer.limit();
+
+		int[] ring = new int[length];		//mapped integers of the last length bases
+		int validRun = 0;					//consecutive alphabet symbols ending at the current base
+		int basesPastEnd = 0;
+		long hits = 0;
+		boolean lineStart = true;
+		HitBuffer found = new HitBuffer();
+
+		try(Writer out = new BufferedWriter(new FileWriter(part), 1 << 16))
+		{
+			for(int i=0; i < limit; ++i)
+			{
+				byte b = buffer.get(i);
+				if(lineStart && b == '>')
+				{
+					if(i >= chunkLimit)
+						break;
+					//The buffered hits belong to the record that ends here
+					found.flush(out, name);
+					int nameEnd = i + 1;
+					while(nameEnd < limit && !isWhitespace(buffer.get(nameEnd)))
+						nameEnd++;
+					name = readName(buffer, i + 1, nameEnd);
+					while(i < limit && buffer.get(i) != '\n')
+						i++;
+					baseOffset = 0;
+					validRun = 0;
+					lineStart = true;
+					continue;
+				}
+				if(isWhitespace(b))
+				{
+					lineStart = (b == '\n');
+					continue;
+				}
+				lineStart = false;
+
+				if(i >= chunkLimit)
+				{
+					//Windows ending here start in a later chunk once length - 1 bases are past the end
+					if(++basesPastEnd > length - 1)
+						break;
+				}
+				long pos = baseOffset++;
+				int code = codeTable[b & 0xFF];
+				if(code < 0)
+				{
+					validRun = 0;
+					continue;
+				}
+				int slot = (int)(pos % length);
+				ring[slot] = code;
+				if(++validRun >= length)
+				{
+					//Oldest base of the window is in the next ring slot
+					double score = 0;
+					int r = slot + 1;
+					for(int p=0; p < length; ++p, ++r)
+					{
+						if(r == length)
+							r = 0;
+						score += pwm[p * height + ring[r]];
+					}
+					if(score >= threshold)
+					{
+						if(found.add(pos - length + 1, score))
+							found.flush(out, name);
+						hits++;
+					}
+				}
+			}
+			found.flush(out, name);
+		}
+		return hits;
+	}
+
+	/**
+	 * Hits of the current record held as primitives during the scan, and written as
+	 * records in batches through one reused StringBuilder, so the scan loop does no
+	 * formatting or allocation per hit
+	 */
+	private class HitBuffer
+	{
+		private static final int BATCH = 4096;
+
+		private long[] starts = new long[BATCH];
+		private double[] scores = new double[BATCH];
+		private int size = 0;
+		private StringBuilder lines = new StringBuilder(BATCH * 48);
+
+		/**
+		 * @return whether the buffer is full and must be flushed
+		 */
+		private boolean add(long start, double score)
+		{
+			starts[size] = start;
+			scores[size] = score;
+			return ++size == BATCH;
+		}
+
+		private void flush(Writer out, String name) throws IOException
+		{
+			if(size == 0)
+				return;
+			lines.setLength(0);
+			for(int h=0; h < size; ++h)
+			{
+				lines.append(name).append('\t')
+					.append(starts[h]).append('\t')
+					.append(starts[h] + length).append('\t');
+				appendFixed(lines, scores[h], 4);
+				if(distribution != null)
+				{
+					lines.append('\t');
+					appendScientific(lines, distribution.getPValue(scores[h]), 3);
+				}
+				lines.append('\n');
+			}
+			out.append(lines);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Appends the value with the given number of decimals, as String.format("%.nf"),
+	 * rounding half away from zero
+	 */
+	static void appendFixed(StringBuilder out, double value, int decimals)
+	{
+		if(Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e14)
+		{
+			out.append(String.format("%." + decimals + "f", value));
+			return;
+		}
+		long scale = 1;
+		for(int d=0; d < decimals; ++d)
+		{
+			scale *= 10;
+		}
+		long scaled = Math.round(Math.abs(value) * scale);
+		if(value < 0 || (value == 0 && 1 / value < 0))
+			out.append('-');
+		out.append(scaled / scale);
+		if(decimals > 0)
+		{
+			out.append('.');
+			String fraction = Long.toString(scaled % scale);
+			for(int pad=fraction.length(); pad < decimals; ++pad)
+			{
+				out.append('0');
+			}
+			out.append(fraction);
+		}
+	}
+
+	/**
+	 * Appends a non-negative value in scientific notation with the given number of
+	 * decimals, as String.format("%.ne"), e.g. a p-value
+	 */
+	static void appendScientific(StringBuilder out, double value, int decimals)
+	{
+		if(!(value > 0) || Double.isInfinite(value) || value < 1e-300)
+		{
+			out.append(String.format("%." + decimals + "e", value));
+			return;
+		}
+		int exponent = (int)Math.floor(Math.log10(value));
+		double mantissa = value / Math.pow(10, exponent);
+		long scale = 1;
+		for(int d=0; d < decimals; ++d)
+		{
+			scale *= 10;
+		}
+		long scaled = Math.round(mantissa * scale);
+		//log10 and the rounding may leave the mantissa just outside [1, 10)
+		if(scaled >= 10 * scale)
+		{
+			exponent++;
+			scaled = Math.round(value / Math.pow(10, exponent) * scale);
+		}
+		else if(scaled < scale)
+		{
+			exponent--;
+			scaled = Math.round(value / Math.pow(10, exponent) * scale);
+		}
+		appendFixed(out, ((double)scaled) / scale, decimals);
+		out.append(exponent < 0 ? "e-" : "e+");
+		int magnitude = Math.abs(exponent);
+		if(magnitude < 10)
+			out.append('0');
+		out.append(magnitude);
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b == '\n' || b == '\r' || b == ' ' || b == '\t';
+	}
+
+	private static String readName(MappedByteBuffer buffer, int from, int to)
+	{
+		byte[] bytes = new byte[to - from];
+		for(int i=from; i < to; ++i)
+		{
+			bytes[i - from] = buffer.get(i);
+		}
+		return new String(bytes, java.nio.charset.StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Bases and headers of one chunk, used to resolve the position at each chunk start
+	 */
+	private static class ChunkSummary
+	{
+		private long leadingBases = 0;		//bases before the first header of the chunk
+		private String lastHeader = null;	//name of the last record starting in the chunk
+		private long trailingBases = 0;		//bases after the last header of the chunk
+	}
+}
@@ -0,0 +1,232 @@
+package scanning;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import sequence.PackedSequence;
+import sequence.Sequence;
+
+/**
+ * Scans sequences with every motif of a library in a single pass.
+ * Each sequence is cut into tiles of windows, the tiles are scanned in parallel, and
+ * within a tile the motifs are processed in blocks: the tile's packed group codes are
+ * computed once and reused by every motif, and each window is scored by every motif
+ * of a block before moving on, so the block's score tables stay in cache across the
+ * tile. Hits are kept as primitives during the scan and formatted once per tile.
+ * Hits are written as <sequence index> <start> <end> <motif name> <score>, in sequence
+ * order, and within a window in motif order.
+ * @author Ricky
+ *
+ */
+public class LibraryScanner
+{
+	private static final int WINDOW_TILE = 4096;
+	private static final int MOTIF_BLOCK = 32;
+
+	private MotifLibrary library;
+	private List<MotifLibrary.Motif> motifs;
+	private int bitsPerSymbol;
+	private int groupSize;
+	private int maxLength;
+
+	public LibraryScanner(MotifLibrary library)
+	{
+		this.library = library;
+		this.motifs = library.getMotifs();
+		bitsPerSymbol = PackedSequence.bitsPerSymbol(library.getAlphabet());
+		groupSize = library.getGroupSize();
+		maxLength = 0;
+		for(MotifLibrary.Motif motif : motifs)
+		{
+			maxLength = Math.max(maxLength, motif.length());
+		}
+	}
+
+	/**
+	 * Scans the sequences and writes every hit
+	 * @param seqList sequences over the library's alphabet
+	 * @param out
+	 * @return number of hits
+	 * @throws IOException
+	 */
+	public long scan(List<Sequence> seqList, final Writer out) throws IOException
+	{
+		try{
+			for(Sequence seq : seqList)
+			{
+				if(!library.getAlphabet().hasSameMapping(seq.getAlphabet()))
+					throw new Exception("Scanned sequences must share the library's alphabet, in the same symbol order");
+			}
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		final PackedSequence[] packed = new PackedSequence[seqList.size()];
+		IntStream.range(0, seqList.size()).parallel().forEach(s -> packed[s] = new PackedSequence(seqList.get(s)));
+
+		//One task per tile of windows, in sequence order
+		final List<int[]> tiles = new ArrayList<int[]>();
+		for(int s=0; s < packed.length; ++s)
+		{
+			for(int start=0; start < packed[s].size(); start += WINDOW_TILE)
+			{
+				tiles.add(new int[]{s, start});
+			}
+		}
+
+		final long[] hits = {0};
+		try
+		{
+			IntStream.range(0, tiles.size()).parallel()
+					.mapToObj(t -> scanTile(packed[tiles.get(t)[0]], tiles.get(t)[0], tiles.get(t)[1]))
+					.forEachOrdered(tileHits -> {
+						try
+						{
+							out.write(tileHits.toString());
+							hits[0] += tileHits.count;
+						}
+						catch(IOException e)
+						{
+							throw new UncheckedIOException(e);
+						}
+					});
+		}
+		catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		out.flush();
+		return hits[0];
+	}
+
+	/**
+	 * Scores every motif on the windows starting in [tileStart, tileStart + WINDOW_TILE)
+	 */
+	private TileHits scanTile(PackedSequence seq, int seqIndex, int tileStart)
+	{
+		TileHits result = new TileHits();
+		int tileEnd = Math.min(seq.size(), tileStart + WINDOW_TILE);
+
+		//Packed code of the groupSize symbols starting at each position, zero-padded past the end
+		int span = tileEnd - tileStart + maxLength;
+		int[] groupCodes = new int[span];
+		int code = 0;
+		int groupMask = (1 << (groupSize * bitsPerSymbol)) - 1;
+		for(int i=0; i < span + groupSize - 1; ++i)
+		{
+			int pos = tileStart + i;
+			int sym = (pos < seq.size()) ? seq.getCode(pos) : 0;
+			code = ((code << bitsPerSymbol) | sym) & groupMask;
+			if(i >= groupSize - 1)
+				groupCodes[i - groupSize + 1] = code;
+		}
+
+		float[][][] blockTables = new float[MOTIF_BLOCK][][];
+		int[] lastGroupShifts = new int[MOTIF_BLOCK];
+		int[] windowEnds = new int[MOTIF_BLOCK];
+		double[] thresholds = new double[MOTIF_BLOCK];
+		for(int m0=0; m0 < motifs.size(); m0 += MOTIF_BLOCK)
+		{
+			int blockSize = Math.min(motifs.size(), m0 + MOTIF_BLOCK) - m0;
+			int blockEnd = tileStart;
+			for(int b=0; b < blockSize; ++b)
+			{
+				MotifLibrary.Motif motif = motifs.get(m0 + b);
+				blockTables[b] = motif.getTables();
+				lastGroupShifts[b] = (blockTables[b].length * groupSize - motif.length()) * bitsPerSymbol;
+				windowEnds[b] = Math.min(tileEnd, seq.size() - motif.length() + 1);
+				thresholds[b] = motif.getThreshold();
+				blockEnd = Math.max(blockEnd, windowEnds[b]);
+			}
+
+			for(int w=tileStart; w < blockEnd; ++w)
+			{
+				int base = w - tileStart;
+				for(int b=0; b < blockSize; ++b)
+				{
+					if(w >= windowEnds[b])
+						continue;
+					float[][] tables = blockTables[b];
+					int last = tables.length - 1;
+					double score = 0;
+					for(int g=0; g < last; ++g)
+					{
+						score += tables[g][groupCodes[base + g * groupSize]];
+					}
+					//The last group may be partial, its table is indexed by its own symbols only
+					score += tables[last][groupCodes[base + last * groupSize] >>> lastGroupShifts[b]];
+					if(score >= thresholds[b])
+					{
+						result.add(w, m0 + b, score);
+					}
+				}
+			}
+		}
+		result.format(seqIndex, motifs);
+		return result;
+	}
+
+	/**
+	 * Hits of one tile, held as primitives during the scan and formatted once it is done
+	 */
+	private static class TileHits
+	{
+		private int[] starts = new int[16];
+		private int[] motifIndices = new int[16];
+		private double[] scores = new double[16];
+		private int count = 0;
+		private StringBuilder lines = new StringBuilder();
+
+		private void add(int start, int motifIndex, double score)
+		{
+			if(count == starts.length)
+			{
+				starts = Arrays.copyOf(starts, 2 * count);
+				motifIndices = Arrays.copyOf(motifIndices, 2 * count);
+				scores = Arrays.copyOf(scores, 2 * count);
+			}
+			starts[count] = start;
+			motifIndices[count] = motifIndex;
+			scores[count] = score;
+			count++;
+		}
+
+		/**
+		 * Sorts the hits by window, then motif, and formats them
+		 */
+		private void format(int seqIndex, List<MotifLibrary.Motif> motifs)
+		{
+			//Each block scans the tile from its first window, so several blocks leave the hits out of window order
+			Integer[] order = new Integer[count];
+			for(int h=0; h < count; ++h)
+			{
+				order[h] = h;
+			}
+			if(motifs.size() > MOTIF_BLOCK)
+				Arrays.sort(order, (a, b) -> (starts[a] != starts[b]) ? Integer.compare(starts[a], starts[b]) : Integer.compare(motifIndices[a], motifIndices[b]));
+			lines.setLength(0);
+			for(int h : order)
+			{
+				MotifLibrary.Motif motif = motifs.get(motifIndices[h]);
+				lines.append(seqIndex).append('\t')
+					.append(starts[h]).append('\t')
+					.append(starts[h] + motif.length()).append('\t')
+					.append(motif.getName()).append('\t');
+				GenomeScanner.appendFixed(lines, scores[h], 4);
+				lines.append('\n');
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return lines.toString();
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package scanning;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import scoring.PValueService;
+import sequence.Alphabet;
+import sequence.PackedSequence;
+import sequence.ProfileMatrices;
+
+/**
+ * A library of motifs sharing one alphabet, stored in a compact binary file.
+ * Each motif keeps its frequency and weight matrices, its score threshold and the
+ * p-value it was derived from, and precompiled score tables: the weight matrix is
+ * cut into groups of symbols that fit in one byte of packed codes (4 for DNA), and
+ * each group's table holds the summed weights of every possible packed group, so a
+ * window is scored with one lookup per group instead of one per position.
+ *
+ * File format (big-endian, as written by DataOutputStream):
+ * magic, version, symbol count, (symbol, background probability)*, motif count, motif*
+ * where motif = name, length, threshold, p-value, pfm[length * height], pwm[length * height],
+ * group count, (table size, float table)*
+ * @author Ricky
+ *
+ */
+public class MotifLibrary
+{
+	private static final int MAGIC = 0x4D4F544C;	//"MOTL"
+	private static final int VERSION = 1;
+
+	private Alphabet alphabet;
+	private int bitsPerSymbol;
+	private int groupSize;					//symbols per score table group
+	private List<Motif> motifs = new ArrayList<Motif>();
+
+	public MotifLibrary(Alphabet alphabet)
+	{
+		this.alphabet = alphabet;
+		bitsPerSymbol = PackedSequence.bitsPerSymbol(alphabet);
+		groupSize = Math.max(1, 8 / bitsPerSymbol);
+	}
+
+	/**
+	 * Adds a motif whose threshold is the score with the given p-value under the
+	 * profile's background model
+	 * @param name
+	 * @param profile
+	 * @param pValue
+	 * @param pValueService
+	 */
+	public void addMotif(String name, ProfileMatrices profile, double pValue, PValueService pValueService)
+	{
+		try{
+			if(!alphabet.hasSameMapping(profile.getAlphabet()))
+				throw new Exception("Library motifs must share the library's alphabet, in the same symbol order");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		int length = profile.length();
+		int height = alphabet.getSize();
+		int[] pfm = new int[length * height];
+		double[] pwm = new double[length * height];
+		for(int pos=0; pos < length; ++pos)
+		{
+			for(int a=0; a < height; ++a)
+			{
+				pfm[pos * height + a] = profile.getPfm(a, pos);
+				pwm[pos * height + a] = profile.getPwm(a, pos);
+			}
+		}
+		double threshold = pValueService.getScoreThreshold(profile, pValue);
+		motifs.add(new Motif(name, length, threshold, pValue, pfm, pwm, compileTables(length, pwm)));
+	}
+
+	/**
+	 * Builds the score table of each group of groupSize positions. A partial last group
+	 * is indexed by the packed code of its own (fewer) symbols.
+	 * @param length
+	 * @param pwm
+	 * @return
+	 */
+	private float[][] compileTables(int length, double[] pwm)
+	{
+		int height = alphabet.getSize();
+		long symbolMask = (1L << bitsPerSymbol) - 1;
+		float[][] tables = new float[(length + groupSize - 1) / groupSize][];
+		for(int g=0; g < tables.length; ++g)
+		{
+			int symbols = Math.min(groupSize, length - g * groupSize);
+			tables[g] = new float[1 << (symbols * bitsPerSymbol)];
+			for(int code=0; code < tables[g].length; ++code)
+			{
+				double score = 0;
+				for(int j=0; j < symbols; ++j)
+				{
+					int sym = (int)((code >>> ((symbols - 1 - j) * bitsPerSymbol)) & symbolMask);
+					//Codes that do not map to a symbol can never occur
+					score += (sym < height) ? pwm[(g * groupSize + j) * height + sym] : Double.NEGATIVE_INFINITY;
+				}
+				tables[g][code] = (float)score;
+			}
+		}
+		return tables;
+	}
+
+	public void save(String fileName) throws IOException
+	{
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(alphabet.getSize());
+			for(int a=0; a < alphabet.getSize(); ++a)
+			{
+				out.writeUTF(alphabet.getSymbol(a));
+				out.writeDouble(alphabet.getProbability(a));
+			}
+			out.writeInt(motifs.size());
+			for(Motif motif : motifs)
+			{
+				out.writeUTF(motif.name);
+				out.writeInt(motif.length);
+				out.writeDouble(motif.threshold);
+				out.writeDouble(motif.pValue);
+				for(int f : motif.pfm)
+					out.writeInt(f);
+				for(double w : motif.pwm)
+					out.writeDouble(w);
+				out.writeInt(motif.tables.length);
+				for(float[] table : motif.tables)
+				{
+					out.writeInt(table.length);
+					for(float t : table)
+						out.writeFloat(t);
+				}
+			}
+		}
+	}
+
+	public static MotifLibrary load(String fileName) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName))))
+		{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a motif library file : " + fileName);
+			int height = in.readInt();
+			String[] symbols = new String[height];
+			double[] probDist = new double[height];
+			for(int a=0; a < height; ++a)
+			{
+				symbols[a] = in.readUTF();
+				probDist[a] = in.readDouble();
+			}
+			MotifLibrary library = new MotifLibrary(new Alphabet(symbols, probDist));
+
+			int count = in.readInt();
+			for(int m=0; m < count; ++m)
+			{
+				String name = in.readUTF();
+				int length = in.readInt();
+				double threshold = in.readDouble();
+				double pValue = in.readDouble();
+				int[] pfm = new int[length * height];
+				for(int i=0; i < pfm.length; ++i)
+					pfm[i] = in.readInt();
+				double[] pwm = new double[length * height];
+				for(int i=0; i < pwm.length; ++i)
+					pwm[i] = in.readDouble();
+				float[][] tables = new float[in.readInt()][];
+				for(int g=0; g < tables.length; ++g)
+				{
+					tables[g] = new float[in.readInt()];
+					for(int i=0; i < tables[g].length; ++i)
+						tables[g][i] = in.readFloat();
+				}
+				library.motifs.add(new Motif(name, length, threshold, pValue, pfm, pwm, tables));
+			}
+			return library;
+		}
+	}
+
+	public Alphabet getAlphabet()
+	{
+		return alphabet;
+	}
+
+	public int getGroupSize()
+	{
+		return groupSize;
+	}
+
+	public List<Motif> getMotifs()
+	{
+		return Collections.unmodifiableList(motifs);
+	}
+
+	public int size()
+	{
+		return motifs.size();
+	}
+
+	/**
+	 * One motif of the library
+	 */
+	public static class Motif
+	{
+		private String name;
+		private int length;
+		private double threshold;		//minimum score of a reported window
+		private double pValue;			//p-value the threshold was derived from
+		private int[] pfm;				//[position * height + symbolMappedInt]
+		private double[] pwm;			//[position * height + symbolMappedInt]
+		private float[][] tables;		//[group][packed group code]
+
+		private Motif(String name, int length, double threshold, double pValue, int[] pfm, double[] pwm, float[][] tables)
+		{
+			this.name = name;
+			this.length = length;
+			this.threshold = threshold;
+			this.pValue = pValue;
+			this.pfm = pfm;
+			this.pwm = pwm;
+			this.tables = tables;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public int length()
+		{
+			return length;
+		}
+
+		public double getThreshold()
+		{
+			return threshold;
+		}
+
+		public double getPValue()
+		{
+			return pValue;
+		}
+
+		public int getPfm(int symbol, int position)
+		{
+			return pfm[position * (pfm.length / length) + symbol];
+		}
+
+		public double getPwm(int symbol, int position)
+		{
+			return pwm[position * (pwm.length / length) + symbol];
+		}
+
+		float[][] getTables()
+		{
+			return tables;
+		}
+	}
+}
@@ -1,6 +1,6 @@
 package scoring;
 
-import sequence.Profile;
+import sequence.ProfileMatrices;
 import sequence.Sequence;
 
 public class ExpectationScore extends Score
@@ -25,13 +25,13 @@ public class ExpectationScore extends Score
 	 * but maximization rule still applies.
 	 */
 	@Override
-	public double calculateScore(Profile profile, Sequence lmer)
+	public double calculateScore(ProfileMatrices profile, Sequence lmer)
 	{
 		double result = 0;
 		for(int pos=0; pos < lmer.getSize(); ++pos)
 		{
 			System.out.println(lmer.getPosition(pos));
-			double prob = profile.getPpm(lmer.getPosition(pos), pos);
+			double prob = profile.getPpm(lmer.getIntAtPosition(pos), pos);
 			if(prob < pseudoZero)
 			{
 				prob = pseudoZero;
@@ -40,5 +40,22 @@ public class ExpectationScore extends Score
 		}
 		return result;
 	}
+	
+	@Override
+	public boolean isAdditive()
+	{
+		return true;
+	}
+	
+	@Override
+	public double positionScore(ProfileMatrices profile, int mappedInt, int position)
+	{
+		double prob = profile.getPpm(mappedInt, position);
+		if(prob < pseudoZero)
+		{
+			prob = pseudoZero;
+		}
+		return Math.log(prob) / Math.log(2);
+	}
 
 }
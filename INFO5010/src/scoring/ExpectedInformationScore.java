@@ -1,6 +1,6 @@
 package scoring;
 
-import sequence.Profile;
+import sequence.ProfileMatrices;
 import sequence.Sequence;
 
 public class ExpectedInformationScore extends Score
@@ -20,10 +20,10 @@ public class ExpectedInformationScore extends Score
 	 * @return total score for profile
 	 */
 	@Override
-	public double calculateScore(Profile profile)
+	public double calculateScore(ProfileMatrices profile)
 	{
 		double result = 0;
-		for(String symbol : profile.getAlphabet().getAllSymbols())
+		for(int symbol=0; symbol < profile.height(); ++symbol)
 		{
 			for(int pos=0; pos < profile.length(); ++pos)
 			{
@@ -42,13 +42,12 @@ public class ExpectedInformationScore extends Score
 	/**
 	 * For the sequence in question calculate the Shannon's Information Score using the given profile
 	 */
-	public double calculateScore(Profile profile, Sequence lmer)
+	public double calculateScore(ProfileMatrices profile, Sequence lmer)
 	{
 		double result = 0;
 		for(int pos=0; pos < lmer.getSize(); ++pos)
 		{
-			String symbol = lmer.getPosition(pos);
-			double prob = profile.getPpm(symbol, pos);
+			double prob = profile.getPpm(lmer.getIntAtPosition(pos), pos);
 				
 			if(prob < pseudoZero)
 			{
@@ -58,5 +57,22 @@ public class ExpectedInformationScore extends Score
 		}
 		return result;
 	}
+	
+	@Override
+	public boolean isAdditive()
+	{
+		return true;
+	}
+	
+	@Override
+	public double positionScore(ProfileMatrices profile, int mappedInt, int position)
+	{
+		double prob = profile.getPpm(mappedInt, position);
+		if(prob < pseudoZero)
+		{
+			prob = pseudoZero;
+		}
+		return prob * (Math.log(prob) / Math.log(2));
+	}
 
 }
@@ -1,6 +1,6 @@
 package scoring;
 
-import sequence.Profile;
+import sequence.ProfileMatrices;
 import sequence.Sequence;
 
 
@@ -22,19 +22,15 @@ public class FrequencyScore extends Score
 	 *
 	 */
 	@Override
-	public double calculateScore(Profile profile)
+	public double calculateScore(ProfileMatrices profile)
 	{
-		Sequence consensus = profile.getConsensus();
-	
 		double result = 0;
-		for(String symbol : profile.getAlphabet().getAllSymbols())
+		for(int pos=0; pos < profile.length(); ++pos)
 		{
-			for(int pos=0; pos < profile.length(); ++pos)
+			int code = profile.getConsensusCode(pos);
+			if(code >= 0)
 			{
-				if(symbol == consensus.getPosition(pos))
-				{
-					result += profile.getPfm(symbol, pos);
-				}
+				result += profile.getPfm(code, pos);
 			}
 		}
 		
@@ -47,15 +43,12 @@ public class FrequencyScore extends Score
 	 * the background information at each position is disregarded. 
 	 */
 	@Override
-	public double calculateScore(Profile profile, Sequence lmer)
+	public double calculateScore(ProfileMatrices profile, Sequence lmer)
 	{
-		Sequence consensus = profile.getConsensus();
-		
 		double result = 0;
 		for(int pos=0; pos < lmer.getSize(); ++pos)
 		{
-			String symbol = lmer.getPosition(pos);
-			if(symbol == consensus.getPosition(pos))
+			if(lmer.getIntAtPosition(pos) == profile.getConsensusCode(pos))
 				result += 1; 
 		}
 		return result;
@@ -0,0 +1,153 @@
+package scoring;
+
+import sequence.Dataset;
+import sequence.MarkovBackground;
+import sequence.ProfileMatrices;
+import sequence.Sequence;
+
+/**
+ * Log-odds of an l-mer under the profile against an order-k Markov background of
+ * the dataset: sum(log_2(p)) - log_2(P_background(l-mer)). Windows are scored in
+ * their sequence context, using the background log-likelihoods precomputed per window,
+ * so repetitive and dinucleotide-rich regions no longer score like motifs.
+ * The background is taken from the dataset the finder runs on.
+ * @author Ricky
+ *
+ */
+public class MarkovScore extends Score
+{
+	private int order;
+	private MarkovBackground background = null;
+
+	public MarkovScore(int order, double pseudoZero)
+	{
+		super(pseudoZero);
+		this.order = order;
+	}
+
+	public MarkovScore(int order)
+	{
+		this(order, 1e-5);
+	}
+
+	@Override
+	public void prepare(Dataset dataset)
+	{
+		background = dataset.getMarkovBackground(order);
+	}
+
+	/**
+	 * Relative information of the profile against the order 0 marginal of the background.
+	 * i.e. Sum(p * log_2(p/b)) over the whole profile matrix
+	 */
+	@Override
+	public double calculateScore(ProfileMatrices profile)
+	{
+		checkPrepared();
+		double result = 0;
+		for(int symbol=0; symbol < profile.height(); ++symbol)
+		{
+			for(int pos=0; pos < profile.length(); ++pos)
+			{
+				double prob = profile.getPpm(symbol, pos);
+				if(prob > 0)
+				{
+					result += prob * (Math.log(prob) / Math.log(2) - background.getZeroOrderLogProbability(symbol));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Scores the l-mer on its own, its first symbols are conditioned on the lower orders only
+	 */
+	@Override
+	public double calculateScore(ProfileMatrices profile, Sequence lmer)
+	{
+		checkPrepared();
+		return profileLogLikelihood(profile, lmer, 0) - background.logLikelihood(lmer);
+	}
+
+	@Override
+	public double[] scoreAllLmers(ProfileMatrices profile, Sequence seq)
+	{
+		checkPrepared();
+		double[] windowBackground = background.getWindowLogLikelihoods(seq, profile.length());
+		double[] result = new double[windowBackground.length];
+		for(int start=0; start < result.length; ++start)
+		{
+			result[start] = profileLogLikelihood(profile, seq, start) - windowBackground[start];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isCellSeparable()
+	{
+		return true;
+	}
+	
+	/**
+	 * p * (log_2(p) - log_2(b)) of the cell, b under the order 0 table
+	 */
+	@Override
+	public double cellScore(int mappedInt, int frequency, int sequenceCount)
+	{
+		checkPrepared();
+		if(frequency == 0)
+			return 0;
+		double prob = ((double)frequency) / sequenceCount;
+		return prob * (Math.log(prob) / Math.log(2) - background.getZeroOrderLogProbability(mappedInt));
+	}
+	
+	/**
+	 * The background term of a window does not depend on the profile, so only
+	 * the log_2(p) of each position changes with it
+	 */
+	@Override
+	public boolean isAdditive()
+	{
+		return true;
+	}
+	
+	@Override
+	public double positionScore(ProfileMatrices profile, int mappedInt, int position)
+	{
+		double prob = profile.getPpm(mappedInt, position);
+		if(prob < pseudoZero)
+		{
+			prob = pseudoZero;
+		}
+		return Math.log(prob) / Math.log(2);
+	}
+	
+	/**
+	 * sum(log_2(p)) of the window of the sequence starting at start
+	 */
+	private double profileLogLikelihood(ProfileMatrices profile, Sequence seq, int start)
+	{
+		double result = 0;
+		for(int pos=0; pos < profile.length(); ++pos)
+		{
+			double prob = profile.getPpm(seq.getIntAtPosition(start + pos), pos);
+			if(prob < pseudoZero)
+			{
+				prob = pseudoZero;
+			}
+			result += Math.log(prob) / Math.log(2);
+		}
+		return result;
+	}
+
+	private void checkPrepared()
+	{
+		try{
+			if(background == null)
+				throw new Exception("Markov score must be prepared with the dataset before scoring");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package scoring;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import sequence.Profile;
+import sequence.ProfileMatrices;
+
+/**
+ * Converts between position weight matrix scores and p-values under a profile's 
+ * background model. The exact score distribution is computed once per profile 
+ * snapshot and cached, so repeated queries are a lookup or a binary search.
+ * Mutable profiles are keyed by their current snapshot, so the cache never serves 
+ * a distribution for matrices that have since changed.
+ * @author Ricky
+ *
+ */
+public class PValueService
+{
+	private double granularity;
+	private Map<ProfileMatrices, ScoreDistribution> cache;
+	
+	/**
+	 * @param granularity resolution, in bits, of the discretized column scores
+	 */
+	public PValueService(double granularity)
+	{
+		this.granularity = granularity;
+		cache = Collections.synchronizedMap(new WeakHashMap<ProfileMatrices, ScoreDistribution>());
+	}
+	
+	/**
+	 * Provides a default granularity of 0.001 bits
+	 */
+	public PValueService()
+	{
+		this(1e-3);
+	}
+	
+	/**
+	 * Returns the cached score distribution of the profile, computing it on first use
+	 * @param profile
+	 * @return
+	 */
+	public ScoreDistribution getDistribution(ProfileMatrices profile)
+	{
+		ProfileMatrices key = (profile instanceof Profile) ? ((Profile)profile).getSnapshot() : profile;
+		ScoreDistribution dist = cache.get(key);
+		if(dist == null)
+		{
+			dist = new ScoreDistribution(key, granularity);
+			cache.put(key, dist);
+		}
+		return dist;
+	}
+	
+	public double getPValue(ProfileMatrices profile, double score)
+	{
+		return getDistribution(profile).getPValue(score);
+	}
+	
+	public double getScoreThreshold(ProfileMatrices profile, double pValue)
+	{
+		return getDistribution(profile).getScoreThreshold(pValue);
+	}
+}
@@ -2,11 +2,14 @@ package scoring;
 
 import java.util.Arrays;
 
-import sequence.Profile;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.ProfileMatrices;
 import sequence.Sequence;
 
 public class RelativeInformationScore extends Score
 {
+	private Dataset dataset = null;		//background of the cells, set by prepare
 
 	public RelativeInformationScore(double pseudoZero)
 	{
@@ -24,10 +27,10 @@ public class RelativeInformationScore extends Score
 	 * always provide more or the same level of information as the background.
 	 */
 	@Override
-	public double calculateScore(Profile profile)
+	public double calculateScore(ProfileMatrices profile)
 	{
 		double result = 0;
-		for(String symbol : profile.getAlphabet().getAllSymbols())
+		for(int symbol=0; symbol < profile.height(); ++symbol)
 		{
 			for(int pos=0; pos < profile.length(); ++pos)
 			{
@@ -44,16 +47,70 @@ public class RelativeInformationScore extends Score
 	 * we are not summing over the whole matrix.
 	 */
 	@Override
-	public double calculateScore(Profile profile, Sequence lmer)
+	public double calculateScore(ProfileMatrices profile, Sequence lmer)
 	{		
 		double result = 0;
 		for(int pos=0; pos < lmer.getSize(); ++pos)
 		{
-			result += profile.getPpm(lmer.getPosition(pos), pos) * profile.getPwm(lmer.getPosition(pos), pos);
+			int symbol = lmer.getIntAtPosition(pos);
+			result += profile.getPpm(symbol, pos) * profile.getPwm(symbol, pos);
 		}
 		return result;
 	}
 	
+	@Override
+	public boolean isAdditive()
+	{
+		return true;
+	}
 	
-
+	@Override
+	public double positionScore(ProfileMatrices profile, int mappedInt, int position)
+	{
+		return profile.getPpm(mappedInt, position) * profile.getPwm(mappedInt, position);
+	}
+	
+	@Override
+	public void prepare(Dataset dataset)
+	{
+		this.dataset = dataset;
+	}
+	
+	@Override
+	public boolean isCellSeparable()
+	{
+		return true;
+	}
+	
+	/**
+	 * p * log_2(p/b) of the cell, with the weight floored as Profile floors it
+	 */
+	@Override
+	public double cellScore(int mappedInt, int frequency, int sequenceCount)
+	{
+		try{
+			if(dataset == null)
+				throw new Exception("Relative information must be prepared with the dataset before scoring cells");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		if(frequency == 0)
+			return 0;
+		double prob = ((double)frequency) / sequenceCount;
+		double weightedProb = Math.max(prob / dataset.getFlooredBackground(mappedInt), 1.0 / (10 * sequenceCount));
+		return prob * Math.log(weightedProb) / Math.log(2);
+	}
+	
+	@Override
+	public double scoreWindow(ProfileMatrices profile, long window, int bitsPerSymbol)
+	{
+		double result = 0;
+		for(int pos=0; pos < profile.length(); ++pos)
+		{
+			int symbol = PackedSequence.symbolAt(window, pos, profile.length(), bitsPerSymbol);
+			result += profile.getPpm(symbol, pos) * profile.getPwm(symbol, pos);
+		}
+		return result;
+	}
 }
@@ -1,6 +1,8 @@
 package scoring;
 
-import sequence.Profile;
+import sequence.Dataset;
+import sequence.PackedSequence;
+import sequence.ProfileMatrices;
 import sequence.Sequence;
 
 public abstract class Score
@@ -18,7 +20,7 @@ public abstract class Score
 	 * @param profile
 	 * @return
 	 */
-	public double calculateScore(Profile profile)
+	public double calculateScore(ProfileMatrices profile)
 	{
 		return 0.0;
 	}
@@ -29,5 +31,127 @@ public abstract class Score
 	 * @param lmer
 	 * @return
 	 */
-	public abstract double calculateScore(Profile profile, Sequence lmer);
+	public abstract double calculateScore(ProfileMatrices profile, Sequence lmer);
+	
+	/**
+	 * Calculate the score of every l-mer [0, n - length + 1) of the sequence. 
+	 * Metrics that can reuse work between neighbouring l-mers override this.
+	 * @param profile
+	 * @param seq
+	 * @return
+	 */
+	public double[] scoreAllLmers(ProfileMatrices profile, Sequence seq)
+	{
+		double[] result = new double[seq.getSize() - profile.length() + 1];
+		for(int pos=0; pos < result.length; ++pos)
+		{
+			result[pos] = calculateScore(profile, seq.getSubsequence(pos, pos + profile.length()));
+		}
+		return result;
+	}
+	
+	/**
+	 * Calculate the score of an l-mer given as a packed window code.
+	 * Metrics that can read the symbols straight from the code override this.
+	 * @param profile
+	 * @param window packed code of the l-mer, first symbol in the highest field
+	 * @param bitsPerSymbol
+	 * @return
+	 */
+	public double scoreWindow(ProfileMatrices profile, long window, int bitsPerSymbol)
+	{
+		return calculateScore(profile, PackedSequence.unpack(profile.getAlphabet(), window, profile.length()));
+	}
+	
+	/**
+	 * Calculate the score of every l-mer of the sequence on both strands in one pass.
+	 * The reverse complement of each window is computed from its packed code, so the
+	 * reverse strand is never materialized. Windows are scored on their own, without
+	 * their sequence context. The alphabet must be complementable DNA.
+	 * @param profile
+	 * @param seq
+	 * @return scores of the forward l-mers [0, m) followed by the reverse complement of
+	 * each l-mer [m, 2m), where m = n - length + 1
+	 */
+	public double[] scoreAllLmersBothStrands(ProfileMatrices profile, PackedSequence seq)
+	{
+		int length = profile.length();
+		int bits = seq.getBitsPerSymbol();
+		long[] windows = seq.getAllWindows(length);
+		double[] result = new double[2 * windows.length];
+		for(int start=0; start < windows.length; ++start)
+		{
+			result[start] = scoreWindow(profile, windows[start], bits);
+			result[windows.length + start] = scoreWindow(profile, PackedSequence.reverseComplement(windows[start], length), bits);
+		}
+		return result;
+	}
+	
+	/**
+	 * Whether the score of an l-mer is a sum over its positions of positionScore, plus
+	 * a term that does not depend on the profile. Scores of l-mers can then be patched
+	 * when only some columns of the profile change, instead of being rescored.
+	 * @return
+	 */
+	public boolean isAdditive()
+	{
+		return false;
+	}
+	
+	/**
+	 * Contribution of the symbol at the position to the score of an l-mer, for additive metrics
+	 * @param profile
+	 * @param mappedInt
+	 * @param position
+	 * @return
+	 */
+	public double positionScore(ProfileMatrices profile, int mappedInt, int position)
+	{
+		try{
+			throw new Exception(getClass().getSimpleName() + " is not additive over positions");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Whether the score of the whole profile is a sum over the cells of its matrices of
+	 * cellScore. Moving one sequence's alignment then changes the score only through the
+	 * cells it leaves and enters, so the change can be found in O(length).
+	 * @return
+	 */
+	public boolean isCellSeparable()
+	{
+		return false;
+	}
+	
+	/**
+	 * Contribution to the score of the whole profile of a cell holding the symbol with the
+	 * given frequency, for cell separable metrics. Must be prepared first.
+	 * @param mappedInt
+	 * @param frequency
+	 * @param sequenceCount number of sequences in the profile
+	 * @return
+	 */
+	public double cellScore(int mappedInt, int frequency, int sequenceCount)
+	{
+		try{
+			throw new Exception(getClass().getSimpleName() + " is not separable over the profile's cells");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Called by a finder before scoring the sequences of the dataset. Metrics that
+	 * depend on dataset statistics load them here.
+	 * @param dataset
+	 */
+	public void prepare(Dataset dataset)
+	{
+	}
 }
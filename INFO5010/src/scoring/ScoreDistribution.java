@@ -0,0 +1,137 @@
+package scoring;
+
+import java.util.Map;
+
+import sequence.Alphabet;
+import sequence.ProfileMatrices;
+
+/**
+ * Exact distribution of the position weight matrix score of a random l-mer, where each
+ * symbol is drawn independently from the background model. Column scores are rounded to 
+ * multiples of a granularity, and the distribution of their sum is computed by dynamic 
+ * programming one column at a time. The discretization error of a total score is at most 
+ * length * granularity / 2.
+ * @author Ricky
+ *
+ */
+public class ScoreDistribution
+{
+	private double granularity;
+	private int minTotal;			//smallest discretized total score
+	private double[] tail;			//tail[i] = P(discretized score >= minTotal + i)
+	
+	public ScoreDistribution(ProfileMatrices profile, double granularity)
+	{
+		this.granularity = granularity;
+		Alphabet alphabet = profile.getAlphabet();
+		int height = profile.height();
+		
+		//Background probability of each mapped symbol, normalized
+		double[] background = new double[height];
+		double backgroundTotal = 0;
+		Map<String, Double> model = profile.getBackgroundModel();
+		for(int a=0; a < height; ++a)
+		{
+			Double prob = model.get(alphabet.getSymbol(a));
+			background[a] = (prob == null) ? 0.0 : prob;
+			backgroundTotal += background[a];
+		}
+		for(int a=0; a < height; ++a)
+		{
+			background[a] /= backgroundTotal;
+		}
+		
+		//Convolve the column score distributions
+		double[] dist = {1.0};
+		minTotal = 0;
+		int[] columnScores = new int[height];
+		for(int pos=0; pos < profile.length(); ++pos)
+		{
+			int colMin = Integer.MAX_VALUE;
+			int colMax = Integer.MIN_VALUE;
+			for(int a=0; a < height; ++a)
+			{
+				columnScores[a] = discretize(profile.getPwm(a, pos));
+				colMin = Math.min(colMin, columnScores[a]);
+				colMax = Math.max(colMax, columnScores[a]);
+			}
+			double[] next = new double[dist.length + colMax - colMin];
+			for(int a=0; a < height; ++a)
+			{
+				if(background[a] == 0)
+					continue;
+				int shift = columnScores[a] - colMin;
+				for(int i=0; i < dist.length; ++i)
+				{
+					next[i + shift] += dist[i] * background[a];
+				}
+			}
+			dist = next;
+			minTotal += colMin;
+		}
+		
+		tail = new double[dist.length];
+		double sum = 0;
+		for(int i=dist.length - 1; i >= 0; --i)
+		{
+			sum += dist[i];
+			tail[i] = Math.min(1.0, sum);
+		}
+	}
+	
+	private int discretize(double score)
+	{
+		return (int)Math.round(score / granularity);
+	}
+	
+	/**
+	 * Probability that a random l-mer scores at least the given score. 
+	 * A single array lookup, so it can be used per hit.
+	 * @param score
+	 * @return
+	 */
+	public double getPValue(double score)
+	{
+		int i = discretize(score) - minTotal;
+		if(i <= 0)
+			return 1.0;
+		if(i >= tail.length)
+			return 0.0;
+		return tail[i];
+	}
+	
+	/**
+	 * Smallest score whose p-value is at most the given p-value, found by binary search 
+	 * over the tail probabilities
+	 * @param pValue
+	 * @return score threshold, or positive infinity if no score is that unlikely
+	 */
+	public double getScoreThreshold(double pValue)
+	{
+		int lo = 0;
+		int hi = tail.length;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(tail[mid] > pValue)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		if(lo == tail.length)
+			return Double.POSITIVE_INFINITY;
+		//Any score rounding to this bin or above passes. The half-way point can land just
+		//below the bin in floating point, so step up to the first score that rounds into it.
+		double threshold = (minTotal + lo - 0.5) * granularity;
+		while(discretize(threshold) < minTotal + lo)
+		{
+			threshold = Math.nextUp(threshold);
+		}
+		return threshold;
+	}
+	
+	public double getGranularity()
+	{
+		return granularity;
+	}
+}
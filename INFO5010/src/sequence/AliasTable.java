@@ -0,0 +1,91 @@
+package sequence;
+
+import java.util.Random;
+
+/**
+ * Walker's alias method for sampling from a discrete distribution in constant time:
+ * one uniform index and one uniform double per sample, whatever the number of outcomes.
+ * Built in linear time with Vose's algorithm.
+ * @author Ricky
+ *
+ */
+public class AliasTable
+{
+	private double[] probability;		//chance of keeping column i rather than taking its alias
+	private int[] alias;
+
+	/**
+	 * @param weights non-negative weight of each outcome, not necessarily normalized
+	 */
+	public AliasTable(double[] weights)
+	{
+		int n = weights.length;
+		double total = 0;
+		for(double w : weights)
+		{
+			total += w;
+		}
+		try{
+			if(n == 0 || !(total > 0))
+				throw new Exception("Alias table needs at least one positive weight");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		probability = new double[n];
+		alias = new int[n];
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallCount = 0;
+		int largeCount = 0;
+		for(int i=0; i < n; ++i)
+		{
+			scaled[i] = weights[i] * n / total;
+			if(scaled[i] < 1.0)
+				small[smallCount++] = i;
+			else
+				large[largeCount++] = i;
+		}
+
+		//Pair each under-full column with an over-full one that tops it up
+		while(smallCount > 0 && largeCount > 0)
+		{
+			int less = small[--smallCount];
+			int more = large[--largeCount];
+			probability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+			if(scaled[more] < 1.0)
+				small[smallCount++] = more;
+			else
+				large[largeCount++] = more;
+		}
+		//Whatever is left is full up to rounding error
+		while(largeCount > 0)
+		{
+			probability[large[--largeCount]] = 1.0;
+		}
+		while(smallCount > 0)
+		{
+			probability[small[--smallCount]] = 1.0;
+		}
+	}
+
+	/**
+	 * Draws an outcome
+	 * @param gen
+	 * @return index of the outcome
+	 */
+	public int sample(Random gen)
+	{
+		int column = gen.nextInt(probability.length);
+		return (gen.nextDouble() < probability[column]) ? column : alias[column];
+	}
+
+	public int size()
+	{
+		return probability.length;
+	}
+}
@@ -1,11 +1,13 @@
 package sequence;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Generates and holds an Integer mapping between symbols in the given alphabet.
@@ -18,8 +20,11 @@ public class Alphabet
 {
 	private TreeSet<String> symbolSet;				//Allows for multiple character alphabet symbols
 	private Map<String, Integer> symbolToIntMap;
-	private Map<Integer, String> intToSymbolMap;
 	private Map<String, Double> probDistribution; 	//The probability of generating the symbol
+	private String[] symbols;						//symbol of each mapped integer
+	private double[] probabilities;					//probability of generating each mapped integer
+	private double[] cumulativeProbabilities;		//running sum of the probabilities, for sampling
+	private byte[] decodeTable;						//mapped integer of each character, -1 if not a symbol. null unless all symbols are single characters
 	
 	/**
 	 * Constructs an Alphabet
@@ -30,7 +35,6 @@ public class Alphabet
 	{
 		this.symbolSet = new TreeSet<String>();
 		symbolToIntMap = new HashMap<String, Integer>();
-		intToSymbolMap = new HashMap<Integer, String>();
 		probDistribution = new HashMap<String, Double>();
 		
 		/*Check for empty alphabet*/
@@ -46,12 +50,31 @@ public class Alphabet
 			this.symbolSet.add(symbol);
 			//Create a Mapping symbol -> Integer
 			symbolToIntMap.put(symbol, i);
-			//Create a Mapping Integer -> symbol
-			intToSymbolMap.put(i, symbol);
 			//Mapping RefInteger -> probability of generating symbol
 			probDistribution.put(symbol, probDist[i]);
 			
 		}
+		
+		symbols = Arrays.copyOf(alphabet, alphabet.length);
+		probabilities = Arrays.copyOf(probDist, alphabet.length);
+		cumulativeProbabilities = new double[alphabet.length];
+		double cummulativeProb = 0.0;
+		for(int i = 0; i < alphabet.length; ++i)
+		{
+			cummulativeProb += probabilities[i];
+			cumulativeProbabilities[i] = cummulativeProb;
+		}
+		
+		//Single character alphabets decode characters with one array lookup
+		decodeTable = new byte[256];
+		Arrays.fill(decodeTable, (byte)-1);
+		for(int i = 0; i < alphabet.length && decodeTable != null; ++i)
+		{
+			if(alphabet.length > Byte.MAX_VALUE || alphabet[i].length() != 1 || alphabet[i].charAt(0) > 0xFF)
+				decodeTable = null;
+			else
+				decodeTable[alphabet[i].charAt(0)] = (byte)i;
+		}
 	}
 	
 	/**
@@ -82,20 +105,27 @@ public class Alphabet
 	 */
 	public String getRandomSymbol()
 	{
-		Random gen = new Random();
+		return symbols[getRandomInt()];
+	}
+	
+	/**
+	 * Returns a random mapped integer using the underlying probability distribution
+	 * @param gen
+	 * @return mapped integer
+	 */
+	public int getRandomInt(Random gen)
+	{
 		double randomVar = gen.nextDouble();
 		//Test random variable against the cumulative probability distribution
-		double cummulativeProb = 0.0;
-		for(String sym : symbolSet)
+		for(int i=0; i < cumulativeProbabilities.length; ++i)
 		{
-			cummulativeProb += getProbability(sym);
-			if(randomVar < cummulativeProb)
+			if(randomVar < cumulativeProbabilities[i])
 			{
-				return sym;
-			} 
-		};
+				return i;
+			}
+		}
 		//Case where inequality check failed due to floating point inaccuracy
-		return symbolSet.last();
+		return cumulativeProbabilities.length - 1;
 	}
 	
 	/**
@@ -140,17 +170,58 @@ public class Alphabet
 	
 	public int getInt(String symbol)
 	{
+		if(decodeTable != null && symbol.length() == 1)
+		{
+			int code = getInt(symbol.charAt(0));
+			if(code >= 0)
+				return code;
+		}
 		return symbolToIntMap.get(symbol);		
 	}
 	
+	/**
+	 * Mapped integer of a single character symbol, without creating a String
+	 * @param symbol
+	 * @return mapped integer, -1 if the character is not a symbol of the alphabet
+	 */
+	public int getInt(char symbol)
+	{
+		if(decodeTable == null)
+		{
+			Integer code = symbolToIntMap.get(String.valueOf(symbol));
+			return (code == null) ? -1 : code;
+		}
+		return (symbol > 0xFF) ? -1 : decodeTable[symbol];
+	}
+	
+	/**
+	 * True if every symbol is a single character, so sequences can be decoded character by character
+	 * @return
+	 */
+	public boolean isSingleCharacter()
+	{
+		return decodeTable != null;
+	}
+	
 	public String getSymbol(int refInt)
 	{
-		return intToSymbolMap.get(refInt);
+		return symbols[refInt];
 	}
 	
 	public int getSize()
 	{
-		return symbolSet.size();
+		return symbols.length;
+	}
+	
+	/**
+	 * True if the other alphabet maps every integer to the same symbol. Unlike equals,
+	 * the order counts, as it must for data indexed by mapped integers.
+	 * @param other
+	 * @return
+	 */
+	public boolean hasSameMapping(Alphabet other)
+	{
+		return Arrays.equals(symbols, other.symbols);
 	}
 	
 	public boolean contains(String symbol)
@@ -168,9 +239,14 @@ public class Alphabet
 		return probDistribution.get(sym);
 	}
 	
+	public double getProbability(int refInt)
+	{
+		return probabilities[refInt];
+	}
+	
 	public int getRandomInt()
 	{
-		return getInt(getRandomSymbol());
+		return getRandomInt(ThreadLocalRandom.current());
 	}
 	
 	@Override
@@ -0,0 +1,226 @@
+package sequence;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A Profile whose frequency matrix is held as striped atomic counters (one counter
+ * array per motif position) so that several threads can realign disjoint sequences
+ * concurrently. The probability and weight matrices are derived lazily from the
+ * counters on each read, which means readers may see slightly stale values while
+ * other threads are updating.
+ * @author Ricky
+ *
+ */
+public class ConcurrentProfile extends Profile
+{
+	private AtomicIntegerArray[] columnCounts;		//frequency of each symbol for each position [position][symbolMappedInt]
+	private AtomicIntegerArray starts;				//alignment start for each sequence, indexed by its ordinal in the sequence list
+	private Map<Sequence, Integer> ordinals;		//Maps each sequence (by identity) to its ordinal
+
+	public ConcurrentProfile(Dataset dataset, int length)
+	{
+		super(dataset, length);
+		initCounters();
+	}
+
+	public ConcurrentProfile(Alphabet alphabet, List<Sequence> seqList, int length)
+	{
+		super(alphabet, seqList, length);
+		initCounters();
+	}
+
+	/**
+	 * Constructor with given alignment, makes a copy of the alignment map.
+	 * @param alphabet
+	 * @param seqList
+	 * @param length
+	 * @param alignments
+	 */
+	public ConcurrentProfile(Alphabet alphabet, List<Sequence> seqList, int length, Map<Sequence, Integer> alignments)
+	{
+		super(alphabet, seqList, length, alignments);
+		initCounters();
+	}
+
+	/**
+	 * Loads the atomic counters from the alignment held by the base profile
+	 */
+	private void initCounters()
+	{
+		columnCounts = new AtomicIntegerArray[length];
+		for(int pos=0; pos < length; ++pos)
+		{
+			columnCounts[pos] = new AtomicIntegerArray(height());
+		}
+
+		starts = new AtomicIntegerArray(sequences.size());
+		ordinals = new IdentityHashMap<Sequence, Integer>();
+		for(int i=0; i < sequences.size(); ++i)
+		{
+			Sequence seq = sequences.get(i);
+			ordinals.put(seq, i);
+			starts.set(i, alignments.get(seq));
+			includeSequence(seq, alignments.get(seq));
+		}
+	}
+
+	/**
+	 * Changes the start of the alignment for a given sequence. Safe to call concurrently
+	 * as long as no two threads update the same sequence at the same time.
+	 * @param seq sequence to update
+	 * @param newStartPos new alignment start
+	 */
+	@Override
+	public void updateAlignmentStart(Sequence seq, int newStartPos)
+	{
+		checkAlignmentStart(seq, newStartPos);
+		int oldStartPos = starts.getAndSet(ordinals.get(seq), newStartPos);
+		snapshotStale = true;
+		for(int pos=0; pos < length; ++pos)
+		{
+			int oldSym = seq.getIntAtPosition(oldStartPos + pos);
+			int newSym = seq.getIntAtPosition(newStartPos + pos);
+			if(oldSym != newSym)
+			{
+				columnCounts[pos].decrementAndGet(oldSym);
+				columnCounts[pos].incrementAndGet(newSym);
+			}
+		}
+	}
+
+	/**
+	 * The counters only track forward strand alignments
+	 */
+	@Override
+	public void updateAlignmentStart(Sequence seq, int newStartPos, boolean reverse)
+	{
+		try{
+			if(reverse)
+				throw new Exception("Concurrent profiles only align the forward strand");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		updateAlignmentStart(seq, newStartPos);
+	}
+
+	/**
+	 * Removes the contribution of the sequence's current alignment from the counters,
+	 * leaving the other sequences' contributions in place. Used to score a sequence
+	 * against the profile of all the others.
+	 * @param seq
+	 */
+	public void excludeSequence(Sequence seq)
+	{
+		int start = starts.get(ordinals.get(seq));
+		snapshotStale = true;
+		for(int pos=0; pos < length; ++pos)
+		{
+			columnCounts[pos].decrementAndGet(seq.getIntAtPosition(start + pos));
+		}
+	}
+
+	/**
+	 * Adds the contribution of the sequence back into the counters at the given start.
+	 * Must only follow a call to excludeSequence for the same sequence.
+	 * @param seq
+	 * @param newStartPos
+	 */
+	public void includeSequence(Sequence seq, int newStartPos)
+	{
+		checkAlignmentStart(seq, newStartPos);
+		starts.set(ordinals.get(seq), newStartPos);
+		snapshotStale = true;
+		for(int pos=0; pos < length; ++pos)
+		{
+			columnCounts[pos].incrementAndGet(seq.getIntAtPosition(newStartPos + pos));
+		}
+	}
+
+	private void checkAlignmentStart(Sequence seq, int newStartPos)
+	{
+		try{
+			if(!ordinals.containsKey(seq))
+				throw new Exception("Sequence not in the profile");
+			if(newStartPos < 0 || newStartPos >= seq.getSize() - length + 1)
+				throw new Exception("New Start position out of bounds");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	@Override
+	public int getPfm(int mappedInt, int position)
+	{
+		return columnCounts[position].get(mappedInt);
+	}
+
+	@Override
+	public double getPpm(int mappedInt, int position)
+	{
+		return ((double)getPfm(mappedInt, position)) / getSequenceCount();
+	}
+
+	@Override
+	public double getPwm(int mappedInt, int position)
+	{
+		double weightedProb = getPpm(mappedInt, position) / dataset.getFlooredBackground(mappedInt);
+		if(weightedProb < DELTA)
+		{
+			weightedProb = DELTA;
+		}
+		return Math.log(weightedProb) / Math.log(2);
+	}
+
+	/**
+	 * Derived from the counters on each read, the cached consensus of the base 
+	 * profile is not kept in step with concurrent updates
+	 */
+	@Override
+	public int getConsensusCode(int position)
+	{
+		int maxCode = -1;
+		int maxFreq = 0;
+		for(int code : symbolOrder)
+		{
+			int freq = columnCounts[position].get(code);
+			if(freq > maxFreq)
+			{
+				maxCode = code;
+				maxFreq = freq;
+			}
+		}
+		return maxCode;
+	}
+
+	@Override
+	public Map<Sequence, Integer> getAlignmentStarts()
+	{
+		Map<Sequence, Integer> result = new HashMap<Sequence, Integer>();
+		for(int i=0; i < sequences.size(); ++i)
+		{
+			result.put(sequences.get(i), starts.get(i));
+		}
+		return result;
+	}
+
+	@Override
+	public String alignmentsToString()
+	{
+		StringBuilder output = new StringBuilder();
+		output.append("[");
+		for(int i=0; i < sequences.size(); ++i)
+		{
+			output.append(starts.get(i) + ", ");
+		}
+		output.replace(output.length()-2, output.length(), "");
+		output.append("]");
+
+		return output.toString();
+	}
+}
@@ -0,0 +1,384 @@
+package sequence;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * A list of sequences together with the statistics that every Profile over them
+ * needs: the count of each symbol, the total number of symbols and the empirical
+ * background model. The statistics are computed once, in a parallel pass over the
+ * sequences, and shared by reference by all Profiles built over the dataset, so the
+ * sequences must not change after the dataset is created.
+ * The dataset also holds a mask of each sequence, so that the occurrences of motifs
+ * already found can be hidden from later searches without copying the sequences.
+ * @author Ricky
+ *
+ */
+public class Dataset
+{
+	private Alphabet alphabet;
+	private List<Sequence> sequences;
+	private long[] symbolCounts;						//occurrences of each mapped symbol
+	private long totalSymbolCount;
+	private double[] background;						//empirical probability of each mapped symbol
+	private double[] flooredBackground;					//probability of each mapped symbol with one pseudocount each
+	private Map<String, Double> backgroundModel;		//empirical probability of each symbol that occurs
+	private List<PackedSequence> packedSequences = null;	//packed on first request
+	private Map<Sequence, Integer> ordinals;			//index of each sequence in the list
+	private String fingerprint = null;				//computed on first request
+	private BitSet[] masks;							//masked positions of each sequence, null while nothing is masked
+	private Map<Integer, MarkovBackground> markovBackgrounds = new HashMap<Integer, MarkovBackground>();	//estimated on first request, by order
+
+	public Dataset(Alphabet alphabet, List<Sequence> seqList)
+	{
+		this.alphabet = alphabet;
+		//If no sequence list is given then initialize as an empty list
+		sequences = (seqList == null) ? new ArrayList<Sequence>() : seqList;
+
+		//Check if sequences have the same alphabet
+		for(Sequence s : sequences)
+		{
+			if(!alphabet.equals(s.getAlphabet()))
+			{
+				System.err.println("Profiler requires sequences with the same alphabet");
+				System.exit(1);
+			}
+		}
+
+		//Count the symbols of each sequence in parallel, then merge the counts
+		final int height = alphabet.getSize();
+		symbolCounts = sequences.parallelStream().collect(
+				() -> new long[height],
+				(counts, seq) -> {
+					for(int i=0; i < seq.getSize(); ++i)
+					{
+						counts[seq.getIntAtPosition(i)]++;
+					}
+				},
+				(a, b) -> {
+					for(int i=0; i < height; ++i)
+					{
+						a[i] += b[i];
+					}
+				});
+
+		totalSymbolCount = 0;
+		for(long count : symbolCounts)
+		{
+			totalSymbolCount += count;
+		}
+
+		background = new double[height];
+		flooredBackground = new double[height];
+		Map<String, Double> symbolProb = new HashMap<String, Double>();
+		for(int a=0; a < height; ++a)
+		{
+			flooredBackground[a] = (symbolCounts[a] + 1.0) / (totalSymbolCount + height);
+			if(symbolCounts[a] > 0)
+			{
+				background[a] = ((double)symbolCounts[a]) / totalSymbolCount;
+				symbolProb.put(alphabet.getSymbol(a), background[a]);
+			}
+		}
+		backgroundModel = Collections.unmodifiableMap(symbolProb);
+		
+		ordinals = new IdentityHashMap<Sequence, Integer>();
+		for(int s=0; s < sequences.size(); ++s)
+		{
+			ordinals.put(sequences.get(s), s);
+		}
+		masks = new BitSet[sequences.size()];
+	}
+
+	public Alphabet getAlphabet()
+	{
+		return alphabet;
+	}
+
+	public List<Sequence> getSequences()
+	{
+		return sequences;
+	}
+
+	public int getSequenceCount()
+	{
+		return sequences.size();
+	}
+
+	public long getSymbolCount(int mappedInt)
+	{
+		return symbolCounts[mappedInt];
+	}
+
+	public long getTotalSymbolCount()
+	{
+		return totalSymbolCount;
+	}
+
+	/**
+	 * Empirical probability of the mapped symbol over all sequences, 0 if it never occurs
+	 * @param mappedInt
+	 * @return
+	 */
+	public double getBackground(int mappedInt)
+	{
+		return background[mappedInt];
+	}
+
+	/**
+	 * Probability of the mapped symbol with a pseudocount of one added to every symbol,
+	 * so it is never 0. Weights divide by this, since a symbol missing from the sequences
+	 * would otherwise give infinite or NaN log-odds.
+	 * @param mappedInt
+	 * @return
+	 */
+	public double getFlooredBackground(int mappedInt)
+	{
+		return flooredBackground[mappedInt];
+	}
+
+	/**
+	 * Bit-packed copies of the sequences, packed in parallel on first request
+	 * @return unmodifiable list, in the order of the sequences
+	 */
+	public synchronized List<PackedSequence> getPackedSequences()
+	{
+		if(packedSequences == null)
+		{
+			PackedSequence[] packed = new PackedSequence[sequences.size()];
+			IntStream.range(0, packed.length).parallel().forEach(s -> packed[s] = new PackedSequence(sequences.get(s)));
+			packedSequences = Collections.unmodifiableList(Arrays.asList(packed));
+		}
+		return packedSequences;
+	}
+
+	/**
+	 * Bit-packed copy of one sequence, the shared copy if it belongs to the dataset
+	 * @param seq
+	 * @return
+	 */
+	public PackedSequence getPackedSequence(Sequence seq)
+	{
+		Integer ordinal = ordinals.get(seq);
+		return (ordinal == null) ? new PackedSequence(seq) : getPackedSequences().get(ordinal);
+	}
+	
+	/**
+	 * Masks the positions [start, start + length) of the sequence, so that windows 
+	 * overlapping them are skipped by the profiles of the dataset. The masks must not 
+	 * change while a finder is running.
+	 * @param seq sequence of the dataset
+	 * @param start
+	 * @param length
+	 */
+	public void maskWindow(Sequence seq, int start, int length)
+	{
+		Integer ordinal = ordinals.get(seq);
+		try{
+			if(ordinal == null)
+				throw new Exception("Sequence not in the dataset");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		if(masks[ordinal] == null)
+			masks[ordinal] = new BitSet(seq.getSize());
+		masks[ordinal].set(start, start + length);
+	}
+	
+	/**
+	 * Removes the masks of every sequence
+	 */
+	public void clearMasks()
+	{
+		Arrays.fill(masks, null);
+	}
+	
+	/**
+	 * Whether the window [start, start + length) of the sequence overlaps a masked position
+	 * @param seq
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	public boolean isMasked(Sequence seq, int start, int length)
+	{
+		BitSet mask = getMask(seq);
+		if(mask == null)
+			return false;
+		int next = mask.nextSetBit(start);
+		return next >= 0 && next < start + length;
+	}
+	
+	/**
+	 * Sets the score of every window of the sequence that overlaps a masked position to 
+	 * -Infinity, walking only the masked positions.
+	 * @param seq
+	 * @param length window length
+	 * @param scores scores of the windows [0, m), m = n - length + 1, or of both strands [0, 2m)
+	 */
+	public void maskScores(Sequence seq, int length, double[] scores)
+	{
+		maskScores(seq, length, scores, scores.length == 2 * (seq.getSize() - length + 1));
+	}
+	
+	/**
+	 * As maskScores, for a buffer that may be longer than the sequence's scores
+	 * @param seq
+	 * @param length window length
+	 * @param scores scores of the windows [0, m), then of the reverse strand [m, 2m) if bothStrands
+	 * @param bothStrands
+	 */
+	public void maskScores(Sequence seq, int length, double[] scores, boolean bothStrands)
+	{
+		BitSet mask = getMask(seq);
+		if(mask == null)
+			return;
+		int windows = seq.getSize() - length + 1;
+		int lastMasked = -1;		//last window already masked
+		for(int pos = mask.nextSetBit(0); pos >= 0; pos = mask.nextSetBit(pos + 1))
+		{
+			for(int w = Math.max(lastMasked + 1, pos - length + 1); w <= Math.min(pos, windows - 1); ++w)
+			{
+				scores[w] = Double.NEGATIVE_INFINITY;
+				if(bothStrands)
+					scores[windows + w] = Double.NEGATIVE_INFINITY;
+				lastMasked = w;
+			}
+		}
+	}
+	
+	/**
+	 * Picks a window start of the sequence uniformly among the windows that do not 
+	 * overlap a masked position, or among all windows if every one is masked
+	 * @param seq
+	 * @param length window length
+	 * @param gen
+	 * @return
+	 */
+	public int randomUnmaskedStart(Sequence seq, int length, Random gen)
+	{
+		int windows = seq.getSize() - length + 1;
+		BitSet mask = getMask(seq);
+		if(mask == null)
+			return gen.nextInt(windows);
+		
+		//Window w is free when [w, w + length) holds no masked position, so between two
+		//masked positions p < q the free windows are [p + 1, q - length + 1)
+		int free = 0;
+		for(int w = 0; w < windows; )
+		{
+			int next = mask.nextSetBit(w);
+			int end = (next < 0) ? windows : Math.min(windows, next - length + 1);
+			if(end > w)
+				free += end - w;
+			if(next < 0)
+				break;
+			w = mask.nextClearBit(next);
+		}
+		if(free == 0)
+			return gen.nextInt(windows);
+		
+		int pick = gen.nextInt(free);
+		for(int w = 0; ; )
+		{
+			int next = mask.nextSetBit(w);
+			int end = (next < 0) ? windows : Math.min(windows, next - length + 1);
+			if(end > w)
+			{
+				if(pick < end - w)
+					return w + pick;
+				pick -= end - w;
+			}
+			w = mask.nextClearBit(next);
+		}
+	}
+	
+	private BitSet getMask(Sequence seq)
+	{
+		Integer ordinal = ordinals.get(seq);
+		return (ordinal == null) ? null : masks[ordinal];
+	}
+
+	/**
+	 * SHA-256 digest of the alphabet and the sequences in order, as a hex string.
+	 * Identifies the dataset a checkpoint or cached result was computed on.
+	 * @return
+	 */
+	public synchronized String getFingerprint()
+	{
+		if(fingerprint == null)
+		{
+			MessageDigest digest = null;
+			try{
+				digest = MessageDigest.getInstance("SHA-256");
+			}catch(NoSuchAlgorithmException e){
+				e.printStackTrace();
+				System.exit(1);
+			}
+			for(int a=0; a < alphabet.getSize(); ++a)
+			{
+				digest.update(alphabet.getSymbol(a).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte)0);
+			}
+			byte[] codes = new byte[0];
+			for(Sequence seq : sequences)
+			{
+				//Each sequence is its length followed by its mapped ints
+				if(codes.length < seq.getSize())
+					codes = new byte[seq.getSize()];
+				for(int i=0; i < seq.getSize(); ++i)
+				{
+					codes[i] = (byte)(int)seq.getIntAtPosition(i);
+				}
+				int size = seq.getSize();
+				digest.update(new byte[]{(byte)(size >>> 24), (byte)(size >>> 16), (byte)(size >>> 8), (byte)size});
+				digest.update(codes, 0, size);
+			}
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest.digest())
+			{
+				hex.append(String.format("%02x", b));
+			}
+			fingerprint = hex.toString();
+		}
+		return fingerprint;
+	}
+	
+	/**
+	 * Order-k Markov background model of the sequences, estimated on first request
+	 * @param order
+	 * @return
+	 */
+	public synchronized MarkovBackground getMarkovBackground(int order)
+	{
+		MarkovBackground model = markovBackgrounds.get(order);
+		if(model == null)
+		{
+			model = new MarkovBackground(this, order);
+			markovBackgrounds.put(order, model);
+		}
+		return model;
+	}
+
+	/**
+	 * Empirical probability of each symbol occurring in the sequences.
+	 * Symbols that never occur are left out.
+	 * @return unmodifiable map
+	 */
+	public Map<String, Double> getBackgroundModel()
+	{
+		return backgroundModel;
+	}
+}
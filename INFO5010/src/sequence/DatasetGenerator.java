@@ -0,0 +1,325 @@
+package sequence;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Generates synthetic datasets for benchmarks and load tests. Background symbols are
+ * drawn with alias tables, from the alphabet's distribution or from an order-k Markov
+ * background, and a motif can be planted into each sequence as an (l,d) instance:
+ * a copy of the motif with exactly d positions changed to a different symbol, written
+ * over the background at a uniformly random start.
+ * Sequences are generated in parallel as arrays of mapped ints, and either boxed into
+ * Sequences, packed straight into PackedSequences or written as text. Each sequence draws
+ * from its own generator seeded from the master seed and its index, so the dataset only
+ * depends on the seed, not on the number of threads.
+ * @author Ricky
+ *
+ */
+public class DatasetGenerator
+{
+	private static final int BLOCK = 1024;				//sequences generated per task
+	private static final int MAX_CONTEXT_BITS = 16;		//largest Markov order generated from, in bits of context
+
+	private Alphabet alphabet;
+	private int height;
+	private int order;								//0 for independent symbols
+	private int bitsPerSymbol;
+	private AliasTable[][] backgroundTables;		//[order j][context] distribution of the next symbol
+	private long seed;
+	private byte[] motif = null;					//planted motif, null if none
+	private int mutations;							//d, exact number of changed positions per instance
+	private double plantFraction;					//fraction of the sequences given an instance
+	private int[] plantedStarts;					//start of the instance in each sequence of the last generate, -1 if none
+
+	/**
+	 * Background of independent symbols with the alphabet's distribution
+	 * @param alphabet
+	 * @param seed
+	 */
+	public DatasetGenerator(Alphabet alphabet, long seed)
+	{
+		this.alphabet = alphabet;
+		this.seed = seed;
+		height = alphabet.getSize();
+		order = 0;
+		bitsPerSymbol = PackedSequence.bitsPerSymbol(alphabet);
+		double[] weights = new double[height];
+		for(int a=0; a < height; ++a)
+		{
+			weights[a] = alphabet.getProbability(a);
+		}
+		backgroundTables = new AliasTable[][]{{new AliasTable(weights)}};
+	}
+
+	/**
+	 * Background drawn from an order-k Markov model, e.g. one estimated from real sequences.
+	 * The first symbols of each sequence are drawn from the lower orders.
+	 * @param background
+	 * @param seed
+	 */
+	public DatasetGenerator(MarkovBackground background, long seed)
+	{
+		this.alphabet = background.getAlphabet();
+		this.seed = seed;
+		height = alphabet.getSize();
+		order = background.getOrder();
+		bitsPerSymbol = PackedSequence.bitsPerSymbol(alphabet);
+		try{
+			if(order * bitsPerSymbol > MAX_CONTEXT_BITS)
+				throw new Exception("Markov background order is too high to generate from, at most " + (MAX_CONTEXT_BITS / bitsPerSymbol));
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		backgroundTables = new AliasTable[order + 1][];
+		for(int j=0; j <= order; ++j)
+		{
+			backgroundTables[j] = new AliasTable[1 << (j * bitsPerSymbol)];
+			for(int context=0; context < backgroundTables[j].length; ++context)
+			{
+				backgroundTables[j][context] = new AliasTable(background.getConditionalProbabilities(j, context));
+			}
+		}
+	}
+
+	/**
+	 * Plants an (l,d) instance of a new random motif into the generated sequences.
+	 * The motif is drawn from the order 0 background with the master seed.
+	 * @param motifLength l
+	 * @param mutations d, positions of each instance that differ from the motif
+	 * @param plantFraction fraction of the sequences given an instance, 1 for one in every sequence
+	 */
+	public void plantMotif(int motifLength, int mutations, double plantFraction)
+	{
+		try{
+			if(motifLength < 1 || mutations < 0 || mutations > motifLength)
+				throw new Exception("Planted motifs need 0 <= mutations <= length");
+			if(mutations > 0 && height < 2)
+				throw new Exception("Mutations need an alphabet of at least two symbols");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		Random gen = new Random(seed);
+		motif = new byte[motifLength];
+		for(int i=0; i < motifLength; ++i)
+		{
+			motif[i] = (byte)backgroundTables[0][0].sample(gen);
+		}
+		this.mutations = mutations;
+		this.plantFraction = plantFraction;
+	}
+
+	/**
+	 * The planted motif, null if none is planted
+	 * @return
+	 */
+	public Sequence getMotif()
+	{
+		return (motif == null) ? null : Sequence.fromCodes(alphabet, motif);
+	}
+
+	/**
+	 * Start of the planted instance in each sequence of the last generate call, -1 if it has none
+	 * @return
+	 */
+	public int[] getPlantedStarts()
+	{
+		return plantedStarts.clone();
+	}
+
+	/**
+	 * Generates the sequences in memory
+	 * @param quantity
+	 * @param length
+	 * @return
+	 */
+	public List<Sequence> generate(int quantity, final int length)
+	{
+		checkLength(length);
+		final Sequence[] result = new Sequence[quantity];
+		plantedStarts = new int[quantity];
+		IntStream.range(0, quantity).parallel().forEach(i -> {
+			byte[] codes = new byte[length];
+			plantedStarts[i] = generateSequence(i, codes);
+			result[i] = Sequence.fromCodes(alphabet, codes);
+		});
+		List<Sequence> seqList = new ArrayList<Sequence>(quantity);
+		for(Sequence seq : result)
+		{
+			seqList.add(seq);
+		}
+		return seqList;
+	}
+
+	/**
+	 * Generates the sequences in memory as packed copies only, each packed straight from
+	 * its array of mapped ints, so a base costs bitsPerSymbol bits rather than a boxed
+	 * element of a Sequence. For the window based tools (k-mer index, scanners, scorers
+	 * of packed windows) over sequences too many to hold as Sequences. The same seed
+	 * gives the same sequences as generate.
+	 * @param quantity
+	 * @param length
+	 * @return
+	 */
+	public List<PackedSequence> generatePacked(int quantity, final int length)
+	{
+		checkLength(length);
+		final PackedSequence[] result = new PackedSequence[quantity];
+		plantedStarts = new int[quantity];
+		IntStream.range(0, quantity).parallel().forEach(i -> {
+			byte[] codes = new byte[length];
+			plantedStarts[i] = generateSequence(i, codes);
+			result[i] = new PackedSequence(alphabet, codes);
+		});
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * Generates the sequences straight into a file in the load-file format, without
+	 * holding them in memory, and writes the ground truth to a sidecar file: the motif,
+	 * then the index, start and instance of each planted sequence.
+	 * Blocks of sequences are generated in parallel and written in order.
+	 * @param fileName
+	 * @param truthFileName null to skip the ground truth
+	 * @param quantity
+	 * @param length
+	 * @param motifLength motif length written in the header
+	 * @throws IOException
+	 */
+	public void writeDataset(String fileName, String truthFileName, int quantity, final int length, int motifLength) throws IOException
+	{
+		checkLength(length);
+		try(Writer out = new BufferedWriter(new FileWriter(fileName), 1 << 20);
+				Writer truth = (truthFileName == null) ? null : new BufferedWriter(new FileWriter(truthFileName)))
+		{
+			//Header : alphabet, distribution and motif length
+			StringBuilder header = new StringBuilder();
+			for(int a=0; a < height; ++a)
+			{
+				header.append(alphabet.getSymbol(a));
+			}
+			header.append('\n');
+			for(int a=0; a < height; ++a)
+			{
+				header.append(alphabet.getProbability(a)).append(a < height - 1 ? " " : "\n");
+			}
+			header.append(motifLength).append('\n');
+			out.write(header.toString());
+			if(truth != null)
+				truth.write("motif\t" + ((motif == null) ? "" : getMotif().toString()) + "\n");
+
+			int blocks = (quantity + BLOCK - 1) / BLOCK;
+			int batch = 4 * Runtime.getRuntime().availableProcessors();		//blocks held in memory at once
+			for(int b0=0; b0 < blocks; b0 += batch)
+			{
+				final int first = b0;
+				String[][] text = new String[Math.min(batch, blocks - b0)][];
+				IntStream.range(0, text.length).parallel().forEach(b ->
+						text[b] = generateBlock((first + b) * BLOCK, Math.min(quantity, (first + b + 1) * BLOCK), length));
+				for(String[] block : text)
+				{
+					out.write(block[0]);
+					if(truth != null)
+						truth.write(block[1]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generates the sequences [from, to) as the lines of the dataset and of the ground truth
+	 */
+	private String[] generateBlock(int from, int to, int length)
+	{
+		StringBuilder lines = new StringBuilder((to - from) * (length + 1));
+		StringBuilder truthLines = new StringBuilder();
+		byte[] codes = new byte[length];
+		for(int i=from; i < to; ++i)
+		{
+			int start = generateSequence(i, codes);
+			for(byte code : codes)
+			{
+				lines.append(alphabet.getSymbol(code));
+			}
+			lines.append('\n');
+			if(start >= 0)
+			{
+				truthLines.append(i).append('\t').append(start).append('\t');
+				for(int p=start; p < start + motif.length; ++p)
+				{
+					truthLines.append(alphabet.getSymbol(codes[p]));
+				}
+				truthLines.append('\n');
+			}
+		}
+		return new String[]{lines.toString(), truthLines.toString()};
+	}
+
+	/**
+	 * Fills the codes with the background of sequence i and plants an instance
+	 * @return start of the instance, -1 if none was planted
+	 */
+	private int generateSequence(int i, byte[] codes)
+	{
+		Random gen = new Random(mix(seed + i));
+		int contextMask = (1 << (order * bitsPerSymbol)) - 1;
+		int context = 0;
+		for(int p=0; p < codes.length; ++p)
+		{
+			int j = Math.min(p, order);
+			int symbol = backgroundTables[j][context & ((1 << (j * bitsPerSymbol)) - 1)].sample(gen);
+			codes[p] = (byte)symbol;
+			context = ((context << bitsPerSymbol) | symbol) & contextMask;
+		}
+
+		if(motif == null || gen.nextDouble() >= plantFraction)
+			return -1;
+		int start = gen.nextInt(codes.length - motif.length + 1);
+		System.arraycopy(motif, 0, codes, start, motif.length);
+		//Change exactly d distinct positions, chosen by a partial shuffle
+		int[] positions = new int[motif.length];
+		for(int p=0; p < positions.length; ++p)
+		{
+			positions[p] = p;
+		}
+		for(int m=0; m < mutations; ++m)
+		{
+			int pick = m + gen.nextInt(positions.length - m);
+			int pos = positions[pick];
+			positions[pick] = positions[m];
+			positions[m] = pos;
+			codes[start + pos] = (byte)((motif[pos] + 1 + gen.nextInt(height - 1)) % height);
+		}
+		return start;
+	}
+
+	private void checkLength(int length)
+	{
+		try{
+			if(length < 1 || (motif != null && length < motif.length))
+				throw new Exception("Sequences must be at least as long as the planted motif");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Scrambles a seed so that neighbouring sequence indices get unrelated generators
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,298 @@
+package sequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Occurrence index of every k-mer in a dataset's sequences. K-mers are keyed by their
+ * packed code in an open-addressing table holding the occurrence count and a range of
+ * postings, where each posting packs (sequence ordinal, offset) into a long.
+ * The dataset's packed sequences are read in two passes, each rolling the packed code of
+ * the window along the sequence so the windows are never stored: the first pass counts
+ * the k-mers of each block of sequences into a worker's local table, the local tables are
+ * merged and the postings ranges laid out, and the second pass fills the postings in parallel.
+ * @author Ricky
+ *
+ */
+public class KmerIndex
+{
+	private static final int MAX_WINDOWS = Integer.MAX_VALUE - 8;		//largest postings array, whose ranges are indexed by int
+	private Alphabet alphabet;
+	private int k;
+	private long[] keys;				//packed k-mer code in each slot
+	private int[] counts;				//occurrences of the k-mer in each slot, 0 marks an empty slot
+	private int[] postingStarts;		//start of the slot's range in postings
+	private long[] postings;			//(sequence ordinal << 32) | offset, sorted within each range
+	private int distinctKmers;
+	private long totalWindows;
+	private long[] ranking;				//k-mer codes by decreasing over-representation, computed on first use
+
+	public KmerIndex(Dataset dataset, int k)
+	{
+		final List<PackedSequence> packedList = dataset.getPackedSequences();
+		long windows = 0;
+		for(PackedSequence packed : packedList)
+		{
+			windows += Math.max(0, packed.size() - k + 1);
+		}
+		try{
+			if(packedList.isEmpty())
+				throw new Exception("Cannot index an empty sequence list");
+			if(k < 1 || k > PackedSequence.maxWindowLength(dataset.getAlphabet()))
+				throw new Exception("k-mer length must be in [1, 64 / bits per symbol]");
+			if(windows > MAX_WINDOWS)
+				throw new Exception(String.format("Cannot index %d windows, at most %d fit in the postings", windows, MAX_WINDOWS));
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		this.alphabet = dataset.getAlphabet();
+		this.k = k;
+
+		//First pass: each worker counts the k-mers of a block of sequences into a local table,
+		//rolling the packed window along each sequence
+		final int bits = PackedSequence.bitsPerSymbol(alphabet);
+		final long windowMask = (k * bits == 64) ? -1L : (1L << (k * bits)) - 1;
+		int workers = Math.min(packedList.size(), Runtime.getRuntime().availableProcessors());
+		final LocalTable[] locals = new LocalTable[workers];
+		IntStream.range(0, workers).parallel().forEach(w -> {
+			LocalTable local = new LocalTable();
+			for(int s = w * packedList.size() / workers; s < (w + 1) * packedList.size() / workers; ++s)
+			{
+				PackedSequence packed = packedList.get(s);
+				long window = 0;
+				for(int i=0; i < packed.size(); ++i)
+				{
+					window = ((window << bits) | packed.getCode(i)) & windowMask;
+					if(i >= k - 1)
+						local.add(window, 1);
+				}
+			}
+			locals[w] = local;
+		});
+
+		//Merge the local tables
+		int upperBound = 0;
+		for(LocalTable local : locals)
+		{
+			upperBound += local.size;
+		}
+		double spaceSize = Math.pow(alphabet.getSize(), k);
+		if(spaceSize < upperBound)
+			upperBound = (int)spaceSize;
+		int capacity = Integer.highestOneBit(Math.max(16, 2 * upperBound - 1)) << 1;
+		keys = new long[capacity];
+		counts = new int[capacity];
+		for(LocalTable local : locals)
+		{
+			for(int slot=0; slot < local.keys.length; ++slot)
+			{
+				if(local.counts[slot] > 0)
+				{
+					int global = findSlot(keys, counts, local.keys[slot]);
+					if(counts[global] == 0)
+						distinctKmers++;
+					keys[global] = local.keys[slot];
+					counts[global] += local.counts[slot];
+				}
+			}
+		}
+
+		//Lay out the postings ranges and fill them in parallel
+		postingStarts = new int[capacity];
+		int total = 0;
+		for(int slot=0; slot < capacity; ++slot)
+		{
+			postingStarts[slot] = total;
+			total += counts[slot];
+		}
+		totalWindows = windows;
+		postings = new long[total];
+		final AtomicIntegerArray cursors = new AtomicIntegerArray(postingStarts);
+		IntStream.range(0, packedList.size()).parallel().forEach(s -> {
+			//Second pass, rolling the windows again rather than holding them since the first
+			PackedSequence packed = packedList.get(s);
+			long window = 0;
+			for(int i=0; i < packed.size(); ++i)
+			{
+				window = ((window << bits) | packed.getCode(i)) & windowMask;
+				if(i >= k - 1)
+				{
+					int slot = findSlot(keys, counts, window);
+					postings[cursors.getAndIncrement(slot)] = (((long)s) << 32) | (i - k + 1);
+				}
+			}
+		});
+		//Parallel filling leaves each range unordered
+		IntStream.range(0, capacity).parallel().forEach(slot ->
+				Arrays.sort(postings, postingStarts[slot], postingStarts[slot] + counts[slot]));
+	}
+
+	/**
+	 * Linear probing for the slot holding the key, or the empty slot where it belongs
+	 * @param keys
+	 * @param counts
+	 * @param key
+	 * @return
+	 */
+	private static int findSlot(long[] keys, int[] counts, long key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while(counts[slot] != 0 && keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+
+	/**
+	 * Number of occurrences of the k-mer
+	 * @param kmer packed k-mer code
+	 * @return
+	 */
+	public int getCount(long kmer)
+	{
+		return counts[findSlot(keys, counts, kmer)];
+	}
+
+	/**
+	 * Returns the occurrences of the k-mer ordered by sequence and offset.
+	 * Use postingSequence and postingOffset to unpack each posting.
+	 * @param kmer packed k-mer code
+	 * @return
+	 */
+	public long[] getPostings(long kmer)
+	{
+		int slot = findSlot(keys, counts, kmer);
+		return Arrays.copyOfRange(postings, postingStarts[slot], postingStarts[slot] + counts[slot]);
+	}
+
+	public static int postingSequence(long posting)
+	{
+		return (int)(posting >>> 32);
+	}
+
+	public static int postingOffset(long posting)
+	{
+		return (int)posting;
+	}
+
+	/**
+	 * Returns up to n k-mers seen at least twice, ordered by how over-represented they are
+	 * compared to the background model of the alphabet, i.e. (observed - expected) / sqrt(expected)
+	 * @param n
+	 * @return packed k-mer codes
+	 */
+	public synchronized long[] getTopKmers(int n)
+	{
+		if(ranking == null)
+		{
+			final double[] zScores = new double[keys.length];
+			List<Integer> slots = new ArrayList<Integer>();
+			for(int slot=0; slot < keys.length; ++slot)
+			{
+				if(counts[slot] > 1)
+				{
+					double expected = totalWindows * backgroundProbability(keys[slot]);
+					zScores[slot] = (counts[slot] - expected) / Math.sqrt(expected);
+					slots.add(slot);
+				}
+			}
+			//Ties are broken by the smaller code so the ranking does not depend on the table layout
+			slots.sort((a, b) -> (zScores[a] != zScores[b]) ? Double.compare(zScores[b], zScores[a]) : Long.compare(keys[a], keys[b]));
+			ranking = new long[slots.size()];
+			for(int i=0; i < ranking.length; ++i)
+			{
+				ranking[i] = keys[slots.get(i)];
+			}
+		}
+		return Arrays.copyOf(ranking, Math.min(n, ranking.length));
+	}
+
+	/**
+	 * Probability of the k-mer under the alphabet's zero-order background model
+	 * @param kmer
+	 * @return
+	 */
+	private double backgroundProbability(long kmer)
+	{
+		int bits = PackedSequence.bitsPerSymbol(alphabet);
+		long mask = (1L << bits) - 1;
+		double prob = 1.0;
+		for(int i=0; i < k; ++i)
+		{
+			prob *= alphabet.getProbability((int)((kmer >>> (i * bits)) & mask));
+		}
+		return prob;
+	}
+
+	public int getK()
+	{
+		return k;
+	}
+
+	public int getDistinctKmers()
+	{
+		return distinctKmers;
+	}
+
+	public long getTotalWindows()
+	{
+		return totalWindows;
+	}
+
+	/**
+	 * Small growable open-addressing table used by each worker while counting
+	 */
+	private static class LocalTable
+	{
+		private long[] keys = new long[1024];
+		private int[] counts = new int[1024];
+		private int size = 0;
+
+		private void add(long key, int count)
+		{
+			int slot = findSlot(keys, counts, key);
+			if(counts[slot] == 0)
+			{
+				keys[slot] = key;
+				if(++size * 2 > keys.length)
+				{
+					counts[slot] = count;
+					grow();
+					return;
+				}
+			}
+			counts[slot] += count;
+		}
+
+		private void grow()
+		{
+			long[] oldKeys = keys;
+			int[] oldCounts = counts;
+			keys = new long[oldKeys.length * 2];
+			counts = new int[oldCounts.length * 2];
+			for(int slot=0; slot < oldKeys.length; ++slot)
+			{
+				if(oldCounts[slot] > 0)
+				{
+					int newSlot = findSlot(keys, counts, oldKeys[slot]);
+					keys[newSlot] = oldKeys[slot];
+					counts[newSlot] = oldCounts[slot];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package sequence;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * Order-k Markov background model of a dataset, so that low-complexity and
+ * dinucleotide-rich (e.g. CpG) regions are expected by the background instead of
+ * standing out as motifs.
+ * The base 2 log conditional probabilities are held in one flat table per order
+ * j = 0..k, indexed by [context * height + symbol], where the context packs the j
+ * preceding symbols (most recent in the lowest field) as in PackedSequence. The
+ * first positions of a sequence, with fewer than k preceding symbols, use the
+ * lower order tables. Counts get a pseudocount of 1.
+ * @author Ricky
+ *
+ */
+public class MarkovBackground
+{
+	private static final int MAX_CONTEXT_BITS = 16;		//largest table is 2^16 contexts, as DatasetGenerator
+	private static final int MAX_CACHED_LENGTHS = 8;	//window lengths whose log-likelihoods are kept
+
+	private Alphabet alphabet;
+	private int order;
+	private int height;
+	private int bitsPerSymbol;
+	private double[][] logTables;		//[order j][context * height + symbolMappedInt] = log_2 P(symbol | context)
+	private Map<Sequence, Integer> sequenceIndex;		//position of each of the dataset's sequences, by identity
+	private Map<Integer, AtomicReferenceArray<double[]>> windowCache;	//[window length][sequence index] = window log-likelihoods, least recently used first
+
+	/**
+	 * Estimates the model from the dataset's sequences in one parallel pass
+	 * @param dataset
+	 * @param order
+	 */
+	public MarkovBackground(Dataset dataset, int order)
+	{
+		this.alphabet = dataset.getAlphabet();
+		this.order = order;
+		height = alphabet.getSize();
+		bitsPerSymbol = PackedSequence.bitsPerSymbol(alphabet);
+		try{
+			if(order < 0 || order * bitsPerSymbol > MAX_CONTEXT_BITS)
+				throw new Exception("Markov background order must be in [0, " + (MAX_CONTEXT_BITS / bitsPerSymbol) + "]");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		List<Sequence> seqList = dataset.getSequences();
+		sequenceIndex = new IdentityHashMap<Sequence, Integer>();
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			sequenceIndex.put(seqList.get(s), s);
+		}
+		windowCache = new LinkedHashMap<Integer, AtomicReferenceArray<double[]>>(MAX_CACHED_LENGTHS, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, AtomicReferenceArray<double[]>> eldest)
+			{
+				return size() > MAX_CACHED_LENGTHS;
+			}
+		};
+
+		//Count every (context, symbol) pair of each order, one set of tables per worker
+		//over an interleaved share of the sequences, so the tables are not made per split
+		final int k = order;
+		final int workers = Math.max(1, Math.min(seqList.size(), ForkJoinPool.getCommonPoolParallelism()));
+		long[][] counts = IntStream.range(0, workers).parallel()
+				.mapToObj(w -> {
+					long[][] tables = newCountTables(k);
+					for(int s=w; s < seqList.size(); s += workers)
+					{
+						Sequence seq = seqList.get(s);
+						int context = 0;
+						for(int i=0; i < seq.getSize(); ++i)
+						{
+							int symbol = seq.getIntAtPosition(i);
+							for(int j=0; j <= Math.min(i, k); ++j)
+							{
+								tables[j][(context & contextMask(j)) * height + symbol]++;
+							}
+							context = ((context << bitsPerSymbol) | symbol) & contextMask(k);
+						}
+					}
+					return tables;
+				})
+				.reduce((a, b) -> {
+					for(int j=0; j <= k; ++j)
+					{
+						for(int i=0; i < a[j].length; ++i)
+						{
+							a[j][i] += b[j][i];
+						}
+					}
+					return a;
+				}).get();
+
+		logTables = new double[order + 1][];
+		for(int j=0; j <= order; ++j)
+		{
+			logTables[j] = new double[counts[j].length];
+			for(int context=0; context < counts[j].length / height; ++context)
+			{
+				long total = 0;
+				for(int a=0; a < height; ++a)
+				{
+					total += counts[j][context * height + a];
+				}
+				for(int a=0; a < height; ++a)
+				{
+					double prob = (counts[j][context * height + a] + 1.0) / (total + height);
+					logTables[j][context * height + a] = Math.log(prob) / Math.log(2);
+				}
+			}
+		}
+	}
+
+	private long[][] newCountTables(int k)
+	{
+		long[][] tables = new long[k + 1][];
+		for(int j=0; j <= k; ++j)
+		{
+			tables[j] = new long[(1 << (j * bitsPerSymbol)) * height];
+		}
+		return tables;
+	}
+
+	private int contextMask(int j)
+	{
+		return (1 << (j * bitsPerSymbol)) - 1;
+	}
+
+	/**
+	 * Base 2 log probability of each position of the sequence given its preceding symbols
+	 * @param seq
+	 * @return
+	 */
+	public double[] positionLogLikelihoods(Sequence seq)
+	{
+		double[] result = new double[seq.getSize()];
+		int context = 0;
+		for(int i=0; i < result.length; ++i)
+		{
+			int symbol = seq.getIntAtPosition(i);
+			int j = Math.min(i, order);
+			result[i] = logTables[j][(context & contextMask(j)) * height + symbol];
+			context = ((context << bitsPerSymbol) | symbol) & contextMask(order);
+		}
+		return result;
+	}
+
+	/**
+	 * Base 2 log-likelihood of the sequence on its own, the first symbols using the lower orders
+	 * @param seq
+	 * @return
+	 */
+	public double logLikelihood(Sequence seq)
+	{
+		double result = 0;
+		for(double logProb : positionLogLikelihoods(seq))
+		{
+			result += logProb;
+		}
+		return result;
+	}
+
+	/**
+	 * Base 2 log-likelihood of every window [s, s + length) of the sequence, each position
+	 * conditioned on the symbols preceding it in the sequence (also those before the window).
+	 * Computed with a rolling sum on first request and cached for the dataset's own
+	 * sequences, for the most recently used lengths only, so a scorer can subtract the
+	 * background of a window with one lookup while the cache stays within a few times
+	 * the size of the dataset. Other sequences are computed on every request.
+	 * The sequence must not change afterwards.
+	 * @param seq
+	 * @param length window length
+	 * @return log-likelihoods of the windows [0, n - length + 1)
+	 */
+	public double[] getWindowLogLikelihoods(Sequence seq, int length)
+	{
+		Integer index = sequenceIndex.get(seq);
+		if(index == null)
+			return windowLogLikelihoods(seq, length);
+
+		AtomicReferenceArray<double[]> cache;
+		synchronized(windowCache)
+		{
+			cache = windowCache.get(length);
+			if(cache == null)
+			{
+				cache = new AtomicReferenceArray<double[]>(sequenceIndex.size());
+				windowCache.put(length, cache);
+			}
+		}
+		double[] windows = cache.get(index);
+		if(windows == null)
+		{
+			//Threads racing here compute the same values, so either result can be kept
+			windows = windowLogLikelihoods(seq, length);
+			cache.set(index, windows);
+		}
+		return windows;
+	}
+
+	private double[] windowLogLikelihoods(Sequence seq, int length)
+	{
+		double[] positions = positionLogLikelihoods(seq);
+		double[] windows = new double[Math.max(0, positions.length - length + 1)];
+		double sum = 0;
+		for(int i=0; i < positions.length; ++i)
+		{
+			sum += positions[i];
+			if(i >= length)
+				sum -= positions[i - length];
+			if(i >= length - 1)
+				windows[i - length + 1] = sum;
+		}
+		return windows;
+	}
+
+	/**
+	 * Base 2 log probability of the symbol with no context, i.e. under the order 0 table
+	 * @param mappedInt
+	 * @return
+	 */
+	public double getZeroOrderLogProbability(int mappedInt)
+	{
+		return logTables[0][mappedInt];
+	}
+
+	/**
+	 * Probability of each symbol following the context under the order j table
+	 * @param j order, at most the model's order
+	 * @param context the j preceding symbols, packed with the most recent in the lowest field
+	 * @return probabilities indexed by mapped int
+	 */
+	public double[] getConditionalProbabilities(int j, int context)
+	{
+		double[] result = new double[height];
+		for(int a=0; a < height; ++a)
+		{
+			result[a] = Math.pow(2, logTables[j][context * height + a]);
+		}
+		return result;
+	}
+
+	public int getOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * Highest order a background can be estimated with over the alphabet
+	 * @param alphabet
+	 * @return
+	 */
+	public static int maxOrder(Alphabet alphabet)
+	{
+		return MAX_CONTEXT_BITS / PackedSequence.bitsPerSymbol(alphabet);
+	}
+
+	public Alphabet getAlphabet()
+	{
+		return alphabet;
+	}
+}
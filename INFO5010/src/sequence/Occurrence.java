@@ -0,0 +1,52 @@
+package sequence;
+
+/**
+ * An occurrence of a pattern in a list of sequences
+ * @author Ricky
+ *
+ */
+public class Occurrence implements Comparable<Occurrence>
+{
+	private int sequenceIndex;		//ordinal of the sequence in the list
+	private int offset;				//start of the occurrence in the sequence
+	private int mismatches;			//Hamming distance to the pattern
+	
+	public Occurrence(int sequenceIndex, int offset, int mismatches)
+	{
+		this.sequenceIndex = sequenceIndex;
+		this.offset = offset;
+		this.mismatches = mismatches;
+	}
+	
+	public int getSequenceIndex()
+	{
+		return sequenceIndex;
+	}
+	
+	public int getOffset()
+	{
+		return offset;
+	}
+	
+	public int getMismatches()
+	{
+		return mismatches;
+	}
+	
+	/**
+	 * Orders occurrences by sequence, then by offset
+	 */
+	@Override
+	public int compareTo(Occurrence other)
+	{
+		if(sequenceIndex != other.sequenceIndex)
+			return Integer.compare(sequenceIndex, other.sequenceIndex);
+		return Integer.compare(offset, other.offset);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return String.format("Sequence : %d - Offset : %d - Mismatches : %d", sequenceIndex, offset, mismatches);
+	}
+}
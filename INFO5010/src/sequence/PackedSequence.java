@@ -0,0 +1,258 @@
+package sequence;
+
+/**
+ * Bit-packed copy of a Sequence. Each symbol's mapped integer is stored in the
+ * smallest number of bits that can hold every symbol of the alphabet (2 bits for DNA),
+ * so that windows of up to 64 / bitsPerSymbol symbols can be handled as a single long.
+ * Within a window code the first symbol occupies the highest field.
+ * @author Ricky
+ *
+ */
+public class PackedSequence
+{
+	private Alphabet alphabet;
+	private int bitsPerSymbol;
+	private int symbolsPerWord;
+	private long symbolMask;
+	private long[] words;
+	private int size;
+
+	public PackedSequence(Sequence seq)
+	{
+		this.alphabet = seq.getAlphabet();
+		this.size = seq.getSize();
+		bitsPerSymbol = bitsPerSymbol(alphabet);
+		symbolsPerWord = 64 / bitsPerSymbol;
+		symbolMask = (1L << bitsPerSymbol) - 1;
+		words = new long[(size + symbolsPerWord - 1) / symbolsPerWord];
+
+		for(int i=0; i < size; ++i)
+		{
+			words[i / symbolsPerWord] |= ((long)seq.getIntAtPosition(i)) << ((i % symbolsPerWord) * bitsPerSymbol);
+		}
+	}
+
+	/**
+	 * Packs mapped ints straight from an array, e.g. those of a generator, without
+	 * building a Sequence first
+	 * @param alphabet
+	 * @param codes
+	 */
+	PackedSequence(Alphabet alphabet, byte[] codes)
+	{
+		this.alphabet = alphabet;
+		this.size = codes.length;
+		bitsPerSymbol = bitsPerSymbol(alphabet);
+		symbolsPerWord = 64 / bitsPerSymbol;
+		symbolMask = (1L << bitsPerSymbol) - 1;
+		words = new long[(size + symbolsPerWord - 1) / symbolsPerWord];
+
+		for(int i=0; i < size; ++i)
+		{
+			words[i / symbolsPerWord] |= ((long)codes[i]) << ((i % symbolsPerWord) * bitsPerSymbol);
+		}
+	}
+
+	/**
+	 * Number of bits needed to hold every mapped integer of the alphabet
+	 * @param alphabet
+	 * @return
+	 */
+	public static int bitsPerSymbol(Alphabet alphabet)
+	{
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(alphabet.getSize() - 1));
+	}
+
+	/**
+	 * Longest window that can be packed into a single long for the alphabet
+	 * @param alphabet
+	 * @return
+	 */
+	public static int maxWindowLength(Alphabet alphabet)
+	{
+		return 64 / bitsPerSymbol(alphabet);
+	}
+
+	public int getCode(int i)
+	{
+		return (int)((words[i / symbolsPerWord] >>> ((i % symbolsPerWord) * bitsPerSymbol)) & symbolMask);
+	}
+
+	/**
+	 * Returns the packed code of the window [start, start + length)
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	public long getWindow(int start, int length)
+	{
+		long window = 0;
+		for(int i=start; i < start + length; ++i)
+		{
+			window = (window << bitsPerSymbol) | getCode(i);
+		}
+		return window;
+	}
+
+	/**
+	 * Returns the packed codes of every window of the given length, computed with a
+	 * rolling shift so each symbol is only read once
+	 * @param length
+	 * @return packed codes of windows [0, n - length + 1)
+	 */
+	public long[] getAllWindows(int length)
+	{
+		try{
+			if(length * bitsPerSymbol > 64)
+				throw new Exception("Window is too long to pack into a long");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		long[] result = new long[Math.max(0, size - length + 1)];
+		long mask = (length * bitsPerSymbol == 64) ? -1L : (1L << (length * bitsPerSymbol)) - 1;
+		long window = 0;
+		for(int i=0; i < size; ++i)
+		{
+			window = ((window << bitsPerSymbol) | getCode(i)) & mask;
+			if(i >= length - 1)
+			{
+				result[i - length + 1] = window;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Mask with the lowest bit of each of the lowest given number of fields set
+	 * @param fields
+	 * @param bitsPerSymbol
+	 * @return
+	 */
+	public static long lowBitMask(int fields, int bitsPerSymbol)
+	{
+		long mask = 0;
+		for(int i=0; i < fields; ++i)
+		{
+			mask |= 1L << (i * bitsPerSymbol);
+		}
+		return mask;
+	}
+
+	/**
+	 * Counts the mismatching symbols between two packed windows, bit-parallel.
+	 * The differing bits of each field are folded onto the field's lowest bit,
+	 * and only the fields selected by the low-bit mask are counted.
+	 * @param a
+	 * @param b
+	 * @param lowBitMask selects the fields to compare (see lowBitMask)
+	 * @param bitsPerSymbol
+	 * @return number of mismatching symbols
+	 */
+	public static int mismatches(long a, long b, long lowBitMask, int bitsPerSymbol)
+	{
+		long diff = a ^ b;
+		long folded = diff;
+		for(int s=1; s < bitsPerSymbol; ++s)
+		{
+			folded |= diff >>> s;
+		}
+		return Long.bitCount(folded & lowBitMask);
+	}
+
+	/**
+	 * Whether the alphabet is DNA with its symbols mapped so that the complement of a
+	 * mapped int is its bitwise inverse, i.e. A=0, C=1, G=2, T=3
+	 * @param alphabet
+	 * @return
+	 */
+	public static boolean isComplementable(Alphabet alphabet)
+	{
+		if(alphabet.getSize() != 4)
+			return false;
+		String order = "ACGT";
+		for(int code=0; code < 4; ++code)
+		{
+			if(!alphabet.getSymbol(code).equalsIgnoreCase(order.substring(code, code + 1)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Mapped int of the complementary base, for a complementable alphabet
+	 * @param code
+	 * @return
+	 */
+	public static int complement(int code)
+	{
+		return code ^ 3;
+	}
+
+	/**
+	 * Reverse complement of a packed 2-bit window, computed in place in the long:
+	 * the bases are complemented by inverting every bit, then the 2-bit fields are
+	 * reversed by swapping neighbouring fields, nibbles and bytes, and shifted back down.
+	 * The alphabet must be complementable (see isComplementable).
+	 * @param window packed code of the window
+	 * @param length number of symbols in the window, at most 32
+	 * @return packed code of the reverse complement
+	 */
+	public static long reverseComplement(long window, int length)
+	{
+		long x = ~window;
+		x = ((x >>> 2) & 0x3333333333333333L) | ((x & 0x3333333333333333L) << 2);
+		x = ((x >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((x & 0x0F0F0F0F0F0F0F0FL) << 4);
+		x = Long.reverseBytes(x);
+		//The unused high fields were reversed into the lowest fields, shift them out
+		return x >>> (64 - 2 * length);
+	}
+
+	/**
+	 * Mapped int of the symbol at the position of a packed window
+	 * @param window
+	 * @param position position within the window, 0 is the first symbol
+	 * @param length
+	 * @param bitsPerSymbol
+	 * @return
+	 */
+	public static int symbolAt(long window, int position, int length, int bitsPerSymbol)
+	{
+		return (int)((window >>> ((length - 1 - position) * bitsPerSymbol)) & ((1L << bitsPerSymbol) - 1));
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getBitsPerSymbol()
+	{
+		return bitsPerSymbol;
+	}
+
+	public Alphabet getAlphabet()
+	{
+		return alphabet;
+	}
+
+	/**
+	 * Converts a packed window code back into a Sequence
+	 * @param alphabet
+	 * @param window
+	 * @param length
+	 * @return
+	 */
+	public static Sequence unpack(Alphabet alphabet, long window, int length)
+	{
+		int bits = bitsPerSymbol(alphabet);
+		long mask = (1L << bits) - 1;
+		Sequence result = new Sequence(alphabet, "");
+		for(int i=length - 1; i >= 0; --i)
+		{
+			result.append(alphabet.getSymbol((int)((window >>> (i * bits)) & mask)));
+		}
+		return result;
+	}
+}
@@ -1,6 +1,5 @@
 package sequence;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -15,62 +14,133 @@ import scoring.Score;
  * @author Ricky
  *
  */
-public class Profile
+public class Profile implements ProfileMatrices
 {
-	private Alphabet alphabet;
-	private List<Sequence> sequences; 
-	private int length;
-	private int[][] positionFrequencyMatrix; 		//frequency of each symbol for each position [symbolMappedInt][position]
-	private double[][] positionProbabilityMatrix;	//empirical probability of each symbol for each position [symbolMappedInt][position]
-	private double[][] positionWeightMatrix; 		//Base 2 log weighted probability of each symbol for each position [symbolMappedInt][position]
-	private Map<Sequence, Integer> alignments; 		//Tracks the start of the motif/pattern
-	private Map<String, Double> backgroundModel;
-	private double DELTA;							//pseudo-zero for avoiding overflow errors when taking logs, and for sampling error
+	protected Alphabet alphabet;
+	protected Dataset dataset;						//sequence statistics shared with every profile over the same sequences
+	protected List<Sequence> sequences; 
+	protected int length;
+	protected int height;							//number of symbols, the stride between positions in the matrices
+	private int[] positionFrequencyMatrix; 			//frequency of each symbol for each position [position * height + symbolMappedInt]
+	private double[] positionProbabilityMatrix;		//empirical probability of each symbol for each position [position * height + symbolMappedInt]
+	private double[] positionWeightMatrix; 			//Base 2 log weighted probability of each symbol for each position [position * height + symbolMappedInt]
+	protected Map<Sequence, Integer> alignments; 	//Tracks the start of the motif/pattern
+	protected Map<Sequence, Boolean> reverseStrands;	//sequences whose motif is aligned on the reverse strand, all others are forward
+	protected Map<String, Double> backgroundModel;
+	protected double DELTA;							//pseudo-zero for avoiding overflow errors when taking logs, and for sampling error
+	private int[] consensusCodes;					//mapped int of the consensus symbol at each position, -1 if no symbol occurs
+	private boolean[] consensusStale;				//positions whose frequencies changed since their consensus was found
+	private long[] columnVersions;					//incremented whenever a position's frequencies change
+	protected int[] symbolOrder;					//mapped ints in sorted symbol order, earlier symbols win consensus ties
+	private volatile ProfileSnapshot snapshot;		//last published immutable copy of the matrices
+	private double[] cellTerms = null;				//score of a cell of each frequency, [symbolMappedInt * (count + 1) + frequency], built on first use
+	private Score cellTermsScorer = null;			//score the cell terms were built for
+	protected volatile boolean snapshotStale = true;	//set whenever the matrices change after publishing, read by other threads
 	
 	
-	public Profile(Alphabet alphabet, List<Sequence> seqList, int length)
+	public Profile(Dataset dataset, int length)
 	{
-		this.alphabet = alphabet;
-		//Check if sequences have the same alphabet
-		//If no sequence list is given then initialize as an empty list 
-		if(seqList == null)
+		this(dataset, dataset.getSequences(), length, null);
+	}
+	
+	/**
+	 * Constructor with given alignment, makes a copy of the alignment map.
+	 * @param dataset
+	 * @param length
+	 * @param alignments
+	 */
+	public Profile(Dataset dataset, int length, Map<Sequence, Integer> alignments)
+	{
+		this(dataset, dataset.getSequences(), length, alignments);
+	}
+	
+	/**
+	 * Constructs a profile over a subset of the dataset's sequences (e.g. all but one
+	 * for Gibbs sampling), with the background statistics of the whole dataset.
+	 * @param dataset
+	 * @param seqList sequences of the dataset to profile
+	 * @param length
+	 * @param alignments alignment starts to copy, or null to start every sequence at 0
+	 */
+	public Profile(Dataset dataset, List<Sequence> seqList, int length, Map<Sequence, Integer> alignments)
+	{
+		this(dataset, seqList, length, alignments, null);
+	}
+	
+	/**
+	 * Constructs a profile over a subset of the dataset's sequences with given alignment
+	 * starts and strands, copying both maps
+	 * @param dataset
+	 * @param seqList sequences of the dataset to profile
+	 * @param length
+	 * @param alignments alignment starts to copy, or null to start every sequence at 0
+	 * @param reverseStrands strand of each alignment to copy (true = reverse), or null for all forward
+	 */
+	public Profile(Dataset dataset, List<Sequence> seqList, int length, Map<Sequence, Integer> alignments, 
+			Map<Sequence, Boolean> reverseStrands)
+	{
+		this.dataset = dataset;
+		this.alphabet = dataset.getAlphabet();
+		this.sequences = seqList;
+		
+		this.length = length;
+		height = alphabet.getSize();
+		positionFrequencyMatrix = new int[length * height];
+		positionProbabilityMatrix = new double[length * height];
+		positionWeightMatrix = new double[length * height];
+		consensusCodes = new int[length];
+		consensusStale = new boolean[length];
+		Arrays.fill(consensusStale, true);
+		columnVersions = new long[length];
+		symbolOrder = new int[alphabet.getSize()];
+		int order = 0;
+		for(String symbol : alphabet.getAllSymbols())
+		{
+			symbolOrder[order++] = alphabet.getInt(symbol);
+		}
+		
+		if(alignments == null)
 		{
-			sequences = new ArrayList<Sequence>();
+			//Inititate the alignment pointers to zero
+			this.alignments = new HashMap<Sequence, Integer>();
+			for(Sequence seq : sequences)
+			{
+				this.alignments.put(seq, 0);
+			}
 		}
 		else
 		{
-			for(Sequence s : seqList)
+			//Only the profile's own sequences, so the keys tell which sequences are in the profile
+			this.alignments = new HashMap<Sequence, Integer>();
+			for(Sequence seq : sequences)
 			{
-				if(!alphabet.equals(s.getAlphabet()))
-				{
-					System.err.println("Profiler requires sequences with the same alphabet");
-					System.exit(1);
-				};
+				this.alignments.put(seq, alignments.get(seq));
 			}
-			sequences = seqList;
 		}
-		
-		this.length = length;
-		positionFrequencyMatrix = new int[alphabet.getSize()][length];
-		positionProbabilityMatrix = new double[alphabet.getSize()][length];
-		positionWeightMatrix = new double[alphabet.getSize()][length];
-		alignments = new HashMap<Sequence, Integer>();
-		
-		//Inititate the alignment pointers to zero
-		for(Sequence seq : sequences)
+		this.reverseStrands = new HashMap<Sequence, Boolean>();
+		if(reverseStrands != null)
 		{
-			alignments.put(seq, 0);
+			for(Sequence seq : sequences)
+			{
+				if(Boolean.TRUE.equals(reverseStrands.get(seq)))
+					this.reverseStrands.put(seq, true);
+			}
 		}
 		
 		DELTA = 1.0 / (10 * sequences.size()); 				//Rule of thumb
 		
-		//Set the background model
-		backgroundModel = getEmpiricalBackgroundModel();
+		//Reference the background model of the dataset
+		backgroundModel = dataset.getBackgroundModel();
 		
 		//Update the profiles as initialization
 		update();		
 	}
 	
+	public Profile(Alphabet alphabet, List<Sequence> seqList, int length)
+	{
+		this(new Dataset(alphabet, seqList), length);
+	}
+	
 	/**
 	 * Constructor with given alignment, makes a copy of the alignment map.
 	 * @param alphabet
@@ -80,9 +150,7 @@ public class Profile
 	 */
 	public Profile(Alphabet alphabet, List<Sequence> seqList, int length, Map<Sequence, Integer> alignments)
 	{
-		this(alphabet, seqList, length);
-		this.alignments = new HashMap<Sequence, Integer>(alignments);
-		update();
+		this(new Dataset(alphabet, seqList), length, alignments);
 	}
 	
 	/**
@@ -91,22 +159,23 @@ public class Profile
 	public void update()
 	{
 		//Clear the profile matrices
-		for(int i=0; i < height(); ++i)
+		Arrays.fill(positionFrequencyMatrix, 0);
+		Arrays.fill(positionProbabilityMatrix, 0.0);
+		Arrays.fill(positionWeightMatrix, 0.0);
+		for(int pos=0; pos < length; ++pos)
 		{
-			Arrays.fill(positionFrequencyMatrix[i], 0);
-			Arrays.fill(positionProbabilityMatrix[i], 0.0);
-			Arrays.fill(positionWeightMatrix[i], 0.0);
+			columnVersions[pos]++;
 		}
 		
 		//Load the frequency data from the sequences
 		for(Sequence seq : sequences)
 		{
+			int startMarker = alignments.get(seq);
+			boolean reverse = isReverseStrand(seq);
 			for(int pos=0; pos < length; ++pos)
 			{
-				int startMarker = alignments.get(seq);
-				int lmerPos = startMarker + pos;
-				String symbol = seq.getPosition(lmerPos);
-				int previousFreq = positionFrequencyMatrix[alphabet.getInt(symbol)][pos];
+				int symbol = alignedSymbol(seq, startMarker, reverse, pos);
+				int previousFreq = positionFrequencyMatrix[pos * height + symbol];
 				modifyProfileMatrices(symbol, pos, previousFreq + 1);
 			}
 		}
@@ -115,11 +184,11 @@ public class Profile
 	
 	/**
 	 * simultaneously update all three profile matrices by changing the frequecny at one position
-	 * @param symbol
+	 * @param mappedInt
 	 * @param position
 	 * @param newFreq
 	 */
-	private void modifyProfileMatrices(String symbol, int position, int newFreq)
+	private void modifyProfileMatrices(int mappedInt, int position, int newFreq)
 	{
 		try{
 			if(newFreq < 0)
@@ -128,15 +197,18 @@ public class Profile
 			e.printStackTrace();
 			System.exit(1);
 		}
-		int mappedInt = alphabet.getInt(symbol);
-		positionFrequencyMatrix[mappedInt][position] = newFreq;
-		positionProbabilityMatrix[mappedInt][position] = ((double)newFreq) / getSequenceCount();
-		double weightedProb = positionProbabilityMatrix[mappedInt][position] / backgroundModel.get(symbol);
+		int index = position * height + mappedInt;
+		snapshotStale = true;
+		consensusStale[position] = true;
+		columnVersions[position]++;
+		positionFrequencyMatrix[index] = newFreq;
+		positionProbabilityMatrix[index] = ((double)newFreq) / getSequenceCount();
+		double weightedProb = positionProbabilityMatrix[index] / dataset.getFlooredBackground(mappedInt);
 		if(weightedProb < DELTA)
 		{
 			weightedProb = DELTA;
 		}
-		positionWeightMatrix[mappedInt][position] = Math.log(weightedProb) / Math.log(2);
+		positionWeightMatrix[index] = Math.log(weightedProb) / Math.log(2);
 	}
 	
 	/**
@@ -148,115 +220,355 @@ public class Profile
 		Sequence consensus = new Sequence(alphabet, "");
 		for(int pos=0; pos < length; ++pos)
 		{
-			String maxSymbol = "";
-			double maxProb = Double.MIN_VALUE;
-			for(String symbol : alphabet.getAllSymbols())
+			int code = getConsensusCode(pos);
+			if(code >= 0)
+				consensus.append(alphabet.getSymbol(code));
+		}
+		
+		return consensus;
+	}
+	
+	/**
+	 * Returns the mapped int of the most frequent symbol at the position, or -1 if no 
+	 * symbol occurs there. Only positions whose frequencies changed since the last call 
+	 * are recomputed.
+	 * @param position
+	 * @return
+	 */
+	public int getConsensusCode(int position)
+	{
+		if(consensusStale[position])
+		{
+			int maxCode = -1;
+			int maxFreq = 0;
+			for(int code : symbolOrder)
 			{
-				double prob = getPpm(symbol, pos);
-				if(prob > maxProb)
+				if(positionFrequencyMatrix[position * height + code] > maxFreq)
 				{
-					maxSymbol = symbol;
-					maxProb = prob;
+					maxCode = code;
+					maxFreq = positionFrequencyMatrix[position * height + code];
 				}
 			}
-			consensus.append(maxSymbol);
+			consensusCodes[position] = maxCode;
+			consensusStale[position] = false;
 		}
-		
-		return consensus;
+		return consensusCodes[position];
 	}
 	
 	/**
-	 * Changes the start of the alignment for a given sequence in the profile 
-	 * and performs an efficient update of the profile matrices
+	 * Changes the start of the alignment for a given sequence in the profile, 
+	 * on the forward strand, and performs an efficient update of the profile matrices
 	 * @param seq sequence to update
 	 * @param newStartPos new alignment start
 	 */
 	public void updateAlignmentStart(Sequence seq, int newStartPos)
+	{
+		updateAlignmentStart(seq, newStartPos, false);
+	}
+	
+	/**
+	 * Changes the start and strand of the alignment for a given sequence in the profile 
+	 * and performs an efficient update of the profile matrices. On the reverse strand the 
+	 * motif is the reverse complement of the window [newStartPos, newStartPos + length).
+	 * @param seq sequence to update
+	 * @param newStartPos new alignment start
+	 * @param reverse whether the motif lies on the reverse strand
+	 */
+	public void updateAlignmentStart(Sequence seq, int newStartPos, boolean reverse)
 	{
 		try{
 			if(!isSequenceInProfile(seq))
 				throw new Exception("Sequence not in the profile");
 			if(newStartPos < 0 || newStartPos >= seq.getSize() - length + 1)
 				throw new Exception("New Start position out of bounds");
+			if(reverse && !PackedSequence.isComplementable(alphabet))
+				throw new Exception("Reverse strand alignments require the DNA alphabet 'ACGT'");
 		}catch(Exception e){
 			e.printStackTrace();
 			System.exit(1);
 		}
 		
 		int oldStartPos = alignments.get(seq);
+		boolean oldReverse = isReverseStrand(seq);
 		alignments.put(seq, newStartPos);
+		if(reverse)
+			reverseStrands.put(seq, true);
+		else
+			reverseStrands.remove(seq);
 				
 		for(int i = 0; i < length; ++i)
 		{
 			//Remove frequency contributions from the old alignment 
-			String symbol = seq.getPosition(oldStartPos + i);
-			int oldFreq = positionFrequencyMatrix[alphabet.getInt(symbol)][i];
+			int symbol = alignedSymbol(seq, oldStartPos, oldReverse, i);
+			int oldFreq = positionFrequencyMatrix[i * height + symbol];
 			if(oldFreq > 0)
 				modifyProfileMatrices(symbol, i, oldFreq - 1);
 			//and add contribution from new alignment
-			symbol = seq.getPosition(newStartPos + i);
-			oldFreq = positionFrequencyMatrix[alphabet.getInt(symbol)][i];
+			symbol = alignedSymbol(seq, newStartPos, reverse, i);
+			oldFreq = positionFrequencyMatrix[i * height + symbol];
 			modifyProfileMatrices(symbol, i, oldFreq + 1);
 		}		
 	}
 	
+	/**
+	 * Change in the score of the profile if the alignment of the sequence moved to each of
+	 * its l-mers, for a score that sums over the cells of the matrices (e.g. relative
+	 * information, sum(p * log_2(p/b))). The profile is not changed. Only the cells of the
+	 * old and new symbol at each position differ, so once the change of each cell is known
+	 * every l-mer costs O(length), rather than rescoring the whole matrix.
+	 * @param seq sequence to move
+	 * @param bothStrands whether to score the reverse complement l-mers as well
+	 * @param scorer cell separable score, prepared with the profile's dataset
+	 * @return new score - old score of each l-mer [0, m), then of each reverse complement
+	 * l-mer [m, 2m) if both strands are scored, m = n - length + 1. Masked l-mers are -Infinity.
+	 */
+	public double[] getScoreChanges(Sequence seq, boolean bothStrands, Score scorer)
+	{
+		int count = getSequenceCount();
+		try{
+			if(!scorer.isCellSeparable())
+				throw new Exception(scorer.getClass().getSimpleName() + " does not sum over the profile's cells");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		if(cellTermsScorer != scorer)
+		{
+			double[] terms = new double[height * (count + 1)];
+			for(int symbol=0; symbol < height; ++symbol)
+			{
+				for(int freq=0; freq <= count; ++freq)
+				{
+					terms[symbol * (count + 1) + freq] = scorer.cellScore(symbol, freq, count);
+				}
+			}
+			cellTerms = terms;
+			cellTermsScorer = scorer;
+		}
+		
+		//Change at each position if the old symbol is replaced by each symbol
+		int stride = count + 1;
+		int oldStartPos = alignments.get(seq);
+		boolean oldReverse = isReverseStrand(seq);
+		double[] positionChanges = new double[length * height];
+		for(int i=0; i < length; ++i)
+		{
+			int oldSymbol = alignedSymbol(seq, oldStartPos, oldReverse, i);
+			int oldFreq = getPfm(oldSymbol, i);
+			double removeOld = cellTerms[oldSymbol * stride + oldFreq - 1] - cellTerms[oldSymbol * stride + oldFreq];
+			for(int symbol=0; symbol < height; ++symbol)
+			{
+				int freq = getPfm(symbol, i);
+				if(symbol != oldSymbol)
+					positionChanges[i * height + symbol] = removeOld + cellTerms[symbol * stride + freq + 1] - cellTerms[symbol * stride + freq];
+			}
+		}
+		
+		PackedSequence packed = dataset.getPackedSequence(seq);
+		int[] codes = new int[seq.getSize()];
+		for(int i=0; i < codes.length; ++i)
+		{
+			codes[i] = packed.getCode(i);
+		}
+		int windows = codes.length - length + 1;
+		double[] changes = new double[bothStrands ? 2 * windows : windows];
+		for(int w=0; w < windows; ++w)
+		{
+			double change = 0;
+			for(int i=0; i < length; ++i)
+			{
+				change += positionChanges[i * height + codes[w + i]];
+			}
+			changes[w] = change;
+			if(bothStrands)
+			{
+				change = 0;
+				for(int i=0; i < length; ++i)
+				{
+					change += positionChanges[i * height + PackedSequence.complement(codes[w + length - 1 - i])];
+				}
+				changes[windows + w] = change;
+			}
+		}
+		dataset.maskScores(seq, length, changes);
+		return changes;
+	}
+	
+	/**
+	 * Mapped int of the symbol at a position of the motif aligned at start on the given strand
+	 */
+	private int alignedSymbol(Sequence seq, int start, boolean reverse, int position)
+	{
+		if(reverse)
+			return PackedSequence.complement(seq.getIntAtPosition(start + length - 1 - position));
+		return seq.getIntAtPosition(start + position);
+	}
+	
+	/**
+	 * Changes the alignment starts of several sequences as one batch of updates, 
+	 * then publishes a new snapshot of the matrices
+	 * @param newStarts new alignment start for each sequence to update
+	 */
+	public void updateAlignmentStarts(Map<Sequence, Integer> newStarts)
+	{
+		for(Map.Entry<Sequence, Integer> entry : newStarts.entrySet())
+		{
+			updateAlignmentStart(entry.getKey(), entry.getValue());
+		}
+		publishSnapshot();
+	}
+	
+	/**
+	 * Returns the last published snapshot of the profile matrices, publishing a new
+	 * one first if the matrices have changed since. Snapshots are never modified, 
+	 * so readers holding an older snapshot are unaffected by later updates. 
+	 * Should only be called by the thread updating the profile.
+	 * @return
+	 */
+	public ProfileSnapshot getSnapshot()
+	{
+		if(snapshot == null || snapshotStale)
+		{
+			publishSnapshot();
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Copies the current matrices into a new immutable snapshot and publishes it, with
+	 * the dataset's symbol frequencies as its background. The flag is
+	 * cleared before copying, so a change made during the copy marks it stale again.
+	 * @return the published snapshot
+	 */
+	public ProfileSnapshot publishSnapshot()
+	{
+		snapshotStale = false;
+		snapshot = new ProfileSnapshot(this, getEmpiricalBackgroundModel());
+		return snapshot;
+	}
+	
 	/**
 	 * Finds the score for all l-mers from [0, N - length + 1). 
 	 * This method is an optimization, to avoid creating subsequences externally 
 	 * for finding the highest scoring l-mer where l is the motif length.
+	 * Windows overlapping masked positions of the dataset score -Infinity.
 	 * @param seq
 	 * @param scorer
 	 * @return scores of all l-mes [0, n - length + 1)
 	 */
 	public double[] scoreAllLmers(Sequence seq, Score scorer)
 	{
-		double[] result = new double[seq.getSize() - length + 1];
-		for(int pos=0; pos < result.length; ++pos)
-		{
-			result[pos] = scorer.calculateScore(this, seq.getSubsequence(pos, pos + length));
-		}
-		return result;
+		double[] scores = scorer.scoreAllLmers(this, seq);
+		dataset.maskScores(seq, length, scores);
+		return scores;
+	}
+	
+	/**
+	 * Finds the score for all l-mers of the sequence on both strands, using the 
+	 * dataset's packed copy of the sequence.
+	 * @param seq
+	 * @param scorer
+	 * @return forward scores [0, m) then reverse complement scores [m, 2m), m = n - length + 1
+	 */
+	public double[] scoreAllLmersBothStrands(Sequence seq, Score scorer)
+	{
+		double[] scores = scorer.scoreAllLmersBothStrands(this, dataset.getPackedSequence(seq));
+		dataset.maskScores(seq, length, scores);
+		return scores;
 	}
 	
 	/**
 	 * Generate a random alignment and update the profile matrices
 	 */
 	public void generateRandomAlignment()
+	{
+		generateRandomAlignment(new Random());
+	}
+	
+	/**
+	 * Generate a random alignment from the given generator and update the profile matrices
+	 * @param gen
+	 */
+	public void generateRandomAlignment(Random gen)
 	{
 		//Randomly set the motif start positions
-		Random gen = new Random();
 		for(Sequence s : sequences)
 		{
-			updateAlignmentStart(s, gen.nextInt(s.getSize() - length + 1));
+			updateAlignmentStart(s, dataset.randomUnmaskedStart(s, length, gen));
 		}
 	}
 	
 	/**
-	 * Find the background probabilities for each symbol
-	 * in the profile's sequences
-	 * @return
+	 * Seed the alignment from one of the most over-represented k-mers of the index 
+	 * (chosen at random among the top candidates) instead of uniformly at random.
+	 * Each sequence containing the k-mer is aligned so that a random occurrence 
+	 * lies inside the motif; sequences without it get a random start.
+	 * The index must have been built over this profile's sequence list.
+	 * @param index
+	 * @param candidates number of top k-mers to choose from
 	 */
-	public Map<String, Double> getEmpiricalBackgroundModel()
+	public void generateSeededAlignment(KmerIndex index, int candidates)
 	{
-		Map<String, Double> symbolProb = new HashMap<String, Double>();
+		generateSeededAlignment(index, candidates, new Random());
+	}
+	
+	/**
+	 * Seed the alignment from the index as above, drawing from the given generator
+	 * @param index
+	 * @param candidates
+	 * @param gen
+	 */
+	public void generateSeededAlignment(KmerIndex index, int candidates, Random gen)
+	{
+		long[] topKmers = index.getTopKmers(candidates);
+		if(topKmers.length == 0)
+		{
+			generateRandomAlignment(gen);
+			return;
+		}
+		long[] postings = index.getPostings(topKmers[gen.nextInt(topKmers.length)]);
 		
-		for(Sequence seq : sequences)
+		//Pick one occurrence per sequence, uniformly among its occurrences (postings are grouped by sequence)
+		int[] chosenOffsets = new int[sequences.size()];
+		Arrays.fill(chosenOffsets, -1);
+		int seen = 0;
+		for(int i=0; i < postings.length; ++i)
+		{
+			int ordinal = KmerIndex.postingSequence(postings[i]);
+			seen = (i > 0 && KmerIndex.postingSequence(postings[i - 1]) == ordinal) ? seen + 1 : 1;
+			if(gen.nextInt(seen) == 0)
+				chosenOffsets[ordinal] = KmerIndex.postingOffset(postings[i]);
+		}
+		
+		for(int i=0; i < sequences.size(); ++i)
 		{
-			for(int i=0; i < seq.getSize(); ++i)
+			Sequence s = sequences.get(i);
+			int maxStart = s.getSize() - length;
+			int start;
+			if(chosenOffsets[i] < 0)
+			{
+				start = dataset.randomUnmaskedStart(s, length, gen);
+			}
+			else
 			{
-				String symbol = seq.getPosition(i);
-				if(!symbolProb.containsKey(symbol))
-					symbolProb.put(symbol, 0.0);
-				symbolProb.put(symbol, symbolProb.get(symbol) + 1);
+				//Place the k-mer at a random position inside the motif
+				int shift = gen.nextInt(Math.max(1, length - index.getK() + 1));
+				start = Math.min(maxStart, Math.max(0, chosenOffsets[i] - shift));
 			}
+			if(dataset.isMasked(s, start, length))
+				start = dataset.randomUnmaskedStart(s, length, gen);
+			updateAlignmentStart(s, start);
 		}
-		
-		//Calculate Probabilities
-		int total = getTotalSymbolCount();
-		for(String sym : symbolProb.keySet())
-			symbolProb.put(sym, symbolProb.get(sym) / total);
-			
-		return symbolProb;
+	}
+	
+	/**
+	 * Find the background probabilities for each symbol
+	 * in the dataset's sequences, computed once per dataset
+	 * @return
+	 */
+	public Map<String, Double> getEmpiricalBackgroundModel()
+	{
+		return dataset.getBackgroundModel();
 	}
 	
 	/**
@@ -279,7 +591,18 @@ public class Profile
 	 */
 	public int getPfm(String symbol, int position)
 	{
-		return positionFrequencyMatrix[alphabet.getInt(symbol)][position];
+		return getPfm(alphabet.getInt(symbol), position);
+	}
+	
+	/**
+	 * Returns the frequency of symbols in the profile at the given mapped symbol and position
+	 * @param mappedInt
+	 * @param position
+	 * @return
+	 */
+	public int getPfm(int mappedInt, int position)
+	{
+		return positionFrequencyMatrix[position * height + mappedInt];
 	}
 		
 	/**
@@ -290,7 +613,12 @@ public class Profile
 	 */
 	public double getPpm(String symbol, int position)
 	{
-		return positionProbabilityMatrix[alphabet.getInt(symbol)][position];
+		return getPpm(alphabet.getInt(symbol), position);
+	}
+	
+	public double getPpm(int mappedInt, int position)
+	{
+		return positionProbabilityMatrix[position * height + mappedInt];
 	}
 	
 	/**
@@ -302,10 +630,25 @@ public class Profile
 	 */
 	public double getPwm(String symbol, int position)
 	{
-		return positionWeightMatrix[alphabet.getInt(symbol)][position];
+		return getPwm(alphabet.getInt(symbol), position);
+	}
+	
+	public double getPwm(int mappedInt, int position)
+	{
+		return positionWeightMatrix[position * height + mappedInt];
 	}
 	
 	
+	/**
+	 * Version of the frequencies at the position, which changes whenever they do
+	 * @param position
+	 * @return
+	 */
+	public long getColumnVersion(int position)
+	{
+		return columnVersions[position];
+	}
+	
 	/**
 	 * Returns a copy of the alignment starts
 	 * @return
@@ -315,6 +658,21 @@ public class Profile
 		return new HashMap<Sequence, Integer>(alignments);
 	}
 	
+	/**
+	 * Returns a copy of the strands of the alignments, true for the reverse strand. 
+	 * Sequences aligned on the forward strand may be left out.
+	 * @return
+	 */
+	public Map<Sequence, Boolean> getAlignmentStrands()
+	{
+		return new HashMap<Sequence, Boolean>(reverseStrands);
+	}
+	
+	public boolean isReverseStrand(Sequence seq)
+	{
+		return reverseStrands.containsKey(seq);
+	}
+	
 	/**
 	 * Prints the position weight matrix
 	 */
@@ -326,7 +684,7 @@ public class Profile
 			output.append(String.format("%s | ", alphabet.getSymbol(a)));
 			for(int pos=0; pos < length; ++pos)
 			{
-				output.append(String.format("%.4f ", positionWeightMatrix[a][pos]));
+				output.append(String.format("%.4f ", getPwm(a, pos)));
 			}
 			output.append("\n");			
 		}
@@ -343,7 +701,7 @@ public class Profile
 		output.append("[");
 		for(Sequence seq : sequences)
 		{
-			output.append(alignments.get(seq) + ", ");
+			output.append(alignments.get(seq) + (isReverseStrand(seq) ? "(-)" : "") + ", ");
 		}
 		output.replace(output.length()-2, output.length(), "");
 		output.append("]");
@@ -364,7 +722,7 @@ public class Profile
 			output.append(String.format("%s | ", alphabet.getSymbol(a)));
 			for(int pos=0; pos < length; ++pos)
 			{
-				output.append(String.format("%.4f ", positionProbabilityMatrix[a][pos]));
+				output.append(String.format("%.4f ", getPpm(a, pos)));
 			}
 			output.append("\n");			
 		}
@@ -377,7 +735,7 @@ public class Profile
 	 */
 	public int height()
 	{
-		return alphabet.getSize();
+		return height;
 	}
 	
 	/**
@@ -406,19 +764,23 @@ public class Profile
 		return sequences.size();
 	}
 	
-	public int getTotalSymbolCount()
+	/**
+	 * Total number of symbols in the dataset's sequences
+	 * @return
+	 */
+	public long getTotalSymbolCount()
 	{
-		int result = 0;
-		for(Sequence s : sequences)
-		{
-			result += s.getSize();
-		}
-		return result;
-		
+		return dataset.getTotalSymbolCount();
+	}
+	
+	public Dataset getDataset()
+	{
+		return dataset;
 	}
+	
 	public boolean isSequenceInProfile(Sequence seq)
 	{
-		return sequences.contains(seq);
+		return alignments.containsKey(seq);
 	}
 	
 }
@@ -0,0 +1,51 @@
+package sequence;
+
+import java.util.Map;
+
+/**
+ * Read-only view of the profile matrices, as needed by the scoring metrics. 
+ * Implemented by the mutable Profile and by its immutable ProfileSnapshot.
+ * @author Ricky
+ *
+ */
+public interface ProfileMatrices
+{
+	public Alphabet getAlphabet();
+	
+	/**
+	 * Length of the profile represents the length of the motif
+	 * @return
+	 */
+	public int length();
+	
+	/**
+	 * Height of the profile represents the number of symbols mapped to the matrices
+	 * @return
+	 */
+	public int height();
+	
+	public int getSequenceCount();
+	
+	public int getPfm(String symbol, int position);
+	
+	public double getPpm(String symbol, int position);
+	
+	public double getPwm(String symbol, int position);
+	
+	public int getPfm(int mappedInt, int position);
+	
+	public double getPpm(int mappedInt, int position);
+	
+	public double getPwm(int mappedInt, int position);
+	
+	public Sequence getConsensus();
+	
+	/**
+	 * Mapped int of the consensus symbol at the position, -1 if no symbol occurs there
+	 * @param position
+	 * @return
+	 */
+	public int getConsensusCode(int position);
+	
+	public Map<String, Double> getBackgroundModel();
+}
@@ -0,0 +1,168 @@
+package sequence;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import scoring.Score;
+
+/**
+ * Immutable copy of a Profile's matrices and background model. Holds no reference 
+ * to the sequence list, so it is cheap to create and any number of threads can 
+ * score l-mers against it concurrently.
+ * @author Ricky
+ *
+ */
+public final class ProfileSnapshot implements ProfileMatrices
+{
+	private final Alphabet alphabet;
+	private final int length;
+	private final int height;
+	private final int sequenceCount;
+	private final int[] positionFrequencyMatrix;		//[position * height + symbolMappedInt]
+	private final double[] positionProbabilityMatrix;	//[position * height + symbolMappedInt]
+	private final double[] positionWeightMatrix;		//[position * height + symbolMappedInt]
+	private final int[] consensusCodes;				//[position]
+	private final Map<String, Double> backgroundModel;
+	
+	/**
+	 * Copies the current matrices of the given profile
+	 * @param profile
+	 * @param backgroundModel symbol frequencies of the profile's dataset
+	 */
+	ProfileSnapshot(ProfileMatrices profile, Map<String, Double> backgroundModel)
+	{
+		alphabet = profile.getAlphabet();
+		length = profile.length();
+		height = profile.height();
+		sequenceCount = profile.getSequenceCount();
+		positionFrequencyMatrix = new int[length * height];
+		positionProbabilityMatrix = new double[length * height];
+		positionWeightMatrix = new double[length * height];
+		consensusCodes = new int[length];
+		for(int pos=0; pos < length; ++pos)
+		{
+			consensusCodes[pos] = profile.getConsensusCode(pos);
+			for(int a=0; a < height; ++a)
+			{
+				positionFrequencyMatrix[pos * height + a] = profile.getPfm(a, pos);
+				positionProbabilityMatrix[pos * height + a] = profile.getPpm(a, pos);
+				positionWeightMatrix[pos * height + a] = profile.getPwm(a, pos);
+			}
+		}
+		this.backgroundModel = Collections.unmodifiableMap(new HashMap<String, Double>(backgroundModel));
+	}
+	
+	/**
+	 * Finds the score for all l-mers from [0, N - length + 1) against this snapshot. 
+	 * Safe to call from any number of threads as long as the scorer is stateless.
+	 * @param seq
+	 * @param scorer
+	 * @return scores of all l-mers [0, n - length + 1)
+	 */
+	public double[] scoreAllLmers(Sequence seq, Score scorer)
+	{
+		return scorer.scoreAllLmers(this, seq);
+	}
+	
+	/**
+	 * Finds the score for all l-mers of the packed sequence on both strands against this snapshot
+	 * @param seq
+	 * @param scorer
+	 * @return forward scores [0, m) then reverse complement scores [m, 2m), m = n - length + 1
+	 */
+	public double[] scoreAllLmersBothStrands(PackedSequence seq, Score scorer)
+	{
+		return scorer.scoreAllLmersBothStrands(this, seq);
+	}
+	
+	@Override
+	public Sequence getConsensus()
+	{
+		Sequence consensus = new Sequence(alphabet, "");
+		for(int pos=0; pos < length; ++pos)
+		{
+			if(consensusCodes[pos] >= 0)
+				consensus.append(alphabet.getSymbol(consensusCodes[pos]));
+		}
+		
+		return consensus;
+	}
+	
+	@Override
+	public int getConsensusCode(int position)
+	{
+		return consensusCodes[position];
+	}
+	
+	@Override
+	public int getPfm(String symbol, int position)
+	{
+		return positionFrequencyMatrix[position * height + alphabet.getInt(symbol)];
+	}
+	
+	@Override
+	public double getPpm(String symbol, int position)
+	{
+		return positionProbabilityMatrix[position * height + alphabet.getInt(symbol)];
+	}
+	
+	@Override
+	public double getPwm(String symbol, int position)
+	{
+		return positionWeightMatrix[position * height + alphabet.getInt(symbol)];
+	}
+	
+	@Override
+	public int getPfm(int mappedInt, int position)
+	{
+		return positionFrequencyMatrix[position * height + mappedInt];
+	}
+	
+	@Override
+	public double getPpm(int mappedInt, int position)
+	{
+		return positionProbabilityMatrix[position * height + mappedInt];
+	}
+	
+	@Override
+	public double getPwm(int mappedInt, int position)
+	{
+		return positionWeightMatrix[position * height + mappedInt];
+	}
+	
+	/**
+	 * Symbol frequencies of the profile's dataset, which random l-mers of the snapshot's
+	 * score distributions are drawn from. The weights divide by the same frequencies with
+	 * a pseudocount (see Dataset.getFlooredBackground).
+	 */
+	@Override
+	public Map<String, Double> getBackgroundModel()
+	{
+		return backgroundModel;
+	}
+	
+	@Override
+	public Alphabet getAlphabet()
+	{
+		return alphabet;
+	}
+	
+	@Override
+	public int length()
+	{
+		return length;
+	}
+	
+	@Override
+	public int height()
+	{
+		return height;
+	}
+	
+	@Override
+	public int getSequenceCount()
+	{
+		return sequenceCount;
+	}
+}
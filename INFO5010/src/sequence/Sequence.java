@@ -22,7 +22,24 @@ public class Sequence
 		sequence = new ArrayList<Integer>();
 		
 		/*Check for empty Sequence*/
-		if(sequenceString.length() > 0)
+		if(sequenceString.length() > 0 && delimiter.isEmpty() && alphabet.isSingleCharacter())
+		{
+			//Decode character by character instead of splitting into Strings
+			sequence.ensureCapacity(sequenceString.length());
+			for(int i=0; i < sequenceString.length(); ++i)
+			{
+				int code = alphabet.getInt(sequenceString.charAt(i));
+				try{
+					if(code < 0)
+						throw new Exception("Symbol not in the Alphabet : " + sequenceString.charAt(i));
+				}catch(Exception e){
+					e.printStackTrace();
+					System.exit(1);
+				}
+				sequence.add(code);
+			}
+		}
+		else if(sequenceString.length() > 0)
 		{
 			for(String sym : sequenceString.split(delimiter))
 			{
@@ -73,18 +90,37 @@ public class Sequence
 			double randomVar = gen.nextDouble();
 			if(randomVar < probMutation)
 			{
-				sequence.set(i, alphabet.getRandomInt());
+				sequence.set(i, alphabet.getRandomInt(gen));
 			}
 		}
 	}
 	
+	/**
+	 * Creates a sequence from mapped ints, e.g. those of a generator
+	 * @param alphabet
+	 * @param codes
+	 * @return
+	 */
+	static Sequence fromCodes(Alphabet alphabet, byte[] codes)
+	{
+		Sequence output = new Sequence(alphabet, "");
+		output.sequence.ensureCapacity(codes.length);
+		for(byte code : codes)
+		{
+			output.sequence.add((int)code);
+		}
+		return output;
+	}
+	
 	public static Sequence generateRandomSequence(Alphabet alphabet, int size)
 	{
 		Sequence output = new Sequence(alphabet, "");
+		Random gen = new Random();
 		
+		output.sequence.ensureCapacity(size);
 		for(int i=0; i < size; ++i)
 		{
-			output.append(alphabet.getRandomSymbol());
+			output.sequence.add(alphabet.getRandomInt(gen));
 		}
 		
 		return output;
@@ -98,12 +134,8 @@ public class Sequence
 	 */
 	public Sequence getSubsequence(int start, int end)
 	{
-		//TODO: need to make this more efficient
 		Sequence subSeq = new Sequence(alphabet, "");
-		for(int i=start; i < end; ++i)
-		{
-			subSeq.append(this.getPosition(i));
-		}
+		subSeq.sequence.addAll(sequence.subList(start, end));
 		return subSeq;
 	}
 	
@@ -0,0 +1,422 @@
+package sequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Suffix array over the concatenation of a list of sequences, for finding the exact and
+ * approximate (Hamming distance <= d) occurrences of a pattern without rescanning the
+ * sequences.
+ * The text is built from the packed sequences, with each symbol shifted up by two so
+ * that a separator (1) can end every sequence and a unique sentinel (0) ends the text.
+ * The suffix array is built in linear time with SA-IS; the LCP array is only built, with
+ * Kasai's algorithm, if getLcp is called, since the searches do not use it.
+ * Memory : building takes about 16 bytes per symbol at its peak (an int per symbol of
+ * text, the suffix array and SA-IS's working arrays). Afterwards the index keeps one byte
+ * per symbol of text and the int suffix array, 5 bytes per symbol, plus 4 more once the
+ * LCP array is built. Positions are ints, so the sequences, with one separator each,
+ * must total fewer than MAX_LENGTH symbols (about 2^31); larger inputs are refused.
+ * @author Ricky
+ *
+ */
+public class SuffixArray
+{
+	public static final long MAX_LENGTH = Integer.MAX_VALUE - 8;		//largest text, the largest array the JVM allocates
+	private static final int SENTINEL = 0;
+	private static final int SEPARATOR = 1;
+	private static final int SYMBOL_OFFSET = 2;
+	private static final int MAX_SYMBOLS = 0xFF - SYMBOL_OFFSET;		//symbols are stored as unsigned bytes
+
+	private Alphabet alphabet;
+	private byte[] text;				//shifted symbols, read as unsigned
+	private int[] suffixArray;
+	private int[] lcp = null;			//lcp[i] = longest common prefix of suffixes i-1 and i, not extending past a separator. Built on first use
+	private int[] sequenceStarts;		//start of each sequence in the text
+
+	public SuffixArray(List<Sequence> seqList)
+	{
+		try{
+			if(seqList.isEmpty())
+				throw new Exception("Cannot index an empty sequence list");
+			if(!canIndex(seqList))
+				throw new Exception("Sequences are too long to index, at most " + MAX_LENGTH 
+						+ " symbols, or the alphabet has more than " + MAX_SYMBOLS + " symbols");
+		}catch(Exception e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+		alphabet = seqList.get(0).getAlphabet();
+
+		//Concatenate the packed sequences
+		int n = (int)textLength(seqList);
+		int[] fullText = new int[n];
+		sequenceStarts = new int[seqList.size()];
+		int pos = 0;
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			sequenceStarts[s] = pos;
+			PackedSequence packed = new PackedSequence(seqList.get(s));
+			for(int i=0; i < packed.size(); ++i)
+			{
+				fullText[pos++] = packed.getCode(i) + SYMBOL_OFFSET;
+			}
+			fullText[pos++] = SEPARATOR;
+		}
+		fullText[pos] = SENTINEL;
+
+		suffixArray = new int[n];
+		sais(fullText, suffixArray, n, alphabet.getSize() + SYMBOL_OFFSET - 1);
+
+		//Queries only need a byte per symbol
+		text = new byte[n];
+		for(int i=0; i < n; ++i)
+		{
+			text[i] = (byte)fullText[i];
+		}
+	}
+
+	/**
+	 * Whether the sequences fit in a suffix array: with a separator after each sequence and
+	 * the sentinel they total at most MAX_LENGTH symbols, over at most 253 symbols
+	 * @param seqList
+	 * @return
+	 */
+	public static boolean canIndex(List<Sequence> seqList)
+	{
+		return seqList.isEmpty() 
+				|| (textLength(seqList) <= MAX_LENGTH && seqList.get(0).getAlphabet().getSize() <= MAX_SYMBOLS);
+	}
+
+	private static long textLength(List<Sequence> seqList)
+	{
+		long n = 1;
+		for(Sequence seq : seqList)
+		{
+			n += seq.getSize() + 1L;
+		}
+		return n;
+	}
+
+	/**
+	 * Finds every occurrence of the pattern with at most the given number of mismatches.
+	 * Walks the suffix array as an implicit suffix trie, narrowing the range of suffixes
+	 * one pattern position at a time and branching on mismatching symbols while the
+	 * mismatch budget allows. Occurrences never span two sequences.
+	 * @param pattern
+	 * @param maxMismatches
+	 * @return occurrences ordered by sequence and offset
+	 */
+	public List<Occurrence> findOccurrences(Sequence pattern, int maxMismatches)
+	{
+		List<Occurrence> result = new ArrayList<Occurrence>();
+		if(pattern.getSize() > 0)
+		{
+			int[] codes = new int[pattern.getSize()];
+			for(int i=0; i < codes.length; ++i)
+			{
+				codes[i] = pattern.getIntAtPosition(i) + SYMBOL_OFFSET;
+			}
+			search(codes, 0, suffixArray.length, 0, 0, maxMismatches, result);
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Finds every exact occurrence of the pattern
+	 * @param pattern
+	 * @return occurrences ordered by sequence and offset
+	 */
+	public List<Occurrence> findExactOccurrences(Sequence pattern)
+	{
+		return findOccurrences(pattern, 0);
+	}
+
+	private void search(int[] pattern, int lo, int hi, int depth, int mismatches, int maxMismatches, List<Occurrence> result)
+	{
+		//Follow the symbols all suffixes of the range share without searching for the children
+		while(depth < pattern.length && symbolAt(lo, depth) == symbolAt(hi - 1, depth))
+		{
+			int c = symbolAt(lo, depth);
+			if(c < SYMBOL_OFFSET)
+				return;				//the range has reached the end of its sequence
+			if(c != pattern[depth])
+			{
+				if(mismatches == maxMismatches)
+					return;
+				mismatches++;
+			}
+			depth++;
+		}
+		if(depth == pattern.length)
+		{
+			for(int i=lo; i < hi; ++i)
+			{
+				int start = suffixArray[i];
+				int s = Arrays.binarySearch(sequenceStarts, start);
+				if(s < 0)
+					s = -s - 2;
+				result.add(new Occurrence(s, start - sequenceStarts[s], mismatches));
+			}
+			return;
+		}
+
+		//Suffixes in [lo, hi) share the first depth symbols, so they are sorted by the next one
+		for(int c=SYMBOL_OFFSET; c < alphabet.getSize() + SYMBOL_OFFSET; ++c)
+		{
+			boolean match = (c == pattern[depth]);
+			if(!match && mismatches == maxMismatches)
+				continue;
+			int from = lowerBound(lo, hi, depth, c);
+			int to = lowerBound(from, hi, depth, c + 1);
+			if(from < to)
+			{
+				search(pattern, from, to, depth + 1, match ? mismatches : mismatches + 1, maxMismatches, result);
+			}
+		}
+	}
+
+	/**
+	 * Symbol at the given depth of the i-th smallest suffix
+	 */
+	private int symbolAt(int i, int depth)
+	{
+		return text[suffixArray[i] + depth] & 0xFF;
+	}
+
+	/**
+	 * First suffix in [lo, hi) whose symbol at the given depth is at least c
+	 */
+	private int lowerBound(int lo, int hi, int depth, int c)
+	{
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(symbolAt(mid, depth) < c)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Kasai's linear time LCP construction
+	 */
+	private void buildLcp()
+	{
+		int n = text.length;
+		int[] rank = new int[n];
+		for(int i=0; i < n; ++i)
+		{
+			rank[suffixArray[i]] = i;
+		}
+		int[] result = new int[n];
+		int h = 0;
+		for(int i=0; i < n; ++i)
+		{
+			if(rank[i] > 0)
+			{
+				int j = suffixArray[rank[i] - 1];
+				while(i + h < n && j + h < n && text[i + h] == text[j + h] && (text[i + h] & 0xFF) >= SYMBOL_OFFSET)
+				{
+					h++;
+				}
+				result[rank[i]] = h;
+				if(h > 0)
+					h--;
+			}
+			else
+			{
+				h = 0;
+			}
+		}
+		lcp = result;
+	}
+
+	/**
+	 * SA-IS suffix array construction (Nong, Zhang and Chan).
+	 * T[n-1] must be the unique smallest symbol and all symbols must be in [0, K].
+	 * @param T text
+	 * @param SA output suffix array
+	 * @param n length of the text
+	 * @param K largest symbol
+	 */
+	private static void sais(int[] T, int[] SA, int n, int K)
+	{
+		//Classify each suffix as S-type (true) or L-type (false)
+		boolean[] t = new boolean[n];
+		t[n - 1] = true;
+		for(int i=n - 2; i >= 0; --i)
+		{
+			t[i] = T[i] < T[i + 1] || (T[i] == T[i + 1] && t[i + 1]);
+		}
+
+		//Sort the LMS substrings by inducing from their unsorted positions
+		int[] bucket = new int[K + 1];
+		getBuckets(T, bucket, n, K, true);
+		Arrays.fill(SA, 0, n, -1);
+		for(int i=1; i < n; ++i)
+		{
+			if(isLms(t, i))
+				SA[--bucket[T[i]]] = i;
+		}
+		induceL(T, SA, t, bucket, n, K);
+		induceS(T, SA, t, bucket, n, K);
+
+		//Compact the sorted LMS substrings into the front of SA
+		int n1 = 0;
+		for(int i=0; i < n; ++i)
+		{
+			if(isLms(t, SA[i]))
+				SA[n1++] = SA[i];
+		}
+
+		//Name the LMS substrings, equal substrings get equal names
+		Arrays.fill(SA, n1, n, -1);
+		int name = 0;
+		int prev = -1;
+		for(int i=0; i < n1; ++i)
+		{
+			int pos = SA[i];
+			boolean diff = false;
+			for(int d=0; d < n; ++d)
+			{
+				if(prev == -1 || T[pos + d] != T[prev + d] || t[pos + d] != t[prev + d])
+				{
+					diff = true;
+					break;
+				}
+				else if(d > 0 && (isLms(t, pos + d) || isLms(t, prev + d)))
+				{
+					break;
+				}
+			}
+			if(diff)
+			{
+				name++;
+				prev = pos;
+			}
+			SA[n1 + pos / 2] = name - 1;
+		}
+		int[] s1 = new int[n1];
+		for(int i=n1, j=0; i < n; ++i)
+		{
+			if(SA[i] >= 0)
+				s1[j++] = SA[i];
+		}
+
+		//Sort the reduced problem, recursing if the names are not unique
+		int[] SA1 = new int[n1];
+		if(name < n1)
+		{
+			sais(s1, SA1, n1, name - 1);
+		}
+		else
+		{
+			for(int i=0; i < n1; ++i)
+			{
+				SA1[s1[i]] = i;
+			}
+		}
+
+		//Induce the full suffix array from the sorted LMS suffixes
+		for(int i=1, j=0; i < n; ++i)
+		{
+			if(isLms(t, i))
+				s1[j++] = i;
+		}
+		for(int i=0; i < n1; ++i)
+		{
+			SA1[i] = s1[SA1[i]];
+		}
+		getBuckets(T, bucket, n, K, true);
+		Arrays.fill(SA, 0, n, -1);
+		for(int i=n1 - 1; i >= 0; --i)
+		{
+			int j = SA1[i];
+			SA[--bucket[T[j]]] = j;
+		}
+		induceL(T, SA, t, bucket, n, K);
+		induceS(T, SA, t, bucket, n, K);
+	}
+
+	private static boolean isLms(boolean[] t, int i)
+	{
+		return i > 0 && t[i] && !t[i - 1];
+	}
+
+	/**
+	 * Sets each symbol's bucket to its start, or to one past its end
+	 */
+	private static void getBuckets(int[] T, int[] bucket, int n, int K, boolean end)
+	{
+		Arrays.fill(bucket, 0);
+		for(int i=0; i < n; ++i)
+		{
+			bucket[T[i]]++;
+		}
+		int sum = 0;
+		for(int c=0; c <= K; ++c)
+		{
+			sum += bucket[c];
+			bucket[c] = end ? sum : sum - bucket[c];
+		}
+	}
+
+	private static void induceL(int[] T, int[] SA, boolean[] t, int[] bucket, int n, int K)
+	{
+		getBuckets(T, bucket, n, K, false);
+		for(int i=0; i < n; ++i)
+		{
+			int j = SA[i] - 1;
+			if(SA[i] > 0 && !t[j])
+				SA[bucket[T[j]]++] = j;
+		}
+	}
+
+	private static void induceS(int[] T, int[] SA, boolean[] t, int[] bucket, int n, int K)
+	{
+		getBuckets(T, bucket, n, K, true);
+		for(int i=n - 1; i >= 0; --i)
+		{
+			int j = SA[i] - 1;
+			if(SA[i] > 0 && t[j])
+				SA[--bucket[T[j]]] = j;
+		}
+	}
+
+	/**
+	 * Start in the concatenated text of the i-th smallest suffix
+	 * @param i
+	 * @return
+	 */
+	public int getSuffix(int i)
+	{
+		return suffixArray[i];
+	}
+
+	/**
+	 * Longest common prefix of the (i-1)-th and i-th smallest suffixes. The LCP array
+	 * is built on the first call.
+	 * @param i
+	 * @return
+	 */
+	public synchronized int getLcp(int i)
+	{
+		if(lcp == null)
+			buildLcp();
+		return lcp[i];
+	}
+
+	/**
+	 * Number of suffixes, including the separators and the sentinel
+	 * @return
+	 */
+	public int size()
+	{
+		return suffixArray.length;
+	}
+}
@@ -0,0 +1,63 @@
+package motifFinder;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Sequence;
+
+/**
+ * Nucleotide accuracy against overlaps counted by hand, including sequences without
+ * a true or predicted site
+ * @author Ricky
+ *
+ */
+public class MotifBenchmarkTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void accuracyCountsOverlaps()
+	{
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		String[] texts = {"ACGTACGTACGTACGTACGT", "CCGTACGTACGTACGTACGT", "GCGTACGTACGTACGTACGT",
+				"TCGTACGTACGTACGTACGT", "AAGTACGTACGTACGTACGT", "ACCTACGTACGTACGTACGT"};
+		for(String text : texts)
+		{
+			seqList.add(new Sequence(DNA, text));
+		}
+		Map<Sequence, Integer> truth = new HashMap<Sequence, Integer>();
+		Map<Sequence, Integer> predicted = new HashMap<Sequence, Integer>();
+		//True sites of length 6, predicted sites of length 4
+		truth.put(seqList.get(0), 2);		//[2, 8) and [4, 8) : TP 4, FN 2
+		predicted.put(seqList.get(0), 4);
+		truth.put(seqList.get(1), 10);		//[10, 16) and [0, 4) : FN 6, FP 4
+		predicted.put(seqList.get(1), 0);
+		truth.put(seqList.get(2), -1);		//no true site : FP 4
+		predicted.put(seqList.get(2), 3);
+		truth.put(seqList.get(3), 5);		//no prediction : FN 6
+		predicted.put(seqList.get(4), -1);	//neither
+		truth.put(seqList.get(5), 0);		//[0, 6) and [3, 7) : TP 3, FN 3, FP 1
+		predicted.put(seqList.get(5), 3);
+
+		//TP 7, FN 17, FP 9
+		double[] accuracy = MotifBenchmark.nucleotideAccuracy(seqList, truth, 6, predicted, 4);
+		assertArrayEquals(new double[]{7.0 / 24, 7.0 / 16, 7.0 / 33}, accuracy, 1e-12);
+
+		//Predicting the true sites exactly
+		accuracy = MotifBenchmark.nucleotideAccuracy(seqList, truth, 6, truth, 6);
+		assertArrayEquals(new double[]{1, 1, 1}, accuracy, 1e-12);
+
+		//Without true or without predicted sites, ratios of 0/0 count as 0
+		accuracy = MotifBenchmark.nucleotideAccuracy(seqList, new HashMap<Sequence, Integer>(), 6, predicted, 4);
+		assertArrayEquals(new double[]{0, 0, 0}, accuracy, 1e-12);
+		accuracy = MotifBenchmark.nucleotideAccuracy(seqList, truth, 6, new HashMap<Sequence, Integer>(), 4);
+		assertArrayEquals(new double[]{0, 0, 0}, accuracy, 1e-12);
+	}
+}
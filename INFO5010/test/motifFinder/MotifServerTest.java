@@ -0,0 +1,148 @@
+package motifFinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Jobs the server must refuse with ERROR while it keeps serving, and shutdown
+ * requests without its token
+ * @author Ricky
+ *
+ */
+public class MotifServerTest
+{
+	private static int port;
+	private static Thread serverThread;
+	private static File dataFile;
+	private static File badFile;
+
+	@BeforeClass
+	public static void startServer() throws Exception
+	{
+		dataFile = File.createTempFile("motifserver", ".txt");
+		dataFile.deleteOnExit();
+		Files.write(dataFile.toPath(), Arrays.asList("ACGT", "0.25 0.25 0.25 0.25", "4",
+				"ACGTACGTTTGACA", "TTGACAGGCCAATT", "GGTTGACACCAGTA"), StandardCharsets.UTF_8);
+		badFile = File.createTempFile("motifserver", ".txt");
+		badFile.deleteOnExit();
+		Files.write(badFile.toPath(), Arrays.asList("ACGT", "0.25 0.25", "four", "ACGXT"), StandardCharsets.UTF_8);
+
+		try(ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()))
+		{
+			port = probe.getLocalPort();
+		}
+		MotifServer server = new MotifServer(port, 1, 4);
+		serverThread = new Thread(() -> {
+			try
+			{
+				server.serve();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		});
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception
+	{
+		String token = new String(Files.readAllBytes(MotifServer.tokenFile(port).toPath()), StandardCharsets.US_ASCII);
+		assertEquals(Arrays.asList("DONE"), send("shutdown " + token));
+		serverThread.join(5000);
+	}
+
+	@Test
+	public void badJobsAreRefusedAndTheServerKeepsServing() throws Exception
+	{
+		String data = "dataset " + dataFile.getPath();
+		assertError(send(data, "finder tempering 5 2 0.5 0.1", "run"));
+		assertError(send(data, "finder greedy true", "length 100", "run"));
+		assertError(send(data, "finder median", "length 0", "run"));
+		assertError(send(data, "finder planted 9", "run"));
+		assertError(send(data, "finder beam 0", "run"));
+		assertError(send(data, "finder em maybe 10", "run"));
+		assertError(send(data, "finder gibbs x", "run"));
+		assertError(send(data, "finder warp 1", "run"));
+		assertError(send(data, "scoring markov 99", "finder greedy true", "run"));
+		assertError(send("dataset " + badFile.getPath(), "finder greedy true", "run"));
+		assertError(send("dataset " + dataFile.getPath() + ".missing", "finder greedy true", "run"));
+		assertError(send(data, "finder parallel-gibbs 1 100000", "run"));
+		assertError(send("shutdown"));
+		assertError(send("shutdown 0123456789abcdef"));
+
+		List<String> result = send(data, "finder greedy true", "seed 1", "verbose false", "run");
+		assertEquals(2, result.size());
+		assertTrue(result.get(0), result.get(0).startsWith("RESULT "));
+		assertEquals("DONE", result.get(1));
+
+		//Warnings go to the job, not the server's console
+		result = send(data, "finder median", "strands both", "verbose false", "run");
+		assertEquals(3, result.size());
+		assertEquals("This finder only searches the forward strand", result.get(0));
+	}
+
+	private static void assertError(List<String> reply)
+	{
+		assertEquals(reply.toString(), 1, reply.size());
+		assertTrue(reply.get(0), reply.get(0).startsWith("ERROR "));
+	}
+
+	/**
+	 * Sends the lines as one job and returns the server's reply, retrying the connection
+	 * while the server starts
+	 */
+	private static List<String> send(String... lines) throws Exception
+	{
+		Socket socket = null;
+		for(int attempt=0; socket == null; ++attempt)
+		{
+			try
+			{
+				socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			}
+			catch(IOException e)
+			{
+				if(attempt == 50)
+					throw e;
+				Thread.sleep(100);
+			}
+		}
+		List<String> reply = new ArrayList<String>();
+		try(Socket client = socket;
+				PrintStream out = new PrintStream(client.getOutputStream(), true, "UTF-8");
+				BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8)))
+		{
+			for(String line : lines)
+			{
+				out.println(line);
+			}
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				reply.add(line);
+			}
+		}
+		return reply;
+	}
+}
@@ -0,0 +1,51 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * A beam wide enough to keep every partial alignment against scoring every alignment
+ * @author Ricky
+ *
+ */
+public class BeamSearchFinderTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void fullBeamFindsBestAlignment()
+	{
+		Random gen = new Random(26);
+		for(int round=0; round < 4; ++round)
+		{
+			List<Sequence> seqList = new ArrayList<Sequence>();
+			for(int s=0; s < 4; ++s)
+			{
+				seqList.add(MedianStringFinderTest.randomSequence(gen, 8 + gen.nextInt(4)));
+			}
+			Dataset dataset = new Dataset(DNA, seqList);
+			int length = 3 + round % 2;
+			Score scorer = new RelativeInformationScore();
+			scorer.prepare(dataset);
+			double expected = ExhaustiveSearch.bestAlignmentScore(new Profile(dataset, length), seqList, scorer);
+
+			//At most 9^3 partial alignments before the last sequence
+			BeamSearchFinder finder = new BeamSearchFinder(dataset, length, 1000);
+			finder.setVerbose(false);
+			finder.findMotifs();
+			assertEquals(expected, scorer.calculateScore(finder.getCurrentProfile()), 1e-9);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Sequence;
+
+/**
+ * A seeded run resumed from a checkpoint against the same run left uninterrupted.
+ * The checkpoint is the final one of a shorter run, which holds the state a longer
+ * run has after as many trials.
+ * @author Ricky
+ *
+ */
+public class CheckpointTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+	private static final String[] SETUP = {"find-motif gibbs 1e-4"};
+
+	@Test
+	public void resumedRunMatchesUninterruptedRun() throws IOException
+	{
+		Random gen = new Random(26);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 8; ++s)
+		{
+			seqList.add(MedianStringFinderTest.randomSequence(gen, 40));
+		}
+		Dataset dataset = new Dataset(DNA, seqList);
+
+		GibbsSamplingFinder uninterrupted = finder(dataset);
+		Sequence expected = uninterrupted.runMultiple(6);
+
+		for(int stoppedAfter : new int[]{1, 3, 5, 6})
+		{
+			File file = File.createTempFile("checkpoint", ".ckpt");
+			file.deleteOnExit();
+			GibbsSamplingFinder interrupted = finder(dataset);
+			interrupted.setCheckpointing(file.getPath(), 0, SETUP);
+			interrupted.runMultiple(stoppedAfter);
+
+			Checkpoint checkpoint = Checkpoint.load(file.getPath());
+			assertEquals(stoppedAfter, checkpoint.getTrialsCompleted());
+			GibbsSamplingFinder resumed = finder(dataset);
+			resumed.resume(checkpoint);
+			Sequence motif = resumed.runMultiple(6);
+
+			assertEquals(expected.toString(), motif.toString());
+			assertEquals(uninterrupted.getBestScore(), resumed.getBestScore(), 0.0);
+			assertEquals(uninterrupted.getCurrentProfile().getAlignmentStarts(), resumed.getCurrentProfile().getAlignmentStarts());
+		}
+	}
+
+	private static GibbsSamplingFinder finder(Dataset dataset)
+	{
+		GibbsSamplingFinder finder = new GibbsSamplingFinder(dataset, 6, 1e-4);
+		finder.setVerbose(false);
+		finder.setSeed(26);
+		return finder;
+	}
+}
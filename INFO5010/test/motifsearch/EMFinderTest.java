@@ -0,0 +1,47 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.DatasetGenerator;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * EM on a small planted instance against scoring every alignment
+ * @author Ricky
+ *
+ */
+public class EMFinderTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void plantedMotifGivesBestAlignment()
+	{
+		for(boolean zoops : new boolean[]{false, true})
+		{
+			DatasetGenerator generator = new DatasetGenerator(DNA, zoops ? 51 : 50);
+			generator.plantMotif(6, 0, 1.0);
+			List<Sequence> seqList = generator.generate(4, 16);
+			Dataset dataset = new Dataset(DNA, seqList);
+			Score scorer = new RelativeInformationScore();
+			scorer.prepare(dataset);
+			double expected = ExhaustiveSearch.bestAlignmentScore(new Profile(dataset, 6), seqList, scorer);
+
+			EMFinder finder = new EMFinder(dataset, 6, zoops, 100, 1e-6);
+			finder.setVerbose(false);
+			finder.setSeed(50);
+			finder.runMultiple(10);
+			assertEquals(expected, scorer.calculateScore(finder.getCurrentProfile()), 1e-9);
+			assertEquals(generator.getMotif().toString(), finder.getCurrentProfile().getConsensus().toString());
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package motifsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Brute force answers over small inputs, which the exact and heuristic finders are
+ * checked against: every word of the motif length, or every alignment of the sequences
+ * @author Ricky
+ *
+ */
+class ExhaustiveSearch
+{
+	/**
+	 * Every word of the given length in increasing order of its mapped ints, i.e. in
+	 * the order of their packed codes
+	 * @param alphabet
+	 * @param length
+	 * @return
+	 */
+	static List<Sequence> allWords(Alphabet alphabet, int length)
+	{
+		List<Sequence> result = new ArrayList<Sequence>();
+		int[] word = new int[length];
+		while(true)
+		{
+			StringBuilder text = new StringBuilder();
+			for(int symbol : word)
+			{
+				text.append(alphabet.getSymbol(symbol));
+			}
+			result.add(new Sequence(alphabet, text.toString()));
+
+			int pos = length - 1;
+			while(pos >= 0 && word[pos] == alphabet.getSize() - 1)
+			{
+				word[pos--] = 0;
+			}
+			if(pos < 0)
+				return result;
+			word[pos]++;
+		}
+	}
+
+	/**
+	 * Smallest number of mismatches between the word and any l-mer of the sequence
+	 * @param word
+	 * @param seq
+	 * @return
+	 */
+	static int minDistance(Sequence word, Sequence seq)
+	{
+		int result = Integer.MAX_VALUE;
+		for(int start=0; start + word.getSize() <= seq.getSize(); ++start)
+		{
+			int dist = 0;
+			for(int p=0; p < word.getSize(); ++p)
+			{
+				if((int)word.getIntAtPosition(p) != (int)seq.getIntAtPosition(start + p))
+					dist++;
+			}
+			result = Math.min(result, dist);
+		}
+		return result;
+	}
+
+	/**
+	 * Sum over the sequences of the word's minimum distance
+	 * @param word
+	 * @param seqList
+	 * @return
+	 */
+	static int totalDistance(Sequence word, List<Sequence> seqList)
+	{
+		int result = 0;
+		for(Sequence seq : seqList)
+		{
+			result += minDistance(word, seq);
+		}
+		return result;
+	}
+
+	/**
+	 * Highest score of any forward strand alignment of the profile's sequences. The
+	 * profile is left at some alignment.
+	 * @param profile
+	 * @param seqList
+	 * @param scorer prepared for the profile's dataset
+	 * @return
+	 */
+	static double bestAlignmentScore(Profile profile, List<Sequence> seqList, Score scorer)
+	{
+		int[] starts = new int[seqList.size()];
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			profile.updateAlignmentStart(seqList.get(s), 0);
+		}
+		double best = Double.NEGATIVE_INFINITY;
+		while(true)
+		{
+			best = Math.max(best, scorer.calculateScore(profile));
+
+			int s = 0;
+			while(s < starts.length && starts[s] == seqList.get(s).getSize() - profile.length())
+			{
+				starts[s] = 0;
+				profile.updateAlignmentStart(seqList.get(s), 0);
+				s++;
+			}
+			if(s == starts.length)
+				return best;
+			profile.updateAlignmentStart(seqList.get(s), ++starts[s]);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Start sampling around masked l-mers, and the profile the Gibbs finders are left with
+ * @author Ricky
+ *
+ */
+public class GibbsSamplingFinderTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+	private static final double MASKED = Double.NEGATIVE_INFINITY;
+
+	@Test
+	public void singleUnmaskedStartIsAlwaysPicked()
+	{
+		Random gen = new Random(41);
+		for(int round=0; round < 100; ++round)
+		{
+			assertEquals(2, GibbsSamplingFinder.sampleStart(new double[]{MASKED, MASKED, -3.5, MASKED}, gen));
+		}
+	}
+
+	@Test
+	public void equalScoresArePickedUniformlyAmongUnmasked()
+	{
+		Random gen = new Random(42);
+		int[] picks = new int[5];
+		for(int round=0; round < 4000; ++round)
+		{
+			picks[GibbsSamplingFinder.sampleStart(new double[]{MASKED, -1.0, -1.0, MASKED, -1.0}, gen)]++;
+		}
+		assertEquals(0, picks[0]);
+		assertEquals(0, picks[3]);
+		for(int i : new int[]{1, 2, 4})
+		{
+			assertTrue(picks[i] > 1000);
+		}
+	}
+
+	@Test
+	public void parallelGibbsKeepsItsSharedProfile()
+	{
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 8; ++s)
+		{
+			seqList.add(Sequence.generateRandomSequence(DNA, 40));
+		}
+		ParallelGibbsSamplingFinder finder = new ParallelGibbsSamplingFinder(new Dataset(DNA, seqList), 6, 3, 2);
+		finder.setVerbose(false);
+		finder.setSeed(41);
+		Profile shared = finder.getCurrentProfile();
+		finder.runMultiple(3);
+		assertSame(shared, finder.getCurrentProfile());
+	}
+}
@@ -0,0 +1,69 @@
+package motifsearch;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import scoring.ExpectedInformationScore;
+import scoring.MarkovScore;
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Patched l-mer scores against scoring every window again, as the profile moves
+ * @author Ricky
+ *
+ */
+public class LmerScoreCacheTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void patchedScoresMatchRescoring()
+	{
+		long seed = 26;
+		for(Score scorer : new Score[]{new RelativeInformationScore(), new MarkovScore(2), new ExpectedInformationScore()})
+		{
+			checkCache(scorer, false, seed++);
+			checkCache(scorer, true, seed++);
+		}
+	}
+
+	private static void checkCache(Score scorer, boolean bothStrands, long seed)
+	{
+		Random gen = new Random(seed);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 6; ++s)
+		{
+			seqList.add(Sequence.generateRandomSequence(DNA, 20 + gen.nextInt(30)));
+		}
+		Dataset dataset = new Dataset(DNA, seqList);
+		scorer.prepare(dataset);
+		Profile profile = new Profile(dataset, 5);
+		profile.generateRandomAlignment(gen);
+		LmerScoreCache cache = new LmerScoreCache(profile, scorer, bothStrands);
+
+		for(int round=0; round < 200; ++round)
+		{
+			int index = gen.nextInt(seqList.size());
+			Sequence seq = seqList.get(index);
+			double[] expected = bothStrands ? profile.scoreAllLmersBothStrands(seq, scorer) : profile.scoreAllLmers(seq, scorer);
+			assertArrayEquals(expected, cache.scoreAllLmers(index, seq), 1e-9);
+
+			//Move one or a few alignments, as a greedy or Gibbs step would
+			for(int move=gen.nextInt(3); move >= 0; --move)
+			{
+				Sequence moved = seqList.get(gen.nextInt(seqList.size()));
+				profile.updateAlignmentStart(moved, gen.nextInt(moved.getSize() - 5 + 1), bothStrands && gen.nextBoolean());
+			}
+		}
+	}
+}
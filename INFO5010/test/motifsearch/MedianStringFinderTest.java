@@ -0,0 +1,74 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * The median string and its alignment against trying every word
+ * @author Ricky
+ *
+ */
+public class MedianStringFinderTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void medianMatchesEveryWordTried()
+	{
+		Random gen = new Random(26);
+		for(int length=3; length <= 6; ++length)
+		{
+			List<Sequence> seqList = new ArrayList<Sequence>();
+			for(int s=0; s < 5; ++s)
+			{
+				seqList.add(randomSequence(gen, 12 + gen.nextInt(10)));
+			}
+
+			//The first word of the smallest total distance, as ties go to the smallest code
+			Sequence expected = null;
+			int bestDistance = Integer.MAX_VALUE;
+			for(Sequence word : ExhaustiveSearch.allWords(DNA, length))
+			{
+				int dist = ExhaustiveSearch.totalDistance(word, seqList);
+				if(dist < bestDistance)
+				{
+					bestDistance = dist;
+					expected = word;
+				}
+			}
+
+			MedianStringFinder finder = new MedianStringFinder(new Dataset(DNA, seqList), length);
+			finder.setVerbose(false);
+			Sequence median = finder.findMotifs();
+			assertEquals(expected.toString(), median.toString());
+
+			Profile profile = finder.getCurrentProfile();
+			for(Sequence seq : seqList)
+			{
+				int start = profile.getAlignmentStarts().get(seq);
+				Sequence aligned = new Sequence(DNA, seq.toString().substring(start, start + length));
+				assertEquals(ExhaustiveSearch.minDistance(median, seq), ExhaustiveSearch.minDistance(median, aligned));
+			}
+		}
+	}
+
+	static Sequence randomSequence(Random gen, int size)
+	{
+		StringBuilder text = new StringBuilder();
+		for(int i=0; i < size; ++i)
+		{
+			text.append("ACGT".charAt(gen.nextInt(4)));
+		}
+		return new Sequence(DNA, text.toString());
+	}
+}
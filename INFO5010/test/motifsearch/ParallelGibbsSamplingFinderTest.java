@@ -0,0 +1,61 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * The shared counters left by a sweep of several hogwild workers against counting
+ * the alignment they report, every column summing to the number of sequences
+ * @author Ricky
+ *
+ */
+public class ParallelGibbsSamplingFinderTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void countersMatchAlignmentAfterEachSweep()
+	{
+		Random gen = new Random(26);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 24; ++s)
+		{
+			seqList.add(MedianStringFinderTest.randomSequence(gen, 40 + gen.nextInt(20)));
+		}
+		ParallelGibbsSamplingFinder finder = new ParallelGibbsSamplingFinder(new Dataset(DNA, seqList), 6, 1, 4);
+		finder.setVerbose(false);
+		finder.setSeed(26);
+		for(int sweep=0; sweep < 20; ++sweep)
+		{
+			finder.findMotifs();
+			Profile profile = finder.getCurrentProfile();
+			Map<Sequence, Integer> starts = profile.getAlignmentStarts();
+			for(int pos=0; pos < 6; ++pos)
+			{
+				int[] expected = new int[DNA.getSize()];
+				for(Sequence seq : seqList)
+				{
+					expected[seq.getIntAtPosition(starts.get(seq) + pos)]++;
+				}
+				int total = 0;
+				for(int a=0; a < DNA.getSize(); ++a)
+				{
+					assertEquals(expected[a], profile.getPfm(a, pos));
+					total += profile.getPfm(a, pos);
+				}
+				assertEquals(seqList.size(), total);
+			}
+		}
+	}
+}
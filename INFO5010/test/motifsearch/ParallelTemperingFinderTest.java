@@ -0,0 +1,67 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import scoring.MarkovScore;
+import scoring.RelativeInformationScore;
+import scoring.Score;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Seeded tempering runs on small instances against scoring every alignment, and
+ * against a second run with the same seed
+ * @author Ricky
+ *
+ */
+public class ParallelTemperingFinderTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void temperingFindsBestAlignment()
+	{
+		checkTempering(new RelativeInformationScore(), 47);
+		checkTempering(new MarkovScore(1), 48);
+	}
+
+	private static void checkTempering(Score scorer, long seed)
+	{
+		Random gen = new Random(seed);
+		for(int round=0; round < 3; ++round)
+		{
+			List<Sequence> seqList = new ArrayList<Sequence>();
+			for(int s=0; s < 4; ++s)
+			{
+				seqList.add(MedianStringFinderTest.randomSequence(gen, 9 + gen.nextInt(4)));
+			}
+			Dataset dataset = new Dataset(DNA, seqList);
+			scorer.prepare(dataset);
+			double expected = ExhaustiveSearch.bestAlignmentScore(new Profile(dataset, 4), seqList, scorer);
+
+			ParallelTemperingFinder finder = finder(dataset, scorer, seed + round);
+			Sequence motif = finder.runMultiple(2);
+			assertEquals(expected, scorer.calculateScore(finder.getCurrentProfile()), 1e-9);
+
+			ParallelTemperingFinder again = finder(dataset, scorer, seed + round);
+			assertEquals(motif.toString(), again.runMultiple(2).toString());
+			assertEquals(finder.getCurrentProfile().getAlignmentStarts(), again.getCurrentProfile().getAlignmentStarts());
+		}
+	}
+
+	private static ParallelTemperingFinder finder(Dataset dataset, Score scorer, long seed)
+	{
+		ParallelTemperingFinder finder = new ParallelTemperingFinder(dataset, 4, 100, 4, 0.05, 0.5, scorer);
+		finder.setVerbose(false);
+		finder.setSeed(seed);
+		return finder;
+	}
+}
@@ -0,0 +1,67 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.DatasetGenerator;
+import sequence.Sequence;
+
+/**
+ * The reported (l,d)-motif against trying every word, with the candidates held as
+ * bitsets and as sorted runs spilled to disk
+ * @author Ricky
+ *
+ */
+public class PlantedMotifFinderTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void bitsetSearchMatchesEveryWordTried()
+	{
+		checkPlanted(5, 1, 20, 1L << 30, 26);
+	}
+
+	@Test
+	public void spilledSearchMatchesEveryWordTried()
+	{
+		//Thousands of candidates against runs of at most 1024, so the runs are spilled and merged
+		checkPlanted(8, 2, 40, 1, 27);
+	}
+
+	private static void checkPlanted(int length, int mismatches, int size, long memoryBudget, long seed)
+	{
+		DatasetGenerator generator = new DatasetGenerator(DNA, seed);
+		generator.plantMotif(length, mismatches, 1.0);
+		List<Sequence> seqList = generator.generate(6, size);
+
+		//Of the words within d of every sequence, the first of the smallest total distance
+		Sequence expected = null;
+		int bestDistance = Integer.MAX_VALUE;
+		for(Sequence word : ExhaustiveSearch.allWords(DNA, length))
+		{
+			boolean planted = true;
+			int dist = 0;
+			for(int s=0; s < seqList.size() && planted; ++s)
+			{
+				int seqDist = ExhaustiveSearch.minDistance(word, seqList.get(s));
+				planted = (seqDist <= mismatches);
+				dist += seqDist;
+			}
+			if(planted && dist < bestDistance)
+			{
+				bestDistance = dist;
+				expected = word;
+			}
+		}
+
+		PlantedMotifFinder finder = new PlantedMotifFinder(new Dataset(DNA, seqList), length, mismatches, memoryBudget);
+		finder.setVerbose(false);
+		assertEquals(expected.toString(), finder.findMotifs().toString());
+	}
+}
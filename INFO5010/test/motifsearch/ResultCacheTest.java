@@ -0,0 +1,128 @@
+package motifsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Cached results read back, and corrupt entries read as misses
+ * @author Ricky
+ *
+ */
+public class ResultCacheTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void storedResultIsReadBack() throws IOException
+	{
+		Dataset dataset = dataset();
+		ResultCache cache = new ResultCache(directory().getPath(), 1 << 20);
+		Profile profile = new Profile(dataset, 4);
+		profile.generateRandomAlignment(new Random(44));
+		String key = ResultCache.key(dataset, "find-motif greedy true");
+		cache.put(key, profile.getConsensus(), 1.5, profile);
+
+		ResultCache.Result result = cache.get(key, dataset);
+		assertNotNull(result);
+		assertEquals(profile.getConsensus().toString(), result.getMotif().toString());
+		assertEquals(1.5, result.getScore(), 0.0);
+		assertEquals(profile.getAlignmentStarts(), result.getProfile().getAlignmentStarts());
+	}
+
+	@Test
+	public void corruptEntriesAreMisses() throws IOException
+	{
+		Dataset dataset = dataset();
+		File directory = directory();
+		ResultCache cache = new ResultCache(directory.getPath(), 1 << 20);
+
+		//Truncated
+		write(new File(directory, "a.res"), out -> {
+			out.writeInt(0x4D465243);
+			out.writeInt(1);
+			out.writeDouble(2.0);
+		});
+		//A length that would allocate gigabytes
+		write(new File(directory, "b.res"), out -> {
+			header(out, "ACGT");
+			out.writeInt(Integer.MAX_VALUE);
+			out.writeInt(4);
+		});
+		//A symbol not in the alphabet
+		write(new File(directory, "c.res"), out -> {
+			header(out, "ACXT");
+			out.writeInt(4);
+			out.writeInt(4);
+		});
+		//A start beyond the end of its sequence
+		write(new File(directory, "d.res"), out -> {
+			header(out, "ACGT");
+			out.writeInt(4);
+			out.writeInt(4);
+			for(int i=0; i < 16; ++i)
+				out.writeInt(0);
+			out.writeInt(3);
+			for(int s=0; s < 3; ++s)
+				out.writeInt(1000);
+		});
+		for(String key : Arrays.asList("a", "b", "c", "d", "missing"))
+		{
+			assertNull(key, cache.get(key, dataset));
+		}
+	}
+
+	private interface Body
+	{
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private static void header(DataOutputStream out, String motif) throws IOException
+	{
+		out.writeInt(0x4D465243);
+		out.writeInt(1);
+		out.writeDouble(2.0);
+		out.writeUTF(motif);
+	}
+
+	private static void write(File file, Body body) throws IOException
+	{
+		try(DataOutputStream out = new DataOutputStream(new FileOutputStream(file)))
+		{
+			body.write(out);
+		}
+	}
+
+	private static Dataset dataset()
+	{
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		seqList.add(new Sequence(DNA, "ACGTTGCAAC"));
+		seqList.add(new Sequence(DNA, "TTGACCGTAA"));
+		seqList.add(new Sequence(DNA, "GGCATTGACG"));
+		return new Dataset(DNA, seqList);
+	}
+
+	private static File directory() throws IOException
+	{
+		File directory = Files.createTempDirectory("resultcache").toFile();
+		directory.deleteOnExit();
+		return directory;
+	}
+}
@@ -0,0 +1,99 @@
+package scanning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * Hits of the memory-mapped scan against scoring every window, and the number
+ * formatting of the hit records against String.format
+ * @author Ricky
+ *
+ */
+public class GenomeScannerTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void numbersAreFormattedAsStringFormat()
+	{
+		Random gen = new Random(32);
+		for(int round=0; round < 20000; ++round)
+		{
+			double value = (gen.nextDouble() - 0.5) * Math.pow(10, gen.nextInt(8) - 3);
+			StringBuilder fixed = new StringBuilder();
+			GenomeScanner.appendFixed(fixed, value, 4);
+			assertEquals(String.format("%.4f", value), fixed.toString());
+
+			double pValue = gen.nextDouble() * Math.pow(10, -gen.nextInt(40));
+			StringBuilder scientific = new StringBuilder();
+			GenomeScanner.appendScientific(scientific, pValue, 3);
+			assertEquals(String.format("%.3e", pValue), scientific.toString());
+		}
+	}
+
+	@Test
+	public void hitsMatchEveryWindowScored() throws IOException
+	{
+		Random gen = new Random(33);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		StringBuilder fasta = new StringBuilder();
+		for(int s=0; s < 3; ++s)
+		{
+			StringBuilder text = new StringBuilder();
+			for(int i=0; i < 300; ++i)
+			{
+				text.append("ACGT".charAt(gen.nextInt(4)));
+			}
+			seqList.add(new Sequence(DNA, text.toString()));
+			fasta.append(">seq").append(s).append(" description\n");
+			for(int i=0; i < text.length(); i += 70)
+			{
+				fasta.append(text, i, Math.min(text.length(), i + 70)).append('\n');
+			}
+		}
+		Profile profile = new Profile(new Dataset(DNA, seqList), 6);
+		profile.generateRandomAlignment(gen);
+
+		double threshold = 2.0;
+		StringBuilder expected = new StringBuilder();
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			Sequence seq = seqList.get(s);
+			for(int start=0; start + 6 <= seq.getSize(); ++start)
+			{
+				double score = 0;
+				for(int p=0; p < 6; ++p)
+				{
+					score += profile.getPwm(seq.getIntAtPosition(start + p), p);
+				}
+				if(score >= threshold)
+					expected.append(String.format("seq%d\t%d\t%d\t%.4f\n", s, start, start + 6, score));
+			}
+		}
+
+		assertTrue(expected.length() > 0);
+
+		File input = File.createTempFile("scan", ".fa");
+		File output = File.createTempFile("scan", ".bed");
+		input.deleteOnExit();
+		output.deleteOnExit();
+		Files.write(input.toPath(), fasta.toString().getBytes(StandardCharsets.US_ASCII));
+		new GenomeScanner(profile.getSnapshot(), threshold, 2).scan(input.getPath(), output.getPath());
+		assertEquals(expected.toString(), new String(Files.readAllBytes(output.toPath()), StandardCharsets.US_ASCII));
+	}
+}
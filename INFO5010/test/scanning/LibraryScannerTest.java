@@ -0,0 +1,77 @@
+package scanning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Sequence;
+
+/**
+ * Hits of the blocked library scan against scoring each motif on every window from
+ * its weight matrix, over motif lengths that leave a partial last table group and
+ * more motifs than one block
+ * @author Ricky
+ *
+ */
+public class LibraryScannerTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+	private static final double TOLERANCE = 1e-4;
+
+	@Test
+	public void hitsMatchEveryMotifOnEveryWindow() throws IOException
+	{
+		Random gen = new Random(34);
+		MotifLibrary library = MotifLibraryTest.randomLibrary(gen, 45, 3, 10);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 4; ++s)
+		{
+			seqList.add(Sequence.generateRandomSequence(DNA, 5 + gen.nextInt(5000)));
+		}
+
+		StringWriter out = new StringWriter();
+		long hits = new LibraryScanner(library).scan(seqList, out);
+		String[] lines = out.toString().split("\n");
+		assertTrue(hits > 0);
+		assertEquals(hits, lines.length);
+
+		//Hits come by sequence, window, then motif. The tables hold float sums of the same
+		//weights, so scores within TOLERANCE of the threshold may go either way.
+		int line = 0;
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			Sequence seq = seqList.get(s);
+			for(int start=0; start < seq.getSize(); ++start)
+			{
+				for(MotifLibrary.Motif motif : library.getMotifs())
+				{
+					if(start + motif.length() > seq.getSize())
+						continue;
+					double score = 0;
+					for(int p=0; p < motif.length(); ++p)
+					{
+						score += motif.getPwm(seq.getIntAtPosition(start + p), p);
+					}
+					String hit = s + "\t" + start + "\t" + (start + motif.length()) + "\t" + motif.getName() + "\t";
+					boolean reported = line < lines.length && lines[line].startsWith(hit);
+					if(score >= motif.getThreshold() + TOLERANCE)
+						assertTrue(hit, reported);
+					if(score < motif.getThreshold() - TOLERANCE)
+						assertFalse(hit, reported);
+					if(reported)
+						assertEquals(score, Double.parseDouble(lines[line++].substring(hit.length())), TOLERANCE);
+				}
+			}
+		}
+		assertEquals(lines.length, line);
+	}
+}
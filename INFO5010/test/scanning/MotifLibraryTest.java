@@ -0,0 +1,87 @@
+package scanning;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import scoring.PValueService;
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.Sequence;
+
+/**
+ * A saved library read back motif by motif
+ * @author Ricky
+ *
+ */
+public class MotifLibraryTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void savedLibraryIsReadBack() throws IOException
+	{
+		MotifLibrary library = randomLibrary(new Random(34), 5, 3, 9);
+		File file = File.createTempFile("library", ".motl");
+		file.deleteOnExit();
+		library.save(file.getPath());
+		MotifLibrary loaded = MotifLibrary.load(file.getPath());
+
+		assertTrue(DNA.hasSameMapping(loaded.getAlphabet()));
+		assertEquals(library.getGroupSize(), loaded.getGroupSize());
+		assertEquals(library.size(), loaded.size());
+		for(int m=0; m < library.size(); ++m)
+		{
+			MotifLibrary.Motif motif = library.getMotifs().get(m);
+			MotifLibrary.Motif read = loaded.getMotifs().get(m);
+			assertEquals(motif.getName(), read.getName());
+			assertEquals(motif.length(), read.length());
+			assertEquals(motif.getThreshold(), read.getThreshold(), 0.0);
+			assertEquals(motif.getPValue(), read.getPValue(), 0.0);
+			for(int pos=0; pos < motif.length(); ++pos)
+			{
+				for(int a=0; a < DNA.getSize(); ++a)
+				{
+					assertEquals(motif.getPfm(a, pos), read.getPfm(a, pos));
+					assertEquals(motif.getPwm(a, pos), read.getPwm(a, pos), 0.0);
+				}
+			}
+			assertEquals(motif.getTables().length, read.getTables().length);
+			for(int g=0; g < motif.getTables().length; ++g)
+			{
+				assertArrayEquals(motif.getTables()[g], read.getTables()[g], 0.0f);
+			}
+		}
+	}
+
+	/**
+	 * Motifs of lengths in [minLength, maxLength] from random alignments of random sequences
+	 */
+	static MotifLibrary randomLibrary(Random gen, int count, int minLength, int maxLength)
+	{
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 8; ++s)
+		{
+			seqList.add(Sequence.generateRandomSequence(DNA, 40));
+		}
+		Dataset dataset = new Dataset(DNA, seqList);
+		PValueService pValueService = new PValueService();
+		MotifLibrary library = new MotifLibrary(DNA);
+		for(int m=0; m < count; ++m)
+		{
+			Profile profile = new Profile(dataset, minLength + m % (maxLength - minLength + 1));
+			profile.generateRandomAlignment(gen);
+			library.addMotif("motif" + m, profile, 0.01, pValueService);
+		}
+		return library;
+	}
+}
@@ -0,0 +1,129 @@
+package scoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sequence.Alphabet;
+import sequence.Dataset;
+import sequence.Profile;
+import sequence.ProfileMatrices;
+import sequence.Sequence;
+
+/**
+ * P-values and score thresholds against enumerating every l-mer of a short profile,
+ * weighted by the background model, within the discretization bound of length * granularity / 2
+ * @author Ricky
+ *
+ */
+public class ScoreDistributionTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+	private static final int LENGTH = 5;
+	private static final double EPSILON = 1e-9;
+
+	@Test
+	public void pValuesMatchEnumeration()
+	{
+		Random gen = new Random(33);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 8; ++s)
+		{
+			//Skewed composition, so the background weighting matters
+			StringBuilder text = new StringBuilder();
+			for(int i=0; i < 30; ++i)
+			{
+				text.append("AAAACCGGGT".charAt(gen.nextInt(10)));
+			}
+			seqList.add(new Sequence(DNA, text.toString()));
+		}
+		Profile profile = new Profile(new Dataset(DNA, seqList), LENGTH);
+
+		for(double granularity : new double[]{0.05, 0.001})
+		{
+			PValueService service = new PValueService(granularity);
+			for(int round=0; round < 3; ++round)
+			{
+				profile.generateRandomAlignment(gen);
+				//The service scores the profile's snapshot, whose background is the dataset's composition
+				ScoreDistribution dist = new ScoreDistribution(profile.getSnapshot(), granularity);
+				checkDistribution(profile, granularity, dist, service, gen);
+			}
+		}
+	}
+
+	private static void checkDistribution(Profile profile, double granularity, ScoreDistribution dist,
+			PValueService service, Random gen)
+	{
+		double[] scores = new double[1 << (2 * LENGTH)];
+		double[] weights = new double[scores.length];
+		enumerate(profile.getSnapshot(), scores, weights);
+		double bound = LENGTH * granularity / 2;
+
+		//Scores on the granularity's grid are not rounded themselves, so only the column rounding counts
+		for(int i=0; i < scores.length; i += 7)
+		{
+			double score = Math.round(scores[i] / granularity) * granularity;
+			double pValue = dist.getPValue(score);
+			assertTrue(pValue <= exactPValue(scores, weights, score - bound - EPSILON) + EPSILON);
+			assertTrue(pValue >= exactPValue(scores, weights, score + bound + EPSILON) - EPSILON);
+			assertEquals(pValue, service.getPValue(profile, score), 0);
+		}
+
+		for(double pValue : new double[]{0.5, 0.1, 0.01, 0.001, gen.nextDouble()})
+		{
+			double threshold = dist.getScoreThreshold(pValue);
+			assertEquals(threshold, service.getScoreThreshold(profile, pValue), 0);
+			if(threshold == Double.POSITIVE_INFINITY)
+				continue;
+			assertTrue(dist.getPValue(threshold) <= pValue);
+			assertTrue(dist.getPValue(threshold - granularity) > pValue);
+			//The threshold itself lies halfway between grid points, which widens the bound by half a step
+			assertTrue(exactPValue(scores, weights, threshold + bound + EPSILON) <= pValue + EPSILON);
+			assertTrue(exactPValue(scores, weights, threshold - granularity / 2 - bound - EPSILON) > pValue - EPSILON);
+		}
+	}
+
+	/**
+	 * Score and background probability of every l-mer, indexed by its digits in base 4
+	 */
+	private static void enumerate(ProfileMatrices profile, double[] scores, double[] weights)
+	{
+		Map<String, Double> model = profile.getBackgroundModel();
+		double[] background = new double[DNA.getSize()];
+		double backgroundTotal = 0;
+		for(int a=0; a < background.length; ++a)
+		{
+			Double prob = model.get(DNA.getSymbol(a));
+			background[a] = (prob == null) ? 0.0 : prob;
+			backgroundTotal += background[a];
+		}
+		for(int lmer=0; lmer < scores.length; ++lmer)
+		{
+			weights[lmer] = 1.0;
+			for(int pos=0; pos < LENGTH; ++pos)
+			{
+				int symbol = (lmer >>> (2 * pos)) & 3;
+				scores[lmer] += profile.getPwm(symbol, pos);
+				weights[lmer] *= background[symbol] / backgroundTotal;
+			}
+		}
+	}
+
+	private static double exactPValue(double[] scores, double[] weights, double score)
+	{
+		double result = 0;
+		for(int i=0; i < scores.length; ++i)
+		{
+			if(scores[i] >= score)
+				result += weights[i];
+		}
+		return result;
+	}
+}
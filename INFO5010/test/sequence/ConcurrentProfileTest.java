@@ -0,0 +1,95 @@
+package sequence;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * The striped counters under several threads excluding and including disjoint
+ * sequences at once, against counting the alignment afterwards
+ * @author Ricky
+ *
+ */
+public class ConcurrentProfileTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void countersMatchAlignmentAfterConcurrentMoves() throws Exception
+	{
+		Random gen = new Random(26);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 32; ++s)
+		{
+			seqList.add(Sequence.generateRandomSequence(DNA, 30 + gen.nextInt(30)));
+		}
+		final ConcurrentProfile profile = new ConcurrentProfile(new Dataset(DNA, seqList), 6);
+		profile.generateRandomAlignment(gen);
+
+		final int threads = 8;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for(int round=0; round < 20; ++round)
+			{
+				List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+				for(int t=0; t < threads; ++t)
+				{
+					final int stripe = t;
+					final long seed = gen.nextLong();
+					workers.add(() -> {
+						Random workerGen = new Random(seed);
+						for(int move=0; move < 500; ++move)
+						{
+							Sequence seq = seqList.get(stripe + threads * workerGen.nextInt(seqList.size() / threads));
+							profile.excludeSequence(seq);
+							profile.includeSequence(seq, workerGen.nextInt(seq.getSize() - 6 + 1));
+						}
+						return null;
+					});
+				}
+				for(Future<Void> f : pool.invokeAll(workers))
+				{
+					f.get();
+				}
+				checkCounts(profile, seqList);
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Every column sums to the number of sequences and holds the symbols at the starts
+	 */
+	private static void checkCounts(Profile profile, List<Sequence> seqList)
+	{
+		Map<Sequence, Integer> starts = profile.getAlignmentStarts();
+		for(int pos=0; pos < profile.length(); ++pos)
+		{
+			int[] expected = new int[DNA.getSize()];
+			for(Sequence seq : seqList)
+			{
+				expected[seq.getIntAtPosition(starts.get(seq) + pos)]++;
+			}
+			int total = 0;
+			for(int a=0; a < DNA.getSize(); ++a)
+			{
+				assertEquals(expected[a], profile.getPfm(a, pos));
+				total += profile.getPfm(a, pos);
+			}
+			assertEquals(seqList.size(), total);
+		}
+	}
+}
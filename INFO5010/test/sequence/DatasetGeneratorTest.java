@@ -0,0 +1,48 @@
+package sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Packed and boxed generation of the same seed, and the planted (l,d) instances
+ * @author Ricky
+ *
+ */
+public class DatasetGeneratorTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void packedSequencesMatchSequences()
+	{
+		DatasetGenerator generator = new DatasetGenerator(DNA, 45);
+		generator.plantMotif(8, 2, 1.0);
+		List<Sequence> seqList = generator.generate(50, 70);
+		int[] starts = generator.getPlantedStarts();
+		List<PackedSequence> packedList = generator.generatePacked(50, 70);
+		assertArrayEquals(starts, generator.getPlantedStarts());
+
+		Sequence motif = generator.getMotif();
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			Sequence seq = seqList.get(s);
+			PackedSequence packed = packedList.get(s);
+			assertEquals(seq.getSize(), packed.size());
+			for(int i=0; i < seq.getSize(); ++i)
+			{
+				assertEquals((int)seq.getIntAtPosition(i), packed.getCode(i));
+			}
+			int mismatches = 0;
+			for(int p=0; p < motif.getSize(); ++p)
+			{
+				if((int)seq.getIntAtPosition(starts[s] + p) != (int)motif.getIntAtPosition(p))
+					mismatches++;
+			}
+			assertEquals(2, mismatches);
+		}
+	}
+}
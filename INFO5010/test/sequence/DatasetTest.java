@@ -0,0 +1,82 @@
+package sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Starts picked around masked positions against testing every window, and weights
+ * over sequences missing a symbol of the alphabet
+ * @author Ricky
+ *
+ */
+public class DatasetTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void randomStartsCoverExactlyTheFreeWindows()
+	{
+		Random gen = new Random(41);
+		for(int round=0; round < 50; ++round)
+		{
+			List<Sequence> seqList = new ArrayList<Sequence>();
+			seqList.add(Sequence.generateRandomSequence(DNA, 20 + gen.nextInt(40)));
+			Dataset dataset = new Dataset(DNA, seqList);
+			Sequence seq = seqList.get(0);
+			int length = 1 + gen.nextInt(6);
+			for(int m=gen.nextInt(5); m > 0; --m)
+			{
+				dataset.maskWindow(seq, gen.nextInt(seq.getSize() - 3), 1 + gen.nextInt(3));
+			}
+
+			Set<Integer> expected = new TreeSet<Integer>();
+			for(int w=0; w + length <= seq.getSize(); ++w)
+			{
+				if(!dataset.isMasked(seq, w, length))
+					expected.add(w);
+			}
+			if(expected.isEmpty())
+			{
+				for(int w=0; w + length <= seq.getSize(); ++w)
+					expected.add(w);
+			}
+			Set<Integer> picked = new TreeSet<Integer>();
+			for(int draw=0; draw < 100 * expected.size(); ++draw)
+			{
+				picked.add(dataset.randomUnmaskedStart(seq, length, gen));
+			}
+			assertEquals(expected, picked);
+		}
+	}
+
+	@Test
+	public void missingSymbolsGiveFiniteWeights()
+	{
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		seqList.add(new Sequence(DNA, "ACGACGGCA"));
+		seqList.add(new Sequence(DNA, "CCAGGACAG"));
+		Dataset dataset = new Dataset(DNA, seqList);
+		int t = DNA.getInt("T");
+		assertEquals(0.0, dataset.getBackground(t), 0);
+		assertEquals(1.0 / 22, dataset.getFlooredBackground(t), 1e-12);
+
+		Profile profile = new Profile(dataset, 4);
+		ConcurrentProfile concurrent = new ConcurrentProfile(dataset, 4);
+		for(int symbol=0; symbol < DNA.getSize(); ++symbol)
+		{
+			for(int pos=0; pos < 4; ++pos)
+			{
+				assertTrue(Double.isFinite(profile.getPwm(symbol, pos)));
+				assertTrue(Double.isFinite(concurrent.getPwm(symbol, pos)));
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Counts and postings of the index against the packed windows of each sequence
+ * @author Ricky
+ *
+ */
+public class KmerIndexTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void postingsMatchPackedWindows()
+	{
+		Random gen = new Random(30);
+		for(int k : new int[]{1, 3, 8, 32})
+		{
+			List<Sequence> seqList = new ArrayList<Sequence>();
+			for(int s=0; s < 12; ++s)
+			{
+				StringBuilder text = new StringBuilder();
+				int size = k + gen.nextInt(80);
+				for(int i=0; i < size; ++i)
+				{
+					text.append("ACGT".charAt(gen.nextInt(k == 8 ? 2 : 4)));
+				}
+				seqList.add(new Sequence(DNA, text.toString()));
+			}
+
+			Map<Long, List<Long>> expected = new HashMap<Long, List<Long>>();
+			long windows = 0;
+			for(int s=0; s < seqList.size(); ++s)
+			{
+				long[] codes = new PackedSequence(seqList.get(s)).getAllWindows(k);
+				for(int offset=0; offset < codes.length; ++offset)
+				{
+					expected.computeIfAbsent(codes[offset], c -> new ArrayList<Long>()).add((((long)s) << 32) | offset);
+				}
+				windows += codes.length;
+			}
+
+			KmerIndex index = new KmerIndex(new Dataset(DNA, seqList), k);
+			assertEquals(windows, index.getTotalWindows());
+			assertEquals(expected.size(), index.getDistinctKmers());
+			for(Map.Entry<Long, List<Long>> entry : expected.entrySet())
+			{
+				long[] postings = new long[entry.getValue().size()];
+				for(int i=0; i < postings.length; ++i)
+				{
+					postings[i] = entry.getValue().get(i);
+				}
+				assertEquals(postings.length, index.getCount(entry.getKey()));
+				assertArrayEquals(postings, index.getPostings(entry.getKey()));
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Window log-likelihoods against summing the position log-likelihoods, for the
+ * dataset's sequences and others, over more lengths than are cached
+ * @author Ricky
+ *
+ */
+public class MarkovBackgroundTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void windowsMatchPositionSums()
+	{
+		Random gen = new Random(38);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 5; ++s)
+		{
+			seqList.add(Sequence.generateRandomSequence(DNA, 30 + gen.nextInt(30)));
+		}
+		MarkovBackground background = new MarkovBackground(new Dataset(DNA, seqList), 2);
+		Sequence other = Sequence.generateRandomSequence(DNA, 40);
+
+		for(int round=0; round < 2; ++round)
+		{
+			for(int length=1; length <= 20; ++length)
+			{
+				for(Sequence seq : seqList)
+				{
+					assertArrayEquals(windowSums(background, seq, length), background.getWindowLogLikelihoods(seq, length), 1e-9);
+				}
+				assertArrayEquals(windowSums(background, other, length), background.getWindowLogLikelihoods(other, length), 1e-9);
+			}
+		}
+		Sequence seq = seqList.get(0);
+		assertSame(background.getWindowLogLikelihoods(seq, 6), background.getWindowLogLikelihoods(seq, 6));
+	}
+
+	private static double[] windowSums(MarkovBackground background, Sequence seq, int length)
+	{
+		double[] positions = background.positionLogLikelihoods(seq);
+		double[] result = new double[Math.max(0, positions.length - length + 1)];
+		for(int start=0; start < result.length; ++start)
+		{
+			for(int p=0; p < length; ++p)
+			{
+				result[start] += positions[start + p];
+			}
+		}
+		return result;
+	}
+}
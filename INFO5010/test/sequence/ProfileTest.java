@@ -0,0 +1,77 @@
+package sequence;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import scoring.MarkovScore;
+import scoring.RelativeInformationScore;
+import scoring.Score;
+
+/**
+ * Score changes from the cells of the matrices against rescoring the moved profile,
+ * and the background the published snapshot carries
+ * @author Ricky
+ *
+ */
+public class ProfileTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void relativeInformationChangesMatchRescoring()
+	{
+		checkChanges(new RelativeInformationScore(), 41);
+	}
+
+	@Test
+	public void markovChangesMatchRescoring()
+	{
+		checkChanges(new MarkovScore(2), 42);
+	}
+
+	@Test
+	public void snapshotCarriesDatasetBackground()
+	{
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		seqList.add(new Sequence(DNA, "AAAAAAACGT"));
+		seqList.add(new Sequence(DNA, "AAAACCAAGA"));
+		Dataset dataset = new Dataset(DNA, seqList);
+		Profile profile = new Profile(dataset, 4);
+		profile.generateRandomAlignment(new Random(27));
+		assertEquals(dataset.getBackgroundModel(), profile.getSnapshot().getBackgroundModel());
+	}
+
+	private static void checkChanges(Score scorer, long seed)
+	{
+		Random gen = new Random(seed);
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < 6; ++s)
+		{
+			seqList.add(Sequence.generateRandomSequence(DNA, 20 + gen.nextInt(20)));
+		}
+		Dataset dataset = new Dataset(DNA, seqList);
+		scorer.prepare(dataset);
+		Profile profile = new Profile(dataset, 5);
+		for(int round=0; round < 10; ++round)
+		{
+			profile.generateRandomAlignment(gen);
+			Sequence seq = seqList.get(gen.nextInt(seqList.size()));
+			int start = profile.getAlignmentStarts().get(seq);
+			boolean reverse = profile.isReverseStrand(seq);
+			double before = scorer.calculateScore(profile);
+			double[] changes = profile.getScoreChanges(seq, true, scorer);
+			int windows = seq.getSize() - 5 + 1;
+			for(int c=0; c < changes.length; ++c)
+			{
+				profile.updateAlignmentStart(seq, c % windows, c >= windows);
+				assertEquals(scorer.calculateScore(profile) - before, changes[c], 1e-9);
+			}
+			profile.updateAlignmentStart(seq, start, reverse);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package sequence;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Suffix array queries against a scan of every window
+ * @author Ricky
+ *
+ */
+public class SuffixArrayTest
+{
+	private static final Alphabet DNA = new Alphabet("ACGT", "");
+
+	@Test
+	public void occurrencesMatchNaiveSearch()
+	{
+		Random gen = new Random(31);
+		for(int round=0; round < 20; ++round)
+		{
+			List<Sequence> seqList = randomSequences(gen, 1 + gen.nextInt(6), 1 + gen.nextInt(60), round % 3 == 0 ? 2 : 4);
+			SuffixArray index = new SuffixArray(seqList);
+			for(int query=0; query < 20; ++query)
+			{
+				Sequence pattern = randomSequences(gen, 1, 1 + gen.nextInt(8), 4).get(0);
+				int maxMismatches = gen.nextInt(3);
+				assertEquals(naive(seqList, pattern, maxMismatches).toString(), 
+						index.findOccurrences(pattern, maxMismatches).toString());
+			}
+		}
+	}
+
+	@Test
+	public void lcpMatchesDirectComparison()
+	{
+		Random gen = new Random(32);
+		List<Sequence> seqList = randomSequences(gen, 4, 40, 2);
+		StringBuilder text = new StringBuilder();
+		for(Sequence seq : seqList)
+		{
+			text.append(seq.toString()).append('$');
+		}
+		text.append('#');
+		SuffixArray index = new SuffixArray(seqList);
+		for(int i=1; i < index.size(); ++i)
+		{
+			int a = index.getSuffix(i - 1);
+			int b = index.getSuffix(i);
+			int h = 0;
+			while(a + h < text.length() && b + h < text.length() && text.charAt(a + h) == text.charAt(b + h) 
+					&& text.charAt(a + h) != '$' && text.charAt(a + h) != '#')
+			{
+				h++;
+			}
+			assertEquals(h, index.getLcp(i));
+		}
+	}
+
+	/**
+	 * Sequences over the first symbols of the DNA alphabet, so small alphabets give repeats
+	 */
+	private static List<Sequence> randomSequences(Random gen, int count, int length, int symbols)
+	{
+		List<Sequence> seqList = new ArrayList<Sequence>();
+		for(int s=0; s < count; ++s)
+		{
+			StringBuilder seq = new StringBuilder();
+			for(int i=0; i < length; ++i)
+			{
+				seq.append("ACGT".charAt(gen.nextInt(symbols)));
+			}
+			seqList.add(new Sequence(DNA, seq.toString()));
+		}
+		return seqList;
+	}
+
+	private static List<Occurrence> naive(List<Sequence> seqList, Sequence pattern, int maxMismatches)
+	{
+		List<Occurrence> result = new ArrayList<Occurrence>();
+		for(int s=0; s < seqList.size(); ++s)
+		{
+			Sequence seq = seqList.get(s);
+			for(int start=0; start + pattern.getSize() <= seq.getSize(); ++start)
+			{
+				int mismatches = 0;
+				for(int i=0; i < pattern.getSize(); ++i)
+				{
+					if(seq.getIntAtPosition(start + i) != pattern.getIntAtPosition(i))
+						mismatches++;
+				}
+				if(mismatches <= maxMismatches)
+					result.add(new Occurrence(s, start, mismatches));
+			}
+		}
+		return result;
+	}
+}